@@ -0,0 +1,47 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+// Caches a value derived from the inner object of a wrapper, computing it again only once the inner object has changed
+public abstract class DerivedView<T> {
+	private volatile Computed<T> computed;
+	
+	protected abstract T compute();
+	
+	// Returns the value for the specified version of the inner object, computing it if not yet computed for that version
+	public T get(int version) {
+		Computed<T> computed = this.computed;
+		if(computed == null || computed.version != version) {
+			computed = new Computed<>(version, this.compute());
+			this.computed = computed;
+		}
+		return computed.value;
+	}
+	
+	private static class Computed<T> {
+		private final int version;
+		private final T value;
+		
+		private Computed(int version, T value) {
+			this.version = version;
+			this.value = value;
+		}
+	}
+}
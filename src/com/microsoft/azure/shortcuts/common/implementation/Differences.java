@@ -0,0 +1,126 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Collects the differences between the actual and the desired state of a resource as readable descriptions
+public class Differences {
+	private static final String ABSENT = "absent";
+	private final List<String> differences = new ArrayList<>();
+	
+	// Compares single values exactly
+	public Differences compare(String field, Object actual, Object desired) {
+		if(!areEqual(actual, desired)) {
+			this.add(field, actual, desired);
+		}
+		return this;
+	}
+	
+	// Compares text values ignoring case, for the values Azure treats case-insensitively and does not always return as 
+	// specified, such as names, resource IDs, regions and enumerated settings
+	public Differences compareIgnoreCase(String field, String actual, String desired) {
+		if(actual == null ? desired != null : !actual.equalsIgnoreCase(desired)) {
+			this.add(field, actual, desired);
+		}
+		return this;
+	}
+	
+	// Compares maps entry by entry, matching the keys (e.g. tag names) ignoring case and comparing the values exactly
+	public Differences compare(String field, Map<String, String> actual, Map<String, String> desired) {
+		TreeMap<String, String> actualEntries = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		if(actual != null) {
+			actualEntries.putAll(actual);
+		}
+		
+		TreeMap<String, String> desiredEntries = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		if(desired != null) {
+			desiredEntries.putAll(desired);
+		}
+		
+		for(Map.Entry<String, String> entry : desiredEntries.entrySet()) {
+			if(!actualEntries.containsKey(entry.getKey())) {
+				this.add(field + "." + entry.getKey(), null, entry.getValue());
+			} else {
+				this.compare(field + "." + entry.getKey(), actualEntries.get(entry.getKey()), entry.getValue());
+			}
+		}
+		
+		for(Map.Entry<String, String> entry : actualEntries.entrySet()) {
+			if(!desiredEntries.containsKey(entry.getKey())) {
+				this.add(field + "." + entry.getKey(), entry.getValue(), null);
+			}
+		}
+		return this;
+	}
+	
+	// Compares collections of text values as sets
+	public Differences compare(String field, Collection<String> actual, Collection<String> desired) {
+		TreeSet<String> actualValues = new TreeSet<>();
+		if(actual != null) {
+			actualValues.addAll(actual);
+		}
+		
+		TreeSet<String> desiredValues = new TreeSet<>();
+		if(desired != null) {
+			desiredValues.addAll(desired);
+		}
+		
+		if(!actualValues.equals(desiredValues)) {
+			this.add(field, actualValues, desiredValues);
+		}
+		return this;
+	}
+	
+	// Records a difference unconditionally; a null value means absent
+	public Differences add(String field, Object actual, Object desired) {
+		this.differences.add(String.format("%s: %s -> %s", field, describe(actual), describe(desired)));
+		return this;
+	}
+	
+	public boolean isEmpty() {
+		return this.differences.isEmpty();
+	}
+	
+	public List<String> toList() {
+		return Collections.unmodifiableList(new ArrayList<>(this.differences));
+	}
+	
+	
+	private static boolean areEqual(Object actual, Object desired) {
+		return (actual == null) ? desired == null : actual.equals(desired);
+	}
+	
+	private static String describe(Object value) {
+		if(value == null) {
+			return ABSENT;
+		} else if(value instanceof String) {
+			return "'" + value + "'";
+		} else {
+			return value.toString();
+		}
+	}
+}
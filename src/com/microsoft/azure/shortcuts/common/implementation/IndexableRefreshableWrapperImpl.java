@@ -19,20 +19,70 @@
 */
 package com.microsoft.azure.shortcuts.common.implementation;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The inner object is replaced as a whole on refresh and published atomically, so that readers on other threads see either 
+// the previous or the new inner object, never a partially updated one
 public abstract class IndexableRefreshableWrapperImpl<WRAPPER, INNER> 
 	extends IndexableRefreshableImpl<WRAPPER> {
 
-	private INNER innerObject; 
+	private final AtomicReference<INNER> innerObject; 
+	private final AtomicInteger version = new AtomicInteger();
+	private volatile boolean isSnapshot = false;
+	
 	protected IndexableRefreshableWrapperImpl(String name, INNER innerObject) {
 		super(name);
-		this.innerObject = innerObject;
+		this.innerObject = new AtomicReference<>(innerObject);
 	}
 	
+	// Returns the inner object, or a new deep copy of it for a snapshot, so that a snapshot cannot be changed through it
 	public INNER inner() {
-		return this.innerObject;
+		INNER inner = this.innerObject.get();
+		return (this.isSnapshot) ? this.copyInner(inner) : inner;
+	}
+	
+	// Returns the inner object itself, for the wrapper to read without copying it
+	protected INNER innerObject() {
+		return this.innerObject.get();
+	}
+	
+	// Returns a deep copy of the inner object, which wrappers that support snapshots must provide
+	protected INNER copyInner(INNER inner) {
+		throw new UnsupportedOperationException("Snapshots are not supported by this object");
 	}
 	
 	protected void setInner(INNER inner) {
-		this.innerObject = inner;
+		this.ensureNotSnapshot();
+		this.innerObject.set(inner);
+		this.version.incrementAndGet();
+	}
+	
+	// Invalidates the views derived from the inner object, after it is changed in place
+	public void invalidate() {
+		this.version.incrementAndGet();
+	}
+	
+	// Returns a number identifying the current state of the inner object, for use with derived views
+	protected int version() {
+		return this.version.get();
+	}
+	
+	// Determines whether this is a snapshot, which cannot be refreshed
+	public boolean isSnapshot() {
+		return this.isSnapshot;
+	}
+	
+	// Fails if this is a snapshot, for use by the setters and anything else that changes the wrapper or its inner object
+	protected void ensureNotSnapshot() {
+		if(this.isSnapshot) {
+			throw new UnsupportedOperationException("Snapshots cannot be changed; refresh the object the snapshot was taken from and take a new snapshot instead");
+		}
+	}
+	
+	// Marks this as a snapshot, before it is shared, recomputing any derived views over the snapshot
+	protected void freeze() {
+		this.isSnapshot = true;
+		this.version.incrementAndGet();
 	}
 }
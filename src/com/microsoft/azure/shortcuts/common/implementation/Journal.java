@@ -0,0 +1,155 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// An append-only local log of provisioning steps, synced to disk with every record so that an interrupted 
+// provisioning run can resume from the first incomplete step. Each record is a line of tab-separated fields:
+// the state of the step (planned or completed), the scope (e.g. the key of the resource being provisioned), 
+// the name of the step, and the ID of the resource produced by a completed step. Each open() must be matched by a close()
+public class Journal implements Closeable {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String PLANNED = "planned";
+	private static final String COMPLETED = "completed";
+	private static final Map<Path, Journal> journals = new HashMap<>();
+	
+	private final Path path;
+	private final FileChannel channel;
+	private final Map<String, String> completed = new HashMap<>();
+	
+	// The number of open() calls not yet matched by close(), guarded by the journals map
+	private int references;
+	
+	private Journal(Path path) throws IOException {
+		this.path = path;
+		
+		// Replay the existing records
+		long length = 0;
+		if(Files.exists(path)) {
+			String text = new String(Files.readAllBytes(path), UTF8);
+			int end = text.lastIndexOf('\n');
+			if(end >= 0) {
+				for(String line : text.substring(0, end).split("\n")) {
+					String[] fields = line.split("\t", -1);
+					if(fields.length == 4 && COMPLETED.equals(fields[0])) {
+						this.completed.put(key(fields[1], fields[2]), fields[3]);
+					}
+				}
+				length = text.substring(0, end + 1).getBytes(UTF8).length;
+			}
+		}
+		
+		// Drop a torn last line left by a crash, so that new records start on a line of their own
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.channel.truncate(length);
+		this.channel.position(length);
+	}
+	
+	
+	// Opens the journal at the specified path, sharing one instance per file among the callers that have it open
+	public static Journal open(String path) throws IOException {
+		Path key = Paths.get(path).toAbsolutePath().normalize();
+		synchronized(journals) {
+			Journal journal = journals.get(key);
+			if(journal == null) {
+				journal = new Journal(key);
+				journals.put(key, journal);
+			}
+			journal.references++;
+			return journal;
+		}
+	}
+	
+	
+	// Releases the journal, closing the file once no caller has it open anymore
+	@Override
+	public void close() throws IOException {
+		synchronized(journals) {
+			if(this.references == 0 || --this.references > 0) {
+				return;
+			}
+			journals.remove(this.path);
+		}
+		
+		synchronized(this) {
+			this.channel.close();
+		}
+	}
+	
+	
+	// Returns the ID of the resource produced by the step if it completed in this or an earlier run, else null
+	public synchronized String completed(String scope, String step) {
+		return this.completed.get(key(scope, step));
+	}
+	
+	// Records the steps about to be run, in one synced write
+	public synchronized void plan(String scope, List<String> steps) throws IOException {
+		StringBuilder records = new StringBuilder();
+		for(String step : steps) {
+			if(!this.completed.containsKey(key(scope, step))) {
+				records.append(record(PLANNED, scope, step, ""));
+			}
+		}
+		this.append(records.toString());
+	}
+	
+	// Records the completion of a step and the ID of the resource it produced
+	public synchronized void complete(String scope, String step, String resourceId) throws IOException {
+		if(resourceId == null) {
+			resourceId = "";
+		}
+		
+		this.append(record(COMPLETED, scope, step, resourceId));
+		this.completed.put(key(scope, step), resourceId);
+	}
+	
+	
+	private void append(String records) throws IOException {
+		if(records.isEmpty()) {
+			return;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(UTF8));
+		while(buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+		this.channel.force(false);
+	}
+	
+	private static String record(String state, String scope, String step, String resourceId) {
+		return String.format("%s\t%s\t%s\t%s\n", state, scope, step, resourceId);
+	}
+	
+	private static String key(String scope, String step) {
+		return scope + "\t" + step;
+	}
+}
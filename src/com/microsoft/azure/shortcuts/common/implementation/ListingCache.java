@@ -0,0 +1,97 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Caches complete listings of native entities for a limited time, indexed by scope (e.g. resource group) and case-insensitive name
+public class ListingCache<T> {
+	public static final long DEFAULT_TTL = 30000;
+	
+	private final ConcurrentHashMap<String, Listing<T>> listings = new ConcurrentHashMap<>();
+	private final long ttl;
+	
+	public ListingCache(long ttl) {
+		this.ttl = ttl;
+	}
+	
+	public ListingCache() {
+		this(DEFAULT_TTL);
+	}
+	
+	
+	// Returns the cached listing for the scope, or null if none or expired
+	public Map<String, T> get(String scope) {
+		Listing<T> listing = this.listings.get(key(scope));
+		if(listing == null) {
+			return null;
+		} else if(listing.expiry < System.currentTimeMillis()) {
+			this.listings.remove(key(scope), listing);
+			return null;
+		} else {
+			return Collections.unmodifiableMap(listing.entities);
+		}
+	}
+	
+	// Caches a complete listing of the scope, with the entities indexed by name
+	public void put(String scope, Map<String, T> entities) {
+		Listing<T> listing = new Listing<>(System.currentTimeMillis() + this.ttl);
+		for(Map.Entry<String, T> entry : entities.entrySet()) {
+			listing.entities.put(entry.getKey().toLowerCase(), entry.getValue());
+		}
+		this.listings.put(key(scope), listing);
+	}
+	
+	// Writes a single entity through to the cached listing of its scope, if any
+	public void put(String scope, String name, T entity) {
+		Listing<T> listing = this.listings.get(key(scope));
+		if(listing != null && entity != null) {
+			listing.entities.put(name.toLowerCase(), entity);
+		}
+	}
+	
+	// Removes a single entity from the cached listing of its scope, if any
+	public void remove(String scope, String name) {
+		Listing<T> listing = this.listings.get(key(scope));
+		if(listing != null) {
+			listing.entities.remove(name.toLowerCase());
+		}
+	}
+	
+	public void clear() {
+		this.listings.clear();
+	}
+	
+	
+	private static String key(String scope) {
+		return (scope == null) ? "" : scope.toLowerCase();
+	}
+	
+	private static class Listing<T> {
+		private final long expiry;
+		private final ConcurrentHashMap<String, T> entities = new ConcurrentHashMap<>();
+		
+		private Listing(long expiry) {
+			this.expiry = expiry;
+		}
+	}
+}
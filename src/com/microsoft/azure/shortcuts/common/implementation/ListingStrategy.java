@@ -0,0 +1,76 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+// Chooses between listing a whole subscription in one serial, paged request and listing each resource group concurrently,
+// based on the observed duration of each strategy. Sharding is only tried once a serial listing has been slow, and the
+// strategy not currently preferred is measured again periodically, so that the choice follows the subscription as it changes
+public class ListingStrategy {
+	public enum Strategy { SERIAL, SHARDED }
+	
+	// A serial listing slower than this is worth trying to shard
+	static final long SHARDING_THRESHOLD_MILLIS = 2000;
+	
+	// Sharding does not pay off for fewer groups than this
+	static final int MIN_GROUPS = 4;
+	
+	// Every so many listings, the other strategy is measured again
+	static final int PROBE_INTERVAL = 16;
+	
+	private long serialMillis = -1;
+	private long shardedMillis = -1;
+	private int groupCount = -1;
+	private int listings = 0;
+	
+	// Returns the strategy to use for the next listing
+	public synchronized Strategy choose() {
+		this.listings++;
+		if(this.serialMillis < 0 || (this.groupCount >= 0 && this.groupCount < MIN_GROUPS)) {
+			return Strategy.SERIAL;
+		} else if(this.shardedMillis < 0) {
+			return (this.serialMillis > SHARDING_THRESHOLD_MILLIS) ? Strategy.SHARDED : Strategy.SERIAL;
+		}
+		
+		Strategy preferred = (this.shardedMillis < this.serialMillis) ? Strategy.SHARDED : Strategy.SERIAL;
+		if(this.listings % PROBE_INTERVAL == 0) {
+			return (preferred == Strategy.SERIAL) ? Strategy.SHARDED : Strategy.SERIAL;
+		}
+		return preferred;
+	}
+	
+	// Records the duration of a completed listing, averaging it with the earlier ones of the same strategy
+	public synchronized void record(Strategy strategy, long millis) {
+		if(strategy == Strategy.SERIAL) {
+			this.serialMillis = average(this.serialMillis, millis);
+		} else {
+			this.shardedMillis = average(this.shardedMillis, millis);
+		}
+	}
+	
+	// Records the number of resource groups in the subscription
+	public synchronized void recordGroupCount(int groupCount) {
+		this.groupCount = groupCount;
+	}
+	
+	// Weighs the latest measurement at one half
+	private static long average(long average, long millis) {
+		return (average < 0) ? millis : (average + millis) / 2;
+	}
+}
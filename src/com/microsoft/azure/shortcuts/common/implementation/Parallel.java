@@ -0,0 +1,146 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+// Helpers for running blocking Azure calls on a shared work-stealing pool
+public class Parallel {
+	
+	// Runs a blocking call, letting the fork-join pool compensate for the blocked worker if invoked from one
+	public static <T> T call(final Callable<T> call) throws Exception {
+		if(!ForkJoinTask.inForkJoinPool()) {
+			return call.call();
+		}
+		
+		BlockingCall<T> blocker = new BlockingCall<>(call);
+		ForkJoinPool.managedBlock(blocker);
+		return blocker.result();
+	}
+	
+	
+	// Runs the calls on the pool with at most the specified number in flight (0 for no limit), returning their results in order,
+	// or throwing the first failure once all the calls have completed. The permits are taken on the submitting thread, so that 
+	// at most that many calls are queued or blocked in the pool at a time and the pool adds no workers for calls still waiting
+	public static <T> List<T> invokeAll(ForkJoinPool pool, List<? extends Callable<T>> calls, int maxConcurrency) throws Exception {
+		final Semaphore permits = (maxConcurrency > 0) ? new Semaphore(maxConcurrency) : null;
+		List<Future<T>> futures = new ArrayList<>(calls.size());
+		for(final Callable<T> call : calls) {
+			if(permits != null) {
+				acquire(permits);
+			}
+			
+			try {
+				futures.add(pool.submit(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						try {
+							return Parallel.call(call);
+						} finally {
+							if(permits != null) {
+								permits.release();
+							}
+						}
+					}
+				}));
+			} catch(RuntimeException e) {
+				if(permits != null) {
+					permits.release();
+				}
+				throw e;
+			}
+		}
+		
+		List<T> results = new ArrayList<>(futures.size());
+		Exception failure = null;
+		for(Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch(ExecutionException e) {
+				results.add(null);
+				if(failure == null) {
+					failure = (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+				}
+			}
+		}
+		
+		if(failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+	
+	
+	// Waits for a permit, as a blocking call if the submitting thread is itself a worker of a pool
+	private static void acquire(final Semaphore permits) throws Exception {
+		call(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				permits.acquire();
+				return null;
+			}
+		});
+	}
+	
+	
+	// Adapts a blocking call to the fork-join managed blocking protocol
+	private static class BlockingCall<T> implements ForkJoinPool.ManagedBlocker {
+		private final Callable<T> call;
+		private boolean isDone;
+		private T result;
+		private Exception failure;
+		
+		private BlockingCall(Callable<T> call) {
+			this.call = call;
+		}
+		
+		@Override
+		public boolean block() throws InterruptedException {
+			try {
+				this.result = this.call.call();
+			} catch(InterruptedException e) {
+				throw e;
+			} catch(Exception e) {
+				this.failure = e;
+			}
+			this.isDone = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return this.isDone;
+		}
+		
+		private T result() throws Exception {
+			if(this.failure != null) {
+				throw this.failure;
+			}
+			return this.result;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.windowsazure.core.ResourceBaseExtended;
+
+// Canonicalizes strings that repeat across many entities (regions, types, group names, tag names and values), so that 
+// equal values share one instance
+public class StringDictionary {
+	private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+	
+	// Returns the canonical instance of the string
+	public String canonical(String value) {
+		if(value == null) {
+			return null;
+		}
+		
+		String canonical = this.strings.putIfAbsent(value, value);
+		return (canonical != null) ? canonical : value;
+	}
+	
+	// Returns a copy of the map with canonical keys and values
+	public HashMap<String, String> canonical(Map<String, String> values) {
+		if(values == null) {
+			return null;
+		}
+		
+		HashMap<String, String> canonical = new HashMap<>(values.size() * 4 / 3 + 1);
+		for(Map.Entry<String, String> entry : values.entrySet()) {
+			canonical.put(this.canonical(entry.getKey()), this.canonical(entry.getValue()));
+		}
+		return canonical;
+	}
+	
+	// Replaces the location, type and tags of an entity with their canonical instances
+	public <T extends ResourceBaseExtended> T canonicalize(T entity) {
+		if(entity != null) {
+			entity.setLocation(this.canonical(entity.getLocation()));
+			entity.setType(this.canonical(entity.getType()));
+			entity.setTags(this.canonical(entity.getTags()));
+		}
+		return entity;
+	}
+	
+	public int size() {
+		return this.strings.size();
+	}
+}
@@ -0,0 +1,148 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// A work queue of keys which deduplicates pending keys, never hands out the same key to two workers at once, 
+// and requeues failed keys with exponential backoff
+public class WorkQueue {
+	private final LinkedHashSet<String> ready = new LinkedHashSet<>();
+	private final Set<String> processing = new HashSet<>();
+	private final Set<String> dirty = new HashSet<>();
+	private final PriorityQueue<Delayed> delayed = new PriorityQueue<>();
+	private final Map<String, Integer> failures = new HashMap<>();
+	private final long initialBackoff;
+	private final long maxBackoff;
+	private boolean isShutDown = false;
+	
+	public WorkQueue(long initialBackoff, long maxBackoff) {
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+	
+	
+	// Adds a key unless already pending; a key being processed is requeued once done
+	public synchronized void add(String key) {
+		if(this.isShutDown) {
+			return;
+		} else if(this.processing.contains(key)) {
+			this.dirty.add(key);
+		} else if(this.ready.add(key)) {
+			this.notifyAll();
+		}
+	}
+	
+	// Adds a key after the specified delay in milliseconds
+	public synchronized void addAfter(String key, long delay) {
+		if(delay <= 0) {
+			this.add(key);
+		} else if(!this.isShutDown) {
+			this.delayed.add(new Delayed(key, System.currentTimeMillis() + delay));
+			this.notifyAll();
+		}
+	}
+	
+	// Adds a key after a delay doubling with each consecutive failure of that key
+	public synchronized long addRateLimited(String key) {
+		Integer count = this.failures.get(key);
+		count = (count == null) ? 0 : count;
+		this.failures.put(key, count + 1);
+		long backoff = this.initialBackoff << Math.min(count, 30);
+		if(backoff <= 0 || backoff > this.maxBackoff) {
+			backoff = this.maxBackoff;
+		}
+		
+		this.addAfter(key, backoff);
+		return backoff;
+	}
+	
+	// Resets the backoff of a key after it has been processed successfully
+	public synchronized void forget(String key) {
+		this.failures.remove(key);
+	}
+	
+	// Waits for the next ready key and marks it as being processed, or returns null once shut down
+	public synchronized String take() throws InterruptedException {
+		while(!this.isShutDown) {
+			// Move the delayed keys whose time has come
+			long now = System.currentTimeMillis();
+			while(!this.delayed.isEmpty() && this.delayed.peek().readyAt <= now) {
+				this.add(this.delayed.poll().key);
+			}
+			
+			if(!this.ready.isEmpty()) {
+				String key = this.ready.iterator().next();
+				this.ready.remove(key);
+				this.processing.add(key);
+				return key;
+			} else if(this.delayed.isEmpty()) {
+				this.wait();
+			} else {
+				this.wait(Math.max(1, this.delayed.peek().readyAt - now));
+			}
+		}
+		
+		return null;
+	}
+	
+	// Marks a key as processed, requeuing it if it was added again in the meantime
+	public synchronized void done(String key) {
+		this.processing.remove(key);
+		if(this.dirty.remove(key)) {
+			this.add(key);
+		}
+	}
+	
+	// Stops handing out keys, releasing the waiting workers
+	public synchronized void shutDown() {
+		this.isShutDown = true;
+		this.ready.clear();
+		this.delayed.clear();
+		this.dirty.clear();
+		this.notifyAll();
+	}
+	
+	// Returns the number of keys waiting to be processed, including the delayed ones
+	public synchronized int size() {
+		return this.ready.size() + this.delayed.size();
+	}
+	
+	
+	private static class Delayed implements Comparable<Delayed> {
+		private final String key;
+		private final long readyAt;
+		
+		private Delayed(String key, long readyAt) {
+			this.key = key;
+			this.readyAt = readyAt;
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(this.readyAt, other.readyAt);
+		}
+	}
+}
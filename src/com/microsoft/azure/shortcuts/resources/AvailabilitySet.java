@@ -24,12 +24,14 @@ import java.util.List;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 
 public interface AvailabilitySet extends 
 	GroupResourceBase,
 	Refreshable<AvailabilitySet>,
+	Snapshottable<AvailabilitySet>,
 	Wrapper<com.microsoft.azure.management.compute.models.AvailabilitySet>,
 	Deletable {
 	
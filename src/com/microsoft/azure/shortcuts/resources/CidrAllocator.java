@@ -0,0 +1,68 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.List;
+
+/**
+ * An allocator of non-overlapping IPv4 address blocks (CIDR prefixes) from a set of pools, e.g. the private address ranges
+ * for virtual networks, or the address spaces of a virtual network for its subnets. Allocations are atomic within the process
+ */
+public interface CidrAllocator {
+	/**
+	 * @return The address pools the blocks are allocated from
+	 */
+	List<String> pools();
+	
+	/**
+	 * Allocates the free block of the requested size that fits most tightly among the free space of the pools, and reserves it
+	 * @param prefixLength The prefix length of the block, e.g. 24 for a block of 256 addresses
+	 * @return The allocated block, e.g. 10.1.2.0/24, or null if no free block of that size is left
+	 */
+	String allocate(int prefixLength);
+	
+	/**
+	 * Marks a block as in use, e.g. one allocated elsewhere
+	 * @param cidr The block, e.g. 10.1.2.0/24
+	 * @return This allocator
+	 */
+	CidrAllocator reserve(String cidr);
+	
+	/**
+	 * Returns a block to the free space of the pools
+	 * @param cidr A block previously allocated or reserved
+	 * @return This allocator
+	 */
+	CidrAllocator release(String cidr);
+	
+	/**
+	 * @param cidr A block
+	 * @return True if the block lies within the pools and does not overlap any block in use
+	 */
+	boolean isFree(String cidr);
+	
+	/**
+	 * Lists the virtual networks of the subscription and reserves their address spaces and subnets afresh, if this allocator 
+	 * tracks the address spaces of the subscription, keeping the blocks allocated or reserved locally that are not in Azure yet
+	 * @return The refreshed allocator
+	 * @throws Exception
+	 */
+	CidrAllocator refresh() throws Exception;
+}
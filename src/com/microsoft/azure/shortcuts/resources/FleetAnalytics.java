@@ -0,0 +1,89 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.Map;
+
+/**
+ * A columnar in-memory snapshot of the virtual machines in a subscription joined with their sizes, 
+ * for aggregating capacity by region, resource group, size and tag
+ */
+public interface FleetAnalytics {
+	/**
+	 * The dimensions the virtual machines can be grouped by
+	 */
+	public enum Dimension {
+		REGION,
+		GROUP,
+		SIZE,
+		TAG
+	}
+	
+	/**
+	 * @return The number of virtual machines in the snapshot
+	 */
+	int size();
+	
+	/**
+	 * @return A new query over all the virtual machines in the snapshot
+	 */
+	Query query();
+	
+	
+	/**
+	 * A filter over the virtual machines, which all the conditions must match, and its aggregations
+	 */
+	public interface Query {
+		Query whereRegion(String region);
+		Query whereRegion(Region region);
+		Query whereGroup(String groupName);
+		Query whereSize(String sizeName);
+		Query whereSize(Size.Type size);
+		
+		/**
+		 * @param key A tag name
+		 * @return The query further restricted to the virtual machines having the specified tag
+		 */
+		Query whereTag(String key);
+		
+		/**
+		 * @return The totals of the matching virtual machines
+		 */
+		Totals totals();
+		
+		/**
+		 * Groups the matching virtual machines by a dimension. For tags, each virtual machine counts toward every tag it has.
+		 * @param dimension The dimension to group by
+		 * @return The totals of each value of the dimension, in lowercase
+		 */
+		Map<String, Totals> groupBy(Dimension dimension);
+	}
+	
+	
+	/**
+	 * Aggregated capacity of a set of virtual machines
+	 */
+	public interface Totals {
+		long count();
+		long cores();
+		long memoryInMB();
+		long dataDisks();
+	}
+}
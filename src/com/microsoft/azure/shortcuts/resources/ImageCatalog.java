@@ -0,0 +1,82 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.List;
+
+/**
+ * A local index of the virtual machine images available in a set of regions, organized as a tree of publishers, offers, 
+ * SKUs and versions with case-insensitive names. Each listing is kept until it is older than the maximum age of the catalog,
+ * and only the listings that are missing or too old are requested again from Azure
+ */
+public interface ImageCatalog {
+	/**
+	 * @param region A region
+	 * @return The names of the image publishers in the region, in alphabetical order
+	 * @throws Exception
+	 */
+	List<String> publishers(Region region) throws Exception;
+	
+	/**
+	 * @param region A region
+	 * @param publisher The name of a publisher, in any letter case
+	 * @return The names of the offers of the publisher in the region, in alphabetical order, or none if the publisher does not exist
+	 * @throws Exception
+	 */
+	List<String> offers(Region region, String publisher) throws Exception;
+	
+	/**
+	 * @param region A region
+	 * @param publisher The name of a publisher, in any letter case
+	 * @param offer The name of an offer of the publisher, in any letter case
+	 * @return The names of the SKUs of the offer in the region, in alphabetical order, or none if the offer does not exist
+	 * @throws Exception
+	 */
+	List<String> skus(Region region, String publisher, String offer) throws Exception;
+	
+	/**
+	 * @param region A region
+	 * @param publisher The name of a publisher, in any letter case
+	 * @param offer The name of an offer of the publisher, in any letter case
+	 * @param sku The name of a SKU of the offer, in any letter case
+	 * @return The versions of the image in the region, from the oldest to the latest, or none if the SKU does not exist
+	 * @throws Exception
+	 */
+	List<String> versions(Region region, String publisher, String offer, String sku) throws Exception;
+	
+	/**
+	 * @param region A region
+	 * @param publisher The name of a publisher, in any letter case
+	 * @param offer The name of an offer of the publisher, in any letter case
+	 * @param sku The name of a SKU of the offer, in any letter case
+	 * @return The latest version of the image in the region, or null if the SKU does not exist
+	 * @throws Exception
+	 */
+	String latestVersion(Region region, String publisher, String offer, String sku) throws Exception;
+	
+	/**
+	 * Lists the publishers, offers, SKUs and versions of the specified regions that are missing from the catalog or too old,
+	 * level by level with a bounded number of concurrent requests, then saves the catalog to its snapshot file, if any
+	 * @param regions The regions to crawl
+	 * @return The updated catalog
+	 * @throws Exception
+	 */
+	ImageCatalog crawl(Region...regions) throws Exception;
+}
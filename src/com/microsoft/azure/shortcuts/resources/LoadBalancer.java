@@ -19,9 +19,13 @@
 */
 package com.microsoft.azure.shortcuts.resources;
 
+import java.util.List;
+
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
+import com.microsoft.azure.shortcuts.common.Updatable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.DefinitionCombos;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
@@ -29,9 +33,37 @@ import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 public interface LoadBalancer extends 
 	GroupResourceBase,
 	Refreshable<LoadBalancer>,
+	Snapshottable<LoadBalancer>,
 	Wrapper<com.microsoft.azure.management.network.models.LoadBalancer>,
 	Deletable {
 	
+	/**
+	 * @return The names of the backend address pools
+	 */
+	List<String> backendPools();
+	
+	/**
+	 * @param poolName The name of a backend address pool
+	 * @return The resource IDs of the network interfaces in the backend address pool, or null if there is no such pool
+	 */
+	List<String> backendNetworkInterfaces(String poolName);
+	
+	/**
+	 * @return The names of the health probes
+	 */
+	List<String> probes();
+	
+	/**
+	 * @return The names of the load balancing rules
+	 */
+	List<String> loadBalancingRules();
+	
+	/**
+	 * @return A modification request for the backend pools, probes and rules of this load balancer
+	 */
+	UpdateBlank update();
+	
+	
 	/**
 	 * A new blank load balancer definition
 	 */
@@ -61,6 +93,111 @@ public interface LoadBalancer extends
 	
 	public interface DefinitionCreatable extends 
 		Creatable<LoadBalancer>,
+		DefinitionWithBackendPool<DefinitionCreatable>,
+		DefinitionWithProbe<DefinitionCreatable>,
+		DefinitionWithLoadBalancingRule<DefinitionCreatable>,
 		GroupResourceBase.DefinitionWithTags<DefinitionCreatable> {
 	}
+	
+	/**
+	 * A load balancer definition or update allowing to specify backend address pools and their members
+	 */
+	public interface DefinitionWithBackendPool<T> {
+		/**
+		 * @param name The name of the backend address pool
+		 * @return The next stage of the definition or update
+		 */
+		T withBackendPool(String name);
+		
+		/**
+		 * Adds network interfaces to a backend address pool, adding the pool as well if needed. The network interfaces are 
+		 * updated in parallel once the load balancer is provisioned, each one only once for all its pools
+		 * @param poolName The name of the backend address pool
+		 * @param networkInterfaceIds The resource IDs of the network interfaces
+		 * @return The next stage of the definition or update
+		 */
+		T withBackendNetworkInterfaces(String poolName, String... networkInterfaceIds);
+	}
+	
+	/**
+	 * A load balancer definition or update allowing to specify health probes
+	 */
+	public interface DefinitionWithProbe<T> {
+		/**
+		 * @param name The name of the probe
+		 * @param port The port to open a TCP connection to
+		 * @return The next stage of the definition or update
+		 */
+		T withTcpProbe(String name, int port);
+		
+		/**
+		 * @param name The name of the probe
+		 * @param port The port to send an HTTP request to
+		 * @param requestPath The path to request, expecting an HTTP 200 response
+		 * @return The next stage of the definition or update
+		 */
+		T withHttpProbe(String name, int port, String requestPath);
+	}
+	
+	/**
+	 * A load balancer definition or update allowing to specify load balancing rules
+	 */
+	public interface DefinitionWithLoadBalancingRule<T> {
+		/**
+		 * @param name The name of the rule
+		 * @param protocol The transport protocol, TCP or UDP
+		 * @param frontendPort The port on the frontend IP address
+		 * @param backendPort The port on the members of the backend pool
+		 * @param backendPoolName The name of the backend address pool
+		 * @param probeName The name of the probe determining the healthy members of the pool, or null for none
+		 * @return The next stage of the definition or update
+		 */
+		T withLoadBalancingRule(String name, Protocol protocol, int frontendPort, int backendPort, String backendPoolName, String probeName);
+	}
+	
+	
+	/**
+	 * An existing load balancer modification request ready to be applied in the cloud
+	 */
+	public interface Update extends 
+		UpdateBlank, 
+		Updatable<Update> {
+	}
+	
+	
+	/**
+	 * A blank modification request for an existing load balancer
+	 */
+	public interface UpdateBlank extends 
+		Deletable,
+		DefinitionWithBackendPool<Update>,
+		DefinitionWithProbe<Update>,
+		DefinitionWithLoadBalancingRule<Update> {
+		
+		/**
+		 * Removes a backend address pool, first removing its members from it
+		 * @param name The name of the backend address pool
+		 * @return The modification request
+		 */
+		Update withoutBackendPool(String name);
+		
+		/**
+		 * @param poolName The name of the backend address pool
+		 * @param networkInterfaceIds The resource IDs of the network interfaces to remove from the pool
+		 * @return The modification request
+		 */
+		Update withoutBackendNetworkInterfaces(String poolName, String... networkInterfaceIds);
+		
+		/**
+		 * @param name The name of the probe to remove
+		 * @return The modification request
+		 */
+		Update withoutProbe(String name);
+		
+		/**
+		 * @param name The name of the load balancing rule to remove
+		 * @return The modification request
+		 */
+		Update withoutLoadBalancingRule(String name);
+	}
 }
@@ -25,13 +25,16 @@ import java.util.Map;
 import com.microsoft.azure.management.network.models.VirtualNetwork;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.Ensurable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 
 public interface Network extends 
 	GroupResourceBase,
 	Refreshable<Network>,
+	Snapshottable<Network>,
 	Wrapper<VirtualNetwork>,
 	Deletable {
 	
@@ -41,6 +44,40 @@ public interface Network extends
 	Map<String, Subnet> subnets();
 	Subnet subnets(String id);
 	
+	/**
+	 * Adds a subnet to the virtual network with a request for the subnet alone, leaving the rest of the network untouched.
+	 * Changes to the subnets of the same network made through this subscription are applied one at a time, since Azure 
+	 * does not accept concurrent changes to a network; changes to different networks proceed in parallel
+	 * @param name The name of the new subnet
+	 * @param cidr The address prefix of the new subnet
+	 * @return The new subnet
+	 * @throws Exception
+	 */
+	Subnet createSubnet(String name, String cidr) throws Exception;
+	
+	/**
+	 * Adds a subnet with the first free block of the requested size within the network's address spaces, with a request 
+	 * for the subnet alone
+	 * @param name The name of the new subnet
+	 * @param prefixLength The prefix length of the new subnet, e.g. 24
+	 * @return The new subnet
+	 * @throws Exception
+	 */
+	Subnet createFreeSubnet(String name, int prefixLength) throws Exception;
+	
+	/**
+	 * @param name The name of an existing subnet
+	 * @return An update of the subnet, applied with a request for the subnet alone
+	 */
+	Subnet.UpdateBlank updateSubnet(String name);
+	
+	/**
+	 * Deletes a subnet with a request for the subnet alone
+	 * @param name The name of the subnet
+	 * @throws Exception
+	 */
+	void deleteSubnet(String name) throws Exception;
+	
 	public interface Definition extends 
 		DefinitionBlank,
 		DefinitionWithGroup,
@@ -66,6 +103,15 @@ public interface Network extends
 	public interface DefinitionWithSubnet {
 		DefinitionCreatableWithSubnet withSubnet(String name, String cidr);
 		DefinitionCreatableWithSubnet withSubnets(Map<String, String> nameCidrPairs);
+		
+		/**
+		 * Adds a subnet with the first free block of the requested size within the network's address spaces, carved when 
+		 * the network is created
+		 * @param name The name of the subnet
+		 * @param prefixLength The prefix length of the subnet, e.g. 24
+		 * @return The next stage of the network definition
+		 */
+		DefinitionCreatableWithSubnet withFreeSubnet(String name, int prefixLength);
 		Subnet.Definition<DefinitionCreatableWithSubnet> defineSubnet(String name);
 	}
 
@@ -74,6 +120,14 @@ public interface Network extends
 	 */
 	public interface DefinitionWithAddressSpace {
 		DefinitionCreatableWithSubnet withAddressSpace(String cidr);
+		
+		/**
+		 * Adds an address space of the requested size not overlapping any other virtual network in the subscription, 
+		 * allocated from the subscription's address space allocator when the network is created
+		 * @param prefixLength The prefix length of the address space, e.g. 16
+		 * @return The next stage of the network definition
+		 */
+		DefinitionCreatableWithSubnet withFreeAddressSpace(int prefixLength);
 	}
 	
 	/**
@@ -88,6 +142,7 @@ public interface Network extends
 	 */
 	public interface DefinitionCreatable extends 
 		Creatable<Network>,
+		Ensurable<Network>,
 		DefinitionWithAddressSpace,
 		DefinitionWithDnsServer,
 		GroupResourceBase.DefinitionWithTags<DefinitionCreatable> {
@@ -24,6 +24,7 @@ import java.util.Map;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.DefinitionCombos;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
@@ -31,10 +32,20 @@ import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 public interface NetworkInterface extends 
 	GroupResourceBase,
 	Refreshable<NetworkInterface>,
+	Snapshottable<NetworkInterface>,
 	Wrapper<com.microsoft.azure.management.network.models.NetworkInterface>,
 	Deletable {
 
-	Map<String, PublicIpAddress> publicIpAddresses();
+	Map<String, PublicIpAddress> publicIpAddresses() throws Exception;
+	
+	/**
+	 * Retrieves the network security groups associated with the network interface and with the subnet of its primary IP 
+	 * configuration, and combines their compiled rules as Azure does. The VirtualNetwork address tag stands for the address 
+	 * spaces of the subnet's network
+	 * @return The effective security policy of the network interface
+	 * @throws Exception
+	 */
+	NetworkSecurityPolicy effectiveSecurityPolicy() throws Exception;
 	
 	public interface Definition extends 
 		DefinitionBlank,
@@ -19,18 +19,48 @@
 */
 package com.microsoft.azure.shortcuts.resources;
 
+import java.util.List;
+import java.util.Map;
+
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.Ensurable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
+import com.microsoft.azure.shortcuts.common.Updatable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 
 public interface NetworkSecurityGroup extends 
 	GroupResourceBase,
 	Refreshable<NetworkSecurityGroup>,
+	Snapshottable<NetworkSecurityGroup>,
 	Wrapper<com.microsoft.azure.management.network.models.NetworkSecurityGroup>,
 	Deletable {
 	
+	/**
+	 * @return The custom security rules of the NSG, indexed by name
+	 */
+	Map<String, NetworkSecurityRule> rules();
+	
+	/**
+	 * @return The custom and default security rules of the NSG compiled for evaluating flows locally, with the VirtualNetwork 
+	 * address tag standing for the private address ranges
+	 */
+	NetworkSecurityPolicy policy();
+	
+	/**
+	 * @param addressTags The address prefixes to resolve address tags (e.g. VirtualNetwork) in the rules to, by tag name
+	 * @return The custom and default security rules of the NSG compiled for evaluating flows locally
+	 */
+	NetworkSecurityPolicy policy(Map<String, List<String>> addressTags);
+	
+	/**
+	 * @return A modification request for the rules of this NSG. When applied, the requested rules are compared with the rules 
+	 * currently in Azure and only the rules that differ are sent
+	 */
+	UpdateBlank update();
+	
 	public interface Definition extends
 		DefinitionBlank,
 		DefinitionWithGroup,
@@ -54,7 +84,35 @@ public interface NetworkSecurityGroup extends
 	 */
 	public interface DefinitionCreatable extends 
 		Creatable<NetworkSecurityGroup>,
+		Ensurable<NetworkSecurityGroup>,
 		GroupResourceBase.DefinitionWithTags<DefinitionCreatable> {
 		NetworkSecurityRule.DefinitionBlank<DefinitionCreatable> defineRule(String name);
 	}
+	
+	
+	/**
+	 * An existing NSG modification request ready to be applied in the cloud
+	 */
+	public interface Update extends 
+		UpdateBlank, 
+		Updatable<Update> {
+	}
+	
+	
+	/**
+	 * A blank modification request for an existing NSG
+	 */
+	public interface UpdateBlank extends Deletable {
+		/**
+		 * @param name The name of the rule to add, or of an existing rule to replace
+		 * @return The definition of the rule
+		 */
+		NetworkSecurityRule.DefinitionBlank<Update> defineRule(String name);
+		
+		/**
+		 * @param name The name of an existing rule to remove
+		 * @return The modification request
+		 */
+		Update withoutRule(String name);
+	}
 }
@@ -0,0 +1,65 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityRule.Direction;
+
+/**
+ * The security rules of one or more network security groups, compiled for evaluating IPv4 flows locally. A flow is allowed
+ * if the highest priority rule matching it in its direction allows it, and denied if that rule denies it or no rule matches it
+ */
+public interface NetworkSecurityPolicy {
+	/**
+	 * @param direction The direction of the flow, relative to the resource the policy applies to
+	 * @param protocol The protocol of the flow, TCP or UDP. A flow of any protocol only matches rules applying to any protocol
+	 * @param sourceAddress The source IPv4 address, e.g. 10.1.2.3
+	 * @param sourcePort The source port
+	 * @param destinationAddress The destination IPv4 address
+	 * @param destinationPort The destination port
+	 * @return True if the flow is allowed
+	 */
+	boolean isAllowed(Direction direction, Protocol protocol, String sourceAddress, int sourcePort, String destinationAddress, int destinationPort);
+	
+	/**
+	 * Evaluates a flow with the addresses in their numeric form, e.g. as parsed once by {@link #address(String)}, without allocating
+	 * @return True if the flow is allowed
+	 */
+	boolean isAllowed(Direction direction, Protocol protocol, int sourceAddress, int sourcePort, int destinationAddress, int destinationPort);
+	
+	/**
+	 * @return The name of the rule deciding the flow (the first denying rule across the combined policies, else the last allowing one),
+	 * or null if no rule matches it
+	 */
+	String decidingRule(Direction direction, Protocol protocol, String sourceAddress, int sourcePort, String destinationAddress, int destinationPort);
+	
+	/**
+	 * Combines this policy with another, as Azure combines the policy of a subnet with that of a network interface in it: 
+	 * a flow is allowed only if both allow it. This policy is evaluated first
+	 * @param other The other policy
+	 * @return The combined policy
+	 */
+	NetworkSecurityPolicy and(NetworkSecurityPolicy other);
+	
+	/**
+	 * @param address An IPv4 address in dotted form
+	 * @return The address as a number
+	 */
+	int address(String address);
+}
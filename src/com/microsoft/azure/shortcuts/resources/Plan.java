@@ -0,0 +1,93 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.azure.shortcuts.common.Creatable;
+
+/**
+ * A set of resource definitions to be provisioned together. The dependencies between the definitions are inferred
+ * from their references to existing resources (e.g. withExistingResourceGroup(), withExistingNetwork(), 
+ * withExistingNetworkSecurityGroup(), withExistingAvailabilitySet()) that match other definitions in the same plan, 
+ * and independent definitions are provisioned in parallel
+ */
+public interface Plan {
+	/**
+	 * Adds a resource definition to the plan
+	 * @param definition A creatable resource definition
+	 * @return The updated plan
+	 */
+	Plan withDefinition(Creatable<?> definition);
+	
+	/**
+	 * Adds resource definitions to the plan
+	 * @param definitions Creatable resource definitions
+	 * @return The updated plan
+	 */
+	Plan withDefinitions(Creatable<?>...definitions);
+	
+	/**
+	 * Limits the number of definitions provisioned at the same time across the plan
+	 * @param limit The maximum number of concurrent create requests, or 0 for no limit
+	 * @return The updated plan
+	 */
+	Plan withConcurrencyLimit(int limit);
+	
+	/**
+	 * Limits the number of definitions of the specified resource type provisioned at the same time
+	 * @param resourceType The ARM resource type, e.g. "Microsoft.Compute/virtualMachines"
+	 * @param limit The maximum number of concurrent create requests for that type, or 0 for no limit
+	 * @return The updated plan
+	 */
+	Plan withConcurrencyLimit(String resourceType, int limit);
+	
+	/**
+	 * Computes the provisioning schedule without calling Azure
+	 * @return The expected schedule
+	 * @throws IllegalStateException if the definitions depend on each other in a cycle
+	 */
+	Schedule dryRun();
+	
+	/**
+	 * Provisions all the definitions in dependency order, running independent ones in parallel. Definitions depending
+	 * on a failed definition are skipped.
+	 * @return The created resources, indexed by the keys used in the schedule
+	 * @throws Exception summarizing the failures, if any definition failed or was skipped
+	 */
+	Map<String, Object> execute() throws Exception;
+	
+	
+	/**
+	 * The expected provisioning schedule of a plan, as waves of definitions provisioned in parallel
+	 */
+	public interface Schedule {
+		/**
+		 * @return The keys (type/group/name) of the definitions in each wave, honoring the concurrency limits
+		 */
+		List<List<String>> waves();
+		
+		/**
+		 * @return The longest chain of dependent definitions, which bounds the duration of the plan
+		 */
+		List<String> criticalPath();
+	}
+}
@@ -0,0 +1,70 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+/**
+ * An allocator of the private IP addresses of a subnet, seeded with the addresses of the network interfaces in it and 
+ * excluding the addresses Azure reserves. Allocations are atomic within the process, so concurrent definitions never 
+ * pick the same address
+ */
+public interface PrivateIpAllocator {
+	/**
+	 * @return The address prefix of the subnet
+	 */
+	String addressPrefix();
+	
+	/**
+	 * @return The number of free addresses
+	 */
+	int available();
+	
+	/**
+	 * @param address An IP address in the subnet
+	 * @return True if the address is neither reserved nor in use
+	 */
+	boolean isFree(String address);
+	
+	/**
+	 * Allocates a free address and marks it as in use
+	 * @return The allocated address, or null if the subnet is full
+	 */
+	String allocate();
+	
+	/**
+	 * Marks an address as in use, e.g. one assigned elsewhere
+	 * @param address An IP address in the subnet
+	 * @return This allocator
+	 */
+	PrivateIpAllocator reserve(String address);
+	
+	/**
+	 * Returns an address to the free addresses, e.g. after deleting the network interface it was assigned to
+	 * @param address An IP address in the subnet
+	 * @return This allocator
+	 */
+	PrivateIpAllocator release(String address);
+	
+	/**
+	 * Retrieves the subnet and the network interfaces in it again, replacing the addresses in use
+	 * @return The refreshed allocator
+	 * @throws Exception
+	 */
+	PrivateIpAllocator refresh() throws Exception;
+}
@@ -22,12 +22,14 @@ package com.microsoft.azure.shortcuts.resources;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 
 public interface PublicIpAddress extends 
 	GroupResourceBase,
 	Refreshable<PublicIpAddress>,
+	Snapshottable<PublicIpAddress>,
 	Wrapper<com.microsoft.azure.management.network.models.PublicIpAddress>,
 	Deletable {
 	
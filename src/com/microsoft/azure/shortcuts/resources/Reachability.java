@@ -0,0 +1,106 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Which virtual machines can reach which over their private IP addresses on a set of ports, as decided by the network security 
+ * groups of their subnets and network interfaces. Virtual machines in different virtual networks are considered unreachable
+ */
+public interface Reachability {
+	/**
+	 * @return The IDs of the analyzed virtual machines, i.e. those whose primary network interface has a private IP address
+	 */
+	List<String> virtualMachines();
+	
+	/**
+	 * @return The analyzed destination ports
+	 */
+	List<Integer> ports();
+	
+	/**
+	 * @return The number of distinct rule contexts among the analyzed virtual machines. Virtual machines sharing a context
+	 * are decided alike in any flow, so reachability is computed once per pair of contexts
+	 */
+	int contexts();
+	
+	/**
+	 * @param sourceId The ID of the source virtual machine, in any letter case
+	 * @param destinationId The ID of the destination virtual machine, in any letter case
+	 * @param port One of the analyzed ports
+	 * @return True if the source virtual machine can reach the destination on the port
+	 */
+	boolean isReachable(String sourceId, String destinationId, int port);
+	
+	/**
+	 * @param sourceId The ID of the source virtual machine, in any letter case
+	 * @param port One of the analyzed ports
+	 * @return The IDs of the virtual machines the source virtual machine can reach on the port
+	 */
+	Set<String> reachableFrom(String sourceId, int port);
+	
+	/**
+	 * @param destinationId The ID of the destination virtual machine, in any letter case
+	 * @param port One of the analyzed ports
+	 * @return The IDs of the virtual machines that can reach the destination virtual machine on the port
+	 */
+	Set<String> reachableTo(String destinationId, int port);
+	
+	
+	/**
+	 * The inputs of a reachability analysis
+	 */
+	public interface Builder {
+		/**
+		 * @param virtualMachines The virtual machines to analyze. All the virtual machines of the subscription are analyzed by default
+		 * @return The updated builder
+		 */
+		Builder withVirtualMachines(Collection<VirtualMachine> virtualMachines);
+		
+		/**
+		 * @param protocol The protocol of the flows, TCP by default
+		 * @return The updated builder
+		 */
+		Builder withProtocol(Protocol protocol);
+		
+		/**
+		 * @param ports The destination ports to analyze
+		 * @return The updated builder
+		 */
+		Builder withPorts(int...ports);
+		
+		/**
+		 * @param port The source port of the flows, 49152 (the first ephemeral port) by default
+		 * @return The updated builder
+		 */
+		Builder withSourcePort(int port);
+		
+		/**
+		 * Resolves the topology of the virtual machines, compiles each network security group once, and computes the
+		 * reachability between each pair of rule contexts in parallel, one task per source subnet
+		 * @return The reachability of the virtual machines
+		 * @throws Exception
+		 */
+		Reachability build() throws Exception;
+	}
+}
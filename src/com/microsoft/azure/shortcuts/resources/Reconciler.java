@@ -0,0 +1,102 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.List;
+import java.util.Set;
+
+import com.microsoft.azure.shortcuts.common.Ensurable;
+
+/**
+ * A controller continuously converging resources to their definitions. Each definition is reconciled by a pool of 
+ * workers through its ensure() method, which only sends requests to Azure if the actual state differs from the definition.
+ * Definitions are queued for reconciliation when added, when queued again through enqueue(), periodically as their resource 
+ * groups get listed again, and after failures with exponential backoff. Local changes to a definition through its setters 
+ * are not detected, so they take effect at the next resync unless the definition is queued again. Each resource is 
+ * reconciled by at most one worker at a time.
+ */
+public interface Reconciler {
+	/**
+	 * Adds or replaces the desired state of a resource and queues it for reconciliation
+	 * @param definition A resource definition supporting ensure()
+	 * @return The key (type/group/name) identifying the resource within the reconciler
+	 */
+	String withDefinition(Ensurable<?> definition);
+	
+	/**
+	 * Stops reconciling a resource, without deleting it
+	 * @param key The key of the resource
+	 * @return The updated reconciler
+	 */
+	Reconciler withoutDefinition(String key);
+	
+	/**
+	 * @param limit The maximum number of resources reconciled at the same time
+	 * @return The updated reconciler
+	 */
+	Reconciler withConcurrencyLimit(int limit);
+	
+	/**
+	 * @param millis The interval at which all resources are queued for reconciliation again to correct drift
+	 * @return The updated reconciler
+	 */
+	Reconciler withResyncInterval(long millis);
+	
+	/**
+	 * @param initialMillis The delay before reconciling a resource again after its first consecutive failure
+	 * @param maxMillis The maximum delay, reached by doubling the delay after each consecutive failure
+	 * @return The updated reconciler
+	 */
+	Reconciler withBackoff(long initialMillis, long maxMillis);
+	
+	/**
+	 * Queues a resource for reconciliation, e.g. after a local change to its definition, which is not detected otherwise
+	 * @param key The key of the resource
+	 */
+	void enqueue(String key);
+	
+	/**
+	 * Starts the workers and the periodic resync
+	 * @return The started reconciler
+	 */
+	Reconciler start();
+	
+	/**
+	 * Stops the workers and the periodic resync, letting the reconciliations in progress complete
+	 */
+	void stop();
+	
+	/**
+	 * @return The keys of the resources being reconciled
+	 */
+	Set<String> keys();
+	
+	/**
+	 * @param key The key of the resource
+	 * @return The differences corrected by the last successful reconciliation of the resource, or null if none yet
+	 */
+	List<String> differences(String key);
+	
+	/**
+	 * @param key The key of the resource
+	 * @return The failure of the last reconciliation of the resource, or null if it succeeded
+	 */
+	Exception lastError(String key);
+}
@@ -19,6 +19,9 @@
 */
 package com.microsoft.azure.shortcuts.resources;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Enumeration of the Azure datacenter regions. See https://azure.microsoft.com/regions/
  */
@@ -49,6 +52,16 @@ public enum Region {
 		this.label = label;
 	}
 	
+	// Lookups by lowercase name and label
+	private static final Map<String, Region> BY_NAME = new HashMap<>();
+	private static final Map<String, Region> BY_LABEL = new HashMap<>();
+	static {
+		for(Region region : Region.values()) {
+			BY_NAME.put(region.name.toLowerCase(), region);
+			BY_LABEL.put(region.label.toLowerCase(), region);
+		}
+	}
+	
 	@Override
 	public String toString() {
 		return this.name;
@@ -56,23 +69,11 @@ public enum Region {
 	
 	
 	public static Region fromLabel(String label) {
-		for(Region region : Region.values()) {
-			if(region.label.equalsIgnoreCase(label)) {
-				return region;
-			}
-		}
-		
-		return null;
+		return (label != null) ? BY_LABEL.get(label.toLowerCase()) : null;
 	}
 
 	
 	public static Region fromName(String name) {
-		for(Region region : Region.values()) {
-			if(region.name.equalsIgnoreCase(name)) {
-				return region;
-			}
-		}
-		
-		return null;
+		return (name != null) ? BY_NAME.get(name.toLowerCase()) : null;
 	}
 }
@@ -25,7 +25,9 @@ import com.microsoft.azure.management.resources.models.ResourceGroupExtended;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Indexable;
 import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.Ensurable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Updatable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.Taggable;
@@ -33,6 +35,7 @@ import com.microsoft.azure.shortcuts.resources.common.Taggable;
 public interface ResourceGroup extends 
 	Indexable,
 	Refreshable<ResourceGroup>,
+	Snapshottable<ResourceGroup>,
 	Wrapper<ResourceGroupExtended>,
 	Deletable {
 	
@@ -40,6 +43,33 @@ public interface ResourceGroup extends
 	Map<String, String> tags() throws Exception;
 	String provisioningState() throws Exception;
 	String name();
+	
+	/**
+	 * Lists the resources in the group, issuing the listings of the different resource types concurrently
+	 * @return The resources in the group, by type
+	 * @throws Exception
+	 */
+	Contents contents() throws Exception;
+	
+	
+	/**
+	 * The resources in a resource group, by type, each indexed by resource ID
+	 */
+	public interface Contents {
+		Map<String, VirtualMachine> virtualMachines();
+		Map<String, NetworkInterface> networkInterfaces();
+		Map<String, PublicIpAddress> publicIpAddresses();
+		Map<String, Network> networks();
+		Map<String, NetworkSecurityGroup> networkSecurityGroups();
+		Map<String, LoadBalancer> loadBalancers();
+		Map<String, AvailabilitySet> availabilitySets();
+		Map<String, StorageAccount> storageAccounts();
+		
+		/**
+		 * @return The resources of the types not covered by the other listings, as generic resources
+		 */
+		Map<String, Resource> otherResources();
+	}
 
 	
 	public interface Definition extends
@@ -59,7 +89,8 @@ public interface ResourceGroup extends
 	 * A new resource group definition with sufficient input parameters specified to be provisioned in the cloud
 	 */
 	public interface DefinitionCreatable extends 
-		Creatable<ResourceGroup> {
+		Creatable<ResourceGroup>,
+		Ensurable<ResourceGroup> {
 		
 		DefinitionCreatable withTags(Map<String, String> tags);
 		DefinitionCreatable withTag(String key, String value);
@@ -1,5 +1,7 @@
 package com.microsoft.azure.shortcuts.resources;
 
+import java.io.IOException;
+
 import com.microsoft.azure.shortcuts.common.SupportsDeleting;
 import com.microsoft.azure.shortcuts.common.SupportsListingAsMap;
 import com.microsoft.azure.shortcuts.common.SupportsGetting;
@@ -31,4 +33,19 @@ public interface Resources extends
 	 * @throws Exception 
 	 */
 	void delete(String shortName, String type, String provider, String group) throws Exception;
+	
+	/**
+	 * Lists all the resources in the subscription into a snapshot that can be compared against other snapshots
+	 * @return The snapshot
+	 * @throws Exception
+	 */
+	ResourcesSnapshot snapshot() throws Exception;
+	
+	/**
+	 * Loads a snapshot saved earlier
+	 * @param filePath The path of the snapshot file
+	 * @return The snapshot
+	 * @throws IOException
+	 */
+	ResourcesSnapshot loadSnapshot(String filePath) throws IOException;
 }
@@ -0,0 +1,78 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A point-in-time inventory of the resources in a subscription, indexed by normalized (lowercase) resource ID
+ */
+public interface ResourcesSnapshot {
+	/**
+	 * @return The time the inventory was listed, in milliseconds since the epoch
+	 */
+	long timestamp();
+	
+	/**
+	 * @return The normalized IDs of the resources in the inventory
+	 */
+	Set<String> ids();
+	
+	/**
+	 * Persists the snapshot to a file, so that it can be compared against later snapshots
+	 * @param filePath The path of the file
+	 * @throws IOException
+	 */
+	void save(String filePath) throws IOException;
+	
+	/**
+	 * Compares this snapshot with a newer one, in parallel over hash partitions of the resource IDs. Resources whose 
+	 * content hashes match are skipped without comparing their fields.
+	 * @param newer The newer snapshot
+	 * @return The resources added, removed and changed since this snapshot
+	 * @throws Exception
+	 */
+	Changes diff(ResourcesSnapshot newer) throws Exception;
+	
+	
+	/**
+	 * The differences between two snapshots, keyed by normalized resource ID
+	 */
+	public interface Changes {
+		/**
+		 * @return The IDs of the resources present only in the newer snapshot
+		 */
+		Set<String> added();
+		
+		/**
+		 * @return The IDs of the resources present only in the older snapshot
+		 */
+		Set<String> removed();
+		
+		/**
+		 * @return The field-level differences (tags, location, provisioning state, properties) of the changed resources, 
+		 * each described as "field: old -> new"
+		 */
+		Map<String, List<String>> changed();
+	}
+}
@@ -19,6 +19,9 @@
 */
 package com.microsoft.azure.shortcuts.resources;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.microsoft.azure.management.compute.models.VirtualMachineSizeTypes;
 import com.microsoft.azure.shortcuts.common.Indexable;
 
@@ -61,17 +64,20 @@ public interface Size extends
 			this.type = name;
 		}
 		
+		// Lookup by lowercase name
+		private static final Map<String, Type> BY_NAME = new HashMap<>();
+		static {
+			for(Type t : Type.values()) {
+				BY_NAME.put(t.type.toLowerCase(), t);
+			}
+		}
+		
 		public String toString() {
 			return this.type;
 		}
 		
 		public static Type fromString(String sizeName) {
-			for(Type t : Type.values()) {
-				if(sizeName.equalsIgnoreCase(t.toString())) {
-					return t;
-				}
-			}
-			return null;
+			return BY_NAME.get(sizeName.toLowerCase());
 		}
 	}
 }
@@ -0,0 +1,74 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.List;
+
+/**
+ * An index of the virtual machine sizes available in any region, answering range queries on their specifications and 
+ * availability locally. Each constraint of a query takes logarithmic time in the number of sizes
+ */
+public interface SizeIndex {
+	/**
+	 * @return The number of sizes in the index
+	 */
+	int size();
+	
+	/**
+	 * @return A new query, matching all the sizes until constrained
+	 */
+	Query query();
+	
+	
+	/**
+	 * A query of the sizes, narrowed by each constraint as it is added
+	 */
+	public interface Query {
+		Query withMinCores(int cores);
+		Query withMaxCores(int cores);
+		Query withMinMemoryInMB(int memoryInMB);
+		Query withMaxMemoryInMB(int memoryInMB);
+		Query withMinDataDiskCount(int count);
+		Query withMinResourceDiskSizeInMB(int sizeInMB);
+		Query withMinOsDiskSizeInMB(int sizeInMB);
+		
+		/**
+		 * @param regions Regions the sizes must all be available in
+		 * @return The narrowed query
+		 */
+		Query withRegions(Region...regions);
+		
+		/**
+		 * @return The names of the matching sizes, from the smallest to the largest
+		 */
+		List<String> names();
+		
+		/**
+		 * @return The name of the smallest matching size (the fewest cores, then the least memory, then the fewest data disks),
+		 * as the closest fit for the constraints, or null if none matches
+		 */
+		String smallest();
+		
+		/**
+		 * @return The number of matching sizes
+		 */
+		int count();
+	}
+}
@@ -20,6 +20,7 @@
 package com.microsoft.azure.shortcuts.resources;
 
 import java.util.Map;
+import java.util.Set;
 
 import com.microsoft.azure.shortcuts.common.SupportsListingAsMap;
 
@@ -28,8 +29,21 @@ public interface Sizes extends
 
 	/**
 	 * @param region
-	 * @return Virtual machine sizes available in the specified region
+	 * @return Virtual machine sizes available in the specified region, from a listing of up to a day ago
 	 * @throws Exception 
 	 */
 	Map<String, Size> asMap(String region) throws Exception;
+	
+	/**
+	 * @return The names of the virtual machine sizes available in each region the subscription can list sizes in
+	 * @throws Exception
+	 */
+	Map<Region, Set<String>> availability() throws Exception;
+	
+	/**
+	 * Builds an index of the sizes available in any region, for answering repeated queries by specifications and regions locally
+	 * @return The size index
+	 * @throws Exception
+	 */
+	SizeIndex index() throws Exception;
 }
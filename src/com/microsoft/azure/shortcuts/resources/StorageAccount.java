@@ -25,7 +25,9 @@ import com.microsoft.azure.management.storage.models.AccountType;
 import com.microsoft.azure.management.storage.models.CustomDomain;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.Ensurable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Updatable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
@@ -34,6 +36,7 @@ import com.microsoft.azure.shortcuts.resources.common.Taggable;
 public interface StorageAccount extends 
 	GroupResourceBase,
 	Refreshable<StorageAccount>,
+	Snapshottable<StorageAccount>,
 	Wrapper<com.microsoft.azure.management.storage.models.StorageAccount>,
 	Deletable {
 
@@ -69,7 +72,8 @@ public interface StorageAccount extends
 	 */
 	public interface DefinitionCreatable extends 
 		GroupResourceBase.DefinitionWithTags<DefinitionCreatable>,
-		Creatable<StorageAccount> {
+		Creatable<StorageAccount>,
+		Ensurable<StorageAccount> {
 		
 		/**
 		 * @param type The type of the storage account
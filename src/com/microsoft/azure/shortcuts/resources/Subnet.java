@@ -20,7 +20,9 @@
 package com.microsoft.azure.shortcuts.resources;
 
 import com.microsoft.azure.shortcuts.common.Attachable;
+import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Indexable;
+import com.microsoft.azure.shortcuts.common.Updatable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.DefinitionCombos;
 
@@ -40,4 +42,22 @@ public interface Subnet extends Indexable, Wrapper<com.microsoft.azure.managemen
 		Attachable<PARENT>,
 		DefinitionCombos.WithExistingNetworkSecurityGroup<DefinitionAttachable<PARENT>> { 
 	}
+	
+	/**
+	 * An update of an existing subnet, applied to the subnet alone rather than to its whole virtual network
+	 */
+	public interface Update extends 
+		UpdateBlank, 
+		Updatable<Update> {
+	}
+	
+	/**
+	 * An update of an existing subnet, with nothing changed yet
+	 */
+	public interface UpdateBlank extends Deletable {
+		Update withAddressPrefix(String cidr);
+		Update withExistingNetworkSecurityGroup(String nsgId);
+		Update withExistingNetworkSecurityGroup(NetworkSecurityGroup nsg);
+		Update withoutNetworkSecurityGroup();
+	}
 }
@@ -0,0 +1,79 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.List;
+
+/**
+ * An index of the resources and resource groups in the subscription by their tags, answering boolean tag queries locally.
+ * The index is kept current by the listings, gets, updates and deletions performed through the subscription
+ */
+public interface TagIndex {
+	/**
+	 * @return The number of resources and resource groups in the index
+	 */
+	int size();
+	
+	/**
+	 * @param name The name of a tag
+	 * @param value The value of the tag
+	 * @return A query matching the resources having the tag set to the specified value
+	 */
+	Query tag(String name, String value);
+	
+	/**
+	 * @param name The name of a tag
+	 * @return A query matching the resources having the tag, regardless of its value
+	 */
+	Query tag(String name);
+	
+	/**
+	 * @return A query matching all the resources in the index
+	 */
+	Query all();
+	
+	/**
+	 * Lists all the resources and resource groups in the subscription, replacing the contents of the index
+	 * @return The refreshed index
+	 * @throws Exception
+	 */
+	TagIndex refresh() throws Exception;
+	
+	
+	/**
+	 * A boolean tag query, evaluated against the current contents of the index each time its results are requested
+	 */
+	public interface Query {
+		Query and(Query other);
+		Query or(Query other);
+		Query andNot(Query other);
+		Query not();
+		
+		/**
+		 * @return The IDs of the matching resources and resource groups
+		 */
+		List<String> ids();
+		
+		/**
+		 * @return The number of matching resources and resource groups
+		 */
+		int count();
+	}
+}
@@ -0,0 +1,122 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
+
+/**
+ * An in-memory graph of virtual machines, availability sets, network interfaces, public IP addresses, networks, subnets
+ * and network security groups, resolved in bulk from a set of root resources by following their references. 
+ * Traversing an edge is a local lookup, not a call to Azure
+ */
+public interface Topology {
+	/**
+	 * @return The resolved virtual machines, indexed by ID
+	 */
+	Map<String, VirtualMachine> virtualMachines();
+	
+	/**
+	 * @return The resolved availability sets, indexed by ID
+	 */
+	Map<String, AvailabilitySet> availabilitySets();
+	
+	/**
+	 * @return The resolved network interfaces, indexed by ID
+	 */
+	Map<String, NetworkInterface> networkInterfaces();
+	
+	/**
+	 * @return The resolved public IP addresses, indexed by ID
+	 */
+	Map<String, PublicIpAddress> publicIpAddresses();
+	
+	/**
+	 * @return The resolved virtual networks, indexed by ID
+	 */
+	Map<String, Network> networks();
+	
+	/**
+	 * @return The subnets of the resolved virtual networks, indexed by their full ID
+	 */
+	Map<String, Subnet> subnets();
+	
+	/**
+	 * @return The resolved network security groups, indexed by ID
+	 */
+	Map<String, NetworkSecurityGroup> networkSecurityGroups();
+	
+	/**
+	 * @param id The ID of a resource in the topology, in any letter case
+	 * @return The IDs of the resources it references (e.g. the network interfaces of a virtual machine, or the network of a subnet)
+	 */
+	List<String> references(String id);
+	
+	/**
+	 * @param id The ID of a resource in the topology, in any letter case
+	 * @return The IDs of the resources referencing it (e.g. the network interfaces in a subnet, or the subnets of a network)
+	 */
+	List<String> referencedBy(String id);
+	
+	/**
+	 * @return The IDs of the referenced resources that no longer exist
+	 */
+	Set<String> missing();
+	
+	
+	/**
+	 * The roots from which to resolve a topology
+	 */
+	public interface Builder {
+		/**
+		 * @param id The ID of a virtual machine, availability set, network interface, public IP address, network, subnet or 
+		 * network security group to resolve along with the resources it references
+		 * @return The updated builder
+		 */
+		Builder withRoot(String id);
+		
+		/**
+		 * @param ids The IDs of the root resources
+		 * @return The updated builder
+		 */
+		Builder withRoots(Collection<String> ids);
+		
+		/**
+		 * Adds resources already retrieved from Azure as roots, without retrieving them again
+		 * @param resources Virtual machines, availability sets, network interfaces, public IP addresses, networks or 
+		 * network security groups
+		 * @return The updated builder
+		 */
+		Builder withResources(Collection<? extends GroupResourceBase> resources);
+		
+		/**
+		 * Resolves the references of the roots level by level. At each level, the referenced resources are retrieved from 
+		 * a single listing of each resource group and type where that takes fewer calls than retrieving them one by one,
+		 * or was listed recently, and by concurrent individual gets otherwise
+		 * @return The resolved topology
+		 * @throws Exception
+		 */
+		Topology build() throws Exception;
+	}
+}
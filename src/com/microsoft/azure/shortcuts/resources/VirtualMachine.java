@@ -29,7 +29,9 @@ import com.microsoft.azure.management.compute.models.NetworkInterfaceReference;
 import com.microsoft.azure.management.compute.models.VirtualMachineExtension;
 import com.microsoft.azure.shortcuts.common.Deletable;
 import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.Ensurable;
 import com.microsoft.azure.shortcuts.common.Refreshable;
+import com.microsoft.azure.shortcuts.common.Snapshottable;
 import com.microsoft.azure.shortcuts.common.Wrapper;
 import com.microsoft.azure.shortcuts.resources.common.DefinitionCombos;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
@@ -37,6 +39,7 @@ import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
 public interface VirtualMachine extends 
 	GroupResourceBase,
 	Refreshable<VirtualMachine>,
+	Snapshottable<VirtualMachine>,
 	Wrapper<com.microsoft.azure.management.compute.models.VirtualMachine>,
 	Deletable {
 	
@@ -232,13 +235,39 @@ public interface VirtualMachine extends
 		GroupResourceBase.DefinitionWithTags<DefinitionCreatable>,
 		DefinitionCombos.WithAvailabilitySet<DefinitionCreatable>,
 		DefinitionWithDataDisk<DefinitionCreatable>,
-		Creatable<VirtualMachine> {
+		Creatable<VirtualMachine>,
+		Ensurable<VirtualMachine> {
 		
 		/**
 		 * @param computerName The computer name for the virtual machine
 		 * @return A definition of the virtual machine with sufficient inputs to be provisioned
 		 */
 		DefinitionCreatable withComputerName(String computerName);
+
+		/**
+		 * Provisions the virtual machine and any new resources it depends on (storage account, virtual network, public IP address,
+		 * network interface, availability set) as a single ARM template deployment rather than one request per resource,
+		 * letting Azure provision independent resources in parallel. The resource group is still created separately if needed.
+		 * @param deploymentName The name for the deployment
+		 * @return A definition of the virtual machine with sufficient inputs to be provisioned
+		 */
+		DefinitionCreatable withTemplateDeployment(String deploymentName);
+
+		/**
+		 * Provisions the virtual machine and any new resources it depends on as a single ARM template deployment,
+		 * named after the virtual machine
+		 * @return A definition of the virtual machine with sufficient inputs to be provisioned
+		 */
+		DefinitionCreatable withTemplateDeployment();
+		
+		/**
+		 * Records the provisioning steps in an append-only journal file, synced to disk after each step. If the file already
+		 * records completed steps for this virtual machine from an earlier, interrupted run, those steps are not repeated and 
+		 * the resources they produced are reused. The same file can be shared by multiple virtual machine definitions.
+		 * @param filePath The path of the journal file
+		 * @return A definition of the virtual machine with sufficient inputs to be provisioned
+		 */
+		DefinitionCreatable withJournal(String filePath);
 	}
 	
 	public interface UpdateBlank {
@@ -15,4 +15,13 @@ public interface VirtualMachines extends
 	SupportsGettingByGroup<VirtualMachine>,
 	SupportsCreating<VirtualMachine.DefinitionBlank>, 
 	SupportsDeleting,
-	SupportsDeletingByGroup {}
+	SupportsDeletingByGroup {
+	
+	/**
+	 * Lists all the virtual machines in the subscription and the sizes available in their regions
+	 * into a columnar snapshot for capacity analytics
+	 * @return The analytics snapshot
+	 * @throws Exception
+	 */
+	FleetAnalytics analytics() throws Exception;
+}
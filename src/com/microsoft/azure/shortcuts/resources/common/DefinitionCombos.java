@@ -308,6 +308,13 @@ public interface DefinitionCombos {
 		 * @return The next stage of the definition
 		 */
 		R withPrivateIpAddressStatic(String staticPrivateIpAddress);
+		
+		/**
+		 * Assigns a static private IP address picked from the free addresses of the subnet when the resource is created, 
+		 * using the subscription's allocator for that subnet so that concurrent definitions get distinct addresses
+		 * @return The next stage of the definition
+		 */
+		R withFreePrivateIpAddressStatic();
 	}
 
 	
@@ -51,7 +51,7 @@ class AvailabilitySetImpl
 	@Override
 	public List<String> virtualMachineIds() {
 		ArrayList<String> ids = new ArrayList<>();
-		for(VirtualMachineReference vm : this.inner().getVirtualMachinesReferences()) {
+		for(VirtualMachineReference vm : this.innerObject().getVirtualMachinesReferences()) {
 			ids.add(vm.getReferenceUri());
 		}
 		
@@ -75,6 +75,7 @@ class AvailabilitySetImpl
 	
 	@Override
 	public AvailabilitySetImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 			ResourcesImpl.groupFromResourceId(this.id()), 
 			ResourcesImpl.nameFromResourceId(this.id())));
@@ -84,8 +85,9 @@ class AvailabilitySetImpl
 	
 	@Override
 	public AvailabilitySet create() throws Exception {
+		this.ensureNotSnapshot();
 		ensureGroup(); // Create group if needed
-		this.subscription().computeManagementClient().getAvailabilitySetsOperations().createOrUpdate(this.groupName, this.inner());
+		this.subscription().computeManagementClient().getAvailabilitySetsOperations().createOrUpdate(this.groupName, this.innerObject());
 		return this.subscription().availabilitySets().get(this.groupName, this.name());
 	}
 }
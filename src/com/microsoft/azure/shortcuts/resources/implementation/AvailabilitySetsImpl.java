@@ -32,6 +32,8 @@ public class AvailabilitySetsImpl
 		AvailabilitySetImpl>
 	implements AvailabilitySets {
 	
+	static final String TYPE = "Microsoft.Compute/availabilitySets";
+	
 	AvailabilitySetsImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -39,12 +41,14 @@ public class AvailabilitySetsImpl
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.computeManagementClient().getAvailabilitySetsOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 	
 	@Override
 	public AvailabilitySetImpl define(String name) {
 		com.microsoft.azure.management.compute.models.AvailabilitySet nativeItem = new com.microsoft.azure.management.compute.models.AvailabilitySet();
 		nativeItem.setName(name);
+		nativeItem.setType(TYPE);
 		return wrap(nativeItem);
 	}
 
@@ -67,5 +71,10 @@ public class AvailabilitySetsImpl
 	@Override
 	protected AvailabilitySetImpl wrap(com.microsoft.azure.management.compute.models.AvailabilitySet nativeItem) {
 		return new AvailabilitySetImpl(nativeItem, this);
-	}	
+	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
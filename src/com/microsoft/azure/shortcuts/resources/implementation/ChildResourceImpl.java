@@ -19,6 +19,8 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.io.IOException;
+
 import com.microsoft.azure.shortcuts.common.implementation.IndexableWrapperImpl;
 
 class ChildResourceImpl<INNER, PARENTIMPL>
@@ -26,6 +28,7 @@ class ChildResourceImpl<INNER, PARENTIMPL>
 		IndexableWrapperImpl<INNER> {
 
 	private final PARENTIMPL parent;
+	private volatile boolean isSnapshot = false;
 	
 	ChildResourceImpl(
 			String name,
@@ -41,4 +44,35 @@ class ChildResourceImpl<INNER, PARENTIMPL>
 	protected PARENTIMPL parent() {
 		return this.parent;
 	}	
+	
+	// Returns the inner object, or a new deep copy of it for a child of a snapshot, so that the snapshot cannot be changed through it
+	@Override
+	public INNER inner() {
+		if(!this.isSnapshot) {
+			return this.innerObject;
+		}
+		
+		try {
+			return ResourceBaseImpl.copy(this.innerObject);
+		} catch(IOException e) {
+			throw new IllegalStateException("Cannot copy the inner object", e);
+		}
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Fails if this is a child of a snapshot, wrapping part of the snapshot's inner object
+	protected void ensureNotSnapshot() {
+		if(this.isSnapshot) {
+			throw new UnsupportedOperationException("Snapshots cannot be changed; refresh the object the snapshot was taken from and take a new snapshot instead");
+		}
+	}
+	
+	// Marks this as a child of a snapshot, before it is shared
+	void freeze() {
+		this.isSnapshot = true;
+	}
 }
@@ -0,0 +1,340 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.microsoft.azure.shortcuts.resources.CidrAllocator;
+import com.microsoft.azure.shortcuts.resources.Network;
+import com.microsoft.azure.shortcuts.resources.Subnet;
+
+// A binary prefix tree per pool, in the manner of a buddy allocator: a node is either a free block, a block in use, or split
+// into its two halves. Each node keeps a bitmap of the prefix lengths of the free blocks under it, so that the tightest free 
+// block for an allocation is found by a single descent, and released halves are merged back with their buddies.
+// The blocks allocated or reserved locally are remembered until a refresh finds them in Azure, so that a refresh never drops 
+// the blocks of networks still being created
+class CidrAllocatorImpl implements CidrAllocator {
+	// The bit of the free bitmap meaning no free block
+	private static final long NONE = 0;
+	
+	private final Subscription subscription;
+	private final List<String> pools;
+	private List<Pool> roots;
+	private final Set<String> pending = new HashSet<>();
+	
+	private static class Node {
+		private Node[] children = null;
+		private boolean used = false;
+		private long freeLengths;
+		
+		private Node(int length) {
+			this.freeLengths = 1L << length;
+		}
+		
+		private boolean isLeaf() {
+			return this.children == null;
+		}
+		
+		// Splits a leaf into two halves of the same state
+		private void split(int length) {
+			this.children = new Node[] { new Node(length + 1), new Node(length + 1) };
+			if(this.used) {
+				this.children[0].use();
+				this.children[1].use();
+			}
+			this.used = false;
+		}
+		
+		private void use() {
+			this.children = null;
+			this.used = true;
+			this.freeLengths = NONE;
+		}
+		
+		private void free(int length) {
+			this.children = null;
+			this.used = false;
+			this.freeLengths = 1L << length;
+		}
+		
+		// Recomputes the state of a split node from its halves, merging them back if both are free or both in use
+		private void update(int length) {
+			Node zero = this.children[0], one = this.children[1];
+			if(zero.isLeaf() && one.isLeaf() && zero.used == one.used) {
+				if(zero.used) {
+					this.use();
+				} else {
+					this.free(length);
+				}
+			} else {
+				this.freeLengths = zero.freeLengths | one.freeLengths;
+			}
+		}
+	}
+	
+	private static class Pool {
+		private final int address;
+		private final int length;
+		private final Node root;
+		
+		private Pool(int[] prefix) {
+			this.address = prefix[0];
+			this.length = prefix[1];
+			this.root = new Node(prefix[1]);
+		}
+	}
+	
+	CidrAllocatorImpl(Subscription subscription, List<String> pools) {
+		this.subscription = subscription;
+		this.pools = Collections.unmodifiableList(new ArrayList<>(pools));
+		this.roots = roots(pools);
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public List<String> pools() {
+		return this.pools;
+	}
+
+	@Override
+	public synchronized boolean isFree(String cidr) {
+		int[] prefix = parse(cidr);
+		for(Pool pool : this.roots) {
+			if(contains(pool.address, pool.length, prefix)) {
+				// Descend to the block, stopping at the first leaf
+				Node node = pool.root;
+				for(int length = pool.length; length < prefix[1] && !node.isLeaf(); length++) {
+					node = node.children[bit(prefix[0], length)];
+				}
+				
+				if(node.isLeaf()) {
+					return !node.used;
+				} else {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public synchronized String allocate(int prefixLength) {
+		if(prefixLength < 0 || prefixLength > 32) {
+			throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+		}
+		
+		// Find the pool with the tightest free block, i.e. the longest free prefix no longer than requested
+		long fitting = (1L << (prefixLength + 1)) - 1;
+		Pool bestPool = null;
+		int bestLength = -1;
+		for(Pool pool : this.roots) {
+			long candidates = pool.root.freeLengths & fitting;
+			if(candidates != NONE) {
+				int length = 63 - Long.numberOfLeadingZeros(candidates);
+				if(length > bestLength) {
+					bestLength = length;
+					bestPool = pool;
+				}
+			}
+		}
+		
+		if(bestPool == null) {
+			return null;
+		}
+		
+		// Descend towards a free block of the best length, then split it down to the requested length
+		Node[] path = new Node[33];
+		Node node = bestPool.root;
+		int address = bestPool.address;
+		int length = bestPool.length;
+		long best = 1L << bestLength;
+		while(!node.isLeaf()) {
+			path[length] = node;
+			int bit = ((node.children[0].freeLengths & best) != NONE) ? 0 : 1;
+			address |= bit << (31 - length);
+			node = node.children[bit];
+			length++;
+		}
+		
+		while(length < prefixLength) {
+			node.split(length);
+			path[length] = node;
+			node = node.children[0];
+			length++;
+		}
+		
+		node.use();
+		update(path, bestPool.length, length);
+		String cidr = format(address, prefixLength);
+		this.pending.add(cidr);
+		return cidr;
+	}
+
+	@Override
+	public synchronized CidrAllocatorImpl reserve(String cidr) {
+		int[] prefix = parse(cidr);
+		this.mark(prefix, true);
+		this.pending.add(format(prefix[0], prefix[1]));
+		return this;
+	}
+
+	@Override
+	public synchronized CidrAllocatorImpl release(String cidr) {
+		int[] prefix = parse(cidr);
+		this.mark(prefix, false);
+		this.pending.remove(format(prefix[0], prefix[1]));
+		return this;
+	}
+
+	@Override
+	public CidrAllocatorImpl refresh() throws Exception {
+		if(this.subscription == null) {
+			return this;
+		}
+		
+		// Rebuild the trees aside from the live state
+		CidrAllocatorImpl refreshed = new CidrAllocatorImpl(null, this.pools);
+		for(Network network : this.subscription.networks().asMap().values()) {
+			for(String addressSpace : network.addressSpaces()) {
+				refreshed.reserveIfValid(addressSpace);
+			}
+			
+			for(Subnet subnet : network.subnets().values()) {
+				refreshed.reserveIfValid(subnet.addressPrefix());
+			}
+		}
+		
+		// Merge in the blocks allocated or reserved locally that are not in Azure yet, including those allocated during the 
+		// listing, then swap the trees in
+		synchronized(this) {
+			this.pending.removeAll(refreshed.pending);
+			for(String cidr : this.pending) {
+				refreshed.mark(parse(cidr), true);
+			}
+			this.roots = refreshed.roots;
+		}
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	// Reserves a block reported by Azure, ignoring the forms not tracked, such as IPv6 prefixes
+	synchronized void reserveIfValid(String cidr) {
+		int[] prefix = (cidr != null) ? NetworkSecurityPolicyImpl.prefix(cidr.trim()) : null;
+		if(prefix != null) {
+			this.mark(prefix, true);
+			this.pending.add(format(prefix[0], prefix[1]));
+		}
+	}
+	
+	// Marks a block as used or free in each pool it overlaps
+	private void mark(int[] prefix, boolean used) {
+		for(Pool pool : this.roots) {
+			if(contains(prefix[0], prefix[1], new int[] { pool.address, pool.length })) {
+				// Covers the whole pool
+				if(used) {
+					pool.root.use();
+				} else {
+					pool.root.free(pool.length);
+				}
+			} else if(contains(pool.address, pool.length, prefix)) {
+				mark(pool, prefix, used);
+			}
+		}
+	}
+	
+	// Marks a block within the pool, splitting the leaves on its path as needed
+	private static void mark(Pool pool, int[] prefix, boolean used) {
+		Node[] path = new Node[33];
+		Node node = pool.root;
+		int length = pool.length;
+		while(length < prefix[1]) {
+			if(node.isLeaf()) {
+				if(node.used == used) {
+					// Already in the desired state
+					return;
+				}
+				node.split(length);
+			}
+			path[length] = node;
+			node = node.children[bit(prefix[0], length)];
+			length++;
+		}
+		
+		if(used) {
+			node.use();
+		} else {
+			node.free(length);
+		}
+		update(path, pool.length, length);
+	}
+	
+	// Recomputes the nodes on the path from the parent of the changed node up to the root
+	private static void update(Node[] path, int rootLength, int length) {
+		for(int i = length - 1; i >= rootLength; i--) {
+			path[i].update(i);
+		}
+	}
+	
+	private static List<Pool> roots(List<String> pools) {
+		List<Pool> roots = new ArrayList<>();
+		for(String pool : pools) {
+			roots.add(new Pool(parse(pool)));
+		}
+		return roots;
+	}
+	
+	private static int[] parse(String cidr) {
+		int[] prefix = NetworkSecurityPolicyImpl.prefix(cidr);
+		if(prefix == null) {
+			throw new IllegalArgumentException("Not an IPv4 CIDR block: " + cidr);
+		}
+		return prefix;
+	}
+	
+	// Returns true if the block (address, length) contains the prefix
+	private static boolean contains(int address, int length, int[] prefix) {
+		return prefix[1] >= length && (prefix[0] & NetworkSecurityPolicyImpl.mask(length)) == address;
+	}
+	
+	private static int bit(int address, int length) {
+		return (address >>> (31 - length)) & 1;
+	}
+	
+	private static String format(int address, int length) {
+		return NetworkSecurityPolicyImpl.formatAddress(address) + "/" + length;
+	}
+}
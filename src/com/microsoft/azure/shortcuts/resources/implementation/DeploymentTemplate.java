@@ -0,0 +1,212 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import com.microsoft.azure.management.resources.DeploymentOperations;
+import com.microsoft.azure.management.resources.models.Deployment;
+import com.microsoft.azure.management.resources.models.DeploymentExtended;
+import com.microsoft.azure.management.resources.models.DeploymentMode;
+import com.microsoft.azure.management.resources.models.DeploymentOperation;
+import com.microsoft.azure.management.resources.models.DeploymentProperties;
+
+// Accumulates resource definitions into a single ARM deployment template and submits it as one deployment,
+// letting ARM provision independent resources in parallel based on the explicit dependsOn edges
+class DeploymentTemplate {
+	static final String API_VERSION = "2015-06-15";
+	static final String SCHEMA = "https://schema.management.azure.com/schemas/2015-01-01/deploymentTemplate.json#";
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final long POLL_DELAY_MIN = 1000;
+	private static final long POLL_DELAY_MAX = 15000;
+	
+	// The longest wait for a deployment to reach a terminal state
+	static final long DEPLOY_TIMEOUT = 2 * 60 * 60 * 1000;
+	
+	private final String subscriptionId;
+	private final String groupName;
+	private final ObjectNode root;
+	private final ArrayNode resources;
+	private final ObjectNode parameters;
+	private final ObjectNode parameterValues;
+	
+	DeploymentTemplate(String subscriptionId, String groupName) {
+		this.subscriptionId = subscriptionId;
+		this.groupName = groupName;
+		this.root = MAPPER.createObjectNode();
+		this.root.put("$schema", SCHEMA);
+		this.root.put("contentVersion", "1.0.0.0");
+		this.parameters = this.root.putObject("parameters");
+		this.parameterValues = MAPPER.createObjectNode();
+		this.root.putObject("variables");
+		this.resources = this.root.putArray("resources");
+	}
+	
+	
+	/*******************************************
+	 * Getters
+	 *******************************************/
+	
+	String groupName() {
+		return this.groupName;
+	}
+	
+	boolean isEmpty() {
+		return this.resources.size() == 0;
+	}
+	
+	// Returns the full resource ID the resource of the specified type and name(s) will have in this template's group
+	String resourceId(String type, String...names) {
+		// Type is "Namespace/type[/childType]", names are the matching name for each type segment
+		String[] typeParts = type.split("/");
+		StringBuilder id = new StringBuilder(String.format(
+			"/subscriptions/%s/resourceGroups/%s/providers/%s", 
+			this.subscriptionId, this.groupName, typeParts[0]));
+		for(int i = 0; i < names.length && i+1 < typeParts.length; i++) {
+			id.append('/').append(typeParts[i+1]).append('/').append(names[i]);
+		}
+		return id.toString();
+	}
+	
+	// Returns a template expression evaluating to the primary blob endpoint of a storage account in this template
+	String blobEndpointExpression(String storageAccountName, String path) {
+		return String.format("[concat(reference('%s', '%s').primaryEndpoints.blob, '%s')]",
+			this.resourceId(StorageAccountsImpl.TYPE, storageAccountName), API_VERSION, path);
+	}
+	
+	String toJson() {
+		return this.root.toString();
+	}
+	
+	// Returns the values of the template parameters, which are passed alongside the template rather than in it
+	String parametersJson() {
+		return this.parameterValues.toString();
+	}
+	
+	
+	/*******************************************
+	 * Setters
+	 *******************************************/
+	
+	// Adds a resource to the template and returns its (empty) properties node for the caller to fill in
+	ObjectNode addResource(String type, String name, String region, Map<String, String> tags, List<String> dependsOn) {
+		ObjectNode resource = this.resources.addObject();
+		resource.put("apiVersion", API_VERSION);
+		resource.put("type", type);
+		resource.put("name", name);
+		resource.put("location", region);
+		if(tags != null && !tags.isEmpty()) {
+			ObjectNode tagsNode = resource.putObject("tags");
+			for(Map.Entry<String, String> tag : tags.entrySet()) {
+				tagsNode.put(tag.getKey(), tag.getValue());
+			}
+		}
+		
+		if(dependsOn != null && !dependsOn.isEmpty()) {
+			ArrayNode dependsOnNode = resource.putArray("dependsOn");
+			for(String dependency : dependsOn) {
+				dependsOnNode.add(dependency);
+			}
+		}
+		
+		return resource.putObject("properties");
+	}
+	
+	// Declares a secure string parameter holding the value, so that the value is kept out of the template and the deployment 
+	// history, and returns the template expression referring to it
+	String addSecureParameter(String name, String value) {
+		this.parameters.putObject(name).put("type", "securestring");
+		this.parameterValues.putObject(name).put("value", value);
+		return String.format("[parameters('%s')]", name);
+	}
+	
+	// Creates a reference node ({"id":...}) as used by ARM for resource references
+	static ObjectNode reference(ObjectNode parent, String fieldName, String resourceId) {
+		ObjectNode reference = parent.putObject(fieldName);
+		reference.put("id", resourceId);
+		return reference;
+	}
+	
+	
+	/*******************************************
+	 * Verbs
+	 *******************************************/
+	
+	// Submits the template as a single incremental deployment and waits for it to complete
+	DeploymentExtended deploy(Subscription subscription, String deploymentName) throws Exception {
+		DeploymentProperties properties = new DeploymentProperties();
+		properties.setTemplate(this.toJson());
+		properties.setParameters(this.parametersJson());
+		properties.setMode(DeploymentMode.Incremental);
+		Deployment deployment = new Deployment();
+		deployment.setProperties(properties);
+		
+		DeploymentOperations deployments = subscription.resourceManagementClient().getDeploymentsOperations();
+		deployments.createOrUpdate(this.groupName, deploymentName, deployment);
+		
+		// Poll with exponential backoff until the deployment reaches a terminal state, or the timeout
+		long delay = POLL_DELAY_MIN;
+		long deadline = System.currentTimeMillis() + DEPLOY_TIMEOUT;
+		while(true) {
+			DeploymentExtended result = deployments.get(this.groupName, deploymentName).getDeployment();
+			String state = (result.getProperties() != null) ? result.getProperties().getProvisioningState() : null;
+			if("Succeeded".equalsIgnoreCase(state)) {
+				return result;
+			} else if("Failed".equalsIgnoreCase(state) || "Canceled".equalsIgnoreCase(state)) {
+				throw new Exception(String.format("Deployment '%s' %s: %s", 
+					deploymentName, state.toLowerCase(), failures(subscription, deploymentName)));
+			}
+			
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0) {
+				throw new Exception(String.format("Deployment '%s' timed out after %d minutes in state '%s'", 
+					deploymentName, DEPLOY_TIMEOUT / 60000, state));
+			}
+			
+			Thread.sleep(Math.min(delay, remaining));
+			delay = Math.min(delay * 2, POLL_DELAY_MAX);
+		}
+	}
+	
+	
+	/*******************************************
+	 * Helpers
+	 *******************************************/
+	
+	// Collects the status messages of the failed operations of a deployment
+	private List<String> failures(Subscription subscription, String deploymentName) throws Exception {
+		List<String> messages = new ArrayList<>();
+		for(DeploymentOperation operation : subscription.resourceManagementClient().getDeploymentOperationsOperations()
+				.list(this.groupName, deploymentName, null).getOperations()) {
+			if(operation.getProperties() != null 
+					&& "Failed".equalsIgnoreCase(operation.getProperties().getProvisioningState())) {
+				messages.add(operation.getProperties().getStatusMessage());
+			}
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,420 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.microsoft.azure.management.compute.models.VirtualMachine;
+import com.microsoft.azure.shortcuts.resources.FleetAnalytics;
+import com.microsoft.azure.shortcuts.resources.Region;
+import com.microsoft.azure.shortcuts.resources.Size;
+
+// Stores virtual machines column by column: dictionary-encoded region, group and size, primitive arrays for the capacity 
+// figures, and a bitmap per tag name marking the virtual machines having the tag. Queries scan the columns in parallel
+// over chunks of rows, filtering 64 rows at a time through the tag bitmaps
+class FleetAnalyticsImpl implements FleetAnalytics {
+	private static final int CHUNK = 4096;
+	
+	private final ForkJoinPool pool;
+	private final int rows;
+	private final Dictionary regions = new Dictionary();
+	private final Dictionary groups = new Dictionary();
+	private final Dictionary sizes = new Dictionary();
+	private final Dictionary tags = new Dictionary();
+	private final int[] regionColumn;
+	private final int[] groupColumn;
+	private final int[] sizeColumn;
+	private final int[] coresColumn;
+	private final long[] memoryColumn;
+	private final int[] dataDisksColumn;
+	private final List<long[]> tagBitmaps = new ArrayList<>();
+	
+	// Ingests the virtual machines, joined with the sizes available in their regions indexed by lowercase region and size name
+	FleetAnalyticsImpl(ForkJoinPool pool, List<VirtualMachine> nativeItems, Map<String, Map<String, Size>> regionSizes) {
+		this.pool = pool;
+		this.rows = nativeItems.size();
+		this.regionColumn = new int[this.rows];
+		this.groupColumn = new int[this.rows];
+		this.sizeColumn = new int[this.rows];
+		this.coresColumn = new int[this.rows];
+		this.memoryColumn = new long[this.rows];
+		this.dataDisksColumn = new int[this.rows];
+		final int words = (this.rows + 63) >>> 6;
+		
+		int row = 0;
+		for(VirtualMachine nativeItem : nativeItems) {
+			String region = normalizeRegion(nativeItem.getLocation());
+			String sizeName = (nativeItem.getHardwareProfile() != null) ? nativeItem.getHardwareProfile().getVirtualMachineSize() : null;
+			this.regionColumn[row] = this.regions.encode(region);
+			this.groupColumn[row] = this.groups.encode(ResourcesImpl.groupFromResourceId(nativeItem.getId()));
+			this.sizeColumn[row] = this.sizes.encode(sizeName);
+			
+			Map<String, Size> sizes = regionSizes.get(region);
+			Size size = (sizes != null && sizeName != null) ? sizes.get(sizeName.toLowerCase()) : null;
+			if(size != null) {
+				this.coresColumn[row] = size.numberOfCores();
+				this.memoryColumn[row] = size.memoryInMB();
+			}
+			
+			if(nativeItem.getStorageProfile() != null && nativeItem.getStorageProfile().getDataDisks() != null) {
+				this.dataDisksColumn[row] = nativeItem.getStorageProfile().getDataDisks().size();
+			}
+			
+			if(nativeItem.getTags() != null) {
+				for(String key : nativeItem.getTags().keySet()) {
+					int tag = this.tags.encode(key);
+					if(tag == this.tagBitmaps.size()) {
+						this.tagBitmaps.add(new long[words]);
+					}
+					this.tagBitmaps.get(tag)[row >>> 6] |= 1L << (row & 63);
+				}
+			}
+			row++;
+		}
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public int size() {
+		return this.rows;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public Query query() {
+		return new QueryImpl();
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Normalizes region names and labels (e.g. "West US") to the form used in resource locations (e.g. "westus")
+	static String normalizeRegion(String region) {
+		return (region != null) ? region.replace(" ", "").toLowerCase() : null;
+	}
+	
+	
+	// Encodes strings as consecutive integers, ignoring case but remembering the first spelling seen
+	private static class Dictionary {
+		private final Map<String, Integer> codes = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		
+		private int encode(String value) {
+			String key = (value != null) ? value.toLowerCase() : "";
+			Integer code = this.codes.get(key);
+			if(code == null) {
+				code = this.values.size();
+				this.codes.put(key, code);
+				this.values.add((value != null) ? value : "");
+			}
+			return code;
+		}
+		
+		// Returns the code of the value, or -1 if not present
+		private int find(String value) {
+			Integer code = this.codes.get((value != null) ? value.toLowerCase() : "");
+			return (code != null) ? code : -1;
+		}
+	}
+	
+	
+	private class QueryImpl implements Query {
+		private static final int ANY = -1;
+		private static final int NONE = -2;
+		private int region = ANY;
+		private int group = ANY;
+		private int size = ANY;
+		private final List<long[]> requiredTags = new ArrayList<>();
+		private boolean isEmpty = false;
+		
+		/*****************************************
+		 * Setters (fluent interface)
+		 *****************************************/
+		
+		@Override
+		public QueryImpl whereRegion(String region) {
+			this.region = this.restrict(regions.find(normalizeRegion(region)));
+			return this;
+		}
+		
+		@Override
+		public QueryImpl whereRegion(Region region) {
+			return this.whereRegion(region.toString());
+		}
+		
+		@Override
+		public QueryImpl whereGroup(String groupName) {
+			this.group = this.restrict(groups.find(groupName));
+			return this;
+		}
+		
+		@Override
+		public QueryImpl whereSize(String sizeName) {
+			this.size = this.restrict(sizes.find(sizeName));
+			return this;
+		}
+		
+		@Override
+		public QueryImpl whereSize(Size.Type size) {
+			return this.whereSize(size.toString());
+		}
+		
+		@Override
+		public QueryImpl whereTag(String key) {
+			int tag = tags.find(key);
+			if(tag < 0) {
+				this.isEmpty = true;
+			} else {
+				this.requiredTags.add(tagBitmaps.get(tag));
+			}
+			return this;
+		}
+		
+		
+		/*****************************************
+		 * Verbs
+		 *****************************************/
+		
+		@Override
+		public TotalsImpl totals() {
+			Aggregate aggregate = this.run(null, 1);
+			return new TotalsImpl(aggregate, 0);
+		}
+		
+		@Override
+		public Map<String, Totals> groupBy(Dimension dimension) {
+			Dictionary dictionary = dictionary(dimension);
+			Aggregate aggregate = this.run(dimension, dictionary.values.size());
+			TreeMap<String, Totals> groups = new TreeMap<>();
+			for(int code = 0; code < dictionary.values.size(); code++) {
+				if(aggregate.counts[code] > 0) {
+					groups.put(dictionary.values.get(code), new TotalsImpl(aggregate, code));
+				}
+			}
+			return Collections.unmodifiableMap(groups);
+		}
+		
+		
+		/*****************************************
+		 * Helpers
+		 *****************************************/
+		
+		// A value missing from the dictionary cannot match any row
+		private int restrict(int code) {
+			if(code < 0) {
+				this.isEmpty = true;
+				return NONE;
+			}
+			return code;
+		}
+		
+		private Aggregate run(Dimension dimension, int width) {
+			if(this.isEmpty || rows == 0) {
+				return new Aggregate(width);
+			}
+			return pool.invoke(new ScanTask(this, dimension, width, 0, rows));
+		}
+		
+		// Scans a range of rows aligned to 64, accumulating the matching rows
+		private Aggregate scan(Dimension dimension, int width, int from, int to) {
+			Aggregate aggregate = new Aggregate(width);
+			int[] keys = (dimension != null) ? column(dimension) : null;
+			for(int word = from >>> 6; word < (to + 63) >>> 6; word++) {
+				// Filter 64 rows at a time through the tag bitmaps
+				int base = word << 6;
+				long mask = (to - base >= 64) ? -1L : (1L << (to - base)) - 1;
+				for(long[] bitmap : this.requiredTags) {
+					mask &= bitmap[word];
+				}
+				
+				// Then through the encoded columns
+				for(long bits = mask; bits != 0; bits &= bits - 1) {
+					int row = base + Long.numberOfTrailingZeros(bits);
+					if((this.region != ANY && regionColumn[row] != this.region)
+							|| (this.group != ANY && groupColumn[row] != this.group)
+							|| (this.size != ANY && sizeColumn[row] != this.size)) {
+						mask &= ~(1L << (row & 63));
+					}
+				}
+				
+				if(dimension == Dimension.TAG) {
+					for(int tag = 0; tag < width; tag++) {
+						for(long bits = mask & tagBitmaps.get(tag)[word]; bits != 0; bits &= bits - 1) {
+							aggregate.add(tag, base + Long.numberOfTrailingZeros(bits));
+						}
+					}
+				} else {
+					for(long bits = mask; bits != 0; bits &= bits - 1) {
+						int row = base + Long.numberOfTrailingZeros(bits);
+						aggregate.add((keys != null) ? keys[row] : 0, row);
+					}
+				}
+			}
+			return aggregate;
+		}
+	}
+	
+	
+	private Dictionary dictionary(Dimension dimension) {
+		switch(dimension) {
+			case REGION: return this.regions;
+			case GROUP: return this.groups;
+			case SIZE: return this.sizes;
+			default: return this.tags;
+		}
+	}
+	
+	private int[] column(Dimension dimension) {
+		switch(dimension) {
+			case REGION: return this.regionColumn;
+			case GROUP: return this.groupColumn;
+			case SIZE: return this.sizeColumn;
+			default: return null;
+		}
+	}
+	
+	
+	// Splits a scan into chunks processed in parallel
+	private static class ScanTask extends RecursiveTask<Aggregate> {
+		private static final long serialVersionUID = 1L;
+		private final QueryImpl query;
+		private final Dimension dimension;
+		private final int width;
+		private final int from;
+		private final int to;
+		
+		private ScanTask(QueryImpl query, Dimension dimension, int width, int from, int to) {
+			this.query = query;
+			this.dimension = dimension;
+			this.width = width;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected Aggregate compute() {
+			if(this.to - this.from <= CHUNK) {
+				return this.query.scan(this.dimension, this.width, this.from, this.to);
+			}
+			
+			// Split on a multiple of the chunk size, so that no bitmap word is shared between tasks
+			int middle = this.from + ((this.to - this.from) / 2 / CHUNK) * CHUNK;
+			if(middle == this.from) {
+				middle += CHUNK;
+			}
+			ScanTask left = new ScanTask(this.query, this.dimension, this.width, this.from, middle);
+			ScanTask right = new ScanTask(this.query, this.dimension, this.width, middle, this.to);
+			left.fork();
+			Aggregate aggregate = right.compute();
+			aggregate.merge(left.join());
+			return aggregate;
+		}
+	}
+	
+	
+	// Running totals indexed by the code of the grouping value
+	private class Aggregate {
+		private final long[] counts;
+		private final long[] cores;
+		private final long[] memory;
+		private final long[] dataDisks;
+		
+		private Aggregate(int width) {
+			this.counts = new long[width];
+			this.cores = new long[width];
+			this.memory = new long[width];
+			this.dataDisks = new long[width];
+		}
+		
+		private void add(int code, int row) {
+			this.counts[code]++;
+			this.cores[code] += coresColumn[row];
+			this.memory[code] += memoryColumn[row];
+			this.dataDisks[code] += dataDisksColumn[row];
+		}
+		
+		private void merge(Aggregate other) {
+			for(int code = 0; code < this.counts.length; code++) {
+				this.counts[code] += other.counts[code];
+				this.cores[code] += other.cores[code];
+				this.memory[code] += other.memory[code];
+				this.dataDisks[code] += other.dataDisks[code];
+			}
+		}
+	}
+	
+	
+	private static class TotalsImpl implements Totals {
+		private final long count;
+		private final long cores;
+		private final long memory;
+		private final long dataDisks;
+		
+		private TotalsImpl(Aggregate aggregate, int code) {
+			this.count = aggregate.counts[code];
+			this.cores = aggregate.cores[code];
+			this.memory = aggregate.memory[code];
+			this.dataDisks = aggregate.dataDisks[code];
+		}
+		
+		@Override
+		public long count() {
+			return this.count;
+		}
+
+		@Override
+		public long cores() {
+			return this.cores;
+		}
+
+		@Override
+		public long memoryInMB() {
+			return this.memory;
+		}
+
+		@Override
+		public long dataDisks() {
+			return this.dataDisks;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("count: %d, cores: %d, memoryInMB: %d, dataDisks: %d", this.count, this.cores, this.memory, this.dataDisks);
+		}
+	}
+}
@@ -19,7 +19,13 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import com.microsoft.azure.management.resources.models.ResourceGroupExtended;
+import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
 import com.microsoft.azure.shortcuts.common.implementation.EntitiesImpl;
 import com.microsoft.azure.shortcuts.resources.ResourceGroup;
 import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
@@ -41,6 +47,7 @@ public abstract class GroupableResourceBaseImpl<
 
 	protected String groupName;
 	protected boolean isExistingGroup;
+	private List<String> differences;
 	
 	/*******************************************
 	 * Getters
@@ -48,8 +55,87 @@ public abstract class GroupableResourceBaseImpl<
 	
 	@Override 
 	final public String resourceGroup() {
+		if(this.isSnapshot()) {
+			return this.groupName;
+		}
+		
 		String groupNameTemp = ResourcesImpl.groupFromResourceId(this.id());
-		return (groupNameTemp == null) ? this.groupName : groupNameTemp;
+		if(groupNameTemp == null) {
+			return this.groupName;
+		} else if(this.subscription().strings() != null) {
+			return this.subscription().strings().canonical(groupNameTemp);
+		} else {
+			return groupNameTemp;
+		}
+	}
+	
+	
+	// Returns the differences found by the last ensure(), if any
+	public final List<String> differences() {
+		return this.differences;
+	}
+	
+	
+	/*******************************************
+	 * Verbs
+	 *******************************************/
+	
+	// Returns a copy of this wrapper that cannot be changed or refreshed, over a private deep copy of the current inner object, with the 
+	// derived fields precomputed
+	@SuppressWarnings("unchecked")
+	public final WRAPPER snapshot() throws Exception {
+		if(this.isSnapshot()) {
+			return (WRAPPER) this;
+		}
+		
+		INNER copy = copy(this.innerObject());
+		GroupableResourceBaseImpl<WRAPPER, INNER, ?, ?> snapshot = this.wrapSnapshot(copy);
+		snapshot.groupName = this.resourceGroup();
+		snapshot.isExistingGroup = true;
+		snapshot.freeze();
+		return (WRAPPER) snapshot;
+	}
+	
+	
+	// Wraps the private copy of the inner object of a snapshot, through the collection by default
+	@SuppressWarnings("unchecked")
+	GroupableResourceBaseImpl<WRAPPER, INNER, ?, ?> wrapSnapshot(INNER copy) {
+		return (GroupableResourceBaseImpl<WRAPPER, INNER, ?, ?>) ((GroupableResourcesBaseImpl<WRAPPER, INNER, ? extends WRAPPER>) this.collection).wrap(copy);
+	}
+	
+	
+	// Creates or updates the resource only if its actual state differs from the definition
+	@SuppressWarnings("unchecked")
+	public final WRAPPER ensure() throws Exception {
+		this.ensureNotSnapshot();
+		// Ensure the group idempotently as well
+		if(!this.isExistingGroup) {
+			if(this.groupName == null) {
+				this.groupName = this.name() + "group";
+			}
+			
+			this.collection.subscription().resourceGroups().define(this.groupName)
+				.withRegion(this.region())
+				.ensure();
+			this.isExistingGroup = true;
+		}
+		
+		GroupableResourcesBaseImpl<WRAPPER, INNER, ? extends WRAPPER> collection = 
+			(GroupableResourcesBaseImpl<WRAPPER, INNER, ? extends WRAPPER>) this.collection;
+		INNER actual = collection.getCachedNativeEntity(this.groupName, this.name());
+		Differences differences = new Differences();
+		if(actual == null) {
+			differences.add("resource", null, "present");
+		} else {
+			this.diff(actual, differences);
+		}
+		
+		this.differences = differences.toList();
+		if(differences.isEmpty()) {
+			return collection.wrap(actual);
+		} else {
+			return ((Creatable<WRAPPER>) this).create();
+		}
 	}
 	
 	
@@ -75,12 +161,43 @@ public abstract class GroupableResourceBaseImpl<
 	}
 	
 	
+	// Compares the actual state of the resource with the settings specified by the definition; extended by each resource type
+	void diff(INNER actual, Differences differences) {
+		if(this.innerObject().getTags() != null && !this.innerObject().getTags().isEmpty()) {
+			differences.compare("tags", actual.getTags(), this.innerObject().getTags());
+		}
+	}
+	
+	
+	// Returns the group the resource will be created in, including the group generated for it when none is specified
+	final String planGroupName() {
+		return (this.groupName != null) ? this.groupName : this.name() + "group";
+	}
+	
+	
+	// Returns the key identifying this resource within a plan
+	final String planKey() {
+		return PlanImpl.key(this.type(), this.planGroupName(), this.name());
+	}
+	
+	
+	// Returns the plan keys of the resources this definition refers to as already existing
+	Set<String> dependencies() {
+		Set<String> dependencies = new HashSet<>();
+		if(this.isExistingGroup && this.groupName != null) {
+			dependencies.add(PlanImpl.key(ResourceGroupsImpl.TYPE, null, this.groupName));
+		}
+		return dependencies;
+	}
+	
+	
 	/****************************************
 	 * withGroup implementations
 	 ****************************************/
 	
 	@SuppressWarnings("unchecked")
 	public final WRAPPERIMPL withExistingResourceGroup(String groupName) {
+		this.ensureNotSnapshot();
 		this.groupName = groupName;
 		this.isExistingGroup = true;
 		return (WRAPPERIMPL)this;
@@ -89,6 +206,7 @@ public abstract class GroupableResourceBaseImpl<
 	
 	@SuppressWarnings("unchecked")
 	public final WRAPPERIMPL withNewResourceGroup(String groupName) {
+		this.ensureNotSnapshot();
 		this.groupName = groupName;
 		this.isExistingGroup = false;
 		return (WRAPPERIMPL) this;
@@ -99,6 +217,7 @@ public abstract class GroupableResourceBaseImpl<
 	}
 	
 	public final WRAPPERIMPL withNewResourceGroup(ResourceGroup.DefinitionCreatable groupDefinition) throws Exception {
+		this.ensureNotSnapshot();
 		return withExistingResourceGroup(groupDefinition.create());
 	}
 	
@@ -19,17 +19,33 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
+import com.microsoft.azure.shortcuts.common.implementation.ListingCache;
+import com.microsoft.azure.shortcuts.common.implementation.ListingStrategy;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.common.implementation.StringDictionary;
 import com.microsoft.windowsazure.core.ResourceBaseExtended;
+import com.microsoft.windowsazure.exception.ServiceException;
 
 public abstract class GroupableResourcesBaseImpl<
 		WRAPPER, 
 		INNER extends ResourceBaseExtended,
 		WRAPPERIMPL extends WRAPPER> extends ArmEntitiesImpl {
+	
+	// The maximum number of groups listed concurrently when listing all groups by group
+	static final int SHARDING_CONCURRENCY = 16;
+	
+	private final ListingCache<INNER> cache = new ListingCache<>();
+	private final ListingStrategy listingStrategy = new ListingStrategy();
+	
 	protected GroupableResourcesBaseImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -37,14 +53,21 @@ public abstract class GroupableResourcesBaseImpl<
 	abstract List<INNER> getNativeEntities(String group) throws Exception;
 	abstract INNER getNativeEntity(String group, String name) throws Exception;
 	abstract WRAPPERIMPL wrap(INNER nativeItem);
+	abstract String type();
 	
 	public abstract void delete(String groupName, String name) throws Exception;
 	
 	public final Map<String, WRAPPER> asMap(String groupName) throws Exception {
 		HashMap<String, WRAPPER> wrappers = new HashMap<>();
-		for(INNER nativeItem : getNativeEntities(groupName)) {
+		List<INNER> nativeItems = listNativeEntities(groupName);
+		for(INNER nativeItem : nativeItems) {
 			wrappers.put(nativeItem.getId(), wrap(nativeItem));
 		}
+		
+		if(groupName != null) {
+			this.cache(groupName, nativeItems);
+		}
+		this.index(groupName, nativeItems);
 		return Collections.unmodifiableMap(wrappers);
 	}
 	
@@ -53,7 +76,15 @@ public abstract class GroupableResourcesBaseImpl<
 	}
 	
 	public final WRAPPER get(String groupName, String name) throws Exception {
-		return wrap(getNativeEntity(groupName, name));
+		INNER nativeItem = this.canonicalize(getNativeEntity(groupName, name));
+		this.cache.put(groupName, name, nativeItem);
+		if(this.inventory() != null && nativeItem != null) {
+			this.inventory().put(this.inventorySection(), nativeItem.getId(), nativeItem);
+		}
+		if(this.subscription.existingTagIndex() != null && nativeItem != null) {
+			this.subscription.existingTagIndex().put(nativeItem.getId(), nativeItem.getTags());
+		}
+		return wrap(nativeItem);
 	}
 	
 	public final WRAPPER get(String id) throws Exception {
@@ -67,4 +98,183 @@ public abstract class GroupableResourcesBaseImpl<
 			ResourcesImpl.groupFromResourceId(id), 
 			ResourcesImpl.nameFromResourceId(id));
 	}
+	
+	
+	/***************************************************
+	 * Helpers
+	 ***************************************************/
+	
+	// Returns the native entity from a recent listing of its group, listing the group if needed, or null if it does not exist
+	final INNER getCachedNativeEntity(String groupName, String name) throws Exception {
+		Map<String, INNER> nativeItems = this.cache.get(groupName);
+		if(nativeItems == null) {
+			List<INNER> listing;
+			try {
+				listing = this.canonicalize(getNativeEntities(groupName));
+			} catch(ServiceException e) {
+				if(e.getHttpStatusCode() != 404) {
+					throw e;
+				}
+				
+				// The group does not exist (yet), so neither does the entity
+				return null;
+			}
+			nativeItems = this.cache(groupName, listing);
+		}
+		
+		return nativeItems.get(name.toLowerCase());
+	}
+	
+	// Returns whether a recent listing of the group is cached
+	final boolean isListed(String groupName) {
+		return this.cache.get(groupName) != null;
+	}
+	
+	// Removes a deleted entity from the cached listing of its group, the inventory snapshot and the tag index
+	final void uncache(String groupName, String name) {
+		this.cache.remove(groupName, name);
+		if(this.inventory() == null && this.subscription.existingTagIndex() == null) {
+			return;
+		}
+		
+		String id = String.format("/subscriptions/%s/resourceGroups/%s/providers/%s/%s", 
+			this.subscription.subscriptionId(), groupName, this.type(), name);
+		if(this.inventory() != null) {
+			this.inventory().remove(this.inventorySection(), id);
+		}
+		if(this.subscription.existingTagIndex() != null) {
+			this.subscription.existingTagIndex().remove(id);
+		}
+	}
+	
+	// Returns the name of the section of the inventory snapshot holding the listings of this collection, or null if not kept there
+	String inventorySection() {
+		return null;
+	}
+	
+	// Returns the class of the native entities kept in the inventory snapshot, required along with the section name
+	Class<INNER> inventoryType() {
+		return null;
+	}
+	
+	// Returns the inventory snapshot if this collection is kept there
+	private InventoryImpl inventory() {
+		return (this.inventorySection() != null && this.inventoryType() != null) ? this.subscription.inventory() : null;
+	}
+	
+	// Lists the native entities, from the inventory snapshot if available and fresh enough
+	final List<INNER> listNativeEntities(String groupName) throws Exception {
+		InventoryImpl inventory = this.inventory();
+		if(inventory == null) {
+			return this.canonicalize((groupName != null) ? getNativeEntities(groupName) : this.getAllNativeEntities());
+		}
+		
+		return this.canonicalize(inventory.list(this.inventorySection(), groupName, new InventoryImpl.Lister<INNER>(this.inventoryType()) {
+			@Override
+			List<INNER> list() throws Exception {
+				return getAllNativeEntities();
+			}
+
+			@Override
+			String id(INNER nativeItem) {
+				return nativeItem.getId();
+			}
+		}));
+	}
+	
+	// Lists the native entities in all the groups, either in a single serial listing or in concurrent listings of each group, 
+	// depending on which has been faster for this collection so far
+	private List<INNER> getAllNativeEntities() throws Exception {
+		ListingStrategy.Strategy strategy = this.listingStrategy.choose();
+		long start = System.currentTimeMillis();
+		List<INNER> nativeItems;
+		if(strategy == ListingStrategy.Strategy.SHARDED) {
+			nativeItems = this.getNativeEntitiesByGroup();
+		} else {
+			nativeItems = getNativeEntities(null);
+			
+			// Sharding cannot help if the entities are in only a few groups
+			Set<String> groupNames = new HashSet<>();
+			for(INNER nativeItem : nativeItems) {
+				String groupName = ResourcesImpl.groupFromResourceId(nativeItem.getId());
+				if(groupName != null) {
+					groupNames.add(groupName.toLowerCase());
+				}
+			}
+			this.listingStrategy.recordGroupCount(groupNames.size());
+		}
+		
+		this.listingStrategy.record(strategy, System.currentTimeMillis() - start);
+		return nativeItems;
+	}
+	
+	// Lists the groups, then the native entities in each group concurrently, caching each group's listing along the way
+	private List<INNER> getNativeEntitiesByGroup() throws Exception {
+		List<Callable<List<INNER>>> calls = new ArrayList<>();
+		for(final String groupName : this.subscription.resourceGroups().asMap().keySet()) {
+			calls.add(new Callable<List<INNER>>() {
+				@Override
+				public List<INNER> call() throws Exception {
+					List<INNER> nativeItems;
+					try {
+						nativeItems = getNativeEntities(groupName);
+					} catch(ServiceException e) {
+						if(e.getHttpStatusCode() != 404) {
+							throw e;
+						}
+						
+						// The group was deleted since it was listed
+						nativeItems = new ArrayList<>();
+					}
+					cache(groupName, nativeItems);
+					return nativeItems;
+				}
+			});
+		}
+		
+		List<INNER> nativeItems = new ArrayList<>();
+		for(List<INNER> groupItems : Parallel.invokeAll(this.subscription.executor(), calls, SHARDING_CONCURRENCY)) {
+			nativeItems.addAll(groupItems);
+		}
+		return nativeItems;
+	}
+	
+	// Replaces the repeated strings in the native entities with canonical instances, if the subscription keeps a dictionary
+	private List<INNER> canonicalize(List<INNER> nativeItems) {
+		StringDictionary strings = this.subscription.strings();
+		if(strings != null) {
+			for(INNER nativeItem : nativeItems) {
+				strings.canonicalize(nativeItem);
+			}
+		}
+		return nativeItems;
+	}
+	
+	private INNER canonicalize(INNER nativeItem) {
+		StringDictionary strings = this.subscription.strings();
+		return (strings != null) ? strings.canonicalize(nativeItem) : nativeItem;
+	}
+	
+	// Updates the tag index, if in use, with a listing of the specified group, or of all groups if null
+	private void index(String groupName, List<INNER> nativeItems) {
+		TagIndexImpl tagIndex = this.subscription.existingTagIndex();
+		if(tagIndex == null) {
+			return;
+		}
+		
+		Map<String, Map<String, String>> tagsById = new HashMap<>();
+		for(INNER nativeItem : nativeItems) {
+			tagsById.put(nativeItem.getId(), nativeItem.getTags());
+		}
+		tagIndex.replace(groupName, this.type(), tagsById);
+	}
+	
+	private Map<String, INNER> cache(String groupName, List<INNER> nativeItems) {
+		Map<String, INNER> indexed = new HashMap<>();
+		for(INNER nativeItem : nativeItems) {
+			indexed.put(nativeItem.getName().toLowerCase(), nativeItem);
+		}
+		this.cache.put(groupName, indexed);
+		return indexed;
+	}
 }
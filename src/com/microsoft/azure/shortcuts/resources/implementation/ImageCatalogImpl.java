@@ -0,0 +1,338 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.microsoft.azure.management.compute.models.VirtualMachineImageListOffersParameters;
+import com.microsoft.azure.management.compute.models.VirtualMachineImageListParameters;
+import com.microsoft.azure.management.compute.models.VirtualMachineImageListPublishersParameters;
+import com.microsoft.azure.management.compute.models.VirtualMachineImageListSkusParameters;
+import com.microsoft.azure.management.compute.models.VirtualMachineImageResource;
+import com.microsoft.azure.management.compute.models.VirtualMachineImageResourceList;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.ImageCatalog;
+import com.microsoft.azure.shortcuts.resources.Region;
+import com.microsoft.windowsazure.exception.ServiceException;
+
+// A catalog of images kept as a tree with a node per region, publisher, offer, SKU and version, the children of each node 
+// indexed by lower case name. A node records when its children were listed, so that only the listings that are missing or 
+// too old are requested again. The tree is saved to its snapshot file as JSON
+class ImageCatalogImpl implements ImageCatalog {
+	// Images change rarely, so by default their listings are kept for a day
+	static final long DEFAULT_MAX_AGE = 24 * 3600 * 1000L;
+	
+	// The maximum number of listings in flight while crawling
+	static final int CRAWL_CONCURRENCY = 16;
+	
+	// The length of the path (region, publisher, offer, SKU) of a node whose children are versions
+	private static final int SKU_PATH_LENGTH = 4;
+	
+	private final Subscription subscription;
+	private final Path path;
+	private final long maxAge;
+	private final ObjectMapper mapper = InventoryImpl.fieldMapper();
+	private Node root = new Node(null);
+	
+	// A node of the catalog, with the time its children were last listed, or 0 if never
+	static class Node {
+		private String name;
+		private long listed;
+		private HashMap<String, Node> children = new HashMap<>();
+		
+		// Used by the JSON mapper
+		Node() {
+		}
+		
+		Node(String name) {
+			this.name = name;
+		}
+	}
+	
+	ImageCatalogImpl(Subscription subscription, String filePath, long maxAge) throws IOException {
+		this.subscription = subscription;
+		this.path = (filePath != null) ? Paths.get(filePath).toAbsolutePath() : null;
+		this.maxAge = maxAge;
+		if(this.path != null && Files.exists(this.path)) {
+			this.root = this.mapper.readValue(this.path.toFile(), Node.class);
+		}
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public List<String> publishers(Region region) throws Exception {
+		return this.names(region.toString());
+	}
+
+	@Override
+	public List<String> offers(Region region, String publisher) throws Exception {
+		return this.names(region.toString(), publisher);
+	}
+
+	@Override
+	public List<String> skus(Region region, String publisher, String offer) throws Exception {
+		return this.names(region.toString(), publisher, offer);
+	}
+
+	@Override
+	public List<String> versions(Region region, String publisher, String offer, String sku) throws Exception {
+		return this.names(region.toString(), publisher, offer, sku);
+	}
+
+	@Override
+	public String latestVersion(Region region, String publisher, String offer, String sku) throws Exception {
+		List<String> versions = this.versions(region, publisher, offer, sku);
+		return (versions.isEmpty()) ? null : versions.get(versions.size() - 1);
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+
+	@Override
+	public ImageCatalogImpl crawl(Region...regions) throws Exception {
+		List<String[]> level = new ArrayList<>();
+		for(Region region : regions) {
+			level.add(new String[] { region.toString() });
+		}
+		
+		while(!level.isEmpty()) {
+			// List the children of the nodes of this level that are missing or too old, concurrently
+			final List<String[]> stalePaths = new ArrayList<>();
+			List<Callable<List<String>>> calls = new ArrayList<>();
+			for(final String[] path : level) {
+				if(this.isStale(this.node(path))) {
+					stalePaths.add(path);
+					calls.add(new Callable<List<String>>() {
+						@Override
+						public List<String> call() throws Exception {
+							return list(path);
+						}
+					});
+				}
+			}
+			
+			List<List<String>> listings = Parallel.invokeAll(this.subscription.executor(), calls, CRAWL_CONCURRENCY);
+			for(int i = 0; i < stalePaths.size(); i++) {
+				this.update(this.node(stalePaths.get(i)), listings.get(i));
+			}
+			
+			// Descend into the children of all the nodes of this level, since fresh nodes may still have stale descendants
+			List<String[]> nextLevel = new ArrayList<>();
+			for(String[] path : level) {
+				if(path.length == SKU_PATH_LENGTH) {
+					continue;
+				}
+				
+				for(String name : this.childNames(path)) {
+					String[] childPath = Arrays.copyOf(path, path.length + 1);
+					childPath[path.length] = name;
+					nextLevel.add(childPath);
+				}
+			}
+			level = nextLevel;
+		}
+		
+		this.save();
+		return this;
+	}
+	
+	
+	// Persists the catalog, replacing the snapshot file atomically
+	synchronized void save() throws IOException {
+		if(this.path == null) {
+			return;
+		}
+		
+		Path temp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+		this.mapper.writeValue(temp.toFile(), this.root);
+		Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Returns the latest version of an image from the catalog without calling Azure, or null if it is not known or too old
+	synchronized String indexedLatestVersion(String location, String publisher, String offer, String sku) {
+		String[] path = new String[] { location, publisher, offer, sku };
+		Node node = this.node(path);
+		if(node == null || this.isStale(node) || node.children.isEmpty()) {
+			return null;
+		}
+		
+		List<String> versions = this.childNames(path);
+		return versions.get(versions.size() - 1);
+	}
+	
+	// Returns the names of the children of the node at the end of the path, listing each node along the path if needed
+	private List<String> names(String...path) throws Exception {
+		for(int length = 1; length <= path.length; length++) {
+			String[] prefix = Arrays.copyOf(path, length);
+			Node node = this.node(prefix);
+			if(node == null) {
+				// The parent was listed and does not have this child
+				return Collections.emptyList();
+			} else if(this.isStale(node)) {
+				this.update(node, this.list(prefix));
+			}
+		}
+		
+		return this.childNames(path);
+	}
+	
+	// Returns the node at the end of the path, or null if not in the catalog. Regions are added as needed
+	private synchronized Node node(String[] path) {
+		Node node = this.root.children.get(path[0].toLowerCase());
+		if(node == null) {
+			node = new Node(path[0]);
+			this.root.children.put(path[0].toLowerCase(), node);
+		}
+		
+		for(int i = 1; i < path.length && node != null; i++) {
+			node = node.children.get(path[i].toLowerCase());
+		}
+		return node;
+	}
+	
+	// Returns the names of the children of the node at the end of the path, versions in version order and the others 
+	// in alphabetical order
+	private synchronized List<String> childNames(String[] path) {
+		Node node = this.node(path);
+		if(node == null) {
+			return Collections.emptyList();
+		}
+		
+		List<String> names = new ArrayList<>();
+		for(Node child : node.children.values()) {
+			names.add(child.name);
+		}
+		Collections.sort(names, (path.length == SKU_PATH_LENGTH) ? VERSION_ORDER : String.CASE_INSENSITIVE_ORDER);
+		return Collections.unmodifiableList(names);
+	}
+	
+	// Replaces the children of a node with a new listing, keeping the existing children still listed along with their descendants
+	private synchronized void update(Node node, List<String> names) {
+		HashMap<String, Node> children = new HashMap<>();
+		for(String name : names) {
+			Node child = node.children.get(name.toLowerCase());
+			if(child == null) {
+				child = new Node(name);
+			} else {
+				child.name = name;
+			}
+			children.put(name.toLowerCase(), child);
+		}
+		
+		node.children = children;
+		node.listed = System.currentTimeMillis();
+	}
+	
+	private synchronized boolean isStale(Node node) {
+		return node != null && System.currentTimeMillis() - node.listed > this.maxAge;
+	}
+	
+	// Lists the names of the children of the node at the end of the path from Azure
+	private List<String> list(String[] path) throws Exception {
+		VirtualMachineImageResourceList response;
+		try {
+			switch(path.length) {
+			case 1:
+				VirtualMachineImageListPublishersParameters publisherParams = new VirtualMachineImageListPublishersParameters();
+				publisherParams.setLocation(path[0]);
+				response = this.subscription.computeManagementClient().getVirtualMachineImagesOperations().listPublishers(publisherParams);
+				break;
+			case 2:
+				VirtualMachineImageListOffersParameters offerParams = new VirtualMachineImageListOffersParameters();
+				offerParams.setLocation(path[0]);
+				offerParams.setPublisherName(path[1]);
+				response = this.subscription.computeManagementClient().getVirtualMachineImagesOperations().listOffers(offerParams);
+				break;
+			case 3:
+				VirtualMachineImageListSkusParameters skuParams = new VirtualMachineImageListSkusParameters();
+				skuParams.setLocation(path[0]);
+				skuParams.setPublisherName(path[1]);
+				skuParams.setOffer(path[2]);
+				response = this.subscription.computeManagementClient().getVirtualMachineImagesOperations().listSkus(skuParams);
+				break;
+			default:
+				VirtualMachineImageListParameters versionParams = new VirtualMachineImageListParameters();
+				versionParams.setLocation(path[0]);
+				versionParams.setPublisherName(path[1]);
+				versionParams.setOffer(path[2]);
+				versionParams.setSkus(path[3]);
+				response = this.subscription.computeManagementClient().getVirtualMachineImagesOperations().list(versionParams);
+				break;
+			}
+		} catch(ServiceException e) {
+			if(e.getHttpStatusCode() != 404) {
+				throw e;
+			}
+			
+			// The parent no longer exists
+			return Collections.emptyList();
+		}
+		
+		List<String> names = new ArrayList<>();
+		for(VirtualMachineImageResource nativeItem : response.getResources()) {
+			names.add(nativeItem.getName());
+		}
+		return names;
+	}
+	
+	// Orders versions by their numeric parts (e.g. 14.04.201507060), falling back to text for non-numeric parts
+	static final Comparator<String> VERSION_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String version1, String version2) {
+			String[] parts1 = version1.split("\\."), parts2 = version2.split("\\.");
+			for(int i = 0; i < Math.min(parts1.length, parts2.length); i++) {
+				int result;
+				try {
+					result = Long.compare(Long.parseLong(parts1[i]), Long.parseLong(parts2[i]));
+				} catch(NumberFormatException e) {
+					result = parts1[i].compareToIgnoreCase(parts2[i]);
+				}
+				if(result != 0) {
+					return result;
+				}
+			}
+			return Integer.compare(parts1.length, parts2.length);
+		}
+	};
+}
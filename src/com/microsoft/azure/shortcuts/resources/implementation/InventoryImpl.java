@@ -0,0 +1,364 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.jackson.annotate.JsonAutoDetect.Visibility;
+import org.codehaus.jackson.annotate.JsonMethod;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
+
+// A local snapshot of the native entities listed from Azure, persisted to a compact binary file and reloaded through a 
+// memory-mapped file channel. Listings are served from the snapshot while it is within the staleness bound, without 
+// calling Azure, and each listing is revalidated in the background once half the bound has passed.
+// The file consists of a header (magic number, format version, section count) followed by one section per listing:
+// the section name, the native entity class name, the time of the listing, the entry count, and the entries, each 
+// made of the lowercase resource ID followed by the length-prefixed JSON serialization of the native entity's fields. Resource snapshots
+// are saved in the same format
+class InventoryImpl {
+	private static final int MAGIC = 0x41534e50;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final Subscription subscription;
+	private final Path path;
+	private final long maxStaleness;
+	private final ObjectMapper mapper = fieldMapper();
+	private final ConcurrentHashMap<String, Section> sections = new ConcurrentHashMap<>();
+	private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	InventoryImpl(Subscription subscription, String filePath, long maxStaleness) throws IOException {
+		this.subscription = subscription;
+		this.path = Paths.get(filePath).toAbsolutePath();
+		this.maxStaleness = maxStaleness;
+		if(Files.exists(this.path)) {
+			this.load();
+		}
+	}
+	
+	
+	/***************************************************
+	 * Verbs
+	 ***************************************************/
+	
+	// Returns the native entities of the specified group (or all if null) from the snapshot if fresh enough, 
+	// else from a complete live listing which replaces the section of the snapshot
+	<T> List<T> list(String sectionName, String groupName, Lister<T> lister) throws Exception {
+		Section section = this.sections.get(sectionName);
+		if(section != null && section.matches(lister.type)) {
+			long age = System.currentTimeMillis() - section.timestamp;
+			if(age <= this.maxStaleness) {
+				List<T> nativeItems = section.decode((groupName != null) ? this.groupPrefix(groupName) : null, lister.type, this.mapper);
+				if(nativeItems != null) {
+					if(age > this.maxStaleness / 2) {
+						this.revalidate(sectionName, lister);
+					}
+					return nativeItems;
+				}
+			}
+		}
+		
+		List<T> nativeItems = lister.list();
+		this.update(sectionName, nativeItems, lister);
+		this.save();
+		
+		if(groupName == null) {
+			return nativeItems;
+		}
+		
+		String prefix = this.groupPrefix(groupName);
+		List<T> groupItems = new ArrayList<>();
+		for(T nativeItem : nativeItems) {
+			if(lister.id(nativeItem).toLowerCase().startsWith(prefix)) {
+				groupItems.add(nativeItem);
+			}
+		}
+		return groupItems;
+	}
+	
+	
+	// Writes a single native entity fetched live through to its section of the snapshot, if any
+	void put(String sectionName, String id, Object nativeItem) throws IOException {
+		Section section = this.sections.get(sectionName);
+		if(section != null && nativeItem != null && id != null) {
+			section.put(id, this.mapper.writeValueAsBytes(nativeItem));
+		}
+	}
+	
+	
+	// Removes a deleted entity from its section of the snapshot, if any
+	void remove(String sectionName, String id) {
+		Section section = this.sections.get(sectionName);
+		if(section != null) {
+			section.entries.remove(id.toLowerCase());
+		}
+	}
+	
+	
+	// Persists the snapshot, replacing the file atomically so that readers never see a partial file
+	synchronized void save() throws IOException {
+		write(this.path, this.sections);
+	}
+	
+	
+	/***************************************************
+	 * Helpers
+	 ***************************************************/
+	
+	// Writes sections to a file in the snapshot format, replacing the file atomically
+	static void write(Path path, Map<String, Section> sections) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putInt(MAGIC).putInt(VERSION).putInt(sections.size()).flip();
+			write(channel, header);
+			
+			for(Map.Entry<String, Section> entry : sections.entrySet()) {
+				Section section = entry.getValue();
+				write(channel, encode(entry.getKey()));
+				write(channel, encode(section.className));
+				
+				Map<String, ByteBuffer> entries = new LinkedHashMap<>(section.entries);
+				ByteBuffer counts = ByteBuffer.allocate(12);
+				counts.putLong(section.timestamp).putInt(entries.size()).flip();
+				write(channel, counts);
+				
+				for(Map.Entry<String, ByteBuffer> item : entries.entrySet()) {
+					ByteBuffer payload = item.getValue().duplicate();
+					payload.rewind();
+					ByteBuffer length = ByteBuffer.allocate(4);
+					length.putInt(payload.remaining()).flip();
+					write(channel, encode(item.getKey()));
+					write(channel, length);
+					write(channel, payload);
+				}
+			}
+			channel.force(true);
+		}
+		
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	// Maps a file in the snapshot format into memory and indexes the entries of its sections, deferring their deserialization 
+	// until read, or returns null if the file is not a snapshot in a known format or is truncated or corrupt. The entries are 
+	// copied out of the mapping, so that they stay valid once the file is replaced, and nothing refers to the mapping after 
+	// this returns, so that it does not keep the file from being replaced (e.g. on Windows) longer than until it is collected
+	static Map<String, Section> read(Path path) throws IOException {
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		
+		if(buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		
+		try {
+			Map<String, Section> sections = new HashMap<>();
+			for(int sectionCount = buffer.getInt(); sectionCount > 0; sectionCount--) {
+				String sectionName = decode(buffer);
+				Section section = new Section(decode(buffer), buffer.getLong());
+				for(int entryCount = buffer.getInt(); entryCount > 0; entryCount--) {
+					String id = decode(buffer);
+					byte[] payload = new byte[length(buffer)];
+					buffer.get(payload);
+					section.entries.put(id, ByteBuffer.wrap(payload));
+				}
+				sections.put(sectionName, section);
+			}
+			return sections;
+		} catch(BufferUnderflowException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	// Returns a JSON mapper for native models, serializing their fields rather than their properties, since the native 
+	// models do not follow the bean conventions consistently
+	static ObjectMapper fieldMapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.setVisibility(JsonMethod.ALL, Visibility.NONE);
+		mapper.setVisibility(JsonMethod.FIELD, Visibility.ANY);
+		mapper.setSerializationInclusion(Inclusion.NON_NULL);
+		mapper.configure(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS, false);
+		mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		return mapper;
+	}
+	
+	// Loads the snapshot file, unless not in a known format or truncated or corrupt, in which case start over with live listings
+	private void load() throws IOException {
+		Map<String, Section> sections = read(this.path);
+		if(sections != null) {
+			this.sections.putAll(sections);
+		}
+	}
+	
+	
+	// Replaces a section of the snapshot with a complete live listing
+	private <T> void update(String sectionName, List<T> nativeItems, Lister<T> lister) throws IOException {
+		Section section = new Section(nativeItems.isEmpty() ? "" : lister.type.getName(), System.currentTimeMillis());
+		for(T nativeItem : nativeItems) {
+			section.put(lister.id(nativeItem), this.mapper.writeValueAsBytes(nativeItem));
+		}
+		this.sections.put(sectionName, section);
+	}
+	
+	
+	// Refreshes a section of the snapshot in the background, at most once at a time per section
+	private <T> void revalidate(final String sectionName, final Lister<T> lister) {
+		if(!this.revalidating.add(sectionName)) {
+			return;
+		}
+		
+		this.subscription.executor().submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					update(sectionName, lister.list(), lister);
+					save();
+				} catch(Exception e) {
+					// Keep serving the snapshot until it exceeds the staleness bound
+				} finally {
+					revalidating.remove(sectionName);
+				}
+			}
+		});
+	}
+	
+	
+	// Returns the lowercase prefix of the IDs of the resources in a group
+	private String groupPrefix(String groupName) {
+		return String.format("/subscriptions/%s/resourcegroups/%s/", this.subscription.subscriptionId(), groupName).toLowerCase();
+	}
+	
+	
+	// Encodes text as its length followed by its UTF-8 bytes
+	private static ByteBuffer encode(String text) {
+		byte[] bytes = text.getBytes(UTF8);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+		buffer.putInt(bytes.length).put(bytes).flip();
+		return buffer;
+	}
+	
+	private static String decode(ByteBuffer buffer) {
+		byte[] bytes = new byte[length(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	// Reads a length prefix, rejecting lengths beyond the end of the buffer
+	private static int length(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if(length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException(String.format("Invalid length '%d' in inventory snapshot.", length));
+		}
+		return length;
+	}
+	
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	
+	// Lists native entities of the specified type live and identifies them by resource ID
+	static abstract class Lister<T> {
+		private final Class<T> type;
+		
+		Lister(Class<T> type) {
+			this.type = type;
+		}
+		
+		abstract List<T> list() throws Exception;
+		abstract String id(T nativeItem);
+	}
+	
+	
+	// A complete listing of one kind of native entity, as serialized entries indexed by lowercase resource ID, held on the heap 
+	// independently of the snapshot file
+	static class Section {
+		private final String className;
+		private final long timestamp;
+		private final ConcurrentHashMap<String, ByteBuffer> entries = new ConcurrentHashMap<>();
+		
+		Section(String className, long timestamp) {
+			this.className = className;
+			this.timestamp = timestamp;
+		}
+		
+		long timestamp() {
+			return this.timestamp;
+		}
+		
+		// Whether the entries were serialized from the specified type, trivially true if there are none
+		boolean matches(Class<?> type) {
+			return this.className.isEmpty() ? this.entries.isEmpty() : this.className.equals(type.getName());
+		}
+		
+		// Adds or replaces the serialized entry of a resource
+		void put(String id, byte[] bytes) {
+			this.entries.put(id.toLowerCase(), ByteBuffer.wrap(bytes));
+		}
+		
+		// Deserializes the entries whose IDs start with the specified lowercase prefix (or all if null) as the type expected by 
+		// the caller, or returns null if any entry cannot be deserialized so that the caller falls back to a live listing
+		<T> List<T> decode(String prefix, Class<T> type, ObjectMapper mapper) {
+			List<T> nativeItems = new ArrayList<>();
+			for(Map.Entry<String, ByteBuffer> entry : new HashMap<>(this.entries).entrySet()) {
+				if(prefix != null && !entry.getKey().startsWith(prefix)) {
+					continue;
+				}
+				
+				ByteBuffer payload = entry.getValue().duplicate();
+				payload.rewind();
+				byte[] bytes = new byte[payload.remaining()];
+				payload.get(bytes);
+				try {
+					nativeItems.add(mapper.readValue(bytes, type));
+				} catch(IOException e) {
+					return null;
+				}
+			}
+			return nativeItems;
+		}
+	}
+}
@@ -19,9 +19,25 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.microsoft.azure.management.network.models.BackendAddressPool;
+import com.microsoft.azure.management.network.models.ChildResource;
 import com.microsoft.azure.management.network.models.FrontendIpConfiguration;
+import com.microsoft.azure.management.network.models.LoadBalancingRule;
+import com.microsoft.azure.management.network.models.Probe;
+import com.microsoft.azure.management.network.models.ProbeProtocol;
 import com.microsoft.azure.management.network.models.ResourceId;
+import com.microsoft.azure.management.network.models.TransportProtocol;
 import com.microsoft.azure.shortcuts.resources.LoadBalancer;
+import com.microsoft.azure.shortcuts.resources.Protocol;
 import com.microsoft.azure.shortcuts.resources.PublicIpAddress;
 
 class LoadBalancerImpl 
@@ -35,6 +51,9 @@ class LoadBalancerImpl
 		LoadBalancer,
 		LoadBalancer.Definition {
 	
+	// The resource IDs of the network interfaces to add to each backend pool once the load balancer is created, by pool name
+	private final Map<String, Set<String>> backendMembers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	
 	LoadBalancerImpl(
 			com.microsoft.azure.management.network.models.LoadBalancer nativeItem, 
 			LoadBalancersImpl collection) {
@@ -46,11 +65,190 @@ class LoadBalancerImpl
 	 * Getters
 	 ***********************************************************/
 	
+	@Override
+	public List<String> backendPools() {
+		return names(this.innerObject().getBackendAddressPools());
+	}
+	
+	@Override
+	public List<String> backendNetworkInterfaces(String poolName) {
+		BackendAddressPool pool = find(this.innerObject().getBackendAddressPools(), poolName);
+		if(pool == null) {
+			return null;
+		}
+		
+		Set<String> nicIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		if(pool.getBackendIpConfigurations() != null) {
+			for(ResourceId ipConfig : pool.getBackendIpConfigurations()) {
+				nicIds.add(LoadBalancersImpl.networkInterfaceId(ipConfig.getId()));
+			}
+		}
+		return Collections.unmodifiableList(new ArrayList<>(nicIds));
+	}
+	
+	@Override
+	public List<String> probes() {
+		return names(this.innerObject().getProbes());
+	}
+	
+	@Override
+	public List<String> loadBalancingRules() {
+		return names(this.innerObject().getLoadBalancingRules());
+	}
+	
 	
 	/**************************************************************
 	 * Setters (fluent interface)
 	 **************************************************************/
 	
+	@Override
+	public LoadBalancerImpl withBackendPool(String name) {
+		this.ensureNotSnapshot();
+		if(find(this.innerObject().getBackendAddressPools(), name) == null) {
+			this.innerObject().getBackendAddressPools().add(newBackendPool(name));
+		}
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerImpl withBackendNetworkInterfaces(String poolName, String... networkInterfaceIds) {
+		this.ensureNotSnapshot();
+		this.withBackendPool(poolName);
+		Set<String> members = this.backendMembers.get(poolName);
+		if(members == null) {
+			members = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			this.backendMembers.put(poolName, members);
+		}
+		Collections.addAll(members, networkInterfaceIds);
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerImpl withTcpProbe(String name, int port) {
+		this.ensureNotSnapshot();
+		put(this.innerObject().getProbes(), newProbe(name, ProbeProtocol.TCP, port, null));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerImpl withHttpProbe(String name, int port, String requestPath) {
+		this.ensureNotSnapshot();
+		put(this.innerObject().getProbes(), newProbe(name, ProbeProtocol.HTTP, port, requestPath));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerImpl withLoadBalancingRule(String name, Protocol protocol, int frontendPort, int backendPort, 
+			String backendPoolName, String probeName) {
+		this.ensureNotSnapshot();
+		put(this.innerObject().getLoadBalancingRules(), newRule(name, protocol, frontendPort, backendPort, backendPoolName, probeName));
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	// Returns the names of child resources
+	private static List<String> names(List<? extends ChildResource> items) {
+		List<String> names = new ArrayList<>();
+		if(items != null) {
+			for(ChildResource item : items) {
+				names.add(item.getName());
+			}
+		}
+		return Collections.unmodifiableList(names);
+	}
+	
+	// Finds a child resource by name
+	static <T extends ChildResource> T find(List<T> items, String name) {
+		if(items != null) {
+			for(T item : items) {
+				if(item.getName().equalsIgnoreCase(name)) {
+					return item;
+				}
+			}
+		}
+		return null;
+	}
+	
+	// Adds a child resource, replacing any existing one of the same name
+	static <T extends ChildResource> void put(List<T> items, T item) {
+		T existing = find(items, item.getName());
+		if(existing != null) {
+			items.set(items.indexOf(existing), item);
+		} else {
+			items.add(item);
+		}
+	}
+	
+	// Creates a native backend pool
+	static BackendAddressPool newBackendPool(String name) {
+		BackendAddressPool pool = new BackendAddressPool();
+		pool.setName(name);
+		return pool;
+	}
+	
+	// Creates a native health probe
+	static Probe newProbe(String name, String protocol, int port, String requestPath) {
+		Probe probe = new Probe();
+		probe.setName(name);
+		probe.setProtocol(protocol);
+		probe.setPort(port);
+		probe.setRequestPath(requestPath);
+		return probe;
+	}
+	
+	// Creates a native load balancing rule, referring to its backend pool and probe by name until resolved
+	static LoadBalancingRule newRule(String name, Protocol protocol, int frontendPort, int backendPort, 
+			String backendPoolName, String probeName) {
+		LoadBalancingRule rule = new LoadBalancingRule();
+		rule.setName(name);
+		switch(protocol) {
+		case TCP:
+			rule.setProtocol(TransportProtocol.TCP);
+			break;
+		case UDP:
+			rule.setProtocol(TransportProtocol.UDP);
+			break;
+		default:
+			throw new IllegalArgumentException("Load balancing rules support only the TCP or UDP protocol, not " + protocol);
+		}
+		rule.setFrontendPort(frontendPort);
+		rule.setBackendPort(backendPort);
+		
+		ResourceId pool = new ResourceId();
+		pool.setId(backendPoolName);
+		rule.setBackendAddressPool(pool);
+		if(probeName != null) {
+			ResourceId probe = new ResourceId();
+			probe.setId(probeName);
+			rule.setProbe(probe);
+		}
+		return rule;
+	}
+	
+	// Expands the backend pool and probe names a rule refers to into resource IDs within the load balancer,
+	// and associates the rule with the frontend if it has none
+	static void resolve(LoadBalancingRule rule, String lbId, String frontendId) {
+		if(rule.getFrontendIPConfiguration() == null) {
+			ResourceId frontend = new ResourceId();
+			frontend.setId(frontendId);
+			rule.setFrontendIPConfiguration(frontend);
+		}
+		resolve(rule.getBackendAddressPool(), lbId, "backendAddressPools");
+		resolve(rule.getProbe(), lbId, "probes");
+	}
+	
+	// Expands a reference by name into the resource ID of a child resource of the load balancer
+	private static void resolve(ResourceId reference, String lbId, String childType) {
+		if(reference != null && reference.getId() != null && !reference.getId().startsWith("/")) {
+			reference.setId(lbId + "/" + childType + "/" + reference.getId());
+		}
+	}
+	
+	
 	/************************************************************
 	 * Verbs
 	 ************************************************************/
@@ -62,6 +260,7 @@ class LoadBalancerImpl
 	
 	@Override
 	public LoadBalancer create() throws Exception {
+		this.ensureNotSnapshot();
 		// Create a group as needed
 		ensureGroup();
 		
@@ -70,20 +269,42 @@ class LoadBalancerImpl
 		ResourceId r  = new ResourceId();
 		r.setId(pip.id());
 		FrontendIpConfiguration ipConfig = new FrontendIpConfiguration();
-		this.inner().getFrontendIpConfigurations().add(ipConfig);
+		this.innerObject().getFrontendIpConfigurations().add(ipConfig);
 		ipConfig.setPublicIpAddress(r);
 		ipConfig.setName(this.name());
 		
-		this.subscription().networkManagementClient().getLoadBalancersOperations().createOrUpdate(this.groupName, this.name(), this.inner());
+		// Refer the rules to the frontend and to the pools and probes of this load balancer
+		String lbId = this.collection.id(this.groupName, this.name());
+		for(LoadBalancingRule rule : this.innerObject().getLoadBalancingRules()) {
+			resolve(rule, lbId, lbId + "/frontendIPConfigurations/" + ipConfig.getName());
+		}
+		
+		this.subscription().networkManagementClient().getLoadBalancersOperations().createOrUpdate(this.groupName, this.name(), this.innerObject());
+		
+		// Add the requested network interfaces to the backend pools, now that the pools exist
+		Map<String, Set<String>> additions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for(Entry<String, Set<String>> entry : this.backendMembers.entrySet()) {
+			for(String nicId : entry.getValue()) {
+				LoadBalancersImpl.addMembership(additions, nicId, lbId + "/backendAddressPools/" + entry.getKey());
+			}
+		}
+		this.collection.updateBackendPools(additions, Collections.<String, Set<String>>emptyMap());
+		this.backendMembers.clear();
+		
 		return this.subscription().loadBalancers().get(this.groupName, this.name());
 	}
 	
 	@Override
 	public LoadBalancerImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 				ResourcesImpl.groupFromResourceId(this.id()), 
 				ResourcesImpl.nameFromResourceId(this.id())));
 		return this;
 	}
+	
+	@Override
+	public LoadBalancerUpdateImpl update() {
+		return new LoadBalancerUpdateImpl(this);
+	}
 }
-
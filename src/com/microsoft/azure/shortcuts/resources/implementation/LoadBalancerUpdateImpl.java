@@ -0,0 +1,386 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.microsoft.azure.management.network.models.BackendAddressPool;
+import com.microsoft.azure.management.network.models.LoadBalancingRule;
+import com.microsoft.azure.management.network.models.Probe;
+import com.microsoft.azure.management.network.models.ProbeProtocol;
+import com.microsoft.azure.management.network.models.ResourceId;
+import com.microsoft.azure.shortcuts.resources.LoadBalancer;
+import com.microsoft.azure.shortcuts.resources.Protocol;
+
+// Implements updates of the backend pools, probes and rules of an existing load balancer
+class LoadBalancerUpdateImpl 
+	implements 
+		LoadBalancer.Update {
+	
+	private final LoadBalancerImpl lb;
+	
+	// The pools, probes and rules to add or replace, and the names of those to remove
+	private final List<BackendAddressPool> definedPools = new ArrayList<>();
+	private final List<Probe> definedProbes = new ArrayList<>();
+	private final List<LoadBalancingRule> definedRules = new ArrayList<>();
+	private final Set<String> removedPools = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	private final Set<String> removedProbes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	private final Set<String> removedRules = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	
+	// The resource IDs of the network interfaces to add to and remove from each backend pool, by pool name
+	private final Map<String, Set<String>> addedMembers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	private final Map<String, Set<String>> removedMembers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	
+	LoadBalancerUpdateImpl(LoadBalancerImpl lb) {
+		this.lb = lb;
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public String id() {
+		return this.lb.id();
+	}
+	
+	
+	/**************************************************************
+	 * Setters (fluent interface)
+	 **************************************************************/
+	
+	@Override
+	public LoadBalancerUpdateImpl withBackendPool(String name) {
+		this.removedPools.remove(name);
+		LoadBalancerImpl.put(this.definedPools, LoadBalancerImpl.newBackendPool(name));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withoutBackendPool(String name) {
+		this.removedPools.add(name);
+		this.definedPools.remove(LoadBalancerImpl.find(this.definedPools, name));
+		this.addedMembers.remove(name);
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withBackendNetworkInterfaces(String poolName, String... networkInterfaceIds) {
+		this.withBackendPool(poolName);
+		for(String nicId : networkInterfaceIds) {
+			addMember(this.addedMembers, poolName, nicId);
+			if(this.removedMembers.containsKey(poolName)) {
+				this.removedMembers.get(poolName).remove(nicId);
+			}
+		}
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withoutBackendNetworkInterfaces(String poolName, String... networkInterfaceIds) {
+		for(String nicId : networkInterfaceIds) {
+			addMember(this.removedMembers, poolName, nicId);
+			if(this.addedMembers.containsKey(poolName)) {
+				this.addedMembers.get(poolName).remove(nicId);
+			}
+		}
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withTcpProbe(String name, int port) {
+		this.removedProbes.remove(name);
+		LoadBalancerImpl.put(this.definedProbes, LoadBalancerImpl.newProbe(name, ProbeProtocol.TCP, port, null));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withHttpProbe(String name, int port, String requestPath) {
+		this.removedProbes.remove(name);
+		LoadBalancerImpl.put(this.definedProbes, LoadBalancerImpl.newProbe(name, ProbeProtocol.HTTP, port, requestPath));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withoutProbe(String name) {
+		this.removedProbes.add(name);
+		this.definedProbes.remove(LoadBalancerImpl.find(this.definedProbes, name));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withLoadBalancingRule(String name, Protocol protocol, int frontendPort, int backendPort,
+			String backendPoolName, String probeName) {
+		this.removedRules.remove(name);
+		LoadBalancerImpl.put(this.definedRules, 
+			LoadBalancerImpl.newRule(name, protocol, frontendPort, backendPort, backendPoolName, probeName));
+		return this;
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl withoutLoadBalancingRule(String name) {
+		this.removedRules.add(name);
+		this.definedRules.remove(LoadBalancerImpl.find(this.definedRules, name));
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public void delete() throws Exception {
+		this.lb.delete();
+	}
+	
+	@Override
+	public LoadBalancerUpdateImpl apply() throws Exception {
+		String groupName = this.lb.resourceGroup();
+		String name = this.lb.name();
+		
+		// Serialize the read-merge-write with the other updates of this load balancer through this subscription, so that 
+		// concurrent updates do not overwrite each other's changes
+		ReentrantLock lock = this.lb.collection.lock(groupName, name);
+		lock.lock();
+		try {
+			com.microsoft.azure.management.network.models.LoadBalancer actual = this.lb.collection.getNativeEntity(groupName, name);
+			String lbId = (actual.getId() != null) ? actual.getId() : this.lb.collection.id(groupName, name);
+			if(actual.getBackendAddressPools() == null) {
+				actual.setBackendAddressPools(new ArrayList<BackendAddressPool>());
+			}
+			if(actual.getProbes() == null) {
+				actual.setProbes(new ArrayList<Probe>());
+			}
+			if(actual.getLoadBalancingRules() == null) {
+				actual.setLoadBalancingRules(new ArrayList<LoadBalancingRule>());
+			}
+		
+			Map<String, Set<String>> removals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			Map<String, Set<String>> additions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			Map<String, Set<String>> additionsToNewPools = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		
+			// Take the network interfaces out of the pools being removed, and out of the pools they are requested to leave
+			boolean isChanged = false;
+			for(String poolName : this.removedPools) {
+				BackendAddressPool pool = LoadBalancerImpl.find(actual.getBackendAddressPools(), poolName);
+				if(pool != null) {
+					for(String nicId : members(pool)) {
+						LoadBalancersImpl.addMembership(removals, nicId, pool.getId());
+					}
+					actual.getBackendAddressPools().remove(pool);
+					isChanged = true;
+				}
+			}
+		
+			for(Entry<String, Set<String>> entry : this.removedMembers.entrySet()) {
+				BackendAddressPool pool = LoadBalancerImpl.find(actual.getBackendAddressPools(), entry.getKey());
+				if(pool != null) {
+					Set<String> members = members(pool);
+					for(String nicId : entry.getValue()) {
+						if(members.contains(nicId)) {
+							LoadBalancersImpl.addMembership(removals, nicId, pool.getId());
+						}
+					}
+				}
+			}
+		
+			// Merge the pool, probe and rule changes into the current configuration
+			for(BackendAddressPool pool : this.definedPools) {
+				if(LoadBalancerImpl.find(actual.getBackendAddressPools(), pool.getName()) == null) {
+					actual.getBackendAddressPools().add(pool);
+					isChanged = true;
+				}
+			}
+		
+			for(Probe probe : this.definedProbes) {
+				Probe actualProbe = LoadBalancerImpl.find(actual.getProbes(), probe.getName());
+				if(actualProbe == null || !isSame(actualProbe, probe)) {
+					LoadBalancerImpl.put(actual.getProbes(), probe);
+					isChanged = true;
+				}
+			}
+			isChanged |= remove(actual.getProbes(), this.removedProbes);
+		
+			String frontendId = actual.getFrontendIpConfigurations().isEmpty() ? null : actual.getFrontendIpConfigurations().get(0).getId();
+			for(LoadBalancingRule rule : this.definedRules) {
+				LoadBalancerImpl.resolve(rule, lbId, frontendId);
+				LoadBalancingRule actualRule = LoadBalancerImpl.find(actual.getLoadBalancingRules(), rule.getName());
+				if(actualRule == null || !isSame(actualRule, rule)) {
+					LoadBalancerImpl.put(actual.getLoadBalancingRules(), rule);
+					isChanged = true;
+				}
+			}
+			isChanged |= remove(actual.getLoadBalancingRules(), this.removedRules);
+			validate(actual);
+		
+			// Join the pools, skipping the current members; joining a new pool has to wait until the pool exists
+			for(Entry<String, Set<String>> entry : this.addedMembers.entrySet()) {
+				BackendAddressPool pool = LoadBalancerImpl.find(actual.getBackendAddressPools(), entry.getKey());
+				if(pool == null) {
+					throw new NoSuchElementException(String.format("Backend pool '%s' not found.", entry.getKey()));
+				}
+				String poolId = lbId + "/backendAddressPools/" + pool.getName();
+				Set<String> members = members(pool);
+				for(String nicId : entry.getValue()) {
+					if(pool.getId() == null) {
+						LoadBalancersImpl.addMembership(additionsToNewPools, nicId, poolId);
+					} else if(!members.contains(nicId)) {
+						LoadBalancersImpl.addMembership(additions, nicId, poolId);
+					}
+				}
+			}
+		
+			// Update each network interface leaving a pool or joining an existing pool once, before the load balancer
+			// changes, so that removed pools are no longer in use
+			this.lb.collection.updateBackendPools(additions, removals);
+			if(isChanged) {
+				this.lb.subscription().networkManagementClient().getLoadBalancersOperations().createOrUpdate(groupName, name, actual);
+			}
+			this.lb.collection.updateBackendPools(additionsToNewPools, Collections.<String, Set<String>>emptyMap());
+		} finally {
+			lock.unlock();
+		}
+		
+		this.reset();
+		if(!this.lb.isSnapshot()) {
+			this.lb.refresh();
+		}
+		return this;
+	}
+	
+	
+	/*********************************************************
+	 * Helpers
+	 *********************************************************/
+	
+	// Clears the requested changes once applied
+	private void reset() {
+		this.definedPools.clear();
+		this.definedProbes.clear();
+		this.definedRules.clear();
+		this.removedPools.clear();
+		this.removedProbes.clear();
+		this.removedRules.clear();
+		this.addedMembers.clear();
+		this.removedMembers.clear();
+	}
+	
+	// Records a network interface to add to or remove from a pool
+	private static void addMember(Map<String, Set<String>> members, String poolName, String nicId) {
+		Set<String> nicIds = members.get(poolName);
+		if(nicIds == null) {
+			nicIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			members.put(poolName, nicIds);
+		}
+		nicIds.add(nicId);
+	}
+	
+	// Returns the resource IDs of the network interfaces currently in a backend pool
+	private static Set<String> members(BackendAddressPool pool) {
+		Set<String> nicIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		if(pool.getBackendIpConfigurations() != null) {
+			for(ResourceId ipConfig : pool.getBackendIpConfigurations()) {
+				nicIds.add(LoadBalancersImpl.networkInterfaceId(ipConfig.getId()));
+			}
+		}
+		return nicIds;
+	}
+	
+	// Fails before any change is sent if a rule references a backend pool or probe missing from the load balancer, 
+	// e.g. one being removed
+	private static void validate(com.microsoft.azure.management.network.models.LoadBalancer lb) {
+		for(LoadBalancingRule rule : lb.getLoadBalancingRules()) {
+			String poolName = childName(id(rule.getBackendAddressPool()));
+			if(poolName != null && LoadBalancerImpl.find(lb.getBackendAddressPools(), poolName) == null) {
+				throw new IllegalArgumentException(String.format(
+					"Load balancing rule '%s' references the missing backend pool '%s'.", rule.getName(), poolName));
+			}
+			
+			String probeName = childName(id(rule.getProbe()));
+			if(probeName != null && LoadBalancerImpl.find(lb.getProbes(), probeName) == null) {
+				throw new IllegalArgumentException(String.format(
+					"Load balancing rule '%s' references the missing probe '%s'.", rule.getName(), probeName));
+			}
+		}
+	}
+	
+	// Returns the name of a child resource from its resource ID, if any
+	private static String childName(String id) {
+		return (id != null) ? id.substring(id.lastIndexOf('/') + 1) : null;
+	}
+	
+	// Removes the named probes or rules, returning whether any were present
+	private static boolean remove(List<? extends com.microsoft.azure.management.network.models.ChildResource> items, Set<String> names) {
+		boolean isRemoved = false;
+		for(int i = items.size() - 1; i >= 0; i--) {
+			if(names.contains(items.get(i).getName())) {
+				items.remove(i);
+				isRemoved = true;
+			}
+		}
+		return isRemoved;
+	}
+	
+	// Determines whether a current probe already matches the requested one, comparing the request path exactly since 
+	// HTTP paths are case-sensitive
+	static boolean isSame(Probe actual, Probe requested) {
+		return isSame(actual.getProtocol(), requested.getProtocol())
+			&& actual.getPort() == requested.getPort()
+			&& (actual.getRequestPath() == null ? requested.getRequestPath() == null : actual.getRequestPath().equals(requested.getRequestPath()));
+	}
+	
+	// Determines whether a current rule already matches the requested one, ignoring the settings left to their defaults
+	static boolean isSame(LoadBalancingRule actual, LoadBalancingRule requested) {
+		return isSame(actual.getProtocol(), requested.getProtocol())
+			&& actual.getFrontendPort() == requested.getFrontendPort()
+			&& isSame(actual.getBackendPort(), requested.getBackendPort())
+			&& isSame(id(actual.getFrontendIPConfiguration()), id(requested.getFrontendIPConfiguration()))
+			&& isSame(id(actual.getBackendAddressPool()), id(requested.getBackendAddressPool()))
+			&& isSame(id(actual.getProbe()), id(requested.getProbe()))
+			&& (requested.getLoadDistribution() == null || isSame(actual.getLoadDistribution(), requested.getLoadDistribution()))
+			&& (requested.getIdleTimeoutInMinutes() == null || requested.getIdleTimeoutInMinutes().equals(actual.getIdleTimeoutInMinutes()))
+			&& actual.isEnableFloatingIP() == requested.isEnableFloatingIP();
+	}
+	
+	// Compares settings, which Azure treats case-insensitively
+	private static boolean isSame(String value1, String value2) {
+		return (value1 == null) ? value2 == null : value1.equalsIgnoreCase(value2);
+	}
+	
+	private static boolean isSame(Integer value1, Integer value2) {
+		return (value1 == null) ? value2 == null : value1.equals(value2);
+	}
+	
+	// Returns the resource ID of a reference, if any
+	private static String id(ResourceId reference) {
+		return (reference != null) ? reference.getId() : null;
+	}
+}
@@ -19,8 +19,26 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.microsoft.azure.management.network.NetworkInterfacesOperations;
+import com.microsoft.azure.management.network.models.BackendAddressPool;
+import com.microsoft.azure.management.network.models.FrontendIpConfiguration;
+import com.microsoft.azure.management.network.models.LoadBalancingRule;
+import com.microsoft.azure.management.network.models.NetworkInterface;
+import com.microsoft.azure.management.network.models.NetworkInterfaceIpConfiguration;
+import com.microsoft.azure.management.network.models.Probe;
+import com.microsoft.azure.management.network.models.ResourceId;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
 import com.microsoft.azure.shortcuts.resources.LoadBalancer;
 import com.microsoft.azure.shortcuts.resources.LoadBalancers;
 
@@ -31,6 +49,14 @@ public class LoadBalancersImpl
 		LoadBalancerImpl>
 	implements LoadBalancers {
 	
+	static final String TYPE = "Microsoft.Network/loadBalancers";
+	
+	// The most network interfaces updated at a time when changing backend pool membership
+	static final int MEMBERSHIP_CONCURRENCY = 16;
+	
+	// The locks serializing the updates of each load balancer, by lower case group and load balancer name
+	private final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+	
 	LoadBalancersImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -39,6 +65,11 @@ public class LoadBalancersImpl
 	public LoadBalancerImpl define(String name) throws Exception {
 		com.microsoft.azure.management.network.models.LoadBalancer azureLB = new com.microsoft.azure.management.network.models.LoadBalancer();
 		azureLB.setName(name);
+		azureLB.setType(TYPE);
+		azureLB.setFrontendIpConfigurations(new ArrayList<FrontendIpConfiguration>());
+		azureLB.setBackendAddressPools(new ArrayList<BackendAddressPool>());
+		azureLB.setProbes(new ArrayList<Probe>());
+		azureLB.setLoadBalancingRules(new ArrayList<LoadBalancingRule>());
 		
 		return wrap(azureLB);
 	}
@@ -46,6 +77,7 @@ public class LoadBalancersImpl
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.networkManagementClient().getLoadBalancersOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 
@@ -53,6 +85,104 @@ public class LoadBalancersImpl
 	 * Helpers
 	 ***************************************************/
 	
+	// Returns the resource ID of a load balancer
+	String id(String groupName, String name) {
+		return String.format("/subscriptions/%s/resourceGroups/%s/providers/%s/%s", 
+			this.subscription.subscriptionId(), groupName, TYPE, name);
+	}
+	
+	// Records a backend pool membership change for a network interface, by their resource IDs
+	static void addMembership(Map<String, Set<String>> changes, String nicId, String poolId) {
+		Set<String> poolIds = changes.get(nicId);
+		if(poolIds == null) {
+			poolIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			changes.put(nicId, poolIds);
+		}
+		poolIds.add(poolId);
+	}
+	
+	// Returns the resource ID of the network interface owning an IP configuration
+	static String networkInterfaceId(String ipConfigId) {
+		int i = ipConfigId.toLowerCase().indexOf("/ipconfigurations/");
+		return (i < 0) ? ipConfigId : ipConfigId.substring(0, i);
+	}
+	
+	// Returns the lock serializing the updates made through this subscription to a load balancer
+	ReentrantLock lock(String groupName, String name) {
+		String key = (groupName + "/" + name).toLowerCase();
+		ReentrantLock lock = this.locks.get(key);
+		if(lock == null) {
+			ReentrantLock newLock = new ReentrantLock();
+			lock = this.locks.putIfAbsent(key, newLock);
+			if(lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+	
+	// Adds and removes network interfaces to and from backend pools, by their resource IDs, updating each network interface
+	// at most once and in parallel
+	void updateBackendPools(Map<String, Set<String>> additions, Map<String, Set<String>> removals) throws Exception {
+		Set<String> nicIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		nicIds.addAll(additions.keySet());
+		nicIds.addAll(removals.keySet());
+		
+		List<Callable<Void>> calls = new ArrayList<>();
+		for(final String nicId : nicIds) {
+			final Set<String> added = additions.containsKey(nicId) ? additions.get(nicId) : Collections.<String>emptySet();
+			final Set<String> removed = removals.containsKey(nicId) ? removals.get(nicId) : Collections.<String>emptySet();
+			calls.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					updateBackendPools(nicId, added, removed);
+					return null;
+				}
+			});
+		}
+		
+		Parallel.invokeAll(this.subscription.executor(), calls, MEMBERSHIP_CONCURRENCY);
+	}
+	
+	// Updates the backend pools of the primary IP configuration of a network interface, if they change
+	private void updateBackendPools(String nicId, Set<String> additions, Set<String> removals) throws Exception {
+		String groupName = ResourcesImpl.groupFromResourceId(nicId);
+		String name = ResourcesImpl.nameFromResourceId(nicId);
+		NetworkInterfacesOperations operations = this.subscription.networkManagementClient().getNetworkInterfacesOperations();
+		NetworkInterface nic = operations.get(groupName, name).getNetworkInterface();
+		NetworkInterfaceIpConfiguration ipConfig = NetworkInterfaceImpl.primaryIpConfiguration(nic);
+		if(ipConfig == null) {
+			throw new NoSuchElementException(String.format("Network interface '%s' has no IP configuration.", nicId));
+		}
+		
+		ArrayList<ResourceId> pools = new ArrayList<>();
+		Set<String> poolIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		boolean isChanged = false;
+		if(ipConfig.getLoadBalancerBackendAddressPools() != null) {
+			for(ResourceId pool : ipConfig.getLoadBalancerBackendAddressPools()) {
+				if(removals.contains(pool.getId())) {
+					isChanged = true;
+				} else if(poolIds.add(pool.getId())) {
+					pools.add(pool);
+				}
+			}
+		}
+		
+		for(String poolId : additions) {
+			if(poolIds.add(poolId)) {
+				ResourceId pool = new ResourceId();
+				pool.setId(poolId);
+				pools.add(pool);
+				isChanged = true;
+			}
+		}
+		
+		if(isChanged) {
+			ipConfig.setLoadBalancerBackendAddressPools(pools);
+			operations.createOrUpdate(groupName, name, nic);
+		}
+	}
+	
 	@Override
 	protected List<com.microsoft.azure.management.network.models.LoadBalancer> getNativeEntities(String resourceGroupName) throws Exception {
 		if(resourceGroupName == null) {
@@ -70,5 +200,10 @@ public class LoadBalancersImpl
 	@Override 
 	protected LoadBalancerImpl wrap(com.microsoft.azure.management.network.models.LoadBalancer nativeItem) {
 		return new LoadBalancerImpl(nativeItem, this);
-	}	
+	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
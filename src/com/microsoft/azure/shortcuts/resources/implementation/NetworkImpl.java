@@ -21,13 +21,20 @@ package com.microsoft.azure.shortcuts.resources.implementation;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.microsoft.azure.management.network.models.VirtualNetwork;
+import com.microsoft.azure.shortcuts.common.implementation.DerivedView;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
 import com.microsoft.azure.shortcuts.resources.Network;
 import com.microsoft.azure.shortcuts.resources.Subnet;
 
@@ -42,6 +49,26 @@ class NetworkImpl
 		Network,
 		Network.Definition {
 	
+	// The subnet wrappers, indexed by name
+	private final DerivedView<Map<String, Subnet>> subnetsView = new DerivedView<Map<String, Subnet>>() {
+		@Override
+		protected Map<String, Subnet> compute() {
+			TreeMap<String, Subnet> wrappers = new TreeMap<>();
+			for(com.microsoft.azure.management.network.models.Subnet nativeObject : innerObject().getSubnets()) {
+				SubnetImpl wrapper = new SubnetImpl(nativeObject, NetworkImpl.this);
+				if(isSnapshot()) {
+					wrapper.freeze();
+				}
+				wrappers.put(wrapper.id(), wrapper);
+			}
+			return Collections.unmodifiableMap(wrappers);
+		}
+	};
+	
+	// The prefix lengths of the address spaces and subnets to allocate on creation
+	private final List<Integer> freeAddressSpaces = new ArrayList<>();
+	private final Map<String, Integer> freeSubnets = new LinkedHashMap<>();
+	
 	NetworkImpl(VirtualNetwork azureVirtualNetwork, NetworksImpl collection) {
 		super(azureVirtualNetwork.getName(), azureVirtualNetwork, collection);
 	}
@@ -52,27 +79,22 @@ class NetworkImpl
 	 ***********************************************************/
 	@Override
 	public String provisioningState() {
-		return this.inner().getProvisioningState();
+		return this.innerObject().getProvisioningState();
 	}
 	
 	@Override
 	public List<String> addressSpaces() {
-		return Collections.unmodifiableList(this.inner().getAddressSpace().getAddressPrefixes());
+		return Collections.unmodifiableList(this.innerObject().getAddressSpace().getAddressPrefixes());
 	}
 	
 	@Override
 	public List<String> dnsServerIPs() {
-		return Collections.unmodifiableList(this.inner().getDhcpOptions().getDnsServers());
+		return Collections.unmodifiableList(this.innerObject().getDhcpOptions().getDnsServers());
 	}
 	
 	@Override
 	public Map<String, Subnet> subnets() {
-		TreeMap<String, Subnet> wrappers = new TreeMap<>();
-		for(com.microsoft.azure.management.network.models.Subnet nativeObject : this.inner().getSubnets()) {
-			SubnetImpl wrapper = new SubnetImpl(nativeObject, this);
-			wrappers.put(wrapper.id(), wrapper);
-		}
-		return Collections.unmodifiableMap(wrappers);
+		return this.subnetsView.get(this.version());
 	}
 	
 	@Override
@@ -87,24 +109,29 @@ class NetworkImpl
 	
 	@Override
 	public NetworkImpl withDnsServer(String ipAddress) {
-		this.inner().getDhcpOptions().getDnsServers().add(ipAddress);
+		this.ensureNotSnapshot();
+		this.innerObject().getDhcpOptions().getDnsServers().add(ipAddress);
 		return this;
 	}
 	
 	@Override
 	public NetworkImpl withSubnet(String name, String cidr) {
+		this.ensureNotSnapshot();
 		com.microsoft.azure.management.network.models.Subnet azureSubnet = new com.microsoft.azure.management.network.models.Subnet(cidr);
 		azureSubnet.setName(name);
-		this.inner().getSubnets().add(azureSubnet);
+		this.innerObject().getSubnets().add(azureSubnet);
+		this.invalidate();
 		return this;
 	}
 	
 	
 	@Override
 	public NetworkImpl withSubnets(Map<String, String> nameCidrPairs) {
+		this.ensureNotSnapshot();
 		ArrayList<com.microsoft.azure.management.network.models.Subnet> azureSubnets = 
 			new ArrayList<com.microsoft.azure.management.network.models.Subnet>();
-		this.inner().setSubnets(azureSubnets);
+		this.innerObject().setSubnets(azureSubnets);
+		this.invalidate();
 		for(Entry<String, String> pair : nameCidrPairs.entrySet()) {
 			this.withSubnet(pair.getKey(), pair.getValue());
 		}
@@ -114,11 +141,211 @@ class NetworkImpl
 	
 	@Override
 	public NetworkImpl withAddressSpace(String cidr) {
-		this.inner().getAddressSpace().getAddressPrefixes().add(cidr);
+		this.ensureNotSnapshot();
+		this.innerObject().getAddressSpace().getAddressPrefixes().add(cidr);
+		return this;
+	}
+	
+	@Override
+	public NetworkImpl withFreeAddressSpace(int prefixLength) {
+		this.ensureNotSnapshot();
+		this.freeAddressSpaces.add(prefixLength);
+		return this;
+	}
+	
+	@Override
+	public NetworkImpl withFreeSubnet(String name, int prefixLength) {
+		this.ensureNotSnapshot();
+		this.freeSubnets.put(name, prefixLength);
 		return this;
 	}
 	
 	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	@Override
+	Set<String> dependencies() {
+		Set<String> dependencies = super.dependencies();
+		for(com.microsoft.azure.management.network.models.Subnet subnet : this.innerObject().getSubnets()) {
+			if(subnet.getNetworkSecurityGroup() != null) {
+				dependencies.add(PlanImpl.key(NetworkSecurityGroupsImpl.TYPE, this.planGroupName(), subnet.getNetworkSecurityGroup().getId()));
+			}
+		}
+		return dependencies;
+	}
+	
+	
+	@Override
+	void diff(VirtualNetwork actual, Differences differences) {
+		super.diff(actual, differences);
+		
+		List<String> addressSpaces = this.innerObject().getAddressSpace().getAddressPrefixes();
+		if(!addressSpaces.isEmpty()) {
+			differences.compare("addressSpaces", actual.getAddressSpace().getAddressPrefixes(), addressSpaces);
+		}
+		
+		List<String> dnsServers = this.innerObject().getDhcpOptions().getDnsServers();
+		if(!dnsServers.isEmpty()) {
+			differences.compare("dnsServers", 
+				(actual.getDhcpOptions() != null) ? actual.getDhcpOptions().getDnsServers() : null, 
+				dnsServers);
+		}
+		
+		// Compare subnets by name
+		if(!this.innerObject().getSubnets().isEmpty()) {
+			TreeMap<String, com.microsoft.azure.management.network.models.Subnet> actualSubnets = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			for(com.microsoft.azure.management.network.models.Subnet subnet : actual.getSubnets()) {
+				actualSubnets.put(subnet.getName(), subnet);
+			}
+			
+			for(com.microsoft.azure.management.network.models.Subnet subnet : this.innerObject().getSubnets()) {
+				com.microsoft.azure.management.network.models.Subnet actualSubnet = actualSubnets.remove(subnet.getName());
+				String field = "subnets." + subnet.getName();
+				if(actualSubnet == null) {
+					differences.add(field, null, subnet.getAddressPrefix());
+				} else {
+					differences.compare(field + ".addressPrefix", actualSubnet.getAddressPrefix(), subnet.getAddressPrefix());
+					differences.compareIgnoreCase(field + ".networkSecurityGroup", 
+						(actualSubnet.getNetworkSecurityGroup() != null) ? actualSubnet.getNetworkSecurityGroup().getId() : null,
+						(subnet.getNetworkSecurityGroup() != null) ? subnet.getNetworkSecurityGroup().getId() : null);
+				}
+			}
+			
+			for(com.microsoft.azure.management.network.models.Subnet subnet : actualSubnets.values()) {
+				differences.add("subnets." + subnet.getName(), subnet.getAddressPrefix(), null);
+			}
+		}
+	}
+	
+	
+	// Allocates the requested free address spaces from the subscription's allocator and adds them to the definition, returning them
+	private List<String> allocateAddressSpaces() throws Exception {
+		List<String> allocated = new ArrayList<>();
+		if(this.freeAddressSpaces.isEmpty()) {
+			return allocated;
+		}
+		
+		CidrAllocatorImpl allocator = (CidrAllocatorImpl) this.subscription().cidrAllocator();
+		for(int prefixLength : this.freeAddressSpaces) {
+			String cidr = allocator.allocate(prefixLength);
+			if(cidr == null) {
+				for(String addressSpace : allocated) {
+					allocator.release(addressSpace);
+					this.innerObject().getAddressSpace().getAddressPrefixes().remove(addressSpace);
+				}
+				throw new NoSuchElementException(String.format("No free address space of prefix length %d left.", prefixLength));
+			}
+			allocated.add(cidr);
+			this.withAddressSpace(cidr);
+		}
+		
+		this.freeAddressSpaces.clear();
+		return allocated;
+	}
+	
+	// Carves the requested free subnets out of the address spaces, around the subnets already specified, and adds them to the 
+	// definition all or none, returning their requested prefix lengths by name
+	private Map<String, Integer> allocateSubnets() {
+		Map<String, Integer> allocated = new LinkedHashMap<>(this.freeSubnets);
+		if(allocated.isEmpty()) {
+			return allocated;
+		}
+		
+		CidrAllocatorImpl allocator = new CidrAllocatorImpl(null, this.addressSpaces());
+		for(com.microsoft.azure.management.network.models.Subnet subnet : this.innerObject().getSubnets()) {
+			allocator.reserveIfValid(subnet.getAddressPrefix());
+		}
+		
+		Map<String, String> cidrs = new LinkedHashMap<>();
+		for(Entry<String, Integer> entry : allocated.entrySet()) {
+			String cidr = allocator.allocate(entry.getValue());
+			if(cidr == null) {
+				throw new NoSuchElementException(String.format("No free subnet of prefix length %d left in virtual network '%s'.", 
+					entry.getValue(), this.name()));
+			}
+			cidrs.put(entry.getKey(), cidr);
+		}
+		
+		for(Entry<String, String> entry : cidrs.entrySet()) {
+			this.withSubnet(entry.getKey(), entry.getValue());
+		}
+		this.freeSubnets.clear();
+		return allocated;
+	}
+	
+	// Undoes the allocations of a failed creation: returns the allocated address spaces to the subscription's allocator and 
+	// removes them, the allocated subnets and the default subnet if any from the definition, requesting the allocations again 
+	// so that a retry allocates them afresh
+	private void releaseAllocations(List<String> addressSpaces, Map<String, Integer> subnets, String defaultSubnet) {
+		CidrAllocatorImpl allocator = this.subscription().existingCidrAllocator();
+		List<Integer> prefixLengths = new ArrayList<>();
+		for(String addressSpace : addressSpaces) {
+			if(allocator != null) {
+				allocator.release(addressSpace);
+			}
+			this.innerObject().getAddressSpace().getAddressPrefixes().remove(addressSpace);
+			prefixLengths.add(Integer.parseInt(addressSpace.substring(addressSpace.indexOf('/') + 1)));
+		}
+		prefixLengths.addAll(this.freeAddressSpaces);
+		this.freeAddressSpaces.clear();
+		this.freeAddressSpaces.addAll(prefixLengths);
+		
+		Iterator<com.microsoft.azure.management.network.models.Subnet> iter = this.innerObject().getSubnets().iterator();
+		while(iter.hasNext()) {
+			String name = iter.next().getName();
+			if(subnets.containsKey(name) || name.equals(defaultSubnet)) {
+				iter.remove();
+			}
+		}
+		Map<String, Integer> freeSubnets = new LinkedHashMap<>(subnets);
+		freeSubnets.putAll(this.freeSubnets);
+		this.freeSubnets.clear();
+		this.freeSubnets.putAll(freeSubnets);
+		this.invalidate();
+	}
+	
+	// Replaces the subnet of the given name in the local model, or removes it if null, on a copy of the inner object published 
+	// as a whole, so that concurrent readers never see the subnets being changed
+	private synchronized void replaceSubnet(String name, com.microsoft.azure.management.network.models.Subnet subnet) throws Exception {
+		if(this.isSnapshot()) {
+			return;
+		}
+		
+		VirtualNetwork inner = copy(this.innerObject());
+		ArrayList<com.microsoft.azure.management.network.models.Subnet> subnets = new ArrayList<>();
+		for(com.microsoft.azure.management.network.models.Subnet existing : inner.getSubnets()) {
+			if(!existing.getName().equalsIgnoreCase(name)) {
+				subnets.add(existing);
+			}
+		}
+		
+		if(subnet != null) {
+			subnets.add(subnet);
+		}
+		inner.setSubnets(subnets);
+		this.setInner(inner);
+	}
+	
+	// Creates or updates a single subnet in Azure, serialized with the other changes to this network
+	SubnetImpl putSubnet(com.microsoft.azure.management.network.models.Subnet subnet) throws Exception {
+		String groupName = this.resourceGroup();
+		ReentrantLock lock = this.collection.lock(groupName, this.name());
+		lock.lock();
+		try {
+			this.subscription().networkManagementClient().getSubnetsOperations().createOrUpdate(
+				groupName, this.name(), subnet.getName(), subnet);
+			com.microsoft.azure.management.network.models.Subnet actual = this.subscription().networkManagementClient()
+				.getSubnetsOperations().get(groupName, this.name(), subnet.getName()).getSubnet();
+			this.replaceSubnet(actual.getName(), actual);
+			return new SubnetImpl(actual, this);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	
 	/************************************************************
 	 * Verbs
 	 ************************************************************/
@@ -130,25 +357,55 @@ class NetworkImpl
 	
 	@Override
 	public Network create() throws Exception {
+		this.ensureNotSnapshot();
 		// Create a group as needed
 		ensureGroup();
 	
+		// Allocate the requested free address spaces
+		List<String> allocatedAddressSpaces = this.allocateAddressSpaces();
+		Map<String, Integer> allocatedSubnets = new LinkedHashMap<>();
+		String defaultSubnet = null;
+		
 		// Ensure address spaces
 		if(this.addressSpaces().size() == 0) {
 			this.withAddressSpace("10.0.0.0/16");
 		}
 		
-		// Create a subnet as needed, covering the entire first address space
-		if(this.subnets().size() == 0) {
-			this.withSubnet("subnet1", this.addressSpaces().get(0));
+		try {
+			allocatedSubnets = this.allocateSubnets();
+			
+			// Create a subnet as needed, covering the entire first address space
+			if(this.subnets().size() == 0) {
+				defaultSubnet = "subnet1";
+				this.withSubnet(defaultSubnet, this.addressSpaces().get(0));
+			}
+			
+			ReentrantLock lock = this.collection.lock(this.groupName, this.name());
+			lock.lock();
+			try {
+				this.subscription().networkManagementClient().getVirtualNetworksOperations().createOrUpdate(this.groupName, this.name(), this.innerObject());
+			} finally {
+				lock.unlock();
+			}
+		} catch(Exception e) {
+			this.releaseAllocations(allocatedAddressSpaces, allocatedSubnets, defaultSubnet);
+			throw e;
+		}
+		
+		// Keep the address space allocator current, if in use
+		CidrAllocatorImpl allocator = this.subscription().existingCidrAllocator();
+		if(allocator != null) {
+			for(String addressSpace : this.addressSpaces()) {
+				allocator.reserveIfValid(addressSpace);
+			}
 		}
 		
-		this.subscription().networkManagementClient().getVirtualNetworksOperations().createOrUpdate(this.groupName, this.name(), this.inner());
 		return this.subscription().networks().get(this.groupName, this.name());	
 	}
 	
 	@Override
 	public NetworkImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 				ResourcesImpl.groupFromResourceId(this.id()), 
 				ResourcesImpl.nameFromResourceId(this.id())));
@@ -156,8 +413,73 @@ class NetworkImpl
 	}
 
 
+	@Override
+	public Subnet createSubnet(String name, String cidr) throws Exception {
+		com.microsoft.azure.management.network.models.Subnet subnet = new com.microsoft.azure.management.network.models.Subnet();
+		subnet.setName(name);
+		subnet.setAddressPrefix(cidr);
+		return this.putSubnet(subnet);
+	}
+	
+	@Override
+	public Subnet createFreeSubnet(String name, int prefixLength) throws Exception {
+		ReentrantLock lock = this.collection.lock(this.resourceGroup(), this.name());
+		lock.lock();
+		try {
+			// Allocate around the subnets currently in Azure, since other clients may have changed them
+			VirtualNetwork actual = this.collection.getNativeEntity(this.resourceGroup(), this.name());
+			CidrAllocatorImpl allocator = new CidrAllocatorImpl(null, actual.getAddressSpace().getAddressPrefixes());
+			for(com.microsoft.azure.management.network.models.Subnet subnet : actual.getSubnets()) {
+				allocator.reserveIfValid(subnet.getAddressPrefix());
+			}
+			
+			String cidr = allocator.allocate(prefixLength);
+			if(cidr == null) {
+				throw new NoSuchElementException(String.format("No free subnet of prefix length %d left in virtual network '%s'.", 
+					prefixLength, this.name()));
+			}
+			return this.createSubnet(name, cidr);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public SubnetImpl updateSubnet(String name) {
+		for(com.microsoft.azure.management.network.models.Subnet subnet : this.innerObject().getSubnets()) {
+			if(!subnet.getName().equalsIgnoreCase(name)) {
+				continue;
+			}
+			
+			// Work on a copy so the local model only changes once Azure accepts the update
+			com.microsoft.azure.management.network.models.Subnet copy = new com.microsoft.azure.management.network.models.Subnet();
+			copy.setName(subnet.getName());
+			copy.setId(subnet.getId());
+			copy.setAddressPrefix(subnet.getAddressPrefix());
+			copy.setNetworkSecurityGroup(subnet.getNetworkSecurityGroup());
+			copy.setRouteTable(subnet.getRouteTable());
+			return new SubnetImpl(copy, this);
+		}
+		
+		throw new NoSuchElementException(String.format("Subnet '%s' not found in virtual network '%s'.", name, this.name()));
+	}
+	
+	@Override
+	public void deleteSubnet(String name) throws Exception {
+		String groupName = this.resourceGroup();
+		ReentrantLock lock = this.collection.lock(groupName, this.name());
+		lock.lock();
+		try {
+			this.subscription().networkManagementClient().getSubnetsOperations().delete(groupName, this.name(), name);
+			this.replaceSubnet(name, null);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
 	@Override
 	public SubnetImpl defineSubnet(String name) {
+		this.ensureNotSnapshot();
 		com.microsoft.azure.management.network.models.Subnet nativeItem = new com.microsoft.azure.management.network.models.Subnet();
 		nativeItem.setName(name);
 		return new SubnetImpl(nativeItem, this);
@@ -19,17 +19,26 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import com.microsoft.azure.management.network.models.IpAllocationMethod;
 import com.microsoft.azure.management.network.models.NetworkInterfaceIpConfiguration;
 import com.microsoft.azure.management.network.models.ResourceId;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
 import com.microsoft.azure.shortcuts.resources.Network;
 import com.microsoft.azure.shortcuts.resources.NetworkInterface;
 import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityPolicy;
 import com.microsoft.azure.shortcuts.resources.PublicIpAddress;
 import com.microsoft.azure.shortcuts.resources.Subnet;
+import com.microsoft.windowsazure.exception.ServiceException;
 
 class NetworkInterfaceImpl 
 	extends 
@@ -56,8 +65,17 @@ class NetworkInterfaceImpl
 	 * Helpers
 	 ***********************************************************/
 	private NetworkInterfaceIpConfiguration getPrimaryIpConfiguration() {
+		return primaryIpConfiguration(this.innerObject()); 
+	}
+	
+	// Returns the primary IP configuration of a native network interface, or null if it has none
+	static NetworkInterfaceIpConfiguration primaryIpConfiguration(com.microsoft.azure.management.network.models.NetworkInterface nic) {
 		// TODO: in the future, Azure will support multiple ipConfigs on a NIC, but currently it doesn't, so the first one can be assumed to be the primary
-		return this.inner().getIpConfigurations().get(0); 
+		if(nic.getIpConfigurations() == null || nic.getIpConfigurations().isEmpty()) {
+			return null;
+		} else {
+			return nic.getIpConfigurations().get(0);
+		}
 	}
 	
 	private NetworkSecurityGroup ensureNSG() throws Exception {
@@ -81,27 +99,81 @@ class NetworkInterfaceImpl
 		}
 	}
 	
+	@Override
+	Set<String> dependencies() {
+		Set<String> dependencies = super.dependencies();
+		if(this.isExistingNSG && this.nsgId != null) {
+			dependencies.add(PlanImpl.key(NetworkSecurityGroupsImpl.TYPE, this.planGroupName(), this.nsgId));
+		}
+		return dependencies;
+	}
+	
 	
 	/***********************************************************
 	 * Getters
 	 ***********************************************************/
 	
 	@Override
-	public Map<String, PublicIpAddress> publicIpAddresses() {
+	public Map<String, PublicIpAddress> publicIpAddresses() throws Exception {
+		// Retrieve the public IP addresses of all the IP configurations concurrently
+		List<Callable<PublicIpAddress>> calls = new ArrayList<>();
+		for(NetworkInterfaceIpConfiguration ipConfig : this.innerObject().getIpConfigurations()) {
+			final ResourceId pipId = ipConfig.getPublicIpAddress();
+			if(pipId != null) {
+				calls.add(new Callable<PublicIpAddress>() {
+					@Override
+					public PublicIpAddress call() throws Exception {
+						try {
+							return subscription().publicIpAddresses(pipId.getId());
+						} catch(ServiceException e) {
+							if(e.getHttpStatusCode() != 404) {
+								throw e;
+							}
+							
+							// The public IP address was deleted since the network interface was read
+							return null;
+						}
+					}
+				});
+			}
+		}
+		
 		TreeMap<String, PublicIpAddress> pips = new TreeMap<>();
-		try {
-			for(NetworkInterfaceIpConfiguration ipConfig : this.inner().getIpConfigurations()) {
-				ResourceId pipId = ipConfig.getPublicIpAddress();
-				if(pipId == null) {
-					continue;
-				} else {
-					PublicIpAddress pip = this.subscription().publicIpAddresses(pipId.getId());
-					pips.put(pip.id(), pip);						
-				}
+		for(PublicIpAddress pip : Parallel.invokeAll(this.subscription().executor(), calls, 0)) {
+			if(pip != null) {
+				pips.put(pip.id(), pip);
+			}
+		}
+		return Collections.unmodifiableMap(pips);
+	}
+	
+	
+	@Override
+	public NetworkSecurityPolicy effectiveSecurityPolicy() throws Exception {
+		NetworkSecurityPolicy policy = null;
+		
+		// The policy of the subnet applies first to inbound flows, with its network's address spaces as the virtual network
+		ResourceId subnetId = this.getPrimaryIpConfiguration().getSubnet();
+		Map<String, List<String>> addressTags = null;
+		if(subnetId != null && subnetId.getId() != null) {
+			String id = subnetId.getId();
+			int i = id.toLowerCase().lastIndexOf("/subnets/");
+			Network network = this.subscription().networks(id.substring(0, i));
+			addressTags = new HashMap<>();
+			addressTags.put(NetworkSecurityPolicyImpl.VIRTUAL_NETWORK, network.addressSpaces());
+			Subnet subnet = network.subnets().get(id.substring(i + "/subnets/".length()));
+			if(subnet != null && subnet.networkSecurityGroup() != null) {
+				policy = ((NetworkSecurityGroupImpl) this.subscription().networkSecurityGroups(subnet.networkSecurityGroup())).policy(addressTags);
 			}
-		} catch (Exception e) {
 		}
-		return pips;
+		
+		ResourceId nsgId = this.innerObject().getNetworkSecurityGroup();
+		if(nsgId != null && nsgId.getId() != null) {
+			NetworkSecurityPolicy nicPolicy = ((NetworkSecurityGroupImpl) this.subscription().networkSecurityGroups(nsgId.getId())).policy(addressTags);
+			policy = (policy != null) ? policy.and(nicPolicy) : nicPolicy;
+		}
+		
+		return (policy != null) ? policy : NetworkSecurityPolicyImpl.ALLOW_ALL;
 	}
 	
 	
@@ -111,11 +183,12 @@ class NetworkInterfaceImpl
 	
 	@Override
 	public DefinitionCreatable withExistingNetworkSecurityGroup(String id) {
+		this.ensureNotSnapshot();
 		this.isExistingNSG = true;
 		this.nsgId = id;
 		ResourceId resourceId = new ResourceId();
 		resourceId.setId(id);
-		this.inner().setNetworkSecurityGroup(resourceId);
+		this.innerObject().setNetworkSecurityGroup(resourceId);
 		return this;
 	}
 
@@ -140,11 +213,20 @@ class NetworkInterfaceImpl
 	
 	@Override
 	public void delete() throws Exception {
+		NetworkInterfaceIpConfiguration ipConfig = this.getPrimaryIpConfiguration();
 		this.subscription().networkInterfaces().delete(this.id());
+		
+		// Return the private IP to the allocator of the subnet, if in use
+		PrivateIpAllocatorImpl allocator = this.subscription().existingPrivateIpAllocator(
+			(ipConfig.getSubnet() != null) ? ipConfig.getSubnet().getId() : null);
+		if(allocator != null && ipConfig.getPrivateIpAddress() != null) {
+			allocator.release(ipConfig.getPrivateIpAddress());
+		}
 	}
 	
 	@Override
 	public NetworkInterface create() throws Exception {
+		this.ensureNotSnapshot();
 		// Create a group as needed
 		ensureGroup();
 	
@@ -159,7 +241,8 @@ class NetworkInterfaceImpl
 		ipConfig.setName(subnet.inner().getName());
 		ipConfig.setSubnet(subnet.inner());
 		
-		// Set the private IP
+		// Set the private IP, allocating a free one if requested
+		String allocatedIpAddress = ensurePrivateIpAddress(subnet);
 		ipConfig.setPrivateIpAllocationMethod((this.privateIpAddress != null) ? IpAllocationMethod.STATIC : IpAllocationMethod.DYNAMIC);
 		ipConfig.setPrivateIpAddress(this.privateIpAddress);
 	
@@ -177,12 +260,27 @@ class NetworkInterfaceImpl
 			this.withExistingNetworkSecurityGroup(nsg);
 		}
 		
-		this.subscription().networkManagementClient().getNetworkInterfacesOperations().createOrUpdate(this.groupName, this.name(), this.inner());
-		return this.subscription().networkInterfaces().get(this.groupName, this.name());
+		try {
+			this.subscription().networkManagementClient().getNetworkInterfacesOperations().createOrUpdate(this.groupName, this.name(), this.innerObject());
+		} catch(Exception e) {
+			releasePrivateIpAddress(subnet, allocatedIpAddress);
+			throw e;
+		}
+		
+		NetworkInterface nic = this.subscription().networkInterfaces().get(this.groupName, this.name());
+		
+		// Keep the private IP allocator of the subnet current, if in use
+		PrivateIpAllocatorImpl allocator = this.subscription().existingPrivateIpAllocator(subnet.inner().getId());
+		String address = nic.inner().getIpConfigurations().get(0).getPrivateIpAddress();
+		if(allocator != null && address != null) {
+			allocator.reserve(address);
+		}
+		return nic;
 	}
 	
 	@Override
 	public NetworkInterfaceImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 			ResourcesImpl.groupFromResourceId(this.id()), 
 			ResourcesImpl.nameFromResourceId(this.id())));
@@ -196,6 +294,7 @@ class NetworkInterfaceImpl
 
 	@Override
 	public DefinitionCreatable withNewNetworkSecurityGroup(String name) {
+		this.ensureNotSnapshot();
 		this.isExistingNSG = false;
 		this.nsgId = name;
 		return this;
@@ -34,6 +34,8 @@ public class NetworkInterfacesImpl
 		NetworkInterfaceImpl>
 	implements NetworkInterfaces {
 		
+	static final String TYPE = "Microsoft.Network/networkInterfaces";
+	
 	NetworkInterfacesImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -42,6 +44,7 @@ public class NetworkInterfacesImpl
 	public NetworkInterfaceImpl define(String name) throws Exception {
 		com.microsoft.azure.management.network.models.NetworkInterface azureNetworkInterface = new com.microsoft.azure.management.network.models.NetworkInterface();
 		azureNetworkInterface.setName(name);
+		azureNetworkInterface.setType(TYPE);
 		
 		// Default IP configs, creating Primary by default
 		azureNetworkInterface.setIpConfigurations(new ArrayList<NetworkInterfaceIpConfiguration>(Arrays.asList(new NetworkInterfaceIpConfiguration())));
@@ -54,6 +57,7 @@ public class NetworkInterfacesImpl
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.networkManagementClient().getNetworkInterfacesOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 
@@ -79,4 +83,19 @@ public class NetworkInterfacesImpl
 	protected NetworkInterfaceImpl wrap(com.microsoft.azure.management.network.models.NetworkInterface nativeItem) {
 		return new NetworkInterfaceImpl(nativeItem, this);
 	}
+	
+	@Override
+	String inventorySection() {
+		return TYPE;
+	}
+	
+	@Override
+	Class<com.microsoft.azure.management.network.models.NetworkInterface> inventoryType() {
+		return com.microsoft.azure.management.network.models.NetworkInterface.class;
+	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
@@ -19,8 +19,18 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 import com.microsoft.azure.management.network.models.SecurityRule;
+import com.microsoft.azure.shortcuts.common.implementation.DerivedView;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
 import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityPolicy;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityRule;
 
 class NetworkSecurityGroupImpl 
 	extends 
@@ -33,6 +43,33 @@ class NetworkSecurityGroupImpl
 		NetworkSecurityGroup,
 		NetworkSecurityGroup.Definition {
 	
+	// The custom security rule wrappers, indexed by name
+	private final DerivedView<Map<String, NetworkSecurityRule>> rulesView = new DerivedView<Map<String, NetworkSecurityRule>>() {
+		@Override
+		protected Map<String, NetworkSecurityRule> compute() {
+			TreeMap<String, NetworkSecurityRule> wrappers = new TreeMap<>();
+			if(innerObject().getSecurityRules() != null) {
+				for(SecurityRule nativeItem : innerObject().getSecurityRules()) {
+					NetworkSecurityRuleImpl<NetworkSecurityGroupImpl> wrapper = 
+						new NetworkSecurityRuleImpl<NetworkSecurityGroupImpl>(nativeItem, NetworkSecurityGroupImpl.this);
+					if(isSnapshot()) {
+						wrapper.freeze();
+					}
+					wrappers.put(nativeItem.getName(), wrapper);
+				}
+			}
+			return Collections.unmodifiableMap(wrappers);
+		}
+	};
+	
+	// The security rules compiled with the default address tags
+	private final DerivedView<NetworkSecurityPolicyImpl> policyView = new DerivedView<NetworkSecurityPolicyImpl>() {
+		@Override
+		protected NetworkSecurityPolicyImpl compute() {
+			return policy(null);
+		}
+	};
+	
 	NetworkSecurityGroupImpl(com.microsoft.azure.management.network.models.NetworkSecurityGroup azureItem, 
 			NetworkSecurityGroupsImpl collection) {
 		super(azureItem.getName(), azureItem, collection);
@@ -43,10 +80,80 @@ class NetworkSecurityGroupImpl
 	 * Getters
 	 ***********************************************************/
 	
+	@Override
+	public Map<String, NetworkSecurityRule> rules() {
+		return this.rulesView.get(this.version());
+	}
+	
+	@Override
+	public NetworkSecurityPolicy policy() {
+		return this.policyView.get(this.version());
+	}
+	
+	@Override
+	public NetworkSecurityPolicyImpl policy(Map<String, List<String>> addressTags) {
+		return NetworkSecurityPolicyImpl.compile(
+			this.innerObject().getSecurityRules(), 
+			this.innerObject().getDefaultSecurityRules(), 
+			addressTags);
+	}
+	
+	
 	/**************************************************************
 	 * Setters (fluent interface)
 	 **************************************************************/
 	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	// Creates a native security rule with the default priority
+	static SecurityRule newRule(String name) {
+		SecurityRule nativeItem = new SecurityRule();
+		nativeItem.setName(name);
+		nativeItem.setPriority(100);
+		return nativeItem;
+	}
+	
+	@Override
+	void diff(com.microsoft.azure.management.network.models.NetworkSecurityGroup actual, Differences differences) {
+		super.diff(actual, differences);
+		
+		// Compare rules by name, since the definition describes the complete set of custom rules
+		TreeMap<String, SecurityRule> actualRules = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		if(actual.getSecurityRules() != null) {
+			for(SecurityRule rule : actual.getSecurityRules()) {
+				actualRules.put(rule.getName(), rule);
+			}
+		}
+		
+		ArrayList<SecurityRule> rules = this.innerObject().getSecurityRules();
+		if(rules != null) {
+			for(SecurityRule rule : rules) {
+				SecurityRule actualRule = actualRules.remove(rule.getName());
+				String field = "securityRules." + rule.getName();
+				if(actualRule == null) {
+					differences.add(field, null, "present");
+				} else {
+					differences
+						.compareIgnoreCase(field + ".protocol", actualRule.getProtocol(), rule.getProtocol())
+						.compare(field + ".sourcePortRange", actualRule.getSourcePortRange(), rule.getSourcePortRange())
+						.compare(field + ".destinationPortRange", actualRule.getDestinationPortRange(), rule.getDestinationPortRange())
+						.compareIgnoreCase(field + ".sourceAddressPrefix", actualRule.getSourceAddressPrefix(), rule.getSourceAddressPrefix())
+						.compareIgnoreCase(field + ".destinationAddressPrefix", actualRule.getDestinationAddressPrefix(), rule.getDestinationAddressPrefix())
+						.compareIgnoreCase(field + ".access", actualRule.getAccess(), rule.getAccess())
+						.compare(field + ".priority", actualRule.getPriority(), rule.getPriority())
+						.compareIgnoreCase(field + ".direction", actualRule.getDirection(), rule.getDirection());
+				}
+			}
+		}
+		
+		for(String name : actualRules.keySet()) {
+			differences.add("securityRules." + name, "present", null);
+		}
+	}
+	
+	
 	/************************************************************
 	 * Verbs
 	 ************************************************************/
@@ -58,15 +165,17 @@ class NetworkSecurityGroupImpl
 	
 	@Override
 	public NetworkSecurityGroup create() throws Exception {
+		this.ensureNotSnapshot();
 		// Create a group as needed
 		ensureGroup();
 	
-		this.subscription().networkManagementClient().getNetworkSecurityGroupsOperations().createOrUpdate(this.groupName, this.name(), this.inner());
+		this.subscription().networkManagementClient().getNetworkSecurityGroupsOperations().createOrUpdate(this.groupName, this.name(), this.innerObject());
 		return this.subscription().networkSecurityGroups().get(this.groupName, this.name());
 	}
 	
 	@Override
 	public NetworkSecurityGroup refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 				ResourcesImpl.groupFromResourceId(this.id()), 
 				ResourcesImpl.nameFromResourceId(this.id())));
@@ -74,10 +183,13 @@ class NetworkSecurityGroupImpl
 	}
 	
 	@Override
-	public NetworkSecurityRuleImpl defineRule(String name) {
-		SecurityRule nativeItem = new SecurityRule();
-		nativeItem.setName(name);
-		nativeItem.setPriority(100);
-		return new NetworkSecurityRuleImpl(nativeItem, this);
+	public NetworkSecurityRuleImpl<DefinitionCreatable> defineRule(String name) {
+		this.ensureNotSnapshot();
+		return new NetworkSecurityRuleImpl<DefinitionCreatable>(newRule(name), this, this.innerObject().getSecurityRules(), this);
+	}
+	
+	@Override
+	public NetworkSecurityGroupUpdateImpl update() {
+		return new NetworkSecurityGroupUpdateImpl(this);
 	}
 }
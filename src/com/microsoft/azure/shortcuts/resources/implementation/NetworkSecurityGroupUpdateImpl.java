@@ -0,0 +1,211 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.microsoft.azure.management.network.models.SecurityRule;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
+
+// Implements rule-level updates of an existing NSG, sending only the changed rules, one operation at a time
+class NetworkSecurityGroupUpdateImpl 
+	implements 
+		NetworkSecurityGroup.Update {
+	
+	// The most rule changes sent as individual rule operations; Azure serializes the operations on an NSG and rejects those 
+	// overlapping another in progress, so they are sent one at a time, and beyond this a single PUT of the whole NSG completes sooner
+	static final int MAX_RULE_OPERATIONS = 4;
+	
+	private final NetworkSecurityGroupImpl nsg;
+	
+	// The rules to add or replace, in the order defined, and the names of the rules to remove
+	private final List<SecurityRule> definedRules = new ArrayList<>();
+	private final Set<String> removedRules = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	
+	NetworkSecurityGroupUpdateImpl(NetworkSecurityGroupImpl nsg) {
+		this.nsg = nsg;
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public String id() {
+		return this.nsg.id();
+	}
+	
+	
+	/**************************************************************
+	 * Setters (fluent interface)
+	 **************************************************************/
+	
+	@Override
+	public NetworkSecurityRuleImpl<NetworkSecurityGroup.Update> defineRule(String name) {
+		this.removedRules.remove(name);
+		return new NetworkSecurityRuleImpl<NetworkSecurityGroup.Update>(
+			NetworkSecurityGroupImpl.newRule(name), this.nsg, this.definedRules, this);
+	}
+	
+	@Override
+	public NetworkSecurityGroupUpdateImpl withoutRule(String name) {
+		for(int i = this.definedRules.size() - 1; i >= 0; i--) {
+			if(this.definedRules.get(i).getName().equalsIgnoreCase(name)) {
+				this.definedRules.remove(i);
+			}
+		}
+		this.removedRules.add(name);
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public void delete() throws Exception {
+		this.nsg.delete();
+	}
+	
+	@Override
+	public NetworkSecurityGroupUpdateImpl apply() throws Exception {
+		String groupName = this.nsg.resourceGroup();
+		String name = this.nsg.name();
+		Subscription subscription = this.nsg.subscription();
+		com.microsoft.azure.management.network.models.NetworkSecurityGroup actual = 
+			this.nsg.collection.getNativeEntity(groupName, name);
+		
+		// Diff the requested rules against the current ones, by name
+		TreeMap<String, SecurityRule> actualRules = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		if(actual.getSecurityRules() != null) {
+			for(SecurityRule rule : actual.getSecurityRules()) {
+				actualRules.put(rule.getName(), rule);
+			}
+		}
+		
+		Map<String, SecurityRule> puts = new LinkedHashMap<>();
+		for(SecurityRule rule : this.definedRules) {
+			SecurityRule actualRule = actualRules.get(rule.getName());
+			if(actualRule == null || !isSame(actualRule, rule)) {
+				puts.put(rule.getName().toLowerCase(), rule);
+			}
+		}
+		
+		List<String> deletes = new ArrayList<>();
+		for(String ruleName : this.removedRules) {
+			SecurityRule actualRule = actualRules.get(ruleName);
+			if(actualRule != null) {
+				deletes.add(actualRule.getName());
+			}
+		}
+		
+		if(puts.isEmpty() && deletes.isEmpty()) {
+			this.reset();
+			return this;
+		}
+		
+		if(puts.size() + deletes.size() > MAX_RULE_OPERATIONS || isReprioritizing(actualRules, puts.values(), deletes)) {
+			// Coalesce the changes into a single PUT of the current rules with the changes merged in
+			for(String ruleName : deletes) {
+				actualRules.remove(ruleName);
+			}
+			for(SecurityRule rule : puts.values()) {
+				actualRules.remove(rule.getName());
+				actualRules.put(rule.getName(), rule);
+			}
+			actual.setSecurityRules(new ArrayList<>(actualRules.values()));
+			subscription.networkManagementClient().getNetworkSecurityGroupsOperations().createOrUpdate(groupName, name, actual);
+		} else {
+			// Send only the changed rules, one at a time, removals first
+			for(String ruleName : deletes) {
+				subscription.networkManagementClient().getSecurityRulesOperations().delete(groupName, name, ruleName);
+			}
+			
+			for(SecurityRule rule : puts.values()) {
+				subscription.networkManagementClient().getSecurityRulesOperations().createOrUpdate(groupName, name, rule.getName(), rule);
+			}
+		}
+		
+		this.reset();
+		if(!this.nsg.isSnapshot()) {
+			this.nsg.refresh();
+		}
+		return this;
+	}
+	
+	
+	/*********************************************************
+	 * Helpers
+	 *********************************************************/
+	
+	// Clears the requested changes once applied
+	private void reset() {
+		this.definedRules.clear();
+		this.removedRules.clear();
+	}
+	
+	// Determines whether two rules are configured identically
+	static boolean isSame(SecurityRule rule1, SecurityRule rule2) {
+		return isSame(rule1.getProtocol(), rule2.getProtocol())
+			&& isSame(rule1.getSourcePortRange(), rule2.getSourcePortRange())
+			&& isSame(rule1.getDestinationPortRange(), rule2.getDestinationPortRange())
+			&& isSame(rule1.getSourceAddressPrefix(), rule2.getSourceAddressPrefix())
+			&& isSame(rule1.getDestinationAddressPrefix(), rule2.getDestinationAddressPrefix())
+			&& isSame(rule1.getAccess(), rule2.getAccess())
+			&& isSame(rule1.getDirection(), rule2.getDirection())
+			&& (rule1.getPriority() == null ? rule2.getPriority() == null : rule1.getPriority().equals(rule2.getPriority()));
+	}
+	
+	// Compares rule attributes, which Azure treats case-insensitively
+	private static boolean isSame(String value1, String value2) {
+		return (value1 == null) ? value2 == null : value1.equalsIgnoreCase(value2);
+	}
+	
+	// Determines whether a changed rule takes the direction and priority of another rule being changed or removed,
+	// which only a single PUT can apply atomically
+	static boolean isReprioritizing(Map<String, SecurityRule> actualRules, Iterable<SecurityRule> puts, List<String> deletes) {
+		Set<String> touched = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		touched.addAll(deletes);
+		for(SecurityRule rule : puts) {
+			touched.add(rule.getName());
+		}
+		
+		for(SecurityRule rule : puts) {
+			for(String ruleName : touched) {
+				SecurityRule actualRule = actualRules.get(ruleName);
+				if(actualRule != null 
+						&& !ruleName.equalsIgnoreCase(rule.getName())
+						&& isSame(actualRule.getDirection(), rule.getDirection())
+						&& rule.getPriority() != null && rule.getPriority().equals(actualRule.getPriority())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -33,6 +33,8 @@ public class NetworkSecurityGroupsImpl
 		NetworkSecurityGroupImpl>
 	implements NetworkSecurityGroups {
 		
+	static final String TYPE = "Microsoft.Network/networkSecurityGroups";
+	
 	NetworkSecurityGroupsImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -42,6 +44,7 @@ public class NetworkSecurityGroupsImpl
 		com.microsoft.azure.management.network.models.NetworkSecurityGroup nativeItem = 
 				new com.microsoft.azure.management.network.models.NetworkSecurityGroup();
 		nativeItem.setName(name);
+		nativeItem.setType(TYPE);
 		nativeItem.setSecurityRules(new ArrayList<SecurityRule>());
 		return wrap(nativeItem);
 	}
@@ -49,6 +52,7 @@ public class NetworkSecurityGroupsImpl
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.networkManagementClient().getNetworkSecurityGroupsOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 
@@ -75,4 +79,9 @@ public class NetworkSecurityGroupsImpl
 			com.microsoft.azure.management.network.models.NetworkSecurityGroup nativeItem) {
 		return new NetworkSecurityGroupImpl(nativeItem, this);
 	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
@@ -0,0 +1,561 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.microsoft.azure.management.network.models.SecurityRule;
+import com.microsoft.azure.management.network.models.SecurityRuleAccess;
+import com.microsoft.azure.management.network.models.SecurityRuleDirection;
+import com.microsoft.azure.management.network.models.SecurityRuleProtocol;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityPolicy;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityRule.Direction;
+import com.microsoft.azure.shortcuts.resources.Protocol;
+
+// The rules of each direction of a network security group are ranked by priority, and each criterion of the rules is compiled
+// into a structure returning, for a value of a flow, the bitmap of the ranks of the rules that criterion matches: a binary 
+// trie of the address prefixes, holding at each node the rules matching all the addresses under it, and a table of the 
+// elementary intervals between the port range boundaries. The deciding rule of a flow is the lowest set bit in the 
+// intersection of its five bitmaps
+class NetworkSecurityPolicyImpl implements NetworkSecurityPolicy {
+	// The address tags with default address prefixes
+	static final String VIRTUAL_NETWORK = "VirtualNetwork";
+	static final String AZURE_LOAD_BALANCER = "AzureLoadBalancer";
+	static final String INTERNET = "Internet";
+	
+	// By default, the virtual network address tag stands for the private address ranges, and the Internet for all other addresses
+	static final List<String> PRIVATE_ADDRESS_SPACES = Arrays.asList("10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16");
+	static final List<String> AZURE_LOAD_BALANCER_ADDRESSES = Arrays.asList("168.63.129.16/32");
+	
+	// The policy of a resource without network security groups
+	static final NetworkSecurityPolicyImpl ALLOW_ALL = new NetworkSecurityPolicyImpl(Collections.<CompiledGroup>emptyList());
+	
+	// The flow protocols, as indexes of the rule bitmaps by protocol
+	private static final int TCP = 0, UDP = 1, ANY = 2;
+	
+	private static final long[] NONE = new long[0];
+	
+	private final List<CompiledGroup> groups;
+	
+	// The compiled rules of a network security group
+	static class CompiledGroup {
+		private final RuleSet inbound;
+		private final RuleSet outbound;
+		
+		private CompiledGroup(RuleSet inbound, RuleSet outbound) {
+			this.inbound = inbound;
+			this.outbound = outbound;
+		}
+	}
+	
+	private NetworkSecurityPolicyImpl(List<CompiledGroup> groups) {
+		this.groups = groups;
+	}
+	
+	// Compiles the custom rules and the default rules of a network security group, resolving the address tags from the 
+	// specified prefixes where given, or the defaults otherwise. The default rules of Azure are assumed if none are given
+	static NetworkSecurityPolicyImpl compile(
+			List<SecurityRule> rules, 
+			List<SecurityRule> defaultRules, 
+			Map<String, List<String>> addressTags) {
+		TreeMap<String, List<int[]>> tags = tags(addressTags);
+		List<SecurityRule> inbound = new ArrayList<>(), outbound = new ArrayList<>();
+		List<SecurityRule> allRules = new ArrayList<>();
+		if(rules != null) {
+			allRules.addAll(rules);
+		}
+		allRules.addAll((defaultRules != null && !defaultRules.isEmpty()) ? defaultRules : defaultRules());
+		for(SecurityRule rule : allRules) {
+			if(SecurityRuleDirection.OUTBOUND.equalsIgnoreCase(rule.getDirection())) {
+				outbound.add(rule);
+			} else {
+				inbound.add(rule);
+			}
+		}
+		
+		return new NetworkSecurityPolicyImpl(Collections.singletonList(
+			new CompiledGroup(new RuleSet(inbound, tags), new RuleSet(outbound, tags))));
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public boolean isAllowed(Direction direction, Protocol protocol, String sourceAddress, int sourcePort, String destinationAddress, int destinationPort) {
+		return this.isAllowed(direction, protocol, address(sourceAddress), sourcePort, address(destinationAddress), destinationPort);
+	}
+
+	@Override
+	public boolean isAllowed(Direction direction, Protocol protocol, int sourceAddress, int sourcePort, int destinationAddress, int destinationPort) {
+		int protocolIndex = protocolIndex(protocol);
+		for(CompiledGroup group : this.groups) {
+			RuleSet rules = (direction == Direction.OUTBOUND) ? group.outbound : group.inbound;
+			int rank = rules.decide(protocolIndex, sourceAddress, sourcePort, destinationAddress, destinationPort);
+			if(rank < 0 || !rules.allows[rank]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String decidingRule(Direction direction, Protocol protocol, String sourceAddress, int sourcePort, String destinationAddress, int destinationPort) {
+		int protocolIndex = protocolIndex(protocol);
+		String decidingRule = null;
+		for(CompiledGroup group : this.groups) {
+			RuleSet rules = (direction == Direction.OUTBOUND) ? group.outbound : group.inbound;
+			int rank = rules.decide(protocolIndex, address(sourceAddress), sourcePort, address(destinationAddress), destinationPort);
+			if(rank < 0) {
+				return null;
+			}
+			
+			decidingRule = rules.names[rank];
+			if(!rules.allows[rank]) {
+				break;
+			}
+		}
+		return decidingRule;
+	}
+
+	@Override
+	public NetworkSecurityPolicyImpl and(NetworkSecurityPolicy other) {
+		List<CompiledGroup> groups = new ArrayList<>(this.groups);
+		groups.addAll(((NetworkSecurityPolicyImpl) other).groups);
+		return new NetworkSecurityPolicyImpl(Collections.unmodifiableList(groups));
+	}
+
+	@Override
+	public int address(String address) {
+		int[] prefix = prefix(address);
+		if(prefix == null || prefix[1] != 32) {
+			throw new IllegalArgumentException("Not an IPv4 address: " + address);
+		}
+		return prefix[0];
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Adds to the signature the rule bitmaps the address looks up as a source and as a destination in each direction, so that 
+	// two addresses with the same signature are decided alike by this policy in any flow
+	void addSignature(int address, List<Object> signature) {
+		for(CompiledGroup group : this.groups) {
+			for(RuleSet rules : Arrays.asList(group.inbound, group.outbound)) {
+				signature.add(rules.sources.lookup(address));
+				signature.add(rules.destinations.lookup(address));
+			}
+		}
+	}
+	
+	private static int protocolIndex(Protocol protocol) {
+		switch(protocol) {
+		case TCP:
+			return TCP;
+		case UDP:
+			return UDP;
+		default:
+			return ANY;
+		}
+	}
+	
+	// Resolves the address tags to prefixes, filling in the defaults
+	private static TreeMap<String, List<int[]>> tags(Map<String, List<String>> addressTags) {
+		TreeMap<String, List<int[]>> tags = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		tags.put(VIRTUAL_NETWORK, prefixes(PRIVATE_ADDRESS_SPACES, null));
+		tags.put(AZURE_LOAD_BALANCER, prefixes(AZURE_LOAD_BALANCER_ADDRESSES, null));
+		if(addressTags != null) {
+			for(Map.Entry<String, List<String>> entry : addressTags.entrySet()) {
+				tags.put(entry.getKey(), prefixes(entry.getValue(), null));
+			}
+		}
+		
+		if(addressTags == null || !addressTags.containsKey(INTERNET)) {
+			List<int[]> internet = new ArrayList<>();
+			complement(tags.get(VIRTUAL_NETWORK), 0, 0, internet);
+			tags.put(INTERNET, internet);
+		}
+		return tags;
+	}
+	
+	// Parses address prefixes as (address, length) pairs, resolving the address tags if given. Prefixes that cannot be parsed, 
+	// such as IPv6 prefixes or unknown tags, are left out
+	private static List<int[]> prefixes(List<String> texts, Map<String, List<int[]>> tags) {
+		List<int[]> prefixes = new ArrayList<>();
+		for(String text : texts) {
+			for(String part : text.split(",")) {
+				part = part.trim();
+				if(part.equals("*")) {
+					prefixes.add(new int[] { 0, 0 });
+				} else if(tags != null && tags.containsKey(part)) {
+					prefixes.addAll(tags.get(part));
+				} else {
+					int[] prefix = prefix(part);
+					if(prefix != null) {
+						prefixes.add(prefix);
+					}
+				}
+			}
+		}
+		return prefixes;
+	}
+	
+	// Parses an IPv4 address or CIDR prefix as an (address, length) pair, or returns null if it is not one
+	static int[] prefix(String text) {
+		int slash = text.indexOf('/');
+		int length = 32;
+		String address = text;
+		if(slash >= 0) {
+			try {
+				length = Integer.parseInt(text.substring(slash + 1));
+			} catch(NumberFormatException e) {
+				return null;
+			}
+			address = text.substring(0, slash);
+		}
+		
+		String[] octets = address.split("\\.");
+		if(octets.length != 4 || length < 0 || length > 32) {
+			return null;
+		}
+		
+		int value = 0;
+		for(String octet : octets) {
+			int number;
+			try {
+				number = Integer.parseInt(octet);
+			} catch(NumberFormatException e) {
+				return null;
+			}
+			if(number < 0 || number > 255) {
+				return null;
+			}
+			value = (value << 8) | number;
+		}
+		return new int[] { value & mask(length), length };
+	}
+	
+	// Formats an IPv4 address in dotted form
+	static String formatAddress(int address) {
+		return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+	}
+	
+	static int mask(int length) {
+		return (length == 0) ? 0 : -1 << (32 - length);
+	}
+	
+	// Adds the largest prefixes within the specified one that do not overlap the specified prefixes
+	private static void complement(List<int[]> prefixes, int address, int length, List<int[]> complement) {
+		boolean overlaps = false;
+		for(int[] prefix : prefixes) {
+			if(prefix[1] <= length && (address & mask(prefix[1])) == prefix[0]) {
+				// Covered entirely
+				return;
+			} else if(prefix[1] > length && (prefix[0] & mask(length)) == address) {
+				overlaps = true;
+			}
+		}
+		
+		if(!overlaps) {
+			complement.add(new int[] { address, length });
+		} else {
+			complement(prefixes, address, length + 1, complement);
+			complement(prefixes, address | (1 << (31 - length)), length + 1, complement);
+		}
+	}
+	
+	// Parses a port range, e.g. "*", "80", "1000-2000" or a comma separated list of those, as (from, to) pairs
+	private static List<int[]> portRanges(String text) {
+		List<int[]> ranges = new ArrayList<>();
+		for(String part : ((text != null) ? text : "*").split(",")) {
+			part = part.trim();
+			if(part.equals("*")) {
+				ranges.add(new int[] { 0, 65535 });
+			} else {
+				int dash = part.indexOf('-');
+				try {
+					if(dash < 0) {
+						int port = Integer.parseInt(part);
+						ranges.add(new int[] { port, port });
+					} else {
+						ranges.add(new int[] { Integer.parseInt(part.substring(0, dash).trim()), Integer.parseInt(part.substring(dash + 1).trim()) });
+					}
+				} catch(NumberFormatException e) {
+					// Left out
+				}
+			}
+		}
+		return ranges;
+	}
+	
+	// The default security rules of Azure
+	private static List<SecurityRule> defaultRules() {
+		return Arrays.asList(
+			rule("AllowVnetInBound", 65000, SecurityRuleDirection.INBOUND, VIRTUAL_NETWORK, VIRTUAL_NETWORK, SecurityRuleAccess.ALLOW),
+			rule("AllowAzureLoadBalancerInBound", 65001, SecurityRuleDirection.INBOUND, AZURE_LOAD_BALANCER, "*", SecurityRuleAccess.ALLOW),
+			rule("DenyAllInBound", 65500, SecurityRuleDirection.INBOUND, "*", "*", SecurityRuleAccess.DENY),
+			rule("AllowVnetOutBound", 65000, SecurityRuleDirection.OUTBOUND, VIRTUAL_NETWORK, VIRTUAL_NETWORK, SecurityRuleAccess.ALLOW),
+			rule("AllowInternetOutBound", 65001, SecurityRuleDirection.OUTBOUND, "*", INTERNET, SecurityRuleAccess.ALLOW),
+			rule("DenyAllOutBound", 65500, SecurityRuleDirection.OUTBOUND, "*", "*", SecurityRuleAccess.DENY));
+	}
+	
+	private static SecurityRule rule(String name, int priority, String direction, String source, String destination, String access) {
+		SecurityRule rule = new SecurityRule();
+		rule.setName(name);
+		rule.setPriority(priority);
+		rule.setDirection(direction);
+		rule.setSourceAddressPrefix(source);
+		rule.setSourcePortRange("*");
+		rule.setDestinationAddressPrefix(destination);
+		rule.setDestinationPortRange("*");
+		rule.setProtocol("*");
+		rule.setAccess(access);
+		return rule;
+	}
+	
+	private static void set(long[] bitmap, int rank) {
+		bitmap[rank >>> 6] |= 1L << rank;
+	}
+	
+	
+	// The compiled rules of one direction, ranked by priority
+	private static class RuleSet {
+		private final String[] names;
+		private final boolean[] allows;
+		private final int words;
+		private final AddressTrie sources;
+		private final AddressTrie destinations;
+		private final PortTable sourcePorts;
+		private final PortTable destinationPorts;
+		private final long[][] protocols = new long[3][];
+		
+		private RuleSet(List<SecurityRule> rules, Map<String, List<int[]>> tags) {
+			rules = new ArrayList<>(rules);
+			Collections.sort(rules, new Comparator<SecurityRule>() {
+				@Override
+				public int compare(SecurityRule rule1, SecurityRule rule2) {
+					return Integer.compare(priority(rule1), priority(rule2));
+				}
+			});
+			
+			int count = rules.size();
+			this.words = (count + 63) >>> 6;
+			this.names = new String[count];
+			this.allows = new boolean[count];
+			this.sources = new AddressTrie(this.words);
+			this.destinations = new AddressTrie(this.words);
+			List<List<int[]>> sourcePortRanges = new ArrayList<>(), destinationPortRanges = new ArrayList<>();
+			for(int i = 0; i < this.protocols.length; i++) {
+				this.protocols[i] = new long[this.words];
+			}
+			
+			for(int rank = 0; rank < count; rank++) {
+				SecurityRule rule = rules.get(rank);
+				this.names[rank] = rule.getName();
+				this.allows[rank] = SecurityRuleAccess.ALLOW.equalsIgnoreCase(rule.getAccess());
+				for(int[] prefix : prefixes(Arrays.asList(nonNull(rule.getSourceAddressPrefix())), tags)) {
+					this.sources.add(prefix, rank);
+				}
+				for(int[] prefix : prefixes(Arrays.asList(nonNull(rule.getDestinationAddressPrefix())), tags)) {
+					this.destinations.add(prefix, rank);
+				}
+				sourcePortRanges.add(portRanges(rule.getSourcePortRange()));
+				destinationPortRanges.add(portRanges(rule.getDestinationPortRange()));
+				
+				String protocol = nonNull(rule.getProtocol());
+				if(protocol.equals("*") || protocol.equalsIgnoreCase(SecurityRuleProtocol.ALL)) {
+					set(this.protocols[TCP], rank);
+					set(this.protocols[UDP], rank);
+					set(this.protocols[ANY], rank);
+				} else if(protocol.equalsIgnoreCase(SecurityRuleProtocol.TCP)) {
+					set(this.protocols[TCP], rank);
+				} else if(protocol.equalsIgnoreCase(SecurityRuleProtocol.UDP)) {
+					set(this.protocols[UDP], rank);
+				}
+			}
+			
+			this.sources.accumulate();
+			this.destinations.accumulate();
+			this.sourcePorts = new PortTable(sourcePortRanges, this.words);
+			this.destinationPorts = new PortTable(destinationPortRanges, this.words);
+		}
+		
+		// Returns the rank of the highest priority rule matching the flow, or -1 if none
+		private int decide(int protocol, int sourceAddress, int sourcePort, int destinationAddress, int destinationPort) {
+			long[] protocols = this.protocols[protocol];
+			long[] sources = this.sources.lookup(sourceAddress);
+			long[] destinations = this.destinations.lookup(destinationAddress);
+			long[] sourcePorts = this.sourcePorts.lookup(sourcePort);
+			long[] destinationPorts = this.destinationPorts.lookup(destinationPort);
+			if(sourcePorts == NONE || destinationPorts == NONE) {
+				return -1;
+			}
+			
+			for(int word = 0; word < this.words; word++) {
+				long matches = protocols[word] & sources[word] & destinations[word] & sourcePorts[word] & destinationPorts[word];
+				if(matches != 0) {
+					return (word << 6) + Long.numberOfTrailingZeros(matches);
+				}
+			}
+			return -1;
+		}
+		
+		private static int priority(SecurityRule rule) {
+			return (rule.getPriority() != null) ? rule.getPriority() : Integer.MAX_VALUE;
+		}
+		
+		private static String nonNull(String text) {
+			return (text != null) ? text : "*";
+		}
+	}
+	
+	
+	// A binary trie of address prefixes, holding at each node the bitmap of the rules matching all the addresses under it
+	private static class AddressTrie {
+		private final int words;
+		private int[] children = new int[2 * 64];
+		private long[][] bitmaps = new long[64][];
+		private int count = 1;
+		
+		private AddressTrie(int words) {
+			this.words = words;
+			this.bitmaps[0] = new long[words];
+			Arrays.fill(this.children, -1);
+		}
+		
+		private void add(int[] prefix, int rank) {
+			int node = 0;
+			for(int depth = 0; depth < prefix[1]; depth++) {
+				int bit = (prefix[0] >>> (31 - depth)) & 1;
+				int child = this.children[2 * node + bit];
+				if(child < 0) {
+					child = this.newNode();
+					this.children[2 * node + bit] = child;
+				}
+				node = child;
+			}
+			set(this.bitmaps[node], rank);
+		}
+		
+		private int newNode() {
+			if(this.count == this.bitmaps.length) {
+				this.bitmaps = Arrays.copyOf(this.bitmaps, this.count * 2);
+				int oldLength = this.children.length;
+				this.children = Arrays.copyOf(this.children, oldLength * 2);
+				Arrays.fill(this.children, oldLength, this.children.length, -1);
+			}
+			this.bitmaps[this.count] = new long[this.words];
+			return this.count++;
+		}
+		
+		// Adds the rules of each node to those of its descendants, since they match all the addresses under it
+		private void accumulate() {
+			// Nodes are created after their parents
+			for(int node = 0; node < this.count; node++) {
+				for(int bit = 0; bit < 2; bit++) {
+					int child = this.children[2 * node + bit];
+					if(child >= 0) {
+						for(int word = 0; word < this.words; word++) {
+							this.bitmaps[child][word] |= this.bitmaps[node][word];
+						}
+					}
+				}
+			}
+		}
+		
+		// Returns the bitmap of the rules matching the address, at the deepest node on its path
+		private long[] lookup(int address) {
+			int node = 0;
+			for(int depth = 0; depth < 32; depth++) {
+				int child = this.children[2 * node + ((address >>> (31 - depth)) & 1)];
+				if(child < 0) {
+					break;
+				}
+				node = child;
+			}
+			return this.bitmaps[node];
+		}
+	}
+	
+	
+	// The elementary intervals between the boundaries of the port ranges, with the bitmap of the rules matching each
+	private static class PortTable {
+		private final int[] starts;
+		private final long[][] bitmaps;
+		
+		private PortTable(List<List<int[]>> rangesByRank, int words) {
+			TreeSet<Integer> boundaries = new TreeSet<>();
+			boundaries.add(0);
+			for(List<int[]> ranges : rangesByRank) {
+				for(int[] range : ranges) {
+					boundaries.add(range[0]);
+					if(range[1] < 65535) {
+						boundaries.add(range[1] + 1);
+					}
+				}
+			}
+			
+			this.starts = new int[boundaries.size()];
+			this.bitmaps = new long[boundaries.size()][];
+			int i = 0;
+			for(int start : boundaries) {
+				this.starts[i] = start;
+				this.bitmaps[i] = new long[words];
+				for(int rank = 0; rank < rangesByRank.size(); rank++) {
+					for(int[] range : rangesByRank.get(rank)) {
+						if(range[0] <= start && start <= range[1]) {
+							set(this.bitmaps[i], rank);
+						}
+					}
+				}
+				i++;
+			}
+		}
+		
+		// Returns the bitmap of the rules matching the port
+		private long[] lookup(int port) {
+			if(port < 0 || port > 65535) {
+				return NONE;
+			}
+			
+			// Find the last interval starting at or before the port
+			int low = 0, high = this.starts.length - 1;
+			while(low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if(this.starts[middle] <= port) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return this.bitmaps[low];
+		}
+	}
+}
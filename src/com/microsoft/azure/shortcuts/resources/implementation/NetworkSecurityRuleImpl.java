@@ -19,25 +19,40 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.List;
+
 import com.microsoft.azure.management.network.models.SecurityRule;
-import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
 import com.microsoft.azure.shortcuts.resources.NetworkSecurityRule;
 import com.microsoft.azure.shortcuts.resources.Protocol;
 
 /***************************************************************
  * Implements logic for individual NSG
  ***************************************************************/
-class NetworkSecurityRuleImpl 
+class NetworkSecurityRuleImpl<PARENT> 
 	extends
 		ChildResourceImpl<SecurityRule, NetworkSecurityGroupImpl>
 	implements
 		NetworkSecurityRule,
-		NetworkSecurityRule.Definition<NetworkSecurityGroup.DefinitionCreatable> {
+		NetworkSecurityRule.Definition<PARENT> {
 
+	// The rules to add the definition to, and the definition or update stage to return to once attached
+	private final List<SecurityRule> target;
+	private final PARENT next;
+	
 	NetworkSecurityRuleImpl(
 			SecurityRule nativeItem,
 			NetworkSecurityGroupImpl nsg) {
+		this(nativeItem, nsg, null, null);
+	}
+
+	NetworkSecurityRuleImpl(
+			SecurityRule nativeItem,
+			NetworkSecurityGroupImpl nsg,
+			List<SecurityRule> target,
+			PARENT next) {
 		super(nativeItem.getName(), nativeItem, nsg);
+		this.target = target;
+		this.next = next;
 	}
 
 	/***********************************************************
@@ -49,125 +64,136 @@ class NetworkSecurityRuleImpl
 	 **************************************************************/
 
 	@Override
-	public NetworkSecurityRuleImpl allowInbound() {
+	public NetworkSecurityRuleImpl<PARENT> allowInbound() {
 		return this
 			.withDirection(Direction.INBOUND)
 			.withPermission(Permission.ALLOW);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl allowOutbound() {
+	public NetworkSecurityRuleImpl<PARENT> allowOutbound() {
 		return this
 			.withDirection(Direction.OUTBOUND)
 			.withPermission(Permission.ALLOW);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl denyInbound() {
+	public NetworkSecurityRuleImpl<PARENT> denyInbound() {
 		return this
 			.withDirection(Direction.INBOUND)
 			.withPermission(Permission.DENY);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl denyOutbound() {
+	public NetworkSecurityRuleImpl<PARENT> denyOutbound() {
 		return this
 			.withDirection(Direction.OUTBOUND)
 			.withPermission(Permission.DENY);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl withInboundDirection() {
+	public NetworkSecurityRuleImpl<PARENT> withInboundDirection() {
 		return this.withDirection(Direction.INBOUND);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl withOutboundDirection() {
+	public NetworkSecurityRuleImpl<PARENT> withOutboundDirection() {
 		return this.withDirection(Direction.OUTBOUND);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl withAllowPermission() {
+	public NetworkSecurityRuleImpl<PARENT> withAllowPermission() {
 		return this.withPermission(Permission.ALLOW);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl withDenyPermission() {
+	public NetworkSecurityRuleImpl<PARENT> withDenyPermission() {
 		return this.withPermission(Permission.DENY);
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl withProtocol(Protocol protocol) {
+	public NetworkSecurityRuleImpl<PARENT> withProtocol(Protocol protocol) {
+		this.ensureNotSnapshot();
 		this.inner().setProtocol(protocol.toString());
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl withAnyProtocol() {
+	public NetworkSecurityRuleImpl<PARENT> withAnyProtocol() {
 		return this.withProtocol(Protocol.ANY);
 	}
 		
 	@Override
-	public NetworkSecurityRuleImpl fromAddress(String cidr) {
+	public NetworkSecurityRuleImpl<PARENT> fromAddress(String cidr) {
+		this.ensureNotSnapshot();
 		this.inner().setSourceAddressPrefix(cidr);
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl fromAnyAddress() {
+	public NetworkSecurityRuleImpl<PARENT> fromAnyAddress() {
 		return this.fromAddress("*");
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl fromPort(int port) {
+	public NetworkSecurityRuleImpl<PARENT> fromPort(int port) {
+		this.ensureNotSnapshot();
 		this.inner().setSourcePortRange(String.valueOf(port));
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl fromAnyPort() {
+	public NetworkSecurityRuleImpl<PARENT> fromAnyPort() {
+		this.ensureNotSnapshot();
 		this.inner().setSourcePortRange("*");
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl fromPortRange(int from, int to) {
+	public NetworkSecurityRuleImpl<PARENT> fromPortRange(int from, int to) {
+		this.ensureNotSnapshot();
 		this.inner().setSourcePortRange(String.valueOf(from) + "-" + String.valueOf(to));
 		return this;
 	}
 		
 	@Override
-	public NetworkSecurityRuleImpl withPriority(int priority) {
+	public NetworkSecurityRuleImpl<PARENT> withPriority(int priority) {
+		this.ensureNotSnapshot();
 		this.inner().setPriority(priority);
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl toAddress(String cidr) {
+	public NetworkSecurityRuleImpl<PARENT> toAddress(String cidr) {
+		this.ensureNotSnapshot();
 		this.inner().setDestinationAddressPrefix(cidr);
 		return this;
 	}
 	
 	@Override
-	public NetworkSecurityRuleImpl toAnyAddress() {
+	public NetworkSecurityRuleImpl<PARENT> toAnyAddress() {
+		this.ensureNotSnapshot();
 		this.inner().setDestinationAddressPrefix("*");
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl toPort(int port) {
+	public NetworkSecurityRuleImpl<PARENT> toPort(int port) {
+		this.ensureNotSnapshot();
 		this.inner().setDestinationPortRange(String.valueOf(port));
 		return this;
 	}
 	
 	@Override
-	public NetworkSecurityRuleImpl toAnyPort() {
+	public NetworkSecurityRuleImpl<PARENT> toAnyPort() {
+		this.ensureNotSnapshot();
 		this.inner().setDestinationPortRange("*");
 		return this;
 	}
 
 	@Override
-	public NetworkSecurityRuleImpl toPortRange(int from, int to) {
+	public NetworkSecurityRuleImpl<PARENT> toPortRange(int from, int to) {
+		this.ensureNotSnapshot();
 		this.inner().setDestinationPortRange(String.valueOf(from) + "-" + String.valueOf(to));
 		return this;
 	}
@@ -177,20 +203,24 @@ class NetworkSecurityRuleImpl
 	 ************************************************************/
 
 	@Override
-	public NetworkSecurityGroupImpl attach() throws Exception {
-		this.parent().inner().getSecurityRules().add(this.inner());
-		return this.parent();
+	public PARENT attach() throws Exception {
+		this.ensureNotSnapshot();
+		this.target.add(this.innerObject);
+		this.parent().invalidate();
+		return this.next;
 	}
 			
 	/*********************************************************
 	 * Helpers
 	 *********************************************************/
-	private NetworkSecurityRuleImpl withDirection(Direction direction) {
+	private NetworkSecurityRuleImpl<PARENT> withDirection(Direction direction) {
+		this.ensureNotSnapshot();
 		this.inner().setDirection(direction.toString());
 		return this;
 	}
 		
-	private NetworkSecurityRuleImpl withPermission(Permission permission) {
+	private NetworkSecurityRuleImpl<PARENT> withPermission(Permission permission) {
+		this.ensureNotSnapshot();
 		this.inner().setAccess(permission.toString());
 		return this;
 	}
@@ -19,9 +19,16 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.codehaus.jackson.node.ObjectNode;
+
 import com.microsoft.azure.management.network.models.VirtualNetwork;
 import com.microsoft.azure.shortcuts.common.implementation.EntitiesImpl;
 import com.microsoft.azure.shortcuts.resources.Network;
+import com.microsoft.azure.shortcuts.resources.PrivateIpAllocator;
 import com.microsoft.azure.shortcuts.resources.Subnet;
 
 public abstract class NetworkableGroupableResourceBaseImpl<
@@ -41,6 +48,7 @@ public abstract class NetworkableGroupableResourceBaseImpl<
 	private String networkCidr;
 	private String subnetId;
 	protected String privateIpAddress;
+	protected boolean isPrivateIpAddressFree;
 
 	
 	final protected Network ensureNetwork() throws Exception {
@@ -76,11 +84,86 @@ public abstract class NetworkableGroupableResourceBaseImpl<
 	}
 	
 	
+	// Allocates a free static private IP address in the subnet if requested, returning it so that it can be released if the 
+	// creation fails, or null if none was allocated
+	final protected String ensurePrivateIpAddress(Subnet subnet) throws Exception {
+		if(!this.isPrivateIpAddressFree || this.privateIpAddress != null) {
+			return null;
+		}
+		
+		PrivateIpAllocator allocator = this.collection.subscription().privateIpAllocator(subnet.inner().getId());
+		this.privateIpAddress = allocator.allocate();
+		if(this.privateIpAddress == null) {
+			throw new NoSuchElementException(String.format("No free private IP address left in subnet '%s'.", subnet.inner().getName()));
+		}
+		return this.privateIpAddress;
+	}
+	
+	// Allocates a free static private IP address if requested, for a network interface added to a deployment template
+	final protected void ensurePrivateIpAddress() throws Exception {
+		if(!this.isPrivateIpAddressFree || this.privateIpAddress != null) {
+			return;
+		} else if(this.isNetworkExisting) {
+			this.ensurePrivateIpAddress(this.ensureSubnet(this.ensureNetwork()));
+		} else {
+			// No addresses are in use yet in the default subnet of a new network
+			PrivateIpAllocatorImpl allocator = new PrivateIpAllocatorImpl(null, null);
+			allocator.seed((this.networkCidr != null) ? this.networkCidr : "10.0.0.0/16");
+			this.privateIpAddress = allocator.allocate();
+		}
+	}
+	
+	// Returns an allocated private IP address to the subnet's allocator after a failed creation
+	final protected void releasePrivateIpAddress(Subnet subnet, String address) {
+		if(address != null) {
+			PrivateIpAllocatorImpl allocator = this.collection.subscription().existingPrivateIpAllocator(subnet.inner().getId());
+			if(allocator != null) {
+				allocator.release(address);
+			}
+			this.privateIpAddress = null;
+		}
+	}
+	
+	
+	// Adds a new virtual network to the deployment template if needed, returning the resource ID of the subnet to use
+	final protected String ensureSubnet(DeploymentTemplate template, List<String> dependsOn) throws Exception {
+		if(this.isNetworkExisting) {
+			return ensureSubnet(ensureNetwork()).id();
+		} else if(this.networkId == null) {
+			// Generate a name if needed
+			this.networkId = this.name() + "net";
+		}
+
+		// One default subnet covering the entire address space, same as a network created directly
+		final String cidr = (this.networkCidr != null) ? this.networkCidr : "10.0.0.0/16";
+		final String subnetName = "subnet1";
+		ObjectNode properties = template.addResource(NetworksImpl.TYPE, this.networkId, this.region(), null, null);
+		properties.putObject("addressSpace").putArray("addressPrefixes").add(cidr);
+		ObjectNode subnet = properties.putArray("subnets").addObject();
+		subnet.put("name", subnetName);
+		subnet.putObject("properties").put("addressPrefix", cidr);
+		
+		dependsOn.add(template.resourceId(NetworksImpl.TYPE, this.networkId));
+		return template.resourceId(NetworksImpl.TYPE + "/subnets", this.networkId, subnetName);
+	}
+	
+	
+	@Override
+	Set<String> dependencies() {
+		Set<String> dependencies = super.dependencies();
+		if(this.isNetworkExisting && this.networkId != null) {
+			dependencies.add(PlanImpl.key(NetworksImpl.TYPE, this.planGroupName(), this.networkId));
+		}
+		return dependencies;
+	}
+	
+	
 	/***********************************************************
 	 * WithNetwork* Implementation
 	 ***********************************************************/
 	@SuppressWarnings("unchecked")
 	final public WRAPPERIMPL withExistingNetwork(String id) {
+		this.ensureNotSnapshot();
 		this.isNetworkExisting = true;
 		this.networkId = id;
 		return (WRAPPERIMPL)this;
@@ -96,6 +179,7 @@ public abstract class NetworkableGroupableResourceBaseImpl<
 
 	@SuppressWarnings("unchecked")
 	final public WRAPPERIMPL withNewNetwork(String name, String addressSpace) {
+		this.ensureNotSnapshot();
 		this.isNetworkExisting = false;
 		this.networkId = name;
 		this.networkCidr = addressSpace;
@@ -103,6 +187,7 @@ public abstract class NetworkableGroupableResourceBaseImpl<
 	}
 
 	final public WRAPPERIMPL withNewNetwork(Network.DefinitionCreatable networkDefinition) throws Exception {
+		this.ensureNotSnapshot();
 		return this.withExistingNetwork(networkDefinition.create());
 	}
 
@@ -116,6 +201,7 @@ public abstract class NetworkableGroupableResourceBaseImpl<
 	 ********************************************************/
 	@SuppressWarnings("unchecked")
 	final public WRAPPERIMPL withSubnet(String subnetId) {
+		this.ensureNotSnapshot();
 		this.subnetId = subnetId;
 		return (WRAPPERIMPL)this;
 	}
@@ -130,7 +216,17 @@ public abstract class NetworkableGroupableResourceBaseImpl<
 	
 	@SuppressWarnings("unchecked")
 	final public WRAPPERIMPL withPrivateIpAddressStatic(String staticPrivateIpAddress) {
+		this.ensureNotSnapshot();
 		this.privateIpAddress = staticPrivateIpAddress;
+		this.isPrivateIpAddressFree = false;
+		return (WRAPPERIMPL)this;
+	}
+	
+	@SuppressWarnings("unchecked")
+	final public WRAPPERIMPL withFreePrivateIpAddressStatic() {
+		this.ensureNotSnapshot();
+		this.privateIpAddress = null;
+		this.isPrivateIpAddressFree = true;
 		return (WRAPPERIMPL)this;
 	}
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ package com.microsoft.azure.shortcuts.resources.implementation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.microsoft.azure.management.network.models.AddressSpace;
 import com.microsoft.azure.management.network.models.DhcpOptions;
@@ -36,6 +38,11 @@ public class NetworksImpl
 		NetworkImpl>
 	implements Networks {
 	
+	static final String TYPE = "Microsoft.Network/virtualNetworks";
+	
+	// The locks serializing the changes to each virtual network, by lower case group and network name
+	private final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+	
 	NetworksImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -44,6 +51,7 @@ public class NetworksImpl
 	public NetworkImpl define(String name) throws Exception {
 		VirtualNetwork azureNetwork = new VirtualNetwork();
 		azureNetwork.setName(name);
+		azureNetwork.setType(TYPE);
 		azureNetwork.setSubnets(new ArrayList<com.microsoft.azure.management.network.models.Subnet>());
 		
 		// Ensure address space
@@ -64,6 +72,7 @@ public class NetworksImpl
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.networkManagementClient().getVirtualNetworksOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 
@@ -71,6 +80,20 @@ public class NetworksImpl
 	 * Helpers
 	 ***************************************************/
 	
+	// Returns the lock serializing the changes made through this subscription to a virtual network and its subnets
+	ReentrantLock lock(String groupName, String name) {
+		String key = (groupName + "/" + name).toLowerCase();
+		ReentrantLock lock = this.locks.get(key);
+		if(lock == null) {
+			ReentrantLock newLock = new ReentrantLock();
+			lock = this.locks.putIfAbsent(key, newLock);
+			if(lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+	
 	@Override
 	protected List<VirtualNetwork> getNativeEntities(String resourceGroupName) throws Exception {
 		if(resourceGroupName == null) {
@@ -89,4 +112,19 @@ public class NetworksImpl
 	protected NetworkImpl wrap(VirtualNetwork nativeItem) {
 		return new NetworkImpl(nativeItem, this);
 	}
+	
+	@Override
+	String inventorySection() {
+		return TYPE;
+	}
+	
+	@Override
+	Class<VirtualNetwork> inventoryType() {
+		return VirtualNetwork.class;
+	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
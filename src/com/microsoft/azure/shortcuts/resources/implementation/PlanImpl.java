@@ -0,0 +1,452 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.Plan;
+
+class PlanImpl implements Plan {
+	private final Subscription subscription;
+	private final List<Creatable<?>> definitions = new ArrayList<>();
+	private final Map<String, Integer> typeLimits = new HashMap<>();
+	private int limit = 0;
+	
+	PlanImpl(Subscription subscription) {
+		this.subscription = subscription;
+	}
+	
+	
+	// Returns the key identifying a resource of the specified type within a plan; the group is taken from the ID
+	// if a full resource ID is provided, else the specified group is assumed
+	static String key(String type, String group, String idOrName) {
+		String name = idOrName;
+		if(idOrName.contains("/")) {
+			group = ResourcesImpl.groupFromResourceId(idOrName);
+			name = ResourcesImpl.nameFromResourceId(idOrName);
+		}
+		return String.format("%s/%s/%s", type, (group != null) ? group : "", name).toLowerCase();
+	}
+	
+	
+	// Returns the key identifying the resource of a definition, or null if the definition is not of a known resource type
+	static String key(Object definition) {
+		if(definition instanceof GroupableResourceBaseImpl) {
+			return ((GroupableResourceBaseImpl<?, ?, ?, ?>) definition).planKey();
+		} else if(definition instanceof ResourceGroupImpl) {
+			return key(ResourceGroupsImpl.TYPE, null, ((ResourceGroupImpl) definition).name());
+		} else {
+			return null;
+		}
+	}
+	
+	
+	/*******************************************
+	 * Setters (fluent interface)
+	 *******************************************/
+	
+	@Override
+	public PlanImpl withDefinition(Creatable<?> definition) {
+		this.definitions.add(definition);
+		return this;
+	}
+	
+	@Override
+	public PlanImpl withDefinitions(Creatable<?>... definitions) {
+		this.definitions.addAll(Arrays.asList(definitions));
+		return this;
+	}
+	
+	@Override
+	public PlanImpl withConcurrencyLimit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+	
+	@Override
+	public PlanImpl withConcurrencyLimit(String resourceType, int limit) {
+		this.typeLimits.put(resourceType.toLowerCase(), limit);
+		return this;
+	}
+	
+	
+	/*******************************************
+	 * Verbs
+	 *******************************************/
+	
+	@Override
+	public Schedule dryRun() {
+		final Map<String, Step> steps = this.steps();
+		final List<String> criticalPath = criticalPath(steps);
+		final List<List<String>> waves = new ArrayList<>();
+		
+		// Simulate the execution assuming each create takes one unit of time
+		Map<Step, Integer> pending = new HashMap<>();
+		List<Step> ready = new ArrayList<>();
+		for(Step step : steps.values()) {
+			pending.put(step, step.dependencies.size());
+			if(step.dependencies.isEmpty()) {
+				ready.add(step);
+			}
+		}
+		
+		while(!ready.isEmpty()) {
+			List<String> wave = new ArrayList<>();
+			List<Step> next = new ArrayList<>();
+			Map<String, Integer> typeCounts = new HashMap<>();
+			for(Iterator<Step> iter = ready.iterator(); iter.hasNext();) {
+				Step step = iter.next();
+				Integer typeCount = typeCounts.get(step.type);
+				typeCount = (typeCount == null) ? 0 : typeCount;
+				if(this.limit > 0 && wave.size() >= this.limit) {
+					break;
+				} else if(typeCount >= this.typeLimit(step.type)) {
+					continue;
+				}
+				
+				typeCounts.put(step.type, typeCount + 1);
+				wave.add(step.key);
+				iter.remove();
+				for(Step dependent : step.dependents) {
+					int remaining = pending.get(dependent) - 1;
+					pending.put(dependent, remaining);
+					if(remaining == 0) {
+						next.add(dependent);
+					}
+				}
+			}
+			waves.add(Collections.unmodifiableList(wave));
+			ready.addAll(next);
+		}
+		
+		return new Schedule() {
+			@Override
+			public List<List<String>> waves() {
+				return Collections.unmodifiableList(waves);
+			}
+
+			@Override
+			public List<String> criticalPath() {
+				return criticalPath;
+			}
+			
+			@Override
+			public String toString() {
+				StringBuilder text = new StringBuilder();
+				text.append(String.format("Waves: %d\n", waves.size()));
+				for(int i = 0; i < waves.size(); i++) {
+					text.append(String.format("\t%d: %s\n", i+1, waves.get(i)));
+				}
+				text.append(String.format("Critical path (%d): ", criticalPath.size()));
+				for(int i = 0; i < criticalPath.size(); i++) {
+					text.append((i > 0) ? " -> " : "").append(criticalPath.get(i));
+				}
+				return text.toString();
+			}
+		};
+	}
+
+	
+	@Override
+	public Map<String, Object> execute() throws Exception {
+		final Map<String, Step> steps = this.steps();
+		criticalPath(steps); // Fail fast on cycles
+		final Map<String, Object> results = new ConcurrentHashMap<>();
+		final Map<String, Exception> failures = new ConcurrentHashMap<>();
+		final CountDownLatch done = new CountDownLatch(steps.size());
+		
+		// Limits of 0 or less mean no limit, same as in the dry run
+		Map<String, Integer> typeLimits = new HashMap<>();
+		for(String type : this.typeLimits.keySet()) {
+			typeLimits.put(type, this.typeLimit(type));
+		}
+		
+		final Executor executor = new Executor(this.subscription.executor(), results, failures, done, this.limit, typeLimits);
+		for(Step step : steps.values()) {
+			if(step.pending.get() == 0) {
+				executor.submit(step);
+			}
+		}
+		
+		done.await();
+		if(!failures.isEmpty()) {
+			Exception cause = failures.values().iterator().next();
+			throw new Exception(String.format("%d of %d definitions failed: %s", 
+				failures.size(), steps.size(), failures.keySet()), cause);
+		}
+		
+		return Collections.unmodifiableMap(results);
+	}
+	
+	
+	/*******************************************
+	 * Helpers
+	 *******************************************/
+	
+	// A definition and its dependency edges within the plan
+	private static class Step {
+		private final String key;
+		private final String type;
+		private final Creatable<?> definition;
+		private final List<Step> dependencies = new ArrayList<>();
+		private final List<Step> dependents = new ArrayList<>();
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean isBlocked;
+		
+		private Step(String key, String type, Creatable<?> definition) {
+			this.key = key;
+			this.type = type;
+			this.definition = definition;
+		}
+	}
+	
+	
+	// Runs the steps on the work-stealing pool, dispatching each as soon as its dependencies complete and the concurrency 
+	// limits allow, so that steps waiting for a slot are queued here rather than blocking workers of the pool
+	private static class Executor {
+		private final ForkJoinPool pool;
+		private final Map<String, Object> results;
+		private final Map<String, Exception> failures;
+		private final CountDownLatch done;
+		private final int limit;
+		private final Map<String, Integer> typeLimits;
+		private final List<Step> ready = new ArrayList<>();
+		private final Map<String, Integer> typeCounts = new HashMap<>();
+		private int count = 0;
+		
+		private Executor(
+				ForkJoinPool pool, 
+				Map<String, Object> results, 
+				Map<String, Exception> failures, 
+				CountDownLatch done, 
+				int limit,
+				Map<String, Integer> typeLimits) {
+			this.pool = pool;
+			this.results = results;
+			this.failures = failures;
+			this.done = done;
+			this.limit = limit;
+			this.typeLimits = typeLimits;
+		}
+		
+		// Queues a step whose dependencies have completed
+		private void submit(Step step) {
+			synchronized(this) {
+				this.ready.add(step);
+			}
+			this.dispatch();
+		}
+		
+		// Starts the queued steps the concurrency limits allow, in the order they became ready; skipped steps take no slot
+		private synchronized void dispatch() {
+			for(Iterator<Step> iter = this.ready.iterator(); iter.hasNext();) {
+				Step step = iter.next();
+				if(step.isBlocked) {
+					iter.remove();
+					this.run(step, false);
+				} else if(this.limit > 0 && this.count >= this.limit) {
+					break;
+				} else if(this.typeCount(step.type) < this.typeLimit(step.type)) {
+					iter.remove();
+					this.count++;
+					this.typeCounts.put(step.type, this.typeCount(step.type) + 1);
+					this.run(step, true);
+				}
+			}
+		}
+		
+		private void run(final Step step, final boolean isCounted) {
+			this.pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					boolean isFailed = true;
+					try {
+						if(step.isBlocked) {
+							failures.put(step.key, new Exception("Skipped because a dependency failed: " + step.key));
+						} else {
+							Object result = Parallel.call(new Callable<Object>() {
+								@Override
+								public Object call() throws Exception {
+									return step.definition.create();
+								}
+							});
+							results.put(step.key, result);
+							isFailed = false;
+						}
+					} catch(Exception e) {
+						failures.put(step.key, e);
+					} finally {
+						if(isCounted) {
+							release(step);
+						}
+						for(Step dependent : step.dependents) {
+							if(isFailed) {
+								dependent.isBlocked = true;
+							}
+							if(dependent.pending.decrementAndGet() == 0) {
+								submit(dependent);
+							}
+						}
+						dispatch();
+						done.countDown();
+					}
+				}
+			});
+		}
+		
+		// Frees the slots held by a completed step
+		private synchronized void release(Step step) {
+			this.count--;
+			this.typeCounts.put(step.type, this.typeCount(step.type) - 1);
+		}
+		
+		private int typeCount(String type) {
+			Integer typeCount = this.typeCounts.get(type);
+			return (typeCount != null) ? typeCount : 0;
+		}
+		
+		private int typeLimit(String type) {
+			Integer typeLimit = this.typeLimits.get(type);
+			return (typeLimit != null) ? typeLimit : Integer.MAX_VALUE;
+		}
+	}
+	
+	
+	// Builds the dependency graph from the current state of the definitions
+	private Map<String, Step> steps() {
+		Map<String, Step> steps = new LinkedHashMap<>();
+		Map<Step, Set<String>> references = new HashMap<>();
+		int i = 0;
+		for(Creatable<?> definition : this.definitions) {
+			Step step;
+			if(definition instanceof GroupableResourceBaseImpl) {
+				GroupableResourceBaseImpl<?, ?, ?, ?> resource = (GroupableResourceBaseImpl<?, ?, ?, ?>) definition;
+				step = new Step(key(definition), resource.type().toLowerCase(), definition);
+				references.put(step, resource.dependencies());
+			} else if(definition instanceof ResourceGroupImpl) {
+				step = new Step(key(definition), ResourceGroupsImpl.TYPE.toLowerCase(), definition);
+			} else {
+				// Opaque definitions cannot be referenced and are assumed independent
+				step = new Step("definition#" + i, "", definition);
+			}
+			
+			if(steps.put(step.key, step) != null) {
+				throw new IllegalArgumentException("Duplicate definition: " + step.key);
+			}
+			i++;
+		}
+		
+		// Link the references to other definitions in the plan; references to anything else are assumed to exist already
+		for(Map.Entry<Step, Set<String>> entry : references.entrySet()) {
+			Step step = entry.getKey();
+			for(String reference : entry.getValue()) {
+				Step dependency = steps.get(reference);
+				if(dependency != null && dependency != step) {
+					step.dependencies.add(dependency);
+					dependency.dependents.add(step);
+					step.pending.incrementAndGet();
+				}
+			}
+		}
+		
+		return steps;
+	}
+	
+	
+	// Returns the longest chain of dependent steps, failing if there is a cycle
+	private static List<String> criticalPath(Map<String, Step> steps) {
+		Map<Step, Integer> depths = new HashMap<>();
+		Map<Step, Step> predecessors = new HashMap<>();
+		Map<Step, Integer> pending = new HashMap<>();
+		Deque<Step> queue = new ArrayDeque<>();
+		for(Step step : steps.values()) {
+			pending.put(step, step.dependencies.size());
+			if(step.dependencies.isEmpty()) {
+				queue.add(step);
+				depths.put(step, 1);
+			}
+		}
+		
+		// Topological traversal, tracking the longest path to each step
+		Step last = null;
+		int visited = 0;
+		while(!queue.isEmpty()) {
+			Step step = queue.poll();
+			visited++;
+			int depth = depths.get(step);
+			if(last == null || depth > depths.get(last)) {
+				last = step;
+			}
+			
+			for(Step dependent : step.dependents) {
+				Integer dependentDepth = depths.get(dependent);
+				if(dependentDepth == null || dependentDepth < depth + 1) {
+					depths.put(dependent, depth + 1);
+					predecessors.put(dependent, step);
+				}
+				
+				int remaining = pending.get(dependent) - 1;
+				pending.put(dependent, remaining);
+				if(remaining == 0) {
+					queue.add(dependent);
+				}
+			}
+		}
+		
+		if(visited < steps.size()) {
+			List<String> cycle = new ArrayList<>();
+			for(Map.Entry<Step, Integer> entry : pending.entrySet()) {
+				if(entry.getValue() > 0) {
+					cycle.add(entry.getKey().key);
+				}
+			}
+			throw new IllegalStateException("Dependency cycle among: " + cycle);
+		}
+		
+		List<String> path = new ArrayList<>();
+		for(Step step = last; step != null; step = predecessors.get(step)) {
+			path.add(0, step.key);
+		}
+		return Collections.unmodifiableList(path);
+	}
+	
+	
+	private int typeLimit(String type) {
+		Integer typeLimit = this.typeLimits.get(type);
+		return (typeLimit != null && typeLimit > 0) ? typeLimit : Integer.MAX_VALUE;
+	}
+}
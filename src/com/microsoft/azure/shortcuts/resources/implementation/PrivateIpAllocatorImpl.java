@@ -0,0 +1,275 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import com.microsoft.azure.management.network.models.NetworkInterfaceIpConfiguration;
+import com.microsoft.azure.management.network.models.ResourceId;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.Network;
+import com.microsoft.azure.shortcuts.resources.NetworkInterface;
+import com.microsoft.azure.shortcuts.resources.PrivateIpAllocator;
+import com.microsoft.azure.shortcuts.resources.Subnet;
+
+// A bitmap of the host addresses of a subnet, one bit per address set when the address is reserved or in use. Allocations
+// continue from the last allocated address, so that released addresses are not handed out again right away. The addresses 
+// allocated or reserved locally are remembered until a refresh finds them in Azure, so that a refresh never drops the 
+// addresses of network interfaces still being created
+class PrivateIpAllocatorImpl implements PrivateIpAllocator {
+	// The addresses Azure reserves at the start of each subnet (network, gateway and DNS), and at its end (broadcast)
+	static final int RESERVED_FIRST = 4;
+	static final int RESERVED_LAST = 1;
+	
+	// The maximum number of resource groups listed concurrently to seed the bitmap
+	static final int CONCURRENCY = 16;
+	
+	private final Subscription subscription;
+	private final String subnetId;
+	private String addressPrefix;
+	private int network;
+	private int size;
+	private long[] bitmap;
+	private int available;
+	private int cursor;
+	private final Set<Integer> pending = new HashSet<>();
+	
+	PrivateIpAllocatorImpl(Subscription subscription, String subnetId) {
+		this.subscription = subscription;
+		this.subnetId = subnetId;
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public synchronized String addressPrefix() {
+		return this.addressPrefix;
+	}
+
+	@Override
+	public synchronized int available() {
+		return this.available;
+	}
+
+	@Override
+	public synchronized boolean isFree(String address) {
+		int offset = this.offset(address);
+		return (this.bitmap[offset >>> 6] & (1L << offset)) == 0;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public synchronized String allocate() {
+		if(this.available == 0) {
+			return null;
+		}
+		
+		// Scan the words from the cursor for a clear bit, wrapping around once
+		int words = this.bitmap.length;
+		for(int i = 0; i <= words; i++) {
+			int word = ((this.cursor >>> 6) + i) % words;
+			long free = ~this.bitmap[word];
+			if(i == 0) {
+				// Skip the bits before the cursor in its own word on the first pass
+				free &= -1L << this.cursor;
+			}
+			
+			if(free != 0) {
+				int offset = (word << 6) + Long.numberOfTrailingZeros(free);
+				if(offset < this.size) {
+					this.set(offset, true);
+					this.pending.add(this.network + offset);
+					this.cursor = (offset + 1) % this.size;
+					return NetworkSecurityPolicyImpl.formatAddress(this.network + offset);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized PrivateIpAllocatorImpl reserve(String address) {
+		int offset = this.offset(address);
+		this.set(offset, true);
+		this.pending.add(this.network + offset);
+		return this;
+	}
+
+	@Override
+	public synchronized PrivateIpAllocatorImpl release(String address) {
+		int offset = this.offset(address);
+		if(offset >= RESERVED_FIRST && offset < this.size - RESERVED_LAST) {
+			this.set(offset, false);
+			this.pending.remove(this.network + offset);
+		}
+		return this;
+	}
+
+	@Override
+	public PrivateIpAllocatorImpl refresh() throws Exception {
+		// Find the subnet in its network
+		int i = this.subnetId.toLowerCase().lastIndexOf("/subnets/");
+		Network network = this.subscription.networks(this.subnetId.substring(0, i));
+		String subnetName = this.subnetId.substring(i + "/subnets/".length());
+		Subnet subnet = null;
+		for(Subnet candidate : network.subnets().values()) {
+			if(candidate.inner().getName().equalsIgnoreCase(subnetName)) {
+				subnet = candidate;
+			}
+		}
+		
+		if(subnet == null) {
+			throw new IllegalArgumentException("Subnet not found: " + this.subnetId);
+		}
+		
+		// Collect the private addresses of the network interfaces in the subnet
+		List<String> addresses = new ArrayList<>();
+		for(NetworkInterface nic : this.networkInterfaces(subnet)) {
+			for(NetworkInterfaceIpConfiguration ipConfig : nic.inner().getIpConfigurations()) {
+				if(ipConfig.getSubnet() != null 
+						&& this.subnetId.equalsIgnoreCase(ipConfig.getSubnet().getId()) 
+						&& ipConfig.getPrivateIpAddress() != null) {
+					addresses.add(ipConfig.getPrivateIpAddress());
+				}
+			}
+		}
+		
+		// Rebuild the bitmap from the live state, merging in the addresses allocated or reserved locally that are not in Azure 
+		// yet, including those allocated during the listing
+		synchronized(this) {
+			Set<Integer> pending = new HashSet<>(this.pending);
+			int cursor = this.cursor;
+			boolean isSamePrefix = (this.addressPrefix != null && this.addressPrefix.equals(subnet.addressPrefix()));
+			this.seed(subnet.addressPrefix());
+			for(String address : addresses) {
+				int offset = this.offset(address);
+				this.set(offset, true);
+				pending.remove(this.network + offset);
+			}
+			
+			for(int address : pending) {
+				int offset = address - this.network;
+				if(offset >= 0 && offset < this.size) {
+					this.set(offset, true);
+					this.pending.add(address);
+				}
+			}
+			
+			if(isSamePrefix) {
+				this.cursor = cursor;
+			}
+		}
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	// Lists the network interfaces of the resource groups the IP configurations in the subnet belong to, or of the whole 
+	// subscription if the subnet does not list its IP configurations
+	private Collection<NetworkInterface> networkInterfaces(Subnet subnet) throws Exception {
+		List<ResourceId> ipConfigs = subnet.inner().getIpConfigurations();
+		if(ipConfigs == null) {
+			return this.subscription.networkInterfaces().asMap().values();
+		}
+		
+		Set<String> groups = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		for(ResourceId ipConfig : ipConfigs) {
+			if(ipConfig.getId() != null && ipConfig.getId().toLowerCase().contains("/" + NetworkInterfacesImpl.TYPE.toLowerCase() + "/")) {
+				groups.add(ResourcesImpl.groupFromResourceId(ipConfig.getId()));
+			}
+		}
+		
+		List<Callable<Collection<NetworkInterface>>> calls = new ArrayList<>();
+		for(final String group : groups) {
+			calls.add(new Callable<Collection<NetworkInterface>>() {
+				@Override
+				public Collection<NetworkInterface> call() throws Exception {
+					return subscription.networkInterfaces().asMap(group).values();
+				}
+			});
+		}
+		
+		List<NetworkInterface> nics = new ArrayList<>();
+		for(Collection<NetworkInterface> groupNics : Parallel.invokeAll(this.subscription.executor(), calls, CONCURRENCY)) {
+			nics.addAll(groupNics);
+		}
+		return nics;
+	}
+	
+	// Resets the bitmap to the subnet's address prefix, with only the reserved addresses set, forgetting the local allocations
+	void seed(String addressPrefix) {
+		int[] prefix = NetworkSecurityPolicyImpl.prefix(addressPrefix);
+		if(prefix == null || prefix[1] > 30) {
+			throw new IllegalArgumentException("Not an IPv4 subnet prefix: " + addressPrefix);
+		}
+		
+		this.addressPrefix = addressPrefix;
+		this.network = prefix[0];
+		this.size = 1 << (32 - prefix[1]);
+		this.bitmap = new long[(this.size + 63) >>> 6];
+		this.available = this.size;
+		this.cursor = 0;
+		this.pending.clear();
+		for(int offset = 0; offset < RESERVED_FIRST; offset++) {
+			this.set(offset, true);
+		}
+		for(int offset = this.size - RESERVED_LAST; offset < this.size; offset++) {
+			this.set(offset, true);
+		}
+	}
+	
+	private void set(int offset, boolean used) {
+		long bit = 1L << offset;
+		boolean wasUsed = (this.bitmap[offset >>> 6] & bit) != 0;
+		if(used && !wasUsed) {
+			this.bitmap[offset >>> 6] |= bit;
+			this.available--;
+		} else if(!used && wasUsed) {
+			this.bitmap[offset >>> 6] &= ~bit;
+			this.available++;
+		}
+	}
+	
+	// Returns the offset of the address within the subnet
+	private int offset(String address) {
+		int[] prefix = NetworkSecurityPolicyImpl.prefix(address);
+		int offset = (prefix != null && prefix[1] == 32) ? prefix[0] - this.network : -1;
+		if(offset < 0 || offset >= this.size) {
+			throw new IllegalArgumentException(String.format("Address %s is not in subnet %s", address, this.addressPrefix));
+		}
+		return offset;
+	}
+}
@@ -19,13 +19,13 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.microsoft.azure.management.resources.models.ProviderResourceType;
+import com.microsoft.azure.shortcuts.common.implementation.DerivedView;
 import com.microsoft.azure.shortcuts.common.implementation.IndexableImpl;
 import com.microsoft.azure.shortcuts.common.implementation.IndexableRefreshableWrapperImpl;
 import com.microsoft.azure.shortcuts.resources.Provider;
@@ -39,6 +39,19 @@ class ProviderImpl
 	
 	private final ArmEntitiesImpl collection;
 	
+	// The resource type wrappers, indexed by name
+	private final DerivedView<Map<String, ResourceType>> resourceTypesView = new DerivedView<Map<String, ResourceType>>() {
+		@Override
+		protected Map<String, ResourceType> compute() {
+			HashMap<String, ResourceType> resourceTypes = new HashMap<>();
+			for(ProviderResourceType item : inner().getResourceTypes()) {
+				ResourceTypeImpl resourceType = new ResourceTypeImpl(item);
+				resourceTypes.put(item.getName(), resourceType);
+			}
+			return Collections.unmodifiableMap(resourceTypes);
+		}
+	};
+	
 	private ProviderImpl(
 			com.microsoft.azure.management.resources.models.Provider azureProvider, 
 			ArmEntitiesImpl parentCollection) {
@@ -66,12 +79,7 @@ class ProviderImpl
 
 	@Override
 	public Map<String, ResourceType> resourceTypes() throws Exception {
-		HashMap<String, ResourceType> resourceTypes = new HashMap<>();
-		for(ProviderResourceType item : this.inner().getResourceTypes()) {
-			ResourceTypeImpl resourceType = new ResourceTypeImpl(item);
-			resourceTypes.put(item.getName(), resourceType);
-		}
-		return Collections.unmodifiableMap(resourceTypes);
+		return this.resourceTypesView.get(this.version());
 	}
 	
 	
@@ -87,10 +95,12 @@ class ProviderImpl
 		implements Provider.ResourceType {
 
 		final private ProviderResourceType azureResourceType;
+		final private String latestApiVersion;
 		
 		private ResourceTypeImpl(ProviderResourceType azureResourceType) {
 			super(azureResourceType.getName());
 			this.azureResourceType = azureResourceType;
+			this.latestApiVersion = latest(azureResourceType.getApiVersions());
 		}
 
 		@Override
@@ -100,17 +110,44 @@ class ProviderImpl
 
 		@Override
 		public String latestApiVersion() {
-			// Assume the collection is sorted in ascending order
-			ArrayList<String> versions = azureResourceType.getApiVersions();
-			if(versions == null || versions.isEmpty()) {
-				return null;
-			} else if(versions.size() == 1) {
-				return versions.get(0);
-			} else {
-				Collections.sort(versions);
-				return versions.get(versions.size() -1);
+			return this.latestApiVersion;
+		}
+	}
+	
+	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	// Returns the latest of the API versions (e.g. "2015-06-15", "2016-03-30-preview"), by date and then preferring
+	// a stable version over a preview of the same date
+	static String latest(List<String> versions) {
+		String latest = null;
+		if(versions != null) {
+			for(String version : versions) {
+				if(latest == null || compareApiVersions(version, latest) > 0) {
+					latest = version;
+				}
 			}
 		}
+		return latest;
+	}
+	
+	private static int compareApiVersions(String version1, String version2) {
+		int dateLength = "yyyy-MM-dd".length();
+		String date1 = (version1.length() >= dateLength) ? version1.substring(0, dateLength) : version1;
+		String date2 = (version2.length() >= dateLength) ? version2.substring(0, dateLength) : version2;
+		int compared = date1.compareTo(date2);
+		if(compared != 0) {
+			return compared;
+		}
+		
+		// For the same date, a version without a suffix (stable) is later than one with a suffix (e.g. "-preview")
+		boolean isStable1 = version1.length() == date1.length(), isStable2 = version2.length() == date2.length();
+		if(isStable1 != isStable2) {
+			return isStable1 ? 1 : -1;
+		}
+		return version1.compareTo(version2);
 	}
 	
 
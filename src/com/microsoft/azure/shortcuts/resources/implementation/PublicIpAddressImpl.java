@@ -47,15 +47,15 @@ class PublicIpAddressImpl
 	
 	@Override
 	public String ipAddress() {
-		return this.inner().getIpAddress();
+		return this.innerObject().getIpAddress();
 	}
 	
 	@Override
 	public String leafDomainLabel() {
-		if(this.inner().getDnsSettings() == null) {
+		if(this.innerObject().getDnsSettings() == null) {
 			return null;
 		} else {
-			return this.inner().getDnsSettings().getDomainNameLabel();
+			return this.innerObject().getDnsSettings().getDomainNameLabel();
 		}
 	}
 	
@@ -66,25 +66,28 @@ class PublicIpAddressImpl
 	
 	@Override
 	public PublicIpAddressImpl withStaticIp() {
-		this.inner().setPublicIpAllocationMethod(IpAllocationMethod.STATIC);
+		this.ensureNotSnapshot();
+		this.innerObject().setPublicIpAllocationMethod(IpAllocationMethod.STATIC);
 		return this;
 	}
 	
 	@Override
 	public PublicIpAddressImpl withDynamicIp() {
-		this.inner().setPublicIpAllocationMethod(IpAllocationMethod.DYNAMIC);
+		this.ensureNotSnapshot();
+		this.innerObject().setPublicIpAllocationMethod(IpAllocationMethod.DYNAMIC);
 		return this;
 	}
 	
 	@Override
 	public PublicIpAddressImpl withLeafDomainLabel(String dnsName) {
+		this.ensureNotSnapshot();
 		PublicIpAddressDnsSettings dnsSettings;
 		if(dnsName == null) {
-			this.inner().setDnsSettings(null);
+			this.innerObject().setDnsSettings(null);
 			return this;
-		} else if(null == (dnsSettings = this.inner().getDnsSettings())) {
+		} else if(null == (dnsSettings = this.innerObject().getDnsSettings())) {
 			dnsSettings = new PublicIpAddressDnsSettings();
-			this.inner().setDnsSettings(dnsSettings);
+			this.innerObject().setDnsSettings(dnsSettings);
 		}
 		dnsSettings.setDomainNameLabel(dnsName);
 		return this;
@@ -107,15 +110,17 @@ class PublicIpAddressImpl
 	
 	@Override
 	public PublicIpAddress create() throws Exception {
+		this.ensureNotSnapshot();
 		// Create a group as needed
 		ensureGroup();
 	
-		this.subscription().networkManagementClient().getPublicIpAddressesOperations().createOrUpdate(this.groupName, this.name(), this.inner());
+		this.subscription().networkManagementClient().getPublicIpAddressesOperations().createOrUpdate(this.groupName, this.name(), this.innerObject());
 		return this.subscription().publicIpAddresses().get(this.groupName, this.name());
 	}
 	
 	@Override
 	public PublicIpAddressImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 				ResourcesImpl.groupFromResourceId(this.id()), 
 				ResourcesImpl.nameFromResourceId(this.id())));
@@ -34,6 +34,8 @@ public class PublicIpAddressesImpl
 		PublicIpAddressImpl>
 	implements PublicIpAddresses {
 		
+	static final String TYPE = "Microsoft.Network/publicIPAddresses";
+	
 	PublicIpAddressesImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -42,6 +44,7 @@ public class PublicIpAddressesImpl
 	public PublicIpAddressImpl define(String name) throws Exception {
 		com.microsoft.azure.management.network.models.PublicIpAddress nativeItem = new com.microsoft.azure.management.network.models.PublicIpAddress();
 		nativeItem.setName(name);
+		nativeItem.setType(TYPE);
 		nativeItem.setPublicIpAllocationMethod(IpAllocationMethod.DYNAMIC);
 		
 		// Assume a public domain name is the same as the resource name by default
@@ -55,6 +58,7 @@ public class PublicIpAddressesImpl
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.networkManagementClient().getPublicIpAddressesOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 
@@ -80,4 +84,9 @@ public class PublicIpAddressesImpl
 	protected PublicIpAddressImpl wrap(com.microsoft.azure.management.network.models.PublicIpAddress nativeItem) {
 		return new PublicIpAddressImpl(nativeItem, this);
 	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
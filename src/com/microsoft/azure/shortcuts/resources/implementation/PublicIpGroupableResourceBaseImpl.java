@@ -19,6 +19,12 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.util.List;
+import java.util.Set;
+
+import org.codehaus.jackson.node.ObjectNode;
+
+import com.microsoft.azure.management.network.models.IpAllocationMethod;
 import com.microsoft.azure.shortcuts.common.implementation.EntitiesImpl;
 import com.microsoft.azure.shortcuts.resources.PublicIpAddress;
 
@@ -42,6 +48,7 @@ public abstract class PublicIpGroupableResourceBaseImpl<
 	// Helper to associate with an existing public IP address using its resource ID
 	@SuppressWarnings("unchecked")
 	protected TI withExistingPublicIpAddress(String resourceId) {
+		this.ensureNotSnapshot();
 		this.isPublicIpAddressExisting = true;
 		this.publicIpAddressId = resourceId;
 		return (TI)this;
@@ -72,6 +79,36 @@ public abstract class PublicIpGroupableResourceBaseImpl<
 	}
 
 	
+	// Adds a new public IP address to the deployment template if needed, returning the resource ID of the public IP address to use, if any
+	final protected String ensurePublicIpAddress(DeploymentTemplate template, List<String> dependsOn) {
+		if(this.isPublicIpAddressExisting) {
+			return this.publicIpAddressId;
+		} else if(this.publicIpAddressDns == null) {
+			// Generate a public leaf domain name if needed
+			this.publicIpAddressDns = this.name().toLowerCase();
+		}
+		
+		ObjectNode properties = template.addResource(
+			PublicIpAddressesImpl.TYPE, this.publicIpAddressDns, this.region(), null, null);
+		properties.put("publicIPAllocationMethod", IpAllocationMethod.DYNAMIC);
+		properties.putObject("dnsSettings").put("domainNameLabel", this.publicIpAddressDns);
+		
+		String id = template.resourceId(PublicIpAddressesImpl.TYPE, this.publicIpAddressDns);
+		dependsOn.add(id);
+		return id;
+	}
+
+	
+	@Override
+	Set<String> dependencies() {
+		Set<String> dependencies = super.dependencies();
+		if(this.isPublicIpAddressExisting && this.publicIpAddressId != null) {
+			dependencies.add(PlanImpl.key(PublicIpAddressesImpl.TYPE, this.planGroupName(), this.publicIpAddressId));
+		}
+		return dependencies;
+	}
+	
+	
 	/*****************************************************
 	 * WithPublicIpAddress implementation
 	 *****************************************************/
@@ -89,6 +126,7 @@ public abstract class PublicIpGroupableResourceBaseImpl<
 
 	@SuppressWarnings("unchecked")
 	final public TI withNewPublicIpAddress(String leafDnsLabel) {
+		this.ensureNotSnapshot();
 		this.isPublicIpAddressExisting = false;
 		this.publicIpAddressDns = (leafDnsLabel == null) ? null : leafDnsLabel.toLowerCase();
 		return (TI) this;
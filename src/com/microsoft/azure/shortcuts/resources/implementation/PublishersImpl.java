@@ -21,12 +21,15 @@ package com.microsoft.azure.shortcuts.resources.implementation;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
 import com.microsoft.azure.management.compute.models.VirtualMachineImageListPublishersParameters;
 import com.microsoft.azure.management.compute.models.VirtualMachineImageResource;
+import com.microsoft.azure.shortcuts.common.implementation.ListingCache;
 import com.microsoft.azure.shortcuts.resources.Publisher;
 import com.microsoft.azure.shortcuts.resources.Publishers;
 import com.microsoft.azure.shortcuts.resources.Region;
@@ -35,6 +38,11 @@ public class PublishersImpl
 	extends ArmEntitiesImpl
 	implements Publishers {
 	
+	// Publishers change rarely, so their listings are kept longer than those of resources
+	static final long LISTING_TTL = 3600 * 1000L;
+	
+	private final ListingCache<VirtualMachineImageResource> cache = new ListingCache<>(LISTING_TTL);
+	
 	PublishersImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -63,7 +71,9 @@ public class PublishersImpl
 	@Override
 	public Map<String, Publisher> asMap(Region region) throws Exception {
 		TreeMap<String, Publisher> wrappers = new TreeMap<>();
-		for(VirtualMachineImageResource nativeItem : getNativeEntities(region.toString())) {
+		ArrayList<VirtualMachineImageResource> nativeItems = getNativeEntities(region.toString());
+		this.cache(region.toString(), nativeItems);
+		for(VirtualMachineImageResource nativeItem : nativeItems) {
 			PublisherImpl wrapper = PublisherImpl.wrap(nativeItem, this);
 			wrappers.put(nativeItem.getId(), wrapper);
 		}
@@ -80,16 +90,28 @@ public class PublishersImpl
 
 	@Override
 	public Publisher get(Region region, String name) throws Exception {
-		VirtualMachineImageListPublishersParameters params = new VirtualMachineImageListPublishersParameters();
-		params.setLocation(region.toString());
-		for(VirtualMachineImageResource nativeItem : subscription.computeManagementClient().getVirtualMachineImagesOperations().listPublishers(params).getResources()) {
-			if(nativeItem.getId().equalsIgnoreCase(name)) {
-				return PublisherImpl.wrap(nativeItem, this);
-			} else if(nativeItem.getName().equalsIgnoreCase(name)) {
-				return PublisherImpl.wrap(nativeItem, this);
-			}
+		// Look up by name, also when given the ID
+		Map<String, VirtualMachineImageResource> nativeItems = this.cache.get(region.toString());
+		if(nativeItems == null) {
+			nativeItems = this.cache(region.toString(), getNativeEntities(region.toString()));
+		}
+		
+		VirtualMachineImageResource nativeItem = nativeItems.get(name.substring(name.lastIndexOf('/') + 1).toLowerCase());
+		if(nativeItem != null) {
+			return PublisherImpl.wrap(nativeItem, this);
 		}
 
 		throw new NoSuchElementException("Publisher not found.");		
 	}
+	
+	
+	// Caches the listing of the publishers in a region, indexed by name
+	private Map<String, VirtualMachineImageResource> cache(String region, List<VirtualMachineImageResource> nativeItems) {
+		Map<String, VirtualMachineImageResource> indexed = new HashMap<>();
+		for(VirtualMachineImageResource nativeItem : nativeItems) {
+			indexed.put(nativeItem.getName().toLowerCase(), nativeItem);
+		}
+		this.cache.put(region, indexed);
+		return indexed;
+	}
 }
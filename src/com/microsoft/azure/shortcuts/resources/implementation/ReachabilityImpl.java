@@ -0,0 +1,461 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.RecursiveAction;
+
+import com.microsoft.azure.management.compute.models.NetworkInterfaceReference;
+import com.microsoft.azure.management.network.models.NetworkInterfaceIpConfiguration;
+import com.microsoft.azure.management.network.models.ResourceId;
+import com.microsoft.azure.shortcuts.resources.Network;
+import com.microsoft.azure.shortcuts.resources.NetworkInterface;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityRule.Direction;
+import com.microsoft.azure.shortcuts.resources.Protocol;
+import com.microsoft.azure.shortcuts.resources.Reachability;
+import com.microsoft.azure.shortcuts.resources.Subnet;
+import com.microsoft.azure.shortcuts.resources.Topology;
+import com.microsoft.azure.shortcuts.resources.VirtualMachine;
+
+// A reachability analysis over the equivalence classes of virtual machines: two virtual machines in the same subnet, behind the 
+// same compiled policies, whose addresses look up the same rule bitmaps in every policy of their network, are decided alike 
+// in any flow. The matrix between classes is computed on the fork-join pool of the subscription, one task per source subnet
+class ReachabilityImpl implements Reachability, Reachability.Builder {
+	// The first port of the ephemeral range, as the default source port of the flows
+	static final int DEFAULT_SOURCE_PORT = 49152;
+	
+	private final Subscription subscription;
+	private Collection<VirtualMachine> virtualMachines = null;
+	private Protocol protocol = Protocol.TCP;
+	private final List<Integer> ports = new ArrayList<>();
+	private int sourcePort = DEFAULT_SOURCE_PORT;
+	
+	// The analyzed virtual machine IDs, and the index of the class of each by lower case ID
+	private final List<String> ids = new ArrayList<>();
+	private final Map<String, Integer> classIndexes = new HashMap<>();
+	private final List<ContextClass> classes = new ArrayList<>();
+	
+	// The destination classes reachable from each source class, by port index
+	private BitSet[][] reachable;
+	
+	// The virtual machines decided alike in any flow
+	private static class ContextClass {
+		private final int index;
+		private final String subnetKey;
+		private final String networkKey;
+		private final NetworkSecurityPolicyImpl outbound;
+		private final NetworkSecurityPolicyImpl inbound;
+		private final int address;
+		private final List<String> members = new ArrayList<>();
+		
+		private ContextClass(int index, Endpoint endpoint) {
+			this.index = index;
+			this.subnetKey = endpoint.subnetKey;
+			this.networkKey = endpoint.networkKey;
+			this.outbound = endpoint.outbound;
+			this.inbound = endpoint.inbound;
+			this.address = endpoint.address;
+		}
+	}
+	
+	// The rule context of a virtual machine
+	private static class Endpoint {
+		private final String id;
+		private final String subnetKey;
+		private final String networkKey;
+		private final NetworkSecurityPolicyImpl outbound;
+		private final NetworkSecurityPolicyImpl inbound;
+		private final int address;
+		
+		private Endpoint(String id, String subnetKey, String networkKey, NetworkSecurityPolicyImpl outbound, NetworkSecurityPolicyImpl inbound, int address) {
+			this.id = id;
+			this.subnetKey = subnetKey;
+			this.networkKey = networkKey;
+			this.outbound = outbound;
+			this.inbound = inbound;
+			this.address = address;
+		}
+	}
+	
+	ReachabilityImpl(Subscription subscription) {
+		this.subscription = subscription;
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public List<String> virtualMachines() {
+		return Collections.unmodifiableList(this.ids);
+	}
+
+	@Override
+	public List<Integer> ports() {
+		return Collections.unmodifiableList(this.ports);
+	}
+
+	@Override
+	public int contexts() {
+		return this.classes.size();
+	}
+
+	@Override
+	public boolean isReachable(String sourceId, String destinationId, int port) {
+		if(sourceId.equalsIgnoreCase(destinationId)) {
+			return false;
+		}
+		
+		return this.row(sourceId, port).get(this.classOf(destinationId).index);
+	}
+
+	@Override
+	public Set<String> reachableFrom(String sourceId, int port) {
+		BitSet row = this.row(sourceId, port);
+		TreeSet<String> ids = new TreeSet<>();
+		for(int i = row.nextSetBit(0); i >= 0; i = row.nextSetBit(i + 1)) {
+			addMembers(ids, this.classes.get(i), sourceId);
+		}
+		return ids;
+	}
+
+	@Override
+	public Set<String> reachableTo(String destinationId, int port) {
+		int portIndex = this.portIndex(port);
+		int destinationClass = this.classOf(destinationId).index;
+		TreeSet<String> ids = new TreeSet<>();
+		for(ContextClass source : this.classes) {
+			if(this.reachable[portIndex][source.index].get(destinationClass)) {
+				addMembers(ids, source, destinationId);
+			}
+		}
+		return ids;
+	}
+	
+	
+	/**************************************************************
+	 * Setters (fluent interface)
+	 **************************************************************/
+	
+	@Override
+	public ReachabilityImpl withVirtualMachines(Collection<VirtualMachine> virtualMachines) {
+		this.virtualMachines = virtualMachines;
+		return this;
+	}
+
+	@Override
+	public ReachabilityImpl withProtocol(Protocol protocol) {
+		this.protocol = protocol;
+		return this;
+	}
+
+	@Override
+	public ReachabilityImpl withPorts(int... ports) {
+		for(int port : ports) {
+			this.ports.add(port);
+		}
+		return this;
+	}
+
+	@Override
+	public ReachabilityImpl withSourcePort(int port) {
+		this.sourcePort = port;
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public ReachabilityImpl build() throws Exception {
+		if(this.ports.isEmpty()) {
+			throw new IllegalArgumentException("No ports specified");
+		}
+		
+		if(this.virtualMachines == null) {
+			this.virtualMachines = this.subscription.virtualMachines().asMap().values();
+		}
+		
+		return this.analyze(this.subscription.topology().withResources(this.virtualMachines).build());
+	}
+	
+	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	// Computes the reachability of the virtual machines of the topology
+	ReachabilityImpl analyze(Topology topology) {
+		List<Endpoint> endpoints = this.endpoints(topology);
+		
+		// Collect the distinct policies of each network, to sign the addresses against
+		Map<String, Set<NetworkSecurityPolicyImpl>> networkPolicies = new HashMap<>();
+		for(Endpoint endpoint : endpoints) {
+			Set<NetworkSecurityPolicyImpl> policies = networkPolicies.get(endpoint.networkKey);
+			if(policies == null) {
+				policies = Collections.newSetFromMap(new LinkedHashMap<NetworkSecurityPolicyImpl, Boolean>());
+				networkPolicies.put(endpoint.networkKey, policies);
+			}
+			policies.add(endpoint.outbound);
+			policies.add(endpoint.inbound);
+		}
+		
+		// Group the virtual machines into classes by subnet, policies and address signature
+		Map<List<Object>, ContextClass> classesByKey = new HashMap<>();
+		Map<String, List<ContextClass>> subnetClasses = new LinkedHashMap<>();
+		Map<String, List<ContextClass>> networkClasses = new HashMap<>();
+		for(Endpoint endpoint : endpoints) {
+			List<Object> key = new ArrayList<>();
+			key.add(endpoint.subnetKey);
+			key.add(endpoint.outbound);
+			key.add(endpoint.inbound);
+			for(NetworkSecurityPolicyImpl policy : networkPolicies.get(endpoint.networkKey)) {
+				policy.addSignature(endpoint.address, key);
+			}
+			
+			ContextClass contextClass = classesByKey.get(key);
+			if(contextClass == null) {
+				contextClass = new ContextClass(this.classes.size(), endpoint);
+				classesByKey.put(key, contextClass);
+				this.classes.add(contextClass);
+				add(subnetClasses, endpoint.subnetKey, contextClass);
+				add(networkClasses, endpoint.networkKey, contextClass);
+			}
+			
+			contextClass.members.add(endpoint.id);
+			this.ids.add(endpoint.id);
+			this.classIndexes.put(endpoint.id.toLowerCase(), contextClass.index);
+		}
+		
+		// Compute the rows of each source subnet in parallel
+		this.reachable = new BitSet[this.ports.size()][this.classes.size()];
+		List<List<ContextClass>> shards = new ArrayList<>(subnetClasses.values());
+		this.subscription.executor().invoke(new ShardTask(shards, 0, shards.size(), networkClasses));
+		return this;
+	}
+	
+	// Resolves the rule context of each virtual machine from the primary IP configuration of its primary network interface
+	private List<Endpoint> endpoints(Topology topology) {
+		Map<String, NetworkInterface> nics = lowerCaseKeys(topology.networkInterfaces());
+		Map<String, Subnet> subnets = lowerCaseKeys(topology.subnets());
+		Map<String, Network> networks = lowerCaseKeys(topology.networks());
+		Map<String, NetworkSecurityGroup> nsgs = lowerCaseKeys(topology.networkSecurityGroups());
+		Map<String, NetworkSecurityPolicyImpl> policies = new HashMap<>();
+		Map<List<NetworkSecurityPolicyImpl>, NetworkSecurityPolicyImpl> combinations = new HashMap<>();
+		
+		List<Endpoint> endpoints = new ArrayList<>();
+		for(VirtualMachine vm : topology.virtualMachines().values()) {
+			String nicId = null;
+			for(NetworkInterfaceReference nicReference : vm.networkInterfaces()) {
+				if(nicId == null || Boolean.TRUE.equals(nicReference.isPrimary())) {
+					nicId = nicReference.getReferenceUri();
+				}
+			}
+			
+			NetworkInterface nic = (nicId != null) ? nics.get(nicId.toLowerCase()) : null;
+			if(nic == null || nic.inner().getIpConfigurations() == null || nic.inner().getIpConfigurations().isEmpty()) {
+				continue;
+			}
+			
+			NetworkInterfaceIpConfiguration ipConfig = nic.inner().getIpConfigurations().get(0);
+			if(ipConfig.getPrivateIpAddress() == null || ipConfig.getSubnet() == null || ipConfig.getSubnet().getId() == null) {
+				continue;
+			}
+			
+			String subnetKey = ipConfig.getSubnet().getId().toLowerCase();
+			String networkKey = subnetKey.substring(0, subnetKey.lastIndexOf("/subnets/"));
+			Subnet subnet = subnets.get(subnetKey);
+			Network network = networks.get(networkKey);
+			if(subnet == null || network == null) {
+				continue;
+			}
+			
+			NetworkSecurityPolicyImpl subnetPolicy = policy(subnet.networkSecurityGroup(), network, networkKey, nsgs, policies);
+			ResourceId nicNsgId = nic.inner().getNetworkSecurityGroup();
+			NetworkSecurityPolicyImpl nicPolicy = policy((nicNsgId != null) ? nicNsgId.getId() : null, network, networkKey, nsgs, policies);
+			
+			int address;
+			try {
+				address = NetworkSecurityPolicyImpl.ALLOW_ALL.address(ipConfig.getPrivateIpAddress());
+			} catch(IllegalArgumentException e) {
+				// Not IPv4
+				continue;
+			}
+			
+			// Outbound flows pass the network interface first, inbound flows the subnet first
+			endpoints.add(new Endpoint(
+				vm.id(), 
+				subnetKey, 
+				networkKey, 
+				combine(nicPolicy, subnetPolicy, combinations), 
+				combine(subnetPolicy, nicPolicy, combinations), 
+				address));
+		}
+		return endpoints;
+	}
+	
+	// Returns the policy of the NSG compiled for the network, compiling it once per NSG and network
+	private static NetworkSecurityPolicyImpl policy(
+			String nsgId, 
+			Network network,
+			String networkKey,
+			Map<String, NetworkSecurityGroup> nsgs, 
+			Map<String, NetworkSecurityPolicyImpl> policies) {
+		NetworkSecurityGroup nsg = (nsgId != null) ? nsgs.get(nsgId.toLowerCase()) : null;
+		if(nsg == null) {
+			return null;
+		}
+		
+		String key = nsgId.toLowerCase() + "|" + networkKey;
+		NetworkSecurityPolicyImpl policy = policies.get(key);
+		if(policy == null) {
+			Map<String, List<String>> addressTags = new HashMap<>();
+			addressTags.put(NetworkSecurityPolicyImpl.VIRTUAL_NETWORK, network.addressSpaces());
+			policy = ((NetworkSecurityGroupImpl) nsg).policy(addressTags);
+			policies.put(key, policy);
+		}
+		return policy;
+	}
+	
+	// Returns the combination of the policies, combining each pair once so that identical contexts share the same instance
+	private static NetworkSecurityPolicyImpl combine(
+			NetworkSecurityPolicyImpl first, 
+			NetworkSecurityPolicyImpl second, 
+			Map<List<NetworkSecurityPolicyImpl>, NetworkSecurityPolicyImpl> combinations) {
+		if(first == null) {
+			return (second != null) ? second : NetworkSecurityPolicyImpl.ALLOW_ALL;
+		} else if(second == null) {
+			return first;
+		}
+		
+		// Policies are compared by identity
+		List<NetworkSecurityPolicyImpl> key = Arrays.asList(first, second);
+		NetworkSecurityPolicyImpl policy = combinations.get(key);
+		if(policy == null) {
+			policy = first.and(second);
+			combinations.put(key, policy);
+		}
+		return policy;
+	}
+	
+	private static <T> Map<String, T> lowerCaseKeys(Map<String, T> map) {
+		Map<String, T> lowerCaseMap = new HashMap<>();
+		for(Map.Entry<String, T> entry : map.entrySet()) {
+			lowerCaseMap.put(entry.getKey().toLowerCase(), entry.getValue());
+		}
+		return lowerCaseMap;
+	}
+	
+	// Adds the members of the class except the virtual machine itself, since a virtual machine is not analyzed as reaching itself
+	private static void addMembers(Set<String> ids, ContextClass contextClass, String excludedId) {
+		for(String id : contextClass.members) {
+			if(!id.equalsIgnoreCase(excludedId)) {
+				ids.add(id);
+			}
+		}
+	}
+	
+	private static void add(Map<String, List<ContextClass>> map, String key, ContextClass contextClass) {
+		List<ContextClass> list = map.get(key);
+		if(list == null) {
+			list = new ArrayList<>();
+			map.put(key, list);
+		}
+		list.add(contextClass);
+	}
+	
+	private ContextClass classOf(String id) {
+		Integer index = this.classIndexes.get(id.toLowerCase());
+		if(index == null) {
+			throw new IllegalArgumentException("Not an analyzed virtual machine: " + id);
+		}
+		return this.classes.get(index);
+	}
+	
+	private int portIndex(int port) {
+		int index = this.ports.indexOf(port);
+		if(index < 0) {
+			throw new IllegalArgumentException("Not an analyzed port: " + port);
+		}
+		return index;
+	}
+	
+	private BitSet row(String sourceId, int port) {
+		return this.reachable[this.portIndex(port)][this.classOf(sourceId).index];
+	}
+	
+	
+	// Computes the rows of a range of source subnets, splitting it in halves down to single subnets
+	private class ShardTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<List<ContextClass>> shards;
+		private final int from;
+		private final int to;
+		private final Map<String, List<ContextClass>> networkClasses;
+		
+		private ShardTask(List<List<ContextClass>> shards, int from, int to, Map<String, List<ContextClass>> networkClasses) {
+			this.shards = shards;
+			this.from = from;
+			this.to = to;
+			this.networkClasses = networkClasses;
+		}
+		
+		@Override
+		protected void compute() {
+			if(this.to - this.from > 1) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(
+					new ShardTask(this.shards, this.from, middle, this.networkClasses), 
+					new ShardTask(this.shards, middle, this.to, this.networkClasses));
+				return;
+			}
+			
+			for(int shard = this.from; shard < this.to; shard++) {
+				for(ContextClass source : this.shards.get(shard)) {
+					for(int portIndex = 0; portIndex < ports.size(); portIndex++) {
+						int port = ports.get(portIndex);
+						BitSet row = new BitSet(classes.size());
+						for(ContextClass destination : this.networkClasses.get(source.networkKey)) {
+							if(source.outbound.isAllowed(Direction.OUTBOUND, protocol, source.address, sourcePort, destination.address, port)
+									&& destination.inbound.isAllowed(Direction.INBOUND, protocol, source.address, sourcePort, destination.address, port)) {
+								row.set(destination.index);
+							}
+						}
+						reachable[portIndex][source.index] = row;
+					}
+				}
+			}
+		}
+	}
+}
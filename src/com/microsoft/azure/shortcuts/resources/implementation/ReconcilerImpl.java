@@ -0,0 +1,231 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.azure.shortcuts.common.Ensurable;
+import com.microsoft.azure.shortcuts.common.implementation.WorkQueue;
+import com.microsoft.azure.shortcuts.resources.Reconciler;
+
+class ReconcilerImpl implements Reconciler {
+	private final ConcurrentHashMap<String, Ensurable<?>> definitions = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, List<String>> differences = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Exception> errors = new ConcurrentHashMap<>();
+	private int limit = 4;
+	private long resyncInterval = 5 * 60 * 1000;
+	private long initialBackoff = 5 * 1000;
+	private long maxBackoff = 10 * 60 * 1000;
+	private WorkQueue queue;
+	private ExecutorService workers;
+	private ScheduledExecutorService resync;
+	
+	ReconcilerImpl() {
+	}
+	
+	
+	/*******************************************
+	 * Getters
+	 *******************************************/
+	
+	@Override
+	public Set<String> keys() {
+		return Collections.unmodifiableSet(new TreeSet<>(this.definitions.keySet()));
+	}
+	
+	@Override
+	public List<String> differences(String key) {
+		return this.differences.get(key.toLowerCase());
+	}
+	
+	@Override
+	public Exception lastError(String key) {
+		return this.errors.get(key.toLowerCase());
+	}
+	
+	
+	/*******************************************
+	 * Setters (fluent interface)
+	 *******************************************/
+	
+	@Override
+	public String withDefinition(Ensurable<?> definition) {
+		String key = PlanImpl.key(definition);
+		if(key == null) {
+			throw new IllegalArgumentException("Unsupported definition: " + definition.getClass().getName());
+		}
+		
+		this.definitions.put(key, definition);
+		this.enqueue(key);
+		return key;
+	}
+	
+	@Override
+	public ReconcilerImpl withoutDefinition(String key) {
+		key = key.toLowerCase();
+		this.definitions.remove(key);
+		this.differences.remove(key);
+		this.errors.remove(key);
+		return this;
+	}
+	
+	@Override
+	public synchronized ReconcilerImpl withConcurrencyLimit(int limit) {
+		if(limit < 1) {
+			throw new IllegalArgumentException("The concurrency limit must be at least 1");
+		}
+		this.limit = limit;
+		return this;
+	}
+	
+	@Override
+	public synchronized ReconcilerImpl withResyncInterval(long millis) {
+		this.resyncInterval = millis;
+		return this;
+	}
+	
+	@Override
+	public synchronized ReconcilerImpl withBackoff(long initialMillis, long maxMillis) {
+		this.initialBackoff = initialMillis;
+		this.maxBackoff = maxMillis;
+		return this;
+	}
+	
+	
+	/*******************************************
+	 * Verbs
+	 *******************************************/
+	
+	@Override
+	public synchronized void enqueue(String key) {
+		if(this.queue != null) {
+			this.queue.add(key.toLowerCase());
+		}
+	}
+	
+	@Override
+	public synchronized ReconcilerImpl start() {
+		if(this.queue != null) {
+			return this;
+		}
+		
+		this.queue = new WorkQueue(this.initialBackoff, this.maxBackoff);
+		this.workers = Executors.newFixedThreadPool(this.limit, daemonThreads("reconciler-worker"));
+		for(int i = 0; i < this.limit; i++) {
+			final WorkQueue queue = this.queue;
+			this.workers.submit(new Runnable() {
+				@Override
+				public void run() {
+					work(queue);
+				}
+			});
+		}
+		
+		// Queue everything now and then periodically, letting ensure() detect drift from fresh listings of the groups
+		this.resync = Executors.newSingleThreadScheduledExecutor(daemonThreads("reconciler-resync"));
+		this.resync.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				for(String key : definitions.keySet()) {
+					enqueue(key);
+				}
+			}
+		}, 0, this.resyncInterval, TimeUnit.MILLISECONDS);
+		return this;
+	}
+	
+	@Override
+	public synchronized void stop() {
+		if(this.queue == null) {
+			return;
+		}
+		
+		this.resync.shutdownNow();
+		this.queue.shutDown();
+		this.workers.shutdown();
+		this.queue = null;
+		this.workers = null;
+		this.resync = null;
+	}
+	
+	
+	/*******************************************
+	 * Helpers
+	 *******************************************/
+	
+	// Processes keys from the queue until it is shut down
+	private void work(WorkQueue queue) {
+		String key;
+		try {
+			while(null != (key = queue.take())) {
+				try {
+					this.reconcile(key, queue);
+				} finally {
+					queue.done(key);
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	// Ensures a single resource, requeuing it with backoff on failure
+	private void reconcile(String key, WorkQueue queue) {
+		Ensurable<?> definition = this.definitions.get(key);
+		if(definition == null) {
+			// Removed since queued
+			queue.forget(key);
+			return;
+		}
+		
+		try {
+			definition.ensure();
+			this.differences.put(key, definition.differences());
+			this.errors.remove(key);
+			queue.forget(key);
+		} catch(Exception e) {
+			this.errors.put(key, e);
+			queue.addRateLimited(key);
+		}
+	}
+	
+	
+	// Creates daemon threads, so that a running reconciler does not keep the process alive
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
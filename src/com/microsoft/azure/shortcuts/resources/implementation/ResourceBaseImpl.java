@@ -19,10 +19,13 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.codehaus.jackson.map.ObjectMapper;
+
 import com.microsoft.azure.shortcuts.common.implementation.EntitiesImpl;
 import com.microsoft.azure.shortcuts.common.implementation.IndexableRefreshableWrapperImpl;
 import com.microsoft.azure.shortcuts.resources.Region;
@@ -39,6 +42,8 @@ public abstract class ResourceBaseImpl<
 	implements 
 		ResourceBase {
 
+	private static final ObjectMapper COPIER = InventoryImpl.fieldMapper();
+	
 	protected final COLLECTIONIMPL collection;
 	
 	protected ResourceBaseImpl(String id, INNER innerObject, COLLECTIONIMPL collection) {
@@ -56,27 +61,27 @@ public abstract class ResourceBaseImpl<
 	
 	@Override
 	public String region() {
-		return this.inner().getLocation();
+		return this.innerObject().getLocation();
 	}
 
 	@Override
 	public Map<String, String> tags() {
-		return Collections.unmodifiableMap(this.inner().getTags());
+		return Collections.unmodifiableMap(this.innerObject().getTags());
 	}
 
 	@Override
 	public String id() {
-		return this.inner().getId();
+		return this.innerObject().getId();
 	}
 
 	@Override
 	public String type() {
-		return this.inner().getType();
+		return this.innerObject().getType();
 	}
 	
 	@Override
 	public String name() {
-		return this.inner().getName();
+		return this.innerObject().getName();
 	}
 	
 	/**************************************************
@@ -85,19 +90,22 @@ public abstract class ResourceBaseImpl<
 
 	@SuppressWarnings("unchecked")
 	public final WRAPPERIMPL withTags(Map<String, String> tags) {
-		this.inner().setTags(new HashMap<>(tags));
+		this.ensureNotSnapshot();
+		this.innerObject().setTags(new HashMap<>(tags));
 		return (WRAPPERIMPL) this;
 	}
 	
 	@SuppressWarnings("unchecked")
 	public final WRAPPERIMPL withTag(String name, String value) {
-		this.inner().getTags().put(name, value);
+		this.ensureNotSnapshot();
+		this.innerObject().getTags().put(name, value);
 		return (WRAPPERIMPL) this;
 	}
 	
 	@SuppressWarnings("unchecked")
 	public final WRAPPERIMPL withoutTag(String name) {
-		this.inner().getTags().remove(name);
+		this.ensureNotSnapshot();
+		this.innerObject().getTags().remove(name);
 		return (WRAPPERIMPL) this;
 	}
 	
@@ -107,11 +115,32 @@ public abstract class ResourceBaseImpl<
 	
 	@SuppressWarnings("unchecked")
 	public final WRAPPERIMPL withRegion(String regionName) {
-		this.inner().setLocation(regionName);
+		this.ensureNotSnapshot();
+		this.innerObject().setLocation(regionName);
 		return (WRAPPERIMPL) this;
 	}
 	
 	public final WRAPPERIMPL withRegion(Region region) {
 		return this.withRegion(region.toString());
 	}
+	
+	
+	/**********************************************
+	 * Helpers
+	 **********************************************/
+	
+	@Override
+	protected INNER copyInner(INNER inner) {
+		try {
+			return copy(inner);
+		} catch(IOException e) {
+			throw new IllegalStateException("Cannot copy the inner object", e);
+		}
+	}
+	
+	// Returns a deep copy of a native model, through the JSON serialization of its fields
+	@SuppressWarnings("unchecked")
+	static <T> T copy(T inner) throws IOException {
+		return (T) COPIER.readValue(COPIER.writeValueAsBytes(inner), inner.getClass());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.AvailabilitySet;
+import com.microsoft.azure.shortcuts.resources.LoadBalancer;
+import com.microsoft.azure.shortcuts.resources.Network;
+import com.microsoft.azure.shortcuts.resources.NetworkInterface;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
+import com.microsoft.azure.shortcuts.resources.PublicIpAddress;
+import com.microsoft.azure.shortcuts.resources.Resource;
+import com.microsoft.azure.shortcuts.resources.ResourceGroup;
+import com.microsoft.azure.shortcuts.resources.StorageAccount;
+import com.microsoft.azure.shortcuts.resources.VirtualMachine;
+import com.microsoft.azure.shortcuts.resources.common.SupportsListingAsMapByGroup;
+
+// The resources in a resource group, listed by issuing the listing of each known resource type and the generic listing 
+// of all resources concurrently. The generic listing only contributes the resources of the types not otherwise listed
+class ResourceGroupContentsImpl implements ResourceGroup.Contents {
+	// The resource types covered by the typed listings
+	private static final TreeSet<String> KNOWN_TYPES = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	static {
+		KNOWN_TYPES.addAll(Arrays.asList(
+			VirtualMachinesImpl.TYPE,
+			NetworkInterfacesImpl.TYPE,
+			PublicIpAddressesImpl.TYPE,
+			NetworksImpl.TYPE,
+			NetworkSecurityGroupsImpl.TYPE,
+			LoadBalancersImpl.TYPE,
+			AvailabilitySetsImpl.TYPE,
+			StorageAccountsImpl.TYPE));
+	}
+	
+	private final List<Map<String, ?>> listings;
+	private final Map<String, Resource> otherResources;
+	
+	@SuppressWarnings("unchecked")
+	ResourceGroupContentsImpl(Subscription subscription, final String groupName) throws Exception {
+		List<SupportsListingAsMapByGroup<?>> collections = new ArrayList<>();
+		collections.add(subscription.virtualMachines());
+		collections.add(subscription.networkInterfaces());
+		collections.add(subscription.publicIpAddresses());
+		collections.add(subscription.networks());
+		collections.add(subscription.networkSecurityGroups());
+		collections.add(subscription.loadBalancers());
+		collections.add(subscription.availabilitySets());
+		collections.add(subscription.storageAccounts());
+		collections.add(subscription.resources());
+		
+		List<Callable<Map<String, ?>>> calls = new ArrayList<>();
+		for(final SupportsListingAsMapByGroup<?> collection : collections) {
+			calls.add(new Callable<Map<String, ?>>() {
+				@Override
+				public Map<String, ?> call() throws Exception {
+					return collection.asMap(groupName);
+				}
+			});
+		}
+		
+		this.listings = Parallel.invokeAll(subscription.executor(), calls, 0);
+		
+		Map<String, Resource> otherResources = new HashMap<>();
+		for(Entry<String, Resource> entry : ((Map<String, Resource>) this.listings.get(this.listings.size() - 1)).entrySet()) {
+			if(!KNOWN_TYPES.contains(entry.getValue().type())) {
+				otherResources.put(entry.getKey(), entry.getValue());
+			}
+		}
+		this.otherResources = Collections.unmodifiableMap(otherResources);
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public Map<String, VirtualMachine> virtualMachines() {
+		return this.listing(0);
+	}
+
+	@Override
+	public Map<String, NetworkInterface> networkInterfaces() {
+		return this.listing(1);
+	}
+
+	@Override
+	public Map<String, PublicIpAddress> publicIpAddresses() {
+		return this.listing(2);
+	}
+
+	@Override
+	public Map<String, Network> networks() {
+		return this.listing(3);
+	}
+
+	@Override
+	public Map<String, NetworkSecurityGroup> networkSecurityGroups() {
+		return this.listing(4);
+	}
+
+	@Override
+	public Map<String, LoadBalancer> loadBalancers() {
+		return this.listing(5);
+	}
+
+	@Override
+	public Map<String, AvailabilitySet> availabilitySets() {
+		return this.listing(6);
+	}
+
+	@Override
+	public Map<String, StorageAccount> storageAccounts() {
+		return this.listing(7);
+	}
+
+	@Override
+	public Map<String, Resource> otherResources() {
+		return this.otherResources;
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Returns the listing at the position the collection was added in
+	@SuppressWarnings("unchecked")
+	private <T> Map<String, T> listing(int index) {
+		return (Map<String, T>) this.listings.get(index);
+	}
+}
@@ -19,11 +19,14 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.microsoft.azure.management.resources.models.ResourceGroupExtended;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
 import com.microsoft.azure.shortcuts.common.implementation.IndexableRefreshableWrapperImpl;
 import com.microsoft.azure.shortcuts.resources.ResourceGroup;
 import com.microsoft.azure.shortcuts.resources.Region;
@@ -37,6 +40,7 @@ class ResourceGroupImpl
 		ResourceGroup {
 	
 	private final ResourceGroupsImpl collection;
+	private List<String> differences;
 	
 	ResourceGroupImpl(
 			ResourceGroupExtended azureGroup, 
@@ -52,22 +56,32 @@ class ResourceGroupImpl
 	
 	@Override
 	public String region() throws Exception {
-		return this.inner().getLocation();
+		return this.innerObject().getLocation();
 	}
 	
 	@Override
 	public Map<String, String> tags() throws Exception {
-		return Collections.unmodifiableMap(this.inner().getTags());
+		return Collections.unmodifiableMap(this.innerObject().getTags());
 	}
 	
 	@Override
 	public String provisioningState() throws Exception {
-		return this.inner().getProvisioningState();
+		return this.innerObject().getProvisioningState();
 	}
 	
 	@Override
 	public String name() {
-		return this.inner().getName();
+		return this.innerObject().getName();
+	}
+	
+	@Override
+	public ResourceGroupContentsImpl contents() throws Exception {
+		return new ResourceGroupContentsImpl(this.collection.subscription(), this.id);
+	}
+	
+	@Override
+	public List<String> differences() {
+		return this.differences;
 	}
 	
 	
@@ -77,28 +91,32 @@ class ResourceGroupImpl
 	
 	@Override
 	public ResourceGroupImpl withTags(Map<String, String> tags) {
-		this.inner().setTags(new HashMap<>(tags));
+		this.ensureNotSnapshot();
+		this.innerObject().setTags(new HashMap<>(tags));
 		return this;
 	}
 	
 	@Override
 	public ResourceGroupImpl withTag(String key, String value) {
-		if(this.inner().getTags() == null) {
-			this.inner().setTags(new HashMap<String, String>());
+		this.ensureNotSnapshot();
+		if(this.innerObject().getTags() == null) {
+			this.innerObject().setTags(new HashMap<String, String>());
 		}
-		this.inner().getTags().put(key, value);
+		this.innerObject().getTags().put(key, value);
 		return this;
 	}
 	
 	@Override
 	public ResourceGroupImpl withoutTag(String key) {
-		this.inner().getTags().remove(key);
+		this.ensureNotSnapshot();
+		this.innerObject().getTags().remove(key);
 		return this;
 	}
 	
 	@Override
 	public ResourceGroupImpl withRegion(String regionName) {
-		this.inner().setLocation(regionName);
+		this.ensureNotSnapshot();
+		this.innerObject().setLocation(regionName);
 		return this;
 	}
 	
@@ -114,15 +132,16 @@ class ResourceGroupImpl
 	
 	@Override
 	public ResourceGroupImpl apply() throws Exception {
+		this.ensureNotSnapshot();
 		com.microsoft.azure.management.resources.models.ResourceGroup params = 
 			new com.microsoft.azure.management.resources.models.ResourceGroup();
 		ResourceGroup group;
 		
-		params.setTags(this.inner().getTags());
+		params.setTags(this.innerObject().getTags());
 		
 		// Figure out the region, since the SDK requires on the params explicitly even though it cannot be changed
-		if(this.inner().getLocation() != null) {
-			params.setLocation(this.inner().getLocation());
+		if(this.innerObject().getLocation() != null) {
+			params.setLocation(this.innerObject().getLocation());
 		} else if(null == (group = this.collection.subscription().resourceGroups().get(this.id))) {
 			throw new Exception("Resource group not found");
 		} else {
@@ -130,6 +149,7 @@ class ResourceGroupImpl
 		}
 	
 		this.collection.subscription().resourceManagementClient().getResourceGroupsOperations().createOrUpdate(this.id, params);
+		this.collection.index(this.innerObject());
 		return this;
 	}
 	
@@ -142,17 +162,65 @@ class ResourceGroupImpl
 	
 	@Override
 	public ResourceGroupImpl create() throws Exception {
+		this.ensureNotSnapshot();
 		com.microsoft.azure.management.resources.models.ResourceGroup params = 
 			new com.microsoft.azure.management.resources.models.ResourceGroup();
-		params.setLocation(this.inner().getLocation());
-		params.setTags(this.inner().getTags());
+		params.setLocation(this.innerObject().getLocation());
+		params.setTags(this.innerObject().getTags());
 		this.collection.subscription().resourceManagementClient().getResourceGroupsOperations().createOrUpdate(this.id, params);
+		this.collection.index(this.innerObject());
+		return this;
+	}
+	
+	
+	@Override
+	public ResourceGroup ensure() throws Exception {
+		this.ensureNotSnapshot();
+		ResourceGroupExtended actual = this.collection.getCachedNativeEntity(this.id);
+		Differences differences = new Differences();
+		if(actual == null) {
+			differences.add("resource", null, "present");
+		} else if(this.innerObject().getTags() != null && !this.innerObject().getTags().isEmpty()) {
+			differences.compare("tags", actual.getTags(), this.innerObject().getTags());
+		}
+		
+		this.differences = differences.toList();
+		if(differences.isEmpty()) {
+			return new ResourceGroupImpl(actual, this.collection);
+		}
+		
+		this.create();
+		this.collection.recache(this.innerObject());
 		return this;
 	}
 	
 	
+	// Returns a copy of this group that cannot be changed or refreshed, over a private deep copy of the current inner object
+	@Override
+	public ResourceGroup snapshot() throws Exception {
+		if(this.isSnapshot()) {
+			return this;
+		}
+		
+		ResourceGroupImpl snapshot = new ResourceGroupImpl(ResourceBaseImpl.copy(this.innerObject()), this.collection);
+		snapshot.freeze();
+		return snapshot;
+	}
+	
+	
+	@Override
+	protected ResourceGroupExtended copyInner(ResourceGroupExtended inner) {
+		try {
+			return ResourceBaseImpl.copy(inner);
+		} catch(IOException e) {
+			throw new IllegalStateException("Cannot copy the inner object", e);
+		}
+	}
+	
+	
 	@Override
 	public ResourceGroupImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.subscription().resourceManagementClient().getResourceGroupsOperations().get(this.id).getResourceGroup());
 		return this;
 	}
@@ -22,10 +22,13 @@ package com.microsoft.azure.shortcuts.resources.implementation;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.microsoft.azure.management.resources.models.ResourceGroupExtended;
 import com.microsoft.azure.shortcuts.common.implementation.EntitiesImpl;
+import com.microsoft.azure.shortcuts.common.implementation.ListingCache;
+import com.microsoft.azure.shortcuts.common.implementation.StringDictionary;
 import com.microsoft.azure.shortcuts.resources.ResourceGroup;
 import com.microsoft.azure.shortcuts.resources.ResourceGroups;
 
@@ -33,6 +36,10 @@ public class ResourceGroupsImpl
 	extends EntitiesImpl<Subscription>
 	implements ResourceGroups {
 	
+	static final String TYPE = "Microsoft.Resources/resourceGroups";
+	
+	private final ListingCache<ResourceGroupExtended> cache = new ListingCache<>();
+	
 	ResourceGroupsImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -41,8 +48,8 @@ public class ResourceGroupsImpl
 	@Override
 	public Map<String, ResourceGroup> asMap() throws Exception {
 		HashMap<String, ResourceGroup> wrappers = new HashMap<>();
-		for(ResourceGroupExtended nativeItem : getNativeEntities()) {
-			ResourceGroupImpl wrapper = new ResourceGroupImpl(nativeItem, this);
+		for(ResourceGroupExtended nativeItem : listNativeEntities()) {
+			ResourceGroupImpl wrapper = new ResourceGroupImpl(this.canonicalize(nativeItem), this);
 			wrappers.put(nativeItem.getName(), wrapper);
 		}
 		
@@ -53,7 +60,8 @@ public class ResourceGroupsImpl
 	@Override
 	// Gets a specific resource group
 	public ResourceGroupImpl get(String name) throws Exception {
-		ResourceGroupExtended azureGroup = subscription.resourceManagementClient().getResourceGroupsOperations().get(name).getResourceGroup();
+		ResourceGroupExtended azureGroup = this.canonicalize(subscription.resourceManagementClient().getResourceGroupsOperations().get(name).getResourceGroup());
+		this.index(azureGroup);
 		return new ResourceGroupImpl(azureGroup, this);
 	}
 	
@@ -61,6 +69,15 @@ public class ResourceGroupsImpl
 	@Override
 	public void delete(String name) throws Exception {
 		subscription.resourceManagementClient().getResourceGroupsOperations().delete(name);
+		this.cache.remove(null, name);
+		if(subscription.inventory() != null) {
+			subscription.inventory().remove(TYPE, "/subscriptions/" + subscription.subscriptionId() + "/resourceGroups/" + name);
+		}
+		if(subscription.existingTagIndex() != null) {
+			// The resources in the group are deleted along with it
+			subscription.existingTagIndex().replace(name, null, new HashMap<String, Map<String, String>>());
+			subscription.existingTagIndex().remove(TagIndexImpl.groupId(subscription, name));
+		}
 		//TODO: Apparently the effect of the deletion is not immediate - Azure SDK misleadingly returns from this synch call even though listing resource groups will still include this
 	}
 	
@@ -89,8 +106,75 @@ public class ResourceGroupsImpl
 		
 	}
 	
-	// Helper to get the resource groups from Azure
+	// Helper to get the resource groups from Azure, refreshing the cached listing
 	private ArrayList<ResourceGroupExtended> getNativeEntities() throws Exception {
-		return this.subscription.resourceManagementClient().getResourceGroupsOperations().list(null).getResourceGroups();		
+		ArrayList<ResourceGroupExtended> nativeItems = this.subscription.resourceManagementClient().getResourceGroupsOperations().list(null).getResourceGroups();
+		Map<String, ResourceGroupExtended> indexed = new HashMap<>();
+		for(ResourceGroupExtended nativeItem : nativeItems) {
+			indexed.put(nativeItem.getName(), this.canonicalize(nativeItem));
+		}
+		this.cache.put(null, indexed);
+		
+		if(this.subscription.existingTagIndex() != null) {
+			Map<String, Map<String, String>> tagsById = new HashMap<>();
+			for(ResourceGroupExtended nativeItem : nativeItems) {
+				tagsById.put(TagIndexImpl.groupId(this.subscription, nativeItem.getName()), nativeItem.getTags());
+			}
+			this.subscription.existingTagIndex().replace(null, TYPE, tagsById);
+		}
+		return nativeItems;
+	}
+	
+	// Lists the resource groups, from the inventory snapshot if available and fresh enough
+	private List<ResourceGroupExtended> listNativeEntities() throws Exception {
+		InventoryImpl inventory = this.subscription.inventory();
+		if(inventory == null) {
+			return getNativeEntities();
+		}
+		
+		return inventory.list(TYPE, null, new InventoryImpl.Lister<ResourceGroupExtended>(ResourceGroupExtended.class) {
+			@Override
+			List<ResourceGroupExtended> list() throws Exception {
+				return getNativeEntities();
+			}
+
+			@Override
+			String id(ResourceGroupExtended nativeItem) {
+				return "/subscriptions/" + subscription.subscriptionId() + "/resourceGroups/" + nativeItem.getName();
+			}
+		});
+	}
+	
+	// Returns the native group from a recent listing of the subscription, listing the groups if needed, or null if it does not exist
+	ResourceGroupExtended getCachedNativeEntity(String name) throws Exception {
+		Map<String, ResourceGroupExtended> nativeItems = this.cache.get(null);
+		if(nativeItems == null) {
+			getNativeEntities();
+			nativeItems = this.cache.get(null);
+		}
+		return nativeItems.get(name.toLowerCase());
+	}
+	
+	// Writes a created or updated group through to the cached listing
+	void recache(ResourceGroupExtended nativeItem) {
+		this.cache.put(null, nativeItem.getName(), nativeItem);
+		this.index(nativeItem);
+	}
+	
+	// Replaces the location and tags of the group with canonical instances, if the subscription keeps a dictionary
+	private ResourceGroupExtended canonicalize(ResourceGroupExtended nativeItem) {
+		StringDictionary strings = this.subscription.strings();
+		if(strings != null && nativeItem != null) {
+			nativeItem.setLocation(strings.canonical(nativeItem.getLocation()));
+			nativeItem.setTags(strings.canonical(nativeItem.getTags()));
+		}
+		return nativeItem;
+	}
+	
+	// Writes a created, updated or retrieved group through to the tag index, if in use
+	void index(ResourceGroupExtended nativeItem) {
+		if(this.subscription.existingTagIndex() != null) {
+			this.subscription.existingTagIndex().put(TagIndexImpl.groupId(this.subscription, nativeItem.getName()), nativeItem.getTags());
+		}
 	}
 }
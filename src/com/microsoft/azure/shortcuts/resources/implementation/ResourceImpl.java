@@ -44,17 +44,17 @@ class ResourceImpl
 	
 	@Override
 	public String provider() throws Exception {
-		return ResourcesImpl.RESOURCE_ID.PROVIDER.from(this.inner().getId());
+		return ResourcesImpl.RESOURCE_ID.PROVIDER.from(this.innerObject().getId());
 	}
 	
 	@Override
 	public String properties() throws Exception {
-		return this.inner().getProperties();
+		return this.innerObject().getProperties();
 	}
 	
 	@Override
 	public String provisioningState() throws Exception {
-		return this.inner().getProvisioningState();
+		return this.innerObject().getProvisioningState();
 	}
 	
 	/************************************************************
@@ -69,12 +69,20 @@ class ResourceImpl
 	
 	@Override
 	public ResourceImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		return refresh(
 			ResourcesImpl.RESOURCE_ID.GROUP.from(this.id),
 			this.collection.createResourceIdentity(this.id));
 	}
 	
 	
+	// Generic resources are not listed through a groupable collection, so wrap the snapshot copy directly
+	@Override
+	ResourceImpl wrapSnapshot(GenericResourceExtended copy) {
+		return new ResourceImpl(copy, this.collection);
+	}
+	
+	
 	// Refreshes the resource based on the group and identity information
 	private ResourceImpl refresh(String group, ResourceIdentity identity) throws Exception {
 		this.setInner(this.subscription().resourceManagementClient().getResourcesOperations().get(group, identity).getResource());
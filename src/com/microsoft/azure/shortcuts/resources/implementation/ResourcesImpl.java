@@ -19,9 +19,11 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.microsoft.azure.management.resources.models.GenericResourceExtended;
@@ -31,6 +33,7 @@ import com.microsoft.azure.shortcuts.resources.Provider;
 import com.microsoft.azure.shortcuts.resources.Provider.ResourceType;
 import com.microsoft.azure.shortcuts.resources.Resource;
 import com.microsoft.azure.shortcuts.resources.Resources;
+import com.microsoft.azure.shortcuts.resources.ResourcesSnapshot;
 import com.microsoft.windowsazure.core.ResourceIdentity;
 
 
@@ -147,8 +150,14 @@ public class ResourcesImpl
 	
 	// Returns a resource based on its group and identity object
 	private Resource get(String group, ResourceIdentity identity) throws Exception {
-		GenericResourceExtended azureResource= subscription.resourceManagementClient().getResourcesOperations().get(group, identity).getResource();
+		GenericResourceExtended azureResource = subscription.resourceManagementClient().getResourcesOperations().get(group, identity).getResource();
+		if(subscription.strings() != null) {
+			subscription.strings().canonicalize(azureResource);
+		}
 		ResourceImpl resource = new ResourceImpl(azureResource, this);
+		if(subscription.existingTagIndex() != null) {
+			subscription.existingTagIndex().put(azureResource.getId(), azureResource.getTags());
+		}
 		return resource;
 	}
 	
@@ -158,6 +167,9 @@ public class ResourcesImpl
 		subscription.resourceManagementClient().getResourcesOperations().delete(
 			RESOURCE_ID.GROUP.from(id), 
 			createResourceIdentity(id));
+		if(subscription.existingTagIndex() != null) {
+			subscription.existingTagIndex().remove(id);
+		}
 	}
 	
 	
@@ -166,6 +178,10 @@ public class ResourcesImpl
 		subscription.resourceManagementClient().getResourcesOperations().delete(
 			group, 
 			createResourceIdentity(name, type, provider));
+		if(subscription.existingTagIndex() != null) {
+			subscription.existingTagIndex().remove(String.format("/subscriptions/%s/resourceGroups/%s/providers/%s/%s/%s", 
+				subscription.subscriptionId(), group, provider, type, name));
+		}
 	}
 	
 	
@@ -178,22 +194,59 @@ public class ResourcesImpl
 	@Override
 	public Map<String, Resource> asMap(String groupName) throws Exception {
 		HashMap<String, Resource> wrappers = new HashMap<>();
-		for(GenericResourceExtended nativeItem : getNativeEntities(groupName)) {
+		ArrayList<GenericResourceExtended> nativeItems = getNativeEntities(groupName);
+		for(GenericResourceExtended nativeItem : nativeItems) {
 			ResourceImpl wrapper = new ResourceImpl(nativeItem, this);
 			wrappers.put(nativeItem.getId(), wrapper);
 		}
 		
+		this.index(groupName, nativeItems);
+		
 		return Collections.unmodifiableMap(wrappers);
 	}
 
 	
+	@Override
+	public ResourcesSnapshot snapshot() throws Exception {
+		ArrayList<GenericResourceExtended> nativeItems = getNativeEntities(null);
+		this.index(null, nativeItems);
+		return ResourcesSnapshotImpl.fromListing(this.subscription, nativeItems);
+	}
+	
+	
+	@Override
+	public ResourcesSnapshot loadSnapshot(String filePath) throws IOException {
+		return ResourcesSnapshotImpl.load(this.subscription, filePath);
+	}
+	
+	
 	/***********************************************************
 	 * Helpers
 	 ***********************************************************/
 	
+	// Updates the tag index, if in use, with a listing of the resources in the specified group, or of all resources if null
+	private void index(String groupName, List<GenericResourceExtended> nativeItems) {
+		TagIndexImpl tagIndex = subscription.existingTagIndex();
+		if(tagIndex == null) {
+			return;
+		}
+		
+		Map<String, Map<String, String>> tagsById = new HashMap<>();
+		for(GenericResourceExtended nativeItem : nativeItems) {
+			tagsById.put(nativeItem.getId(), nativeItem.getTags());
+		}
+		tagIndex.replace(groupName, null, tagsById);
+	}
+	
 	private ArrayList<GenericResourceExtended> getNativeEntities(String groupName) throws Exception {
 		ResourceListParameters params = new ResourceListParameters(); 
 		params.setResourceGroupName(groupName);
-		return subscription.resourceManagementClient().getResourcesOperations().list(params).getResources();
+		ArrayList<GenericResourceExtended> nativeItems = subscription.resourceManagementClient().getResourcesOperations().list(params).getResources();
+		if(subscription.strings() != null) {
+			for(GenericResourceExtended nativeItem : nativeItems) {
+				subscription.strings().canonicalize(nativeItem);
+			}
+		}
+		return nativeItems;
 	}
 }
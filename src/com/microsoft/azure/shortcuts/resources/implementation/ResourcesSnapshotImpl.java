@@ -0,0 +1,350 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.microsoft.azure.management.resources.models.GenericResourceExtended;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.ResourcesSnapshot;
+
+class ResourcesSnapshotImpl implements ResourcesSnapshot {
+	// The snapshot is saved as the single section of a file in the inventory snapshot format
+	private static final String SECTION = "resources";
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ObjectMapper FIELD_MAPPER = InventoryImpl.fieldMapper();
+	
+	private final Subscription subscription;
+	private final long timestamp;
+	private final Map<String, Entry> entries;
+	
+	private ResourcesSnapshotImpl(Subscription subscription, long timestamp, Map<String, Entry> entries) {
+		this.subscription = subscription;
+		this.timestamp = timestamp;
+		this.entries = entries;
+	}
+	
+	
+	// Creates a snapshot from a live listing of generic resources
+	static ResourcesSnapshotImpl fromListing(Subscription subscription, List<GenericResourceExtended> nativeItems) {
+		return new ResourcesSnapshotImpl(subscription, System.currentTimeMillis(), index(nativeItems));
+	}
+	
+	
+	// Loads a snapshot saved earlier
+	static ResourcesSnapshotImpl load(Subscription subscription, String filePath) throws IOException {
+		Map<String, InventoryImpl.Section> sections = InventoryImpl.read(Paths.get(filePath).toAbsolutePath());
+		InventoryImpl.Section section = (sections != null) ? sections.get(SECTION) : null;
+		List<GenericResourceExtended> nativeItems = (section != null && section.matches(GenericResourceExtended.class)) 
+			? section.decode(null, GenericResourceExtended.class, FIELD_MAPPER) : null;
+		if(nativeItems == null) {
+			throw new IOException("Not a resources snapshot file: " + filePath);
+		}
+		
+		return new ResourcesSnapshotImpl(subscription, section.timestamp(), index(nativeItems));
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public long timestamp() {
+		return this.timestamp;
+	}
+	
+	@Override
+	public Set<String> ids() {
+		return Collections.unmodifiableSet(this.entries.keySet());
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public void save(String filePath) throws IOException {
+		InventoryImpl.Section section = new InventoryImpl.Section(
+			this.entries.isEmpty() ? "" : GenericResourceExtended.class.getName(), this.timestamp);
+		for(Entry entry : this.entries.values()) {
+			section.put(entry.id, FIELD_MAPPER.writeValueAsBytes(entry.toNative()));
+		}
+		
+		Map<String, InventoryImpl.Section> sections = new HashMap<>();
+		sections.put(SECTION, section);
+		InventoryImpl.write(Paths.get(filePath).toAbsolutePath(), sections);
+	}
+	
+	
+	@Override
+	public Changes diff(ResourcesSnapshot newer) throws Exception {
+		final ResourcesSnapshotImpl other = (ResourcesSnapshotImpl) newer;
+		
+		// Compare each hash partition of the IDs separately, since a resource always falls into the same partition in both snapshots
+		final int partitionCount = Math.max(1, this.subscription.executor().getParallelism() * 4);
+		final List<List<Entry>> olderPartitions = this.partition(partitionCount);
+		final List<List<Entry>> newerPartitions = other.partition(partitionCount);
+		List<Callable<ChangesImpl>> tasks = new ArrayList<>(partitionCount);
+		for(int i = 0; i < partitionCount; i++) {
+			final int partition = i;
+			tasks.add(new Callable<ChangesImpl>() {
+				@Override
+				public ChangesImpl call() throws Exception {
+					return diff(olderPartitions.get(partition), other.entries, newerPartitions.get(partition), entries);
+				}
+			});
+		}
+		
+		ChangesImpl changes = new ChangesImpl();
+		for(ChangesImpl partial : Parallel.invokeAll(this.subscription.executor(), tasks, 0)) {
+			changes.added.addAll(partial.added);
+			changes.removed.addAll(partial.removed);
+			changes.changed.putAll(partial.changed);
+		}
+		return changes;
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Compares the entries of one partition of the older and newer snapshots
+	private static ChangesImpl diff(List<Entry> olderEntries, Map<String, Entry> newerIndex, List<Entry> newerEntries, Map<String, Entry> olderIndex) throws IOException {
+		ChangesImpl changes = new ChangesImpl();
+		for(Entry older : olderEntries) {
+			Entry newer = newerIndex.get(older.id);
+			if(newer == null) {
+				changes.removed.add(older.id);
+			} else if(newer.hash != older.hash) {
+				List<String> differences = older.compare(newer);
+				if(!differences.isEmpty()) {
+					changes.changed.put(older.id, differences);
+				}
+			}
+		}
+		
+		for(Entry newer : newerEntries) {
+			if(!olderIndex.containsKey(newer.id)) {
+				changes.added.add(newer.id);
+			}
+		}
+		return changes;
+	}
+	
+	
+	// Splits the entries into the specified number of partitions by the hash of their IDs
+	private List<List<Entry>> partition(int count) {
+		List<List<Entry>> partitions = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			partitions.add(new ArrayList<Entry>());
+		}
+		
+		for(Entry entry : this.entries.values()) {
+			partitions.get((entry.id.hashCode() & Integer.MAX_VALUE) % count).add(entry);
+		}
+		return partitions;
+	}
+	
+	
+	// Indexes the content of generic resources by normalized ID
+	private static Map<String, Entry> index(List<GenericResourceExtended> nativeItems) {
+		Map<String, Entry> entries = new HashMap<>(nativeItems.size() * 2);
+		for(GenericResourceExtended nativeItem : nativeItems) {
+			Entry entry = new Entry(
+				normalize(nativeItem.getId()),
+				nativeItem.getLocation(),
+				nativeItem.getProvisioningState(),
+				nativeItem.getProperties(),
+				nativeItem.getTags());
+			entries.put(entry.id, entry);
+		}
+		return entries;
+	}
+	
+	
+	// Normalizes a resource ID for comparison across listings
+	private static String normalize(String id) {
+		String normalized = id.trim().toLowerCase();
+		while(normalized.endsWith("/")) {
+			normalized = normalized.substring(0, normalized.length() - 1);
+		}
+		return normalized;
+	}
+	
+	
+	// The content of a resource relevant for change detection, with a hash of it to skip unchanged resources cheaply
+	private static class Entry {
+		private final String id;
+		private final String location;
+		private final String provisioningState;
+		private final String properties;
+		private final Map<String, String> tags;
+		private final long hash;
+		
+		private Entry(String id, String location, String provisioningState, String properties, Map<String, String> tags) {
+			this.id = id;
+			this.location = location;
+			this.provisioningState = provisioningState;
+			this.properties = properties;
+			
+			// Tag names are case-insensitive in Azure, unlike tag values
+			this.tags = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			if(tags != null) {
+				this.tags.putAll(tags);
+			}
+			this.hash = this.hash();
+		}
+		
+		// Computes a 64-bit FNV-1a hash of the content
+		private long hash() {
+			long hash = 0xcbf29ce484222325L;
+			hash = hash(hash, this.location);
+			hash = hash(hash, this.provisioningState);
+			hash = hash(hash, this.properties);
+			for(Map.Entry<String, String> tag : this.tags.entrySet()) {
+				hash = hash(hash, tag.getKey().toLowerCase());
+				hash = hash(hash, tag.getValue());
+			}
+			return hash;
+		}
+		
+		// Returns the content as a native generic resource for persistence
+		private GenericResourceExtended toNative() {
+			GenericResourceExtended nativeItem = new GenericResourceExtended();
+			nativeItem.setId(this.id);
+			nativeItem.setLocation(this.location);
+			nativeItem.setProvisioningState(this.provisioningState);
+			nativeItem.setProperties(this.properties);
+			nativeItem.setTags(new HashMap<>(this.tags));
+			return nativeItem;
+		}
+		
+		private static long hash(long hash, String text) {
+			if(text != null) {
+				for(int i = 0; i < text.length(); i++) {
+					hash ^= text.charAt(i);
+					hash *= 0x100000001b3L;
+				}
+			}
+			
+			// Separator, so that adjacent fields cannot run into each other
+			hash ^= 0xff;
+			hash *= 0x100000001b3L;
+			return hash;
+		}
+		
+		// Returns the field-level differences from a newer version of the resource, comparing values case-sensitively
+		private List<String> compare(Entry newer) throws IOException {
+			Differences differences = new Differences();
+			compare(differences, "location", this.location, newer.location);
+			compare(differences, "provisioningState", this.provisioningState, newer.provisioningState);
+			
+			TreeSet<String> tagNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			tagNames.addAll(this.tags.keySet());
+			tagNames.addAll(newer.tags.keySet());
+			for(String tagName : tagNames) {
+				compare(differences, "tags." + tagName, this.tags.get(tagName), newer.tags.get(tagName));
+			}
+			
+			// Compare the properties field by field if they are JSON objects, else as a whole
+			if(this.properties == null || newer.properties == null || this.properties.equals(newer.properties)) {
+				compare(differences, "properties", this.properties, newer.properties);
+			} else {
+				JsonNode older = MAPPER.readTree(this.properties);
+				JsonNode newest = MAPPER.readTree(newer.properties);
+				if(older.isObject() && newest.isObject()) {
+					TreeSet<String> fields = new TreeSet<>();
+					for(Iterator<String> iter = older.getFieldNames(); iter.hasNext();) {
+						fields.add(iter.next());
+					}
+					for(Iterator<String> iter = newest.getFieldNames(); iter.hasNext();) {
+						fields.add(iter.next());
+					}
+					
+					for(String field : fields) {
+						JsonNode olderValue = older.get(field);
+						JsonNode newerValue = newest.get(field);
+						if(olderValue == null || newerValue == null || !olderValue.equals(newerValue)) {
+							differences.add("properties." + field, 
+								(olderValue != null) ? olderValue.toString() : null, 
+								(newerValue != null) ? newerValue.toString() : null);
+						}
+					}
+				} else if(!older.equals(newest)) {
+					differences.add("properties", this.properties, newer.properties);
+				}
+			}
+			
+			return differences.toList();
+		}
+		
+		// Records a difference between two values unless exactly equal
+		private static void compare(Differences differences, String field, String older, String newer) {
+			if((older == null) ? (newer != null) : !older.equals(newer)) {
+				differences.add(field, older, newer);
+			}
+		}
+	}
+	
+	
+	private static class ChangesImpl implements Changes {
+		private final TreeSet<String> added = new TreeSet<>();
+		private final TreeSet<String> removed = new TreeSet<>();
+		private final TreeMap<String, List<String>> changed = new TreeMap<>();
+		
+		@Override
+		public Set<String> added() {
+			return Collections.unmodifiableSet(this.added);
+		}
+		
+		@Override
+		public Set<String> removed() {
+			return Collections.unmodifiableSet(this.removed);
+		}
+		
+		@Override
+		public Map<String, List<String>> changed() {
+			return Collections.unmodifiableMap(this.changed);
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("added: %s\nremoved: %s\nchanged: %s", this.added, this.removed, this.changed);
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.azure.shortcuts.resources.Region;
+import com.microsoft.azure.shortcuts.resources.SizeIndex;
+
+// The sizes are ranked from the smallest to the largest, and sets of sizes are bitmaps of their ranks stored as long words, 
+// so the first matching rank is the smallest match. Each specification is kept as a sorted array of its values along with, 
+// for each position in that array, the bitmap of the sizes whose value is at or after that position. A range constraint is 
+// then a binary search followed by the intersection of a single bitmap
+class SizeIndexImpl implements SizeIndex {
+	private final int count;
+	private final int words;
+	private final String[] names;
+	private final Column[] columns = new Column[SizesImpl.SPEC_LENGTH];
+	private final Map<Region, long[]> regions = new HashMap<>();
+	
+	// The values of a specification in ascending order, and the sizes with values from each position onwards
+	private static class Column {
+		private final int[] values;
+		private final long[][] atLeast;
+		
+		private Column(int[] values, long[][] atLeast) {
+			this.values = values;
+			this.atLeast = atLeast;
+		}
+		
+		// Returns the bitmap of the sizes with at least the specified value
+		private long[] atLeast(int value) {
+			// Find the first position holding the value or a larger one
+			int low = 0, high = this.values.length;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(this.values[middle] < value) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return this.atLeast[low];
+		}
+	}
+	
+	// Builds the index from the packed specifications of the sizes, as numbered by the sizes collection, and their availability
+	SizeIndexImpl(String[] names, final int[] specs, int count, Map<Region, BitSet> availability) {
+		this.count = count;
+		this.words = (count + 63) >>> 6;
+		
+		// Rank the sizes by cores, then memory, then data disks
+		Integer[] numbers = new Integer[count];
+		for(int i = 0; i < count; i++) {
+			numbers[i] = i;
+		}
+		Arrays.sort(numbers, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer number1, Integer number2) {
+				int result = Integer.compare(spec(specs, number1, SizesImpl.NUMBER_OF_CORES), spec(specs, number2, SizesImpl.NUMBER_OF_CORES));
+				if(result == 0) {
+					result = Integer.compare(spec(specs, number1, SizesImpl.MEMORY_IN_MB), spec(specs, number2, SizesImpl.MEMORY_IN_MB));
+				}
+				if(result == 0) {
+					result = Integer.compare(spec(specs, number1, SizesImpl.MAX_DATA_DISK_COUNT), spec(specs, number2, SizesImpl.MAX_DATA_DISK_COUNT));
+				}
+				return result;
+			}
+		});
+		
+		int[] ranks = new int[count];
+		this.names = new String[count];
+		for(int rank = 0; rank < count; rank++) {
+			ranks[numbers[rank]] = rank;
+			this.names[rank] = names[numbers[rank]];
+		}
+		
+		for(int field = 0; field < SizesImpl.SPEC_LENGTH; field++) {
+			this.columns[field] = this.column(specs, field, ranks);
+		}
+		
+		for(Map.Entry<Region, BitSet> entry : availability.entrySet()) {
+			long[] bitmap = new long[this.words];
+			BitSet numbersInRegion = entry.getValue();
+			for(int number = numbersInRegion.nextSetBit(0); number >= 0 && number < count; number = numbersInRegion.nextSetBit(number + 1)) {
+				set(bitmap, ranks[number]);
+			}
+			this.regions.put(entry.getKey(), bitmap);
+		}
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public int size() {
+		return this.count;
+	}
+
+	@Override
+	public Query query() {
+		return new QueryImpl();
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Sorts the values of a specification and computes the bitmaps of the sizes from each sorted position onwards
+	private Column column(int[] specs, int field, int[] ranks) {
+		long[] pairs = new long[this.count];
+		for(int number = 0; number < this.count; number++) {
+			pairs[number] = ((long) spec(specs, number, field) << 32) | ranks[number];
+		}
+		Arrays.sort(pairs);
+		
+		int[] values = new int[this.count];
+		long[][] atLeast = new long[this.count + 1][];
+		atLeast[this.count] = new long[this.words];
+		for(int i = this.count - 1; i >= 0; i--) {
+			values[i] = (int) (pairs[i] >> 32);
+			atLeast[i] = atLeast[i + 1].clone();
+			set(atLeast[i], (int) pairs[i]);
+		}
+		return new Column(values, atLeast);
+	}
+	
+	private static int spec(int[] specs, int number, int field) {
+		return specs[number * SizesImpl.SPEC_LENGTH + field];
+	}
+	
+	private static void set(long[] bitmap, int rank) {
+		bitmap[rank >>> 6] |= 1L << rank;
+	}
+	
+	
+	// A query narrowing a bitmap of the matching sizes as constraints are added
+	private class QueryImpl implements Query {
+		private final long[] matches = new long[words];
+		
+		private QueryImpl() {
+			Arrays.fill(this.matches, -1L);
+			if(count % 64 != 0) {
+				this.matches[words - 1] = (1L << count) - 1;
+			}
+		}
+		
+		
+		/***********************************************************
+		 * Getters
+		 ***********************************************************/
+		
+		@Override
+		public List<String> names() {
+			List<String> matchingNames = new ArrayList<>();
+			for(int word = 0; word < words; word++) {
+				for(long bits = this.matches[word]; bits != 0; bits &= bits - 1) {
+					matchingNames.add(names[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+				}
+			}
+			return Collections.unmodifiableList(matchingNames);
+		}
+
+		@Override
+		public String smallest() {
+			for(int word = 0; word < words; word++) {
+				if(this.matches[word] != 0) {
+					return names[(word << 6) + Long.numberOfTrailingZeros(this.matches[word])];
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public int count() {
+			int matchCount = 0;
+			for(long bits : this.matches) {
+				matchCount += Long.bitCount(bits);
+			}
+			return matchCount;
+		}
+		
+		
+		/**************************************************************
+		 * Setters (fluent interface)
+		 **************************************************************/
+		
+		@Override
+		public QueryImpl withMinCores(int cores) {
+			return this.atLeast(SizesImpl.NUMBER_OF_CORES, cores);
+		}
+
+		@Override
+		public QueryImpl withMaxCores(int cores) {
+			return this.atMost(SizesImpl.NUMBER_OF_CORES, cores);
+		}
+
+		@Override
+		public QueryImpl withMinMemoryInMB(int memoryInMB) {
+			return this.atLeast(SizesImpl.MEMORY_IN_MB, memoryInMB);
+		}
+
+		@Override
+		public QueryImpl withMaxMemoryInMB(int memoryInMB) {
+			return this.atMost(SizesImpl.MEMORY_IN_MB, memoryInMB);
+		}
+
+		@Override
+		public QueryImpl withMinDataDiskCount(int count) {
+			return this.atLeast(SizesImpl.MAX_DATA_DISK_COUNT, count);
+		}
+
+		@Override
+		public QueryImpl withMinResourceDiskSizeInMB(int sizeInMB) {
+			return this.atLeast(SizesImpl.RESOURCE_DISK_SIZE_IN_MB, sizeInMB);
+		}
+
+		@Override
+		public QueryImpl withMinOsDiskSizeInMB(int sizeInMB) {
+			return this.atLeast(SizesImpl.OS_DISK_SIZE_IN_MB, sizeInMB);
+		}
+
+		@Override
+		public QueryImpl withRegions(Region... regions) {
+			for(Region region : regions) {
+				long[] bitmap = SizeIndexImpl.this.regions.get(region);
+				if(bitmap == null) {
+					// No sizes are known in the region
+					Arrays.fill(this.matches, 0);
+					break;
+				}
+				
+				for(int word = 0; word < words; word++) {
+					this.matches[word] &= bitmap[word];
+				}
+			}
+			return this;
+		}
+		
+		
+		/***********************************************************
+		 * Helpers
+		 ***********************************************************/
+		
+		private QueryImpl atLeast(int field, int value) {
+			long[] bitmap = columns[field].atLeast(value);
+			for(int word = 0; word < words; word++) {
+				this.matches[word] &= bitmap[word];
+			}
+			return this;
+		}
+		
+		private QueryImpl atMost(int field, int value) {
+			if(value == Integer.MAX_VALUE) {
+				return this;
+			}
+			
+			long[] bitmap = columns[field].atLeast(value + 1);
+			for(int word = 0; word < words; word++) {
+				this.matches[word] &= ~bitmap[word];
+			}
+			return this;
+		}
+	}
+}
@@ -19,70 +19,242 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
-import java.io.IOException;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.microsoft.azure.management.compute.models.VirtualMachineSize;
 import com.microsoft.azure.shortcuts.common.implementation.EntitiesImpl;
 import com.microsoft.azure.shortcuts.common.implementation.IndexableImpl;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.Region;
 import com.microsoft.azure.shortcuts.resources.Size;
+import com.microsoft.azure.shortcuts.resources.SizeIndex;
 import com.microsoft.azure.shortcuts.resources.Sizes;
 import com.microsoft.windowsazure.exception.ServiceException;
 
+// The sizes seen in any region are numbered in the order first seen, with their specifications packed into a single int array,
+// and the sizes available in each region are cached for a limited time as a bit set of those numbers
 public class SizesImpl 
 	extends EntitiesImpl<Subscription>
 	implements Sizes {
-
+	
+	// Sizes change very rarely, so their listings are kept for a day
+	static final long LISTING_TTL = 24 * 3600 * 1000L;
+	
+	// The layout of the packed specifications of a size
+	static final int MAX_DATA_DISK_COUNT = 0;
+	static final int MEMORY_IN_MB = 1;
+	static final int NUMBER_OF_CORES = 2;
+	static final int OS_DISK_SIZE_IN_MB = 3;
+	static final int RESOURCE_DISK_SIZE_IN_MB = 4;
+	static final int SPEC_LENGTH = 5;
+	
+	// The error codes of the responses meaning that a region is not available to the subscription
+	private static final Set<String> REGION_UNAVAILABLE_CODES = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	static {
+		REGION_UNAVAILABLE_CODES.addAll(Arrays.asList(
+			"LocationNotAvailableForResourceType", "NoRegisteredProviderFound", "LocationNotFound", "InvalidLocation"));
+	}
+	
+	private final HashMap<String, Integer> numbers = new HashMap<>();
+	private String[] names = new String[64];
+	private int[] specs = new int[64 * SPEC_LENGTH];
+	private SizeImpl[] wrappers = new SizeImpl[64];
+	private int count = 0;
+	
+	private final ConcurrentHashMap<String, RegionalSizes> regions = new ConcurrentHashMap<>();
+	
+	// The sizes available in a region, as listed at some point
+	private static class RegionalSizes {
+		private final long expiry;
+		private final BitSet numbers;
+		private final Map<String, Size> wrappers;
+		
+		private RegionalSizes(long expiry, BitSet numbers, Map<String, Size> wrappers) {
+			this.expiry = expiry;
+			this.numbers = numbers;
+			this.wrappers = wrappers;
+		}
+	}
+	
 	SizesImpl(Subscription subscription) {
 		super(subscription);
 	}
 	
+	/**
+	 * @return The sizes available in any region, listing the regions not listed recently concurrently. Regions the 
+	 * subscription cannot list sizes in are left out
+	 */
 	@Override
 	public Map<String, Size> asMap() throws Exception {
-		// TODO Auto-generated method stub
-		return null;
+		HashMap<String, Size> wrappers = new HashMap<>();
+		for(RegionalSizes regionalSizes : this.listAll().values()) {
+			wrappers.putAll(regionalSizes.wrappers);
+		}
+		
+		return Collections.unmodifiableMap(wrappers);
 	}
 
 	@Override
 	public Map<String, Size> asMap(String region) throws Exception {
-		HashMap<String, Size> wrappers = new HashMap<>();
-		for(VirtualMachineSize nativeItem : getNativeEntities(region)) {
-			SizeImpl wrapper = new SizeImpl(nativeItem, this);
-			wrappers.put(nativeItem.getName(), wrapper);
+		RegionalSizes regionalSizes = this.regions.get(region.toLowerCase());
+		if(regionalSizes == null || regionalSizes.expiry < System.currentTimeMillis()) {
+			regionalSizes = this.list(region);
 		}
 		
-		return Collections.unmodifiableMap(wrappers);
+		return regionalSizes.wrappers;
 	}
 
+	@Override
+	public Map<Region, Set<String>> availability() throws Exception {
+		HashMap<Region, Set<String>> availability = new HashMap<>();
+		for(Map.Entry<Region, RegionalSizes> entry : this.listAll().entrySet()) {
+			availability.put(entry.getKey(), Collections.unmodifiableSet(new TreeSet<>(entry.getValue().wrappers.keySet())));
+		}
+		
+		return Collections.unmodifiableMap(availability);
+	}
+
+
+	@Override
+	public SizeIndex index() throws Exception {
+		HashMap<Region, BitSet> availability = new HashMap<>();
+		for(Map.Entry<Region, RegionalSizes> entry : this.listAll().entrySet()) {
+			availability.put(entry.getKey(), entry.getValue().numbers);
+		}
+		
+		synchronized(this) {
+			return new SizeIndexImpl(this.names, this.specs, this.count, availability);
+		}
+	}
+	
 	
 	/*******************************************************
 	 * Helpers
-	 * @throws URISyntaxException 
-	 * @throws ServiceException 
-	 * @throws IOException 
 	 *******************************************************/
 	
 	private ArrayList<VirtualMachineSize> getNativeEntities(String region) throws Exception {
 		return subscription.computeManagementClient().getVirtualMachineSizesOperations().list(region).getVirtualMachineSizes();
 	}
+	
+	// Lists the sizes in a region and caches them
+	private RegionalSizes list(String region) throws Exception {
+		BitSet numbers = new BitSet();
+		HashMap<String, Size> wrappers = new HashMap<>();
+		for(VirtualMachineSize nativeItem : getNativeEntities(region)) {
+			int number = this.register(nativeItem);
+			numbers.set(number);
+			wrappers.put(nativeItem.getName(), this.wrapper(number));
+		}
+		
+		RegionalSizes regionalSizes = new RegionalSizes(
+			System.currentTimeMillis() + LISTING_TTL, numbers, Collections.unmodifiableMap(wrappers));
+		this.regions.put(region.toLowerCase(), regionalSizes);
+		return regionalSizes;
+	}
+	
+	// Determines whether a failed listing means that the region is not available to the subscription, rather than a throttled, 
+	// unauthorized or failed request
+	private static boolean isRegionUnavailable(ServiceException e) {
+		if(e.getHttpStatusCode() == 404) {
+			return true;
+		} else if(e.getHttpStatusCode() != 400 && e.getHttpStatusCode() != 409) {
+			return false;
+		} else {
+			return e.getError() != null && e.getError().getCode() != null && REGION_UNAVAILABLE_CODES.contains(e.getError().getCode());
+		}
+	}
+	
+	// Returns the sizes in each region, listing the regions not listed recently concurrently and leaving out those not available
+	private Map<Region, RegionalSizes> listAll() throws Exception {
+		List<Region> allRegions = Arrays.asList(Region.values());
+		List<Callable<RegionalSizes>> calls = new ArrayList<>();
+		for(final Region region : allRegions) {
+			calls.add(new Callable<RegionalSizes>() {
+				@Override
+				public RegionalSizes call() throws Exception {
+					RegionalSizes regionalSizes = SizesImpl.this.regions.get(region.toString().toLowerCase());
+					if(regionalSizes != null && regionalSizes.expiry >= System.currentTimeMillis()) {
+						return regionalSizes;
+					}
+					
+					try {
+						return list(region.toString());
+					} catch(ServiceException e) {
+						if(!isRegionUnavailable(e)) {
+							throw e;
+						}
+						
+						// The region is not available to the subscription
+						return null;
+					}
+				}
+			});
+		}
+		
+		List<RegionalSizes> listings = Parallel.invokeAll(this.subscription.executor(), calls, 0);
+		HashMap<Region, RegionalSizes> regionalSizes = new HashMap<>();
+		for(int i = 0; i < allRegions.size(); i++) {
+			if(listings.get(i) != null) {
+				regionalSizes.put(allRegions.get(i), listings.get(i));
+			}
+		}
+		return regionalSizes;
+	}
+	
+	// Returns the number of a size, recording its specifications
+	private synchronized int register(VirtualMachineSize nativeItem) {
+		Integer number = this.numbers.get(nativeItem.getName().toLowerCase());
+		if(number == null) {
+			number = this.count++;
+			if(number == this.names.length) {
+				this.names = Arrays.copyOf(this.names, number * 2);
+				this.specs = Arrays.copyOf(this.specs, number * 2 * SPEC_LENGTH);
+				this.wrappers = Arrays.copyOf(this.wrappers, number * 2);
+			}
+			this.numbers.put(nativeItem.getName().toLowerCase(), number);
+			this.names[number] = nativeItem.getName();
+			this.wrappers[number] = new SizeImpl(nativeItem.getName(), number);
+		}
+		
+		int offset = number * SPEC_LENGTH;
+		this.specs[offset + MAX_DATA_DISK_COUNT] = nativeItem.getMaxDataDiskCount();
+		this.specs[offset + MEMORY_IN_MB] = nativeItem.getMemoryInMB();
+		this.specs[offset + NUMBER_OF_CORES] = nativeItem.getNumberOfCores();
+		this.specs[offset + OS_DISK_SIZE_IN_MB] = nativeItem.getOSDiskSizeInMB();
+		this.specs[offset + RESOURCE_DISK_SIZE_IN_MB] = nativeItem.getResourceDiskSizeInMB();
+		return number;
+	}
+	
+	private synchronized SizeImpl wrapper(int number) {
+		return this.wrappers[number];
+	}
+	
+	// Returns a specification of a size
+	synchronized int spec(int number, int field) {
+		return this.specs[number * SPEC_LENGTH + field];
+	}
 
 	
-	// Implementation of a Size
+	// Implementation of a Size, reading its specifications from the packed array
 	private class SizeImpl
 		extends IndexableImpl
 		implements Size {
 
-		final private VirtualMachineSize azureSize;
-		final private EntitiesImpl<Subscription> collection;
+		final private int number;
 		
-		private SizeImpl(VirtualMachineSize azureSize, EntitiesImpl<Subscription> collection) {
-			super(azureSize.getName());
-			this.azureSize = azureSize;
-			this.collection = collection;
+		private SizeImpl(String name, int number) {
+			super(name);
+			this.number = number;
 		}
 
 		
@@ -92,36 +264,36 @@ public class SizesImpl
 		
 		@Override
 		public int maxDataDiskCount() {
-			return this.azureSize.getMaxDataDiskCount();
+			return spec(this.number, MAX_DATA_DISK_COUNT);
 		}
 
 
 		@Override
 		public int memoryInMB() {
-			return this.azureSize.getMemoryInMB();
+			return spec(this.number, MEMORY_IN_MB);
 		}
 
 
 		@Override
 		public int numberOfCores() {
-			return this.azureSize.getNumberOfCores();
+			return spec(this.number, NUMBER_OF_CORES);
 		}
 
 
 		@Override
 		public int osDiskSizeInMB() {
-			return this.azureSize.getOSDiskSizeInMB();
+			return spec(this.number, OS_DISK_SIZE_IN_MB);
 		}
 
 
 		@Override
 		public int resourceDiskSizeInMB() {
-			return this.azureSize.getResourceDiskSizeInMB();
+			return spec(this.number, RESOURCE_DISK_SIZE_IN_MB);
 		}
 		
 		@Override
 		public Type toSizeType() {
-			return Size.Type.fromString(azureSize.getName());
+			return Size.Type.fromString(this.id());
 		}
 	}
 }
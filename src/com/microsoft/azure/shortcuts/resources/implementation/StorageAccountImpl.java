@@ -24,6 +24,7 @@ import java.net.URL;
 
 import com.microsoft.azure.management.storage.models.AccountType;
 import com.microsoft.azure.management.storage.models.StorageAccountCreateParameters;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
 import com.microsoft.azure.shortcuts.resources.StorageAccount;
 
 class StorageAccountImpl 
@@ -51,7 +52,7 @@ class StorageAccountImpl
 	@Override
 	public URL primaryBlobEndpoint() {
 		try {
-			return this.inner().getPrimaryEndpoints().getBlob().toURL();
+			return this.innerObject().getPrimaryEndpoints().getBlob().toURL();
 		} catch (MalformedURLException e) {
 			return null;
 		}
@@ -59,7 +60,7 @@ class StorageAccountImpl
 	
 	@Override
 	public AccountType accountType() {
-		return this.inner().getAccountType();
+		return this.innerObject().getAccountType();
 	}
 	
 	
@@ -69,17 +70,32 @@ class StorageAccountImpl
 	
 	@Override
 	public StorageAccountImpl withAccountType(AccountType type) {
-		this.inner().setAccountType(type);
+		this.ensureNotSnapshot();
+		this.innerObject().setAccountType(type);
 		return this;
 	}
 	
 	
+	/************************************************************
+	 * Helpers
+	 ************************************************************/
+	
+	@Override
+	void diff(com.microsoft.azure.management.storage.models.StorageAccount actual, Differences differences) {
+		super.diff(actual, differences);
+		if(this.accountType() != null) {
+			differences.compare("accountType", actual.getAccountType(), this.accountType());
+		}
+	}
+	
+	
 	/************************************************************
 	 * Verbs
 	 ************************************************************/
 	
 	@Override
 	public StorageAccount create() throws Exception {
+		this.ensureNotSnapshot();
 		// Create group if needed
 		ensureGroup();
 	
@@ -91,7 +107,7 @@ class StorageAccountImpl
 		StorageAccountCreateParameters params = new StorageAccountCreateParameters();
 		params.setLocation(this.region());
 		params.setAccountType(this.accountType());
-		params.setTags(this.inner().getTags());
+		params.setTags(this.innerObject().getTags());
 	
 		this.subscription().storageManagementClient().getStorageAccountsOperations().create(this.groupName, this.name(), params);
 		return this.subscription().storageAccounts().get(this.groupName, this.name());
@@ -100,6 +116,7 @@ class StorageAccountImpl
 	
 	@Override
 	public StorageAccountImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 			ResourcesImpl.groupFromResourceId(this.id()), 
 			ResourcesImpl.nameFromResourceId(this.id())));
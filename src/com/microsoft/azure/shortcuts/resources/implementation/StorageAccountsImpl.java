@@ -32,6 +32,8 @@ public class StorageAccountsImpl
 		StorageAccountImpl>
 	implements StorageAccounts {
 	
+	static final String TYPE = "Microsoft.Storage/storageAccounts";
+	
 	StorageAccountsImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -40,12 +42,14 @@ public class StorageAccountsImpl
 	public StorageAccountImpl define(String name) throws Exception {
 		com.microsoft.azure.management.storage.models.StorageAccount nativeItem = new com.microsoft.azure.management.storage.models.StorageAccount();
 		nativeItem.setName(name);
+		nativeItem.setType(TYPE);
 		return wrap(nativeItem);
 	}
 	
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.storageManagementClient().getStorageAccountsOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 
@@ -70,5 +74,20 @@ public class StorageAccountsImpl
 	@Override
 	protected StorageAccountImpl wrap(com.microsoft.azure.management.storage.models.StorageAccount nativeItem) {
 		return new StorageAccountImpl(nativeItem, this);
-	}	
+	}
+	
+	@Override
+	String inventorySection() {
+		return TYPE;
+	}
+	
+	@Override
+	Class<com.microsoft.azure.management.storage.models.StorageAccount> inventoryType() {
+		return com.microsoft.azure.management.storage.models.StorageAccount.class;
+	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
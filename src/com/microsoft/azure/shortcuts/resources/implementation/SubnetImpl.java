@@ -33,7 +33,8 @@ class SubnetImpl
 		ChildResourceImpl<com.microsoft.azure.management.network.models.Subnet, NetworkImpl>
 	implements
 		Subnet,
-		Subnet.Definition<Network.DefinitionCreatableWithSubnet> {
+		Subnet.Definition<Network.DefinitionCreatableWithSubnet>,
+		Subnet.Update {
 	SubnetImpl(
 			com.microsoft.azure.management.network.models.Subnet nativeItem,
 			NetworkImpl network) {
@@ -45,13 +46,13 @@ class SubnetImpl
 	 ***********************************************************/
 	@Override
 	public String addressPrefix() {
-		return this.inner().getAddressPrefix();
+		return this.innerObject.getAddressPrefix();
 	}
 	
 	@Override
 	public String networkSecurityGroup() {
-		if(this.inner().getNetworkSecurityGroup() != null) {
-			return this.inner().getNetworkSecurityGroup().getId();
+		if(this.innerObject.getNetworkSecurityGroup() != null) {
+			return this.innerObject.getNetworkSecurityGroup().getId();
 		} else {
 			return null;
 		}
@@ -64,12 +65,14 @@ class SubnetImpl
 
 	@Override
 	public SubnetImpl withAddressPrefix(String cidr) {
+		this.ensureNotSnapshot();
 		this.inner().setAddressPrefix(cidr);
 		return this;
 	}
 
 	@Override
 	public SubnetImpl withExistingNetworkSecurityGroup(String nsgId) {
+		this.ensureNotSnapshot();
 		ResourceId resourceId = new ResourceId();
 		resourceId.setId(nsgId);
 		this.inner().setNetworkSecurityGroup(resourceId);
@@ -81,6 +84,13 @@ class SubnetImpl
 		return this.withExistingNetworkSecurityGroup(nsg.id());
 	}
 
+	@Override
+	public SubnetImpl withoutNetworkSecurityGroup() {
+		this.ensureNotSnapshot();
+		this.inner().setNetworkSecurityGroup(null);
+		return this;
+	}
+
 
 	@Override
 	public DefinitionAttachable<DefinitionCreatableWithSubnet> withExistingNetworkSecurityGroup(
@@ -95,9 +105,21 @@ class SubnetImpl
 
 	@Override
 	public NetworkImpl attach() throws Exception {
-		this.parent().inner().getSubnets().add(this.inner());
+		this.ensureNotSnapshot();
+		this.parent().inner().getSubnets().add(this.innerObject);
+		this.parent().invalidate();
 		return this.parent();
 	}
+	
+	@Override
+	public SubnetImpl apply() throws Exception {
+		return this.parent().putSubnet(this.innerObject);
+	}
+	
+	@Override
+	public void delete() throws Exception {
+		this.parent().deleteSubnet(this.id());
+	}
 
 	
 	/*********************************************************
@@ -27,11 +27,14 @@ import com.microsoft.azure.management.resources.ResourceManagementClient;
 import com.microsoft.azure.management.resources.ResourceManagementService;
 import com.microsoft.azure.management.storage.StorageManagementClient;
 import com.microsoft.azure.management.storage.StorageManagementService;
+import com.microsoft.azure.shortcuts.common.implementation.StringDictionary;
 import com.microsoft.azure.shortcuts.common.implementation.Utils;
 import com.microsoft.azure.shortcuts.resources.AvailabilitySet;
 import com.microsoft.azure.shortcuts.resources.AvailabilitySets;
 import com.microsoft.azure.shortcuts.resources.ResourceGroup;
 import com.microsoft.azure.shortcuts.resources.ResourceGroups;
+import com.microsoft.azure.shortcuts.resources.CidrAllocator;
+import com.microsoft.azure.shortcuts.resources.ImageCatalog;
 import com.microsoft.azure.shortcuts.resources.LoadBalancer;
 import com.microsoft.azure.shortcuts.resources.LoadBalancers;
 import com.microsoft.azure.shortcuts.resources.Network;
@@ -40,7 +43,10 @@ import com.microsoft.azure.shortcuts.resources.NetworkInterfaces;
 import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
 import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroups;
 import com.microsoft.azure.shortcuts.resources.Networks;
+import com.microsoft.azure.shortcuts.resources.Plan;
+import com.microsoft.azure.shortcuts.resources.Reconciler;
 import com.microsoft.azure.shortcuts.resources.Provider;
+import com.microsoft.azure.shortcuts.resources.PrivateIpAllocator;
 import com.microsoft.azure.shortcuts.resources.Providers;
 import com.microsoft.azure.shortcuts.resources.PublicIpAddress;
 import com.microsoft.azure.shortcuts.resources.PublicIpAddresses;
@@ -52,6 +58,9 @@ import com.microsoft.azure.shortcuts.resources.Resources;
 import com.microsoft.azure.shortcuts.resources.Sizes;
 import com.microsoft.azure.shortcuts.resources.StorageAccount;
 import com.microsoft.azure.shortcuts.resources.StorageAccounts;
+import com.microsoft.azure.shortcuts.resources.TagIndex;
+import com.microsoft.azure.shortcuts.resources.Reachability;
+import com.microsoft.azure.shortcuts.resources.Topology;
 import com.microsoft.azure.shortcuts.resources.VirtualMachine;
 import com.microsoft.azure.shortcuts.resources.VirtualMachines;
 import com.microsoft.azure.utility.AuthHelper;
@@ -65,7 +74,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.naming.ServiceUnavailableException;
 import javax.xml.parsers.ParserConfigurationException;
@@ -108,6 +119,13 @@ public class Subscription {
     private StorageManagementClient storageManagementClient;
     private ComputeManagementClient computeManagementClient;
     private NetworkResourceProviderClient networkResourceProviderClient;
+    private ForkJoinPool executor;
+    private InventoryImpl inventory;
+    private TagIndexImpl tagIndex;
+    private ImageCatalogImpl imageCatalog;
+    private CidrAllocatorImpl cidrAllocator;
+    private final ConcurrentHashMap<String, PrivateIpAllocatorImpl> privateIpAllocators = new ConcurrentHashMap<>();
+    private StringDictionary strings;
 
     private final ResourcesImpl resources;
     private final ResourceGroupsImpl resourceGroups;
@@ -315,6 +333,147 @@ public class Subscription {
     	return this.storageAccounts().get(group, name);
     }
     
+    public Plan plan() {
+    	return new PlanImpl(this);
+    }
+    
+    public Reconciler reconciler() {
+    	return new ReconcilerImpl();
+    }
+    
+    /**
+     * Returns the catalog of virtual machine images, kept in memory with the default maximum age unless a snapshot file 
+     * was specified with withImageCatalog()
+     * @return The image catalog
+     * @throws IOException
+     */
+    public synchronized ImageCatalog imageCatalog() throws IOException {
+    	if(this.imageCatalog == null) {
+    		this.imageCatalog = new ImageCatalogImpl(this, null, ImageCatalogImpl.DEFAULT_MAX_AGE);
+    	}
+    	
+    	return this.imageCatalog;
+    }
+    
+    /**
+     * Returns a builder of the network topology reachable from a set of root resources, resolved in bulk
+     * @return The topology builder
+     */
+    public Topology.Builder topology() {
+    	return new TopologyImpl(this);
+    }
+    
+    /**
+     * Returns a builder of the reachability between virtual machines on a set of ports, as decided by their network security groups
+     * @return The reachability builder
+     */
+    public Reachability.Builder reachability() {
+    	return new ReachabilityImpl(this);
+    }
+    
+    /**
+     * Returns the index of the resources and resource groups by their tags, listing them all to build it on first use.
+     * Subsequent listings, gets and deletions through this subscription keep the index current
+     * @return The tag index
+     * @throws Exception
+     */
+    public synchronized TagIndex tagIndex() throws Exception {
+    	if(this.tagIndex == null) {
+    		this.tagIndex = new TagIndexImpl(this).refresh();
+    	}
+    	
+    	return this.tagIndex;
+    }
+    
+    /**
+     * Returns the allocator of free address spaces for virtual networks within the private address ranges, listing all the 
+     * virtual networks to reserve their address spaces and subnets on first use. Networks created through this subscription 
+     * keep the allocator current
+     * @return The address space allocator
+     * @throws Exception
+     */
+    public CidrAllocator cidrAllocator() throws Exception {
+    	CidrAllocatorImpl allocator = this.existingCidrAllocator();
+    	if(allocator != null) {
+    		return allocator;
+    	}
+    	
+    	// Seed the allocator without holding the lock, since the listing of the networks may run on the executor, then 
+    	// publish it unless another thread got there first
+    	allocator = new CidrAllocatorImpl(this, NetworkSecurityPolicyImpl.PRIVATE_ADDRESS_SPACES).refresh();
+    	synchronized(this) {
+    		if(this.cidrAllocator == null) {
+    			this.cidrAllocator = allocator;
+    		}
+    		return this.cidrAllocator;
+    	}
+    }
+    
+    /**
+     * Returns the allocator of free private IP addresses in a subnet, retrieving the subnet and the network interfaces in it
+     * on first use. Network interfaces created or deleted through this subscription keep the allocator current
+     * @param subnetId The resource ID of the subnet
+     * @return The private IP address allocator of the subnet
+     * @throws Exception
+     */
+    public PrivateIpAllocator privateIpAllocator(String subnetId) throws Exception {
+    	PrivateIpAllocatorImpl allocator = this.privateIpAllocators.get(subnetId.toLowerCase());
+    	if(allocator != null) {
+    		return allocator;
+    	}
+    	
+    	// Seed the allocator without holding any lock, since the listings run on the executor, then publish it unless 
+    	// another thread got there first
+    	allocator = new PrivateIpAllocatorImpl(this, subnetId).refresh();
+    	PrivateIpAllocatorImpl existing = this.privateIpAllocators.putIfAbsent(subnetId.toLowerCase(), allocator);
+    	return (existing != null) ? existing : allocator;
+    }
+    
+    
+    //**********************************************************
+    //* Setters
+    //**********************************************************
+    
+    /**
+     * Serves the listings of virtual machines, networks, network interfaces, storage accounts and resource groups from a local
+     * snapshot file while it is within the staleness bound, revalidating each listing in the background as it ages. The snapshot
+     * is loaded from the file if it exists, and saved to it whenever a listing is refreshed from Azure.
+     * @param filePath The path of the snapshot file
+     * @param maxStalenessMillis The maximum age of a listing served from the snapshot without calling Azure
+     * @return The subscription
+     * @throws IOException
+     */
+    public Subscription withInventory(String filePath, long maxStalenessMillis) throws IOException {
+    	this.inventory = new InventoryImpl(this, filePath, maxStalenessMillis);
+    	return this;
+    }
+    
+    
+    /**
+     * Keeps the catalog of virtual machine images in a local snapshot file, loading it from the file if it exists. Listings
+     * older than the maximum age are requested again from Azure when needed, and crawling the catalog saves it to the file.
+     * While the catalog knows the versions of an image, withLatestImage() in virtual machine definitions uses its latest version
+     * @param filePath The path of the snapshot file
+     * @param maxAgeMillis The maximum age of a listing used without calling Azure
+     * @return The subscription
+     * @throws IOException
+     */
+    public synchronized Subscription withImageCatalog(String filePath, long maxAgeMillis) throws IOException {
+    	this.imageCatalog = new ImageCatalogImpl(this, filePath, maxAgeMillis);
+    	return this;
+    }
+    
+    
+    /**
+     * Shares a single instance of each region, type, group name, tag name and tag value among all the entities listed or 
+     * retrieved through this subscription from now on, reducing the memory retained by large inventories
+     * @return The subscription
+     */
+    public Subscription withStringDictionary() {
+    	this.strings = new StringDictionary();
+    	return this;
+    }
+    
     
     /**
      * Get credentials from XML
@@ -503,7 +662,59 @@ public class Subscription {
     	
     	return this.storageManagementClient;
     }
+
+
+    // Returns the shared work-stealing pool used for parallel operations, creating if needed
+    synchronized ForkJoinPool executor() {
+    	if(this.executor == null) {
+    		this.executor = new ForkJoinPool();
+    	}
+    	
+    	return this.executor;
+    }
+    
     
+    // Returns the local inventory snapshot, if any
+    InventoryImpl inventory() {
+    	return this.inventory;
+    }
+    
+    
+    // Returns the dictionary of canonical strings if in use, or null
+    StringDictionary strings() {
+    	return this.strings;
+    }
+    
+    
+    // Returns the image catalog if it is in use, or null
+    synchronized ImageCatalogImpl existingImageCatalog() {
+    	return this.imageCatalog;
+    }
+    
+    
+    // Returns the tag index if it is in use, or null
+    synchronized TagIndexImpl existingTagIndex() {
+    	return this.tagIndex;
+    }
+    
+    
+    // Returns the address space allocator if it is in use, or null
+    synchronized CidrAllocatorImpl existingCidrAllocator() {
+    	return this.cidrAllocator;
+    }
+    
+    
+    // Returns the private IP address allocator of the subnet if it is in use, or null
+    PrivateIpAllocatorImpl existingPrivateIpAllocator(String subnetId) {
+    	return (subnetId != null) ? this.privateIpAllocators.get(subnetId.toLowerCase()) : null;
+    }
+    
+    
+    // Returns the ID of this subscription
+    String subscriptionId() {
+    	return (String) this.configuration.getProperty(ManagementConfiguration.SUBSCRIPTION_ID);
+    }
+
     
 	private static Configuration createConfiguration(
 			String subscriptionId, 
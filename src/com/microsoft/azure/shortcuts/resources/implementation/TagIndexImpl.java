@@ -0,0 +1,534 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.microsoft.azure.management.resources.models.GenericResourceExtended;
+import com.microsoft.azure.management.resources.models.ResourceGroupExtended;
+import com.microsoft.azure.management.resources.models.ResourceListParameters;
+import com.microsoft.azure.shortcuts.resources.TagIndex;
+
+// Inverted index from tag names and values to posting lists of resources. Resource IDs are interned into consecutive integer 
+// codes, and each posting list is a sorted list of codes stored as variable-length encoded deltas, with recent changes 
+// buffered until the list is next read
+class TagIndexImpl implements TagIndex {
+	private final Subscription subscription;
+	private final Map<String, Integer> codes = new HashMap<>();
+	private final List<String> ids = new ArrayList<>();
+	private final List<String[]> keysByCode = new ArrayList<>();
+	private final Map<String, Posting> postings = new HashMap<>();
+	private final Posting all = new Posting();
+	
+	TagIndexImpl(Subscription subscription) {
+		this.subscription = subscription;
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public synchronized int size() {
+		return this.all.size();
+	}
+	
+	@Override
+	public Query tag(String name, String value) {
+		return new PostingQuery(key(name, value));
+	}
+	
+	@Override
+	public Query tag(String name) {
+		return new PostingQuery(key(name, null));
+	}
+	
+	@Override
+	public Query all() {
+		return new PostingQuery(null);
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+	
+	@Override
+	public TagIndexImpl refresh() throws Exception {
+		ResourceListParameters params = new ResourceListParameters();
+		List<GenericResourceExtended> resources = this.subscription.resourceManagementClient().getResourcesOperations().list(params).getResources();
+		List<ResourceGroupExtended> groups = this.subscription.resourceManagementClient().getResourceGroupsOperations().list(null).getResourceGroups();
+		Map<String, Map<String, String>> tagsById = new HashMap<>();
+		for(GenericResourceExtended resource : resources) {
+			tagsById.put(resource.getId(), resource.getTags());
+		}
+		this.replace(null, null, tagsById);
+		
+		tagsById.clear();
+		for(ResourceGroupExtended group : groups) {
+			tagsById.put(groupId(this.subscription, group.getName()), group.getTags());
+		}
+		this.replace(null, ResourceGroupsImpl.TYPE, tagsById);
+		return this;
+	}
+	
+	// Indexes a resource or resource group, replacing its earlier tags if any
+	synchronized void put(String id, Map<String, String> tags) {
+		this.put(id, id.toLowerCase(), tags);
+	}
+	
+	private void put(String id, String normalizedId, Map<String, String> tags) {
+		Integer code = this.codes.get(normalizedId);
+		if(code == null) {
+			code = this.ids.size();
+			this.codes.put(normalizedId, code);
+			this.ids.add(id);
+			this.keysByCode.add(null);
+		}
+		
+		String[] oldKeys = this.keysByCode.get(code);
+		String[] newKeys = keys(tags);
+		if(Arrays.equals(oldKeys, newKeys)) {
+			return;
+		}
+		this.keysByCode.set(code, newKeys);
+		if(oldKeys == null) {
+			this.all.add(code);
+		}
+		
+		// Only touch the postings of the tags that changed
+		Set<String> unchanged = new HashSet<>();
+		if(oldKeys != null) {
+			Set<String> kept = new HashSet<>(Arrays.asList(newKeys));
+			for(String key : oldKeys) {
+				if(kept.contains(key)) {
+					unchanged.add(key);
+				} else {
+					this.postings.get(key).remove(code);
+				}
+			}
+		}
+		for(String key : newKeys) {
+			if(!unchanged.contains(key)) {
+				Posting posting = this.postings.get(key);
+				if(posting == null) {
+					this.postings.put(key, posting = new Posting());
+				}
+				posting.add(code);
+			}
+		}
+	}
+	
+	// Removes a deleted resource or resource group from the index
+	synchronized void remove(String id) {
+		Integer code = this.codes.get(id.toLowerCase());
+		String[] keys = (code != null) ? this.keysByCode.get(code) : null;
+		if(keys == null) {
+			return;
+		}
+		
+		for(String key : keys) {
+			this.postings.get(key).remove(code);
+		}
+		this.all.remove(code);
+		this.keysByCode.set(code, null);
+	}
+	
+	// Indexes the results of a listing, removing the indexed resources within the scope of the listing that are no longer 
+	// present, where the scope is the specified group and type, or any group or resource type if null. Resource groups
+	// themselves are only in scope if the type is that of resource groups
+	synchronized void replace(String groupName, String type, Map<String, Map<String, String>> tagsById) {
+		Set<String> listed = new HashSet<>();
+		for(Entry<String, Map<String, String>> entry : tagsById.entrySet()) {
+			String normalizedId = entry.getKey().toLowerCase();
+			this.put(entry.getKey(), normalizedId, entry.getValue());
+			listed.add(normalizedId);
+		}
+		
+		for(int code : this.all.values()) {
+			String id = this.ids.get(code).toLowerCase();
+			if(!listed.contains(id) && isInScope(id, groupName, type)) {
+				this.remove(id);
+			}
+		}
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Returns the ID of a resource group
+	static String groupId(Subscription subscription, String groupName) {
+		return "/subscriptions/" + subscription.subscriptionId() + "/resourceGroups/" + groupName;
+	}
+	
+	// Returns the posting list keys for a set of tags: one for each name and value pair, and one for each name alone
+	private static String[] keys(Map<String, String> tags) {
+		if(tags == null) {
+			return new String[0];
+		}
+		
+		String[] keys = new String[tags.size() * 2];
+		int i = 0;
+		for(Entry<String, String> tag : tags.entrySet()) {
+			keys[i++] = key(tag.getKey(), null);
+			keys[i++] = key(tag.getKey(), tag.getValue());
+		}
+		return keys;
+	}
+	
+	// Tag names are case-insensitive, values are not
+	private static String key(String name, String value) {
+		return (value == null) ? name.toLowerCase() : name.toLowerCase() + '\u0000' + value;
+	}
+	
+	// Determines whether a normalized resource or resource group ID is in the scope of a listing
+	private static boolean isInScope(String id, String groupName, String type) {
+		String[] parts = id.split("/");
+		if(groupName != null && (parts.length <= 4 || !parts[4].equals(groupName.toLowerCase()))) {
+			return false;
+		} else if(parts.length == 5) {
+			return ResourceGroupsImpl.TYPE.equalsIgnoreCase(type);
+		} else if(type == null) {
+			return true;
+		} else if(parts.length > 7) {
+			return type.equalsIgnoreCase(parts[6] + "/" + parts[7]);
+		} else {
+			return false;
+		}
+	}
+	
+	
+	// A sorted list of codes, stored in blocks of deltas encoded in 7-bit groups, with the first code of each block kept 
+	// uncompressed so that lookups only decode the blocks they need. Added and removed codes are buffered until read
+	private static class Posting {
+		private static final int BLOCK = 128;
+		private byte[] data = new byte[16];
+		private int length = 0;
+		private int[] firsts = new int[1];
+		private int[] offsets = new int[1];
+		private int blocks = 0;
+		private int count = 0;
+		private int last = -1;
+		private final TreeSet<Integer> added = new TreeSet<>();
+		private final TreeSet<Integer> removed = new TreeSet<>();
+		
+		private void add(int code) {
+			if(this.removed.remove(code)) {
+				return;
+			} else if(code > this.last && this.added.isEmpty()) {
+				// New codes are allocated in increasing order, so most additions can be appended directly
+				this.append(code);
+			} else {
+				this.added.add(code);
+			}
+		}
+		
+		private void remove(int code) {
+			if(!this.added.remove(code)) {
+				this.removed.add(code);
+			}
+		}
+		
+		private int size() {
+			this.compact();
+			return this.count;
+		}
+		
+		// Returns the codes in increasing order
+		private int[] values() {
+			this.compact();
+			int[] values = new int[this.count];
+			for(int block = 0; block < this.blocks; block++) {
+				this.decode(block, values, block * BLOCK);
+			}
+			return values;
+		}
+		
+		// Returns the candidate codes that are, or are not, in this list, decoding only the blocks they fall into
+		private int[] filter(int[] candidates, boolean isIn) {
+			this.compact();
+			int[] filtered = new int[candidates.length];
+			int[] decoded = new int[BLOCK];
+			int found = 0, block = -1, decodedCount = 0, i = 0;
+			for(int candidate : candidates) {
+				int candidateBlock = (this.blocks > 0 && candidate >= this.firsts[0]) ? this.blockOf(candidate, Math.max(block, 0)) : -1;
+				if(candidateBlock != block) {
+					block = candidateBlock;
+					decodedCount = (block >= 0) ? this.decode(block, decoded, 0) : 0;
+					i = 0;
+				}
+				while(i < decodedCount && decoded[i] < candidate) {
+					i++;
+				}
+				if((i < decodedCount && decoded[i] == candidate) == isIn) {
+					filtered[found++] = candidate;
+				}
+			}
+			return Arrays.copyOf(filtered, found);
+		}
+		
+		// Returns the last block starting at or before the code, searching from the specified block onwards
+		private int blockOf(int code, int from) {
+			int index = Arrays.binarySearch(this.firsts, from, this.blocks, code);
+			return (index >= 0) ? index : -index - 2;
+		}
+		
+		// Decodes a block into the array at the specified position, returning the number of codes decoded
+		private int decode(int block, int[] values, int position) {
+			int n = Math.min(BLOCK, this.count - block * BLOCK);
+			int code = this.firsts[block];
+			values[position] = code;
+			for(int i = 1, offset = this.offsets[block]; i < n; i++) {
+				int delta = 0;
+				for(int shift = 0;; shift += 7) {
+					byte b = this.data[offset++];
+					delta |= (b & 0x7F) << shift;
+					if(b >= 0) {
+						break;
+					}
+				}
+				code += delta;
+				values[position + i] = code;
+			}
+			return n;
+		}
+		
+		private void append(int code) {
+			if(this.count % BLOCK == 0) {
+				if(this.blocks == this.firsts.length) {
+					this.firsts = Arrays.copyOf(this.firsts, this.blocks * 2);
+					this.offsets = Arrays.copyOf(this.offsets, this.blocks * 2);
+				}
+				this.firsts[this.blocks] = code;
+				this.offsets[this.blocks] = this.length;
+				this.blocks++;
+			} else {
+				if(this.length + 5 > this.data.length) {
+					this.data = Arrays.copyOf(this.data, this.data.length * 2);
+				}
+				int delta = code - this.last;
+				while((delta & ~0x7F) != 0) {
+					this.data[this.length++] = (byte) ((delta & 0x7F) | 0x80);
+					delta >>>= 7;
+				}
+				this.data[this.length++] = (byte) delta;
+			}
+			this.last = code;
+			this.count++;
+		}
+		
+		// Merges the buffered changes into the compressed list
+		private void compact() {
+			if(this.added.isEmpty() && this.removed.isEmpty()) {
+				return;
+			}
+			
+			int[] values = new int[this.count];
+			for(int block = 0; block < this.blocks; block++) {
+				this.decode(block, values, block * BLOCK);
+			}
+			
+			this.length = 0;
+			this.blocks = 0;
+			this.count = 0;
+			this.last = -1;
+			int i = 0;
+			for(int code : this.added) {
+				for(; i < values.length && values[i] < code; i++) {
+					if(!this.removed.contains(values[i])) {
+						this.append(values[i]);
+					}
+				}
+				this.append(code);
+			}
+			for(; i < values.length; i++) {
+				if(!this.removed.contains(values[i])) {
+					this.append(values[i]);
+				}
+			}
+			this.added.clear();
+			this.removed.clear();
+		}
+	}
+	
+	
+	// A query evaluated by merging sorted code lists. Intersections evaluate the more selective side and probe the other
+	private abstract class QueryImpl implements Query {
+		// Returns the matching codes in increasing order
+		abstract int[] evaluate();
+		
+		// Returns an upper bound of the number of matching codes
+		int estimate() {
+			return Integer.MAX_VALUE;
+		}
+		
+		// Returns the candidates that match, or do not match, this query
+		int[] filter(int[] candidates, boolean isIn) {
+			return merge(candidates, this.evaluate(), !isIn, isIn, false);
+		}
+		
+		@Override
+		public Query and(final Query other) {
+			final QueryImpl left = this, right = (QueryImpl) other;
+			return new QueryImpl() {
+				@Override
+				int[] evaluate() {
+					return (left.estimate() <= right.estimate()) 
+						? right.filter(left.evaluate(), true) 
+						: left.filter(right.evaluate(), true);
+				}
+				
+				@Override
+				int estimate() {
+					return Math.min(left.estimate(), right.estimate());
+				}
+			};
+		}
+		
+		@Override
+		public Query or(final Query other) {
+			final QueryImpl left = this, right = (QueryImpl) other;
+			return new QueryImpl() {
+				@Override
+				int[] evaluate() {
+					return merge(left.evaluate(), right.evaluate(), true, true, true);
+				}
+			};
+		}
+		
+		@Override
+		public Query andNot(final Query other) {
+			final QueryImpl left = this, right = (QueryImpl) other;
+			return new QueryImpl() {
+				@Override
+				int[] evaluate() {
+					return right.filter(left.evaluate(), false);
+				}
+				
+				@Override
+				int estimate() {
+					return left.estimate();
+				}
+			};
+		}
+		
+		@Override
+		public Query not() {
+			return all().andNot(this);
+		}
+		
+		@Override
+		public List<String> ids() {
+			int[] codes = this.evaluate();
+			List<String> ids = new ArrayList<>(codes.length);
+			synchronized(TagIndexImpl.this) {
+				for(int code : codes) {
+					ids.add(TagIndexImpl.this.ids.get(code));
+				}
+			}
+			return ids;
+		}
+		
+		@Override
+		public int count() {
+			return this.evaluate().length;
+		}
+	}
+	
+	// A query matching the codes in a posting list, or all the indexed codes if the key is null
+	private class PostingQuery extends QueryImpl {
+		private final String key;
+		
+		private PostingQuery(String key) {
+			this.key = key;
+		}
+		
+		@Override
+		int[] evaluate() {
+			synchronized(TagIndexImpl.this) {
+				Posting posting = this.posting();
+				return (posting != null) ? posting.values() : new int[0];
+			}
+		}
+		
+		@Override
+		int estimate() {
+			synchronized(TagIndexImpl.this) {
+				Posting posting = this.posting();
+				return (posting != null) ? posting.size() : 0;
+			}
+		}
+		
+		@Override
+		int[] filter(int[] candidates, boolean isIn) {
+			synchronized(TagIndexImpl.this) {
+				Posting posting = this.posting();
+				return (posting != null) ? posting.filter(candidates, isIn) : (isIn ? new int[0] : candidates);
+			}
+		}
+		
+		private Posting posting() {
+			return (this.key != null) ? postings.get(this.key) : all;
+		}
+	}
+	
+	// Merges two sorted code lists, keeping the codes only in the left, in both, or only in the right list as requested
+	private static int[] merge(int[] left, int[] right, boolean keepLeftOnly, boolean keepBoth, boolean keepRightOnly) {
+		int[] merged = new int[left.length + right.length];
+		int count = 0, i = 0, j = 0;
+		while(i < left.length && j < right.length) {
+			if(left[i] < right[j]) {
+				if(keepLeftOnly) {
+					merged[count++] = left[i];
+				}
+				i++;
+			} else if(left[i] > right[j]) {
+				if(keepRightOnly) {
+					merged[count++] = right[j];
+				}
+				j++;
+			} else {
+				if(keepBoth) {
+					merged[count++] = left[i];
+				}
+				i++;
+				j++;
+			}
+		}
+		for(; keepLeftOnly && i < left.length; i++) {
+			merged[count++] = left[i];
+		}
+		for(; keepRightOnly && j < right.length; j++) {
+			merged[count++] = right[j];
+		}
+		return Arrays.copyOf(merged, count);
+	}
+}
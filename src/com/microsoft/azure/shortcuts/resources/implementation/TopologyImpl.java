@@ -0,0 +1,484 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.microsoft.azure.management.compute.models.NetworkInterfaceReference;
+import com.microsoft.azure.management.compute.models.VirtualMachineReference;
+import com.microsoft.azure.management.network.models.NetworkInterfaceIpConfiguration;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.AvailabilitySet;
+import com.microsoft.azure.shortcuts.resources.Network;
+import com.microsoft.azure.shortcuts.resources.NetworkInterface;
+import com.microsoft.azure.shortcuts.resources.NetworkSecurityGroup;
+import com.microsoft.azure.shortcuts.resources.PublicIpAddress;
+import com.microsoft.azure.shortcuts.resources.Subnet;
+import com.microsoft.azure.shortcuts.resources.Topology;
+import com.microsoft.azure.shortcuts.resources.VirtualMachine;
+import com.microsoft.azure.shortcuts.resources.common.GroupResourceBase;
+import com.microsoft.windowsazure.core.ResourceBaseExtended;
+import com.microsoft.windowsazure.exception.ServiceException;
+
+// A topology resolved breadth-first from its roots. The resources referenced at each level are retrieved together, by listing 
+// each group once per type where that saves calls and by concurrent gets otherwise, and the edges are kept in both directions 
+// in hash maps keyed by the lower case IDs
+class TopologyImpl implements Topology, Topology.Builder {
+	// The number of resources of the same type in the same group from which a listing of the group is cheaper than individual gets
+	static final int LISTING_THRESHOLD = 2;
+	
+	// The maximum number of calls in flight while resolving a level
+	static final int CONCURRENCY = 16;
+	
+	// The types of resources in a topology
+	private enum Kind {
+		VIRTUAL_MACHINE(VirtualMachinesImpl.TYPE),
+		AVAILABILITY_SET(AvailabilitySetsImpl.TYPE),
+		NETWORK_INTERFACE(NetworkInterfacesImpl.TYPE),
+		PUBLIC_IP_ADDRESS(PublicIpAddressesImpl.TYPE),
+		NETWORK(NetworksImpl.TYPE),
+		NETWORK_SECURITY_GROUP(NetworkSecurityGroupsImpl.TYPE),
+		SUBNET(NetworksImpl.TYPE + "/subnets");
+		
+		private final String type;
+		
+		Kind(String type) {
+			this.type = type;
+		}
+		
+		// Returns the kind of resource identified by the ID, or null if not supported
+		private static Kind of(String id) {
+			String[] parts = id.split("/");
+			if(parts.length == 9 || parts.length == 11) {
+				String type = (parts.length == 9) 
+					? parts[6] + "/" + parts[7]
+					: parts[6] + "/" + parts[7] + "/" + parts[9];
+				for(Kind kind : values()) {
+					if(kind.type.equalsIgnoreCase(type)) {
+						return kind;
+					}
+				}
+			}
+			
+			return null;
+		}
+	}
+	
+	private final Subscription subscription;
+	private final Map<String, String> rootIds = new LinkedHashMap<>();
+	private final List<GroupResourceBase> rootResources = new ArrayList<>();
+	
+	private final Map<String, VirtualMachine> virtualMachines = new HashMap<>();
+	private final Map<String, AvailabilitySet> availabilitySets = new HashMap<>();
+	private final Map<String, NetworkInterface> networkInterfaces = new HashMap<>();
+	private final Map<String, PublicIpAddress> publicIpAddresses = new HashMap<>();
+	private final Map<String, Network> networks = new HashMap<>();
+	private final Map<String, Subnet> subnets = new HashMap<>();
+	private final Map<String, NetworkSecurityGroup> networkSecurityGroups = new HashMap<>();
+	
+	// The IDs as reported by Azure, by lower case ID
+	private final Map<String, String> ids = new HashMap<>();
+	
+	// The lower case IDs of the resources visited so far, and of those among them that were resolved
+	private final Set<String> visited = new HashSet<>();
+	private final Set<String> resolved = new HashSet<>();
+	
+	private final Map<String, List<String>> references = new HashMap<>();
+	private final Map<String, List<String>> referencedBy = new HashMap<>();
+	private final Set<String> missing = new HashSet<>();
+	
+	TopologyImpl(Subscription subscription) {
+		this.subscription = subscription;
+	}
+	
+	
+	/***********************************************************
+	 * Getters
+	 ***********************************************************/
+	
+	@Override
+	public Map<String, VirtualMachine> virtualMachines() {
+		return Collections.unmodifiableMap(this.virtualMachines);
+	}
+
+	@Override
+	public Map<String, AvailabilitySet> availabilitySets() {
+		return Collections.unmodifiableMap(this.availabilitySets);
+	}
+
+	@Override
+	public Map<String, NetworkInterface> networkInterfaces() {
+		return Collections.unmodifiableMap(this.networkInterfaces);
+	}
+
+	@Override
+	public Map<String, PublicIpAddress> publicIpAddresses() {
+		return Collections.unmodifiableMap(this.publicIpAddresses);
+	}
+
+	@Override
+	public Map<String, Network> networks() {
+		return Collections.unmodifiableMap(this.networks);
+	}
+
+	@Override
+	public Map<String, Subnet> subnets() {
+		return Collections.unmodifiableMap(this.subnets);
+	}
+
+	@Override
+	public Map<String, NetworkSecurityGroup> networkSecurityGroups() {
+		return Collections.unmodifiableMap(this.networkSecurityGroups);
+	}
+
+	@Override
+	public List<String> references(String id) {
+		return this.edges(this.references, id);
+	}
+
+	@Override
+	public List<String> referencedBy(String id) {
+		return this.edges(this.referencedBy, id);
+	}
+
+	@Override
+	public Set<String> missing() {
+		return Collections.unmodifiableSet(this.missing);
+	}
+	
+	
+	/**************************************************************
+	 * Setters (fluent interface)
+	 **************************************************************/
+
+	@Override
+	public TopologyImpl withRoot(String id) {
+		if(Kind.of(id) == null) {
+			throw new IllegalArgumentException("Unsupported resource type: " + id);
+		}
+		
+		this.rootIds.put(key(id), id);
+		return this;
+	}
+
+	@Override
+	public TopologyImpl withRoots(Collection<String> ids) {
+		for(String id : ids) {
+			this.withRoot(id);
+		}
+		return this;
+	}
+
+	@Override
+	public TopologyImpl withResources(Collection<? extends GroupResourceBase> resources) {
+		for(GroupResourceBase resource : resources) {
+			Kind kind = Kind.of(resource.id());
+			if(kind == null || kind == Kind.SUBNET) {
+				throw new IllegalArgumentException("Unsupported resource type: " + resource.id());
+			}
+			
+			this.rootResources.add(resource);
+		}
+		return this;
+	}
+	
+	
+	/************************************************************
+	 * Verbs
+	 ************************************************************/
+
+	@Override
+	public TopologyImpl build() throws Exception {
+		Map<String, String> pending = new HashMap<>();
+		for(GroupResourceBase resource : this.rootResources) {
+			this.visited.add(key(resource.id()));
+			this.add(resource, pending);
+		}
+		
+		for(String id : this.rootIds.values()) {
+			this.visit(id, pending);
+		}
+		
+		while(!pending.isEmpty()) {
+			pending = this.resolve(pending);
+		}
+		
+		for(String key : this.referencedBy.keySet()) {
+			if(!this.resolved.contains(key)) {
+				this.missing.add(this.ids.get(key));
+			}
+		}
+		for(Entry<String, String> root : this.rootIds.entrySet()) {
+			if(!this.resolved.contains(root.getKey())) {
+				this.missing.add(root.getValue());
+			}
+		}
+		return this;
+	}
+	
+	
+	/***********************************************************
+	 * Helpers
+	 ***********************************************************/
+	
+	// Retrieves the pending resources, adds them to the topology and returns the resources they reference that were not visited yet
+	private Map<String, String> resolve(Map<String, String> pending) throws Exception {
+		// Group the pending resources by type and group
+		Map<Kind, Map<String, Map<String, String>>> idsByKindAndGroup = new HashMap<>();
+		for(String id : pending.values()) {
+			Kind kind = Kind.of(id);
+			String groupName = ResourcesImpl.groupFromResourceId(id).toLowerCase();
+			Map<String, Map<String, String>> idsByGroup = idsByKindAndGroup.get(kind);
+			if(idsByGroup == null) {
+				idsByGroup = new HashMap<>();
+				idsByKindAndGroup.put(kind, idsByGroup);
+			}
+			
+			Map<String, String> groupIds = idsByGroup.get(groupName);
+			if(groupIds == null) {
+				groupIds = new HashMap<>();
+				idsByGroup.put(groupName, groupIds);
+			}
+			groupIds.put(ResourcesImpl.nameFromResourceId(id), id);
+		}
+		
+		List<Callable<Map<String, Object>>> calls = new ArrayList<>();
+		for(Entry<Kind, Map<String, Map<String, String>>> kindEntry : idsByKindAndGroup.entrySet()) {
+			GroupableResourcesBaseImpl<?, ?, ?> collection = this.collection(kindEntry.getKey());
+			for(Entry<String, Map<String, String>> groupEntry : kindEntry.getValue().entrySet()) {
+				String groupName = groupEntry.getKey();
+				Map<String, String> groupIds = groupEntry.getValue();
+				if(groupIds.size() >= LISTING_THRESHOLD || collection.isListed(groupName)) {
+					calls.add(listingCall(collection, groupName, groupIds));
+				} else {
+					for(Entry<String, String> idEntry : groupIds.entrySet()) {
+						calls.add(getCall(collection, groupName, idEntry.getKey(), idEntry.getValue()));
+					}
+				}
+			}
+		}
+		
+		Map<String, String> next = new HashMap<>();
+		for(Map<String, Object> results : Parallel.invokeAll(this.subscription.executor(), calls, CONCURRENCY)) {
+			for(Object resource : results.values()) {
+				if(resource != null) {
+					this.add((GroupResourceBase) resource, next);
+				}
+			}
+		}
+		return next;
+	}
+	
+	// Returns a call retrieving the specified resources of a group from a single listing of the group, or from a recent one
+	private static <W, I extends ResourceBaseExtended> Callable<Map<String, Object>> listingCall(
+			final GroupableResourcesBaseImpl<W, I, ?> collection, 
+			final String groupName, 
+			final Map<String, String> idsByName) {
+		return new Callable<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> call() throws Exception {
+				Map<String, Object> results = new HashMap<>();
+				for(Entry<String, String> entry : idsByName.entrySet()) {
+					I nativeItem = collection.getCachedNativeEntity(groupName, entry.getKey());
+					results.put(entry.getValue(), (nativeItem != null) ? collection.wrap(nativeItem) : null);
+				}
+				return results;
+			}
+		};
+	}
+	
+	// Returns a call retrieving a single resource, or null if it does not exist
+	private static Callable<Map<String, Object>> getCall(
+			final GroupableResourcesBaseImpl<?, ?, ?> collection, 
+			final String groupName, 
+			final String name,
+			final String id) {
+		return new Callable<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> call() throws Exception {
+				Map<String, Object> results = new HashMap<>();
+				try {
+					results.put(id, collection.get(groupName, name));
+				} catch(ServiceException e) {
+					if(e.getHttpStatusCode() != 404) {
+						throw e;
+					}
+					results.put(id, null);
+				}
+				return results;
+			}
+		};
+	}
+	
+	// Adds a resolved resource to the topology along with the edges to the resources it references, queuing those not visited yet
+	private void add(GroupResourceBase resource, Map<String, String> next) {
+		String id = resource.id();
+		this.ids.put(key(id), id);
+		this.resolved.add(key(id));
+		
+		switch(Kind.of(id)) {
+		case VIRTUAL_MACHINE:
+			VirtualMachine vm = (VirtualMachine) resource;
+			this.virtualMachines.put(id, vm);
+			if(vm.inner().getNetworkProfile() != null) {
+				for(NetworkInterfaceReference nicReference : vm.inner().getNetworkProfile().getNetworkInterfaces()) {
+					this.link(id, nicReference.getReferenceUri(), next);
+				}
+			}
+			if(vm.inner().getAvailabilitySetReference() != null) {
+				this.link(id, vm.inner().getAvailabilitySetReference().getReferenceUri(), next);
+			}
+			break;
+			
+		case AVAILABILITY_SET:
+			AvailabilitySet availabilitySet = (AvailabilitySet) resource;
+			this.availabilitySets.put(id, availabilitySet);
+			for(VirtualMachineReference vmReference : availabilitySet.inner().getVirtualMachinesReferences()) {
+				this.link(id, vmReference.getReferenceUri(), next);
+			}
+			break;
+			
+		case NETWORK_INTERFACE:
+			NetworkInterface nic = (NetworkInterface) resource;
+			this.networkInterfaces.put(id, nic);
+			for(NetworkInterfaceIpConfiguration ipConfig : nic.inner().getIpConfigurations()) {
+				if(ipConfig.getSubnet() != null) {
+					this.link(id, ipConfig.getSubnet().getId(), next);
+				}
+				if(ipConfig.getPublicIpAddress() != null) {
+					this.link(id, ipConfig.getPublicIpAddress().getId(), next);
+				}
+			}
+			if(nic.inner().getNetworkSecurityGroup() != null) {
+				this.link(id, nic.inner().getNetworkSecurityGroup().getId(), next);
+			}
+			break;
+			
+		case PUBLIC_IP_ADDRESS:
+			this.publicIpAddresses.put(id, (PublicIpAddress) resource);
+			break;
+			
+		case NETWORK:
+			// The subnets come with their network
+			Network network = (Network) resource;
+			this.networks.put(id, network);
+			for(Subnet subnet : network.subnets().values()) {
+				String subnetId = (subnet.inner().getId() != null) ? subnet.inner().getId() : id + "/subnets/" + subnet.id();
+				this.subnets.put(subnetId, subnet);
+				this.ids.put(key(subnetId), subnetId);
+				this.visited.add(key(subnetId));
+				this.resolved.add(key(subnetId));
+				this.link(subnetId, id, next);
+				this.link(subnetId, subnet.networkSecurityGroup(), next);
+			}
+			break;
+			
+		case NETWORK_SECURITY_GROUP:
+			this.networkSecurityGroups.put(id, (NetworkSecurityGroup) resource);
+			break;
+			
+		default:
+			break;
+		}
+	}
+	
+	// Records a reference between two resources, queuing the referenced resource if not visited yet
+	private void link(String fromId, String toId, Map<String, String> next) {
+		if(toId == null || Kind.of(toId) == null) {
+			return;
+		}
+		
+		String from = key(fromId), to = key(toId);
+		if(!this.ids.containsKey(to)) {
+			this.ids.put(to, toId);
+		}
+		edgeList(this.references, from).add(to);
+		edgeList(this.referencedBy, to).add(from);
+		this.visit(toId, next);
+	}
+	
+	// Queues a resource for retrieval unless already visited. A subnet is retrieved through its network
+	private void visit(String id, Map<String, String> next) {
+		if(Kind.of(id) == Kind.SUBNET) {
+			id = id.substring(0, id.toLowerCase().lastIndexOf("/subnets/"));
+		}
+		
+		if(this.visited.add(key(id))) {
+			next.put(key(id), id);
+		}
+	}
+	
+	// Returns the IDs at the other end of the edges of a resource, as reported by Azure
+	private List<String> edges(Map<String, List<String>> edges, String id) {
+		List<String> keys = edges.get(key(id));
+		if(keys == null) {
+			return Collections.emptyList();
+		}
+		
+		List<String> targets = new ArrayList<>(keys.size());
+		for(String key : keys) {
+			targets.add(this.ids.get(key));
+		}
+		return Collections.unmodifiableList(targets);
+	}
+	
+	// Returns the list of edges of a resource, creating it if needed
+	private static List<String> edgeList(Map<String, List<String>> edges, String key) {
+		List<String> keys = edges.get(key);
+		if(keys == null) {
+			keys = new ArrayList<>();
+			edges.put(key, keys);
+		}
+		return keys;
+	}
+	
+	private GroupableResourcesBaseImpl<?, ?, ?> collection(Kind kind) {
+		switch(kind) {
+		case VIRTUAL_MACHINE:
+			return (VirtualMachinesImpl) this.subscription.virtualMachines();
+		case AVAILABILITY_SET:
+			return (AvailabilitySetsImpl) this.subscription.availabilitySets();
+		case NETWORK_INTERFACE:
+			return (NetworkInterfacesImpl) this.subscription.networkInterfaces();
+		case PUBLIC_IP_ADDRESS:
+			return (PublicIpAddressesImpl) this.subscription.publicIpAddresses();
+		case NETWORK:
+			return (NetworksImpl) this.subscription.networks();
+		case NETWORK_SECURITY_GROUP:
+			return (NetworkSecurityGroupsImpl) this.subscription.networkSecurityGroups();
+		default:
+			throw new IllegalArgumentException("Not retrievable directly: " + kind);
+		}
+	}
+	
+	private static String key(String id) {
+		return id.toLowerCase();
+	}
+}
@@ -19,12 +19,19 @@
 */
 package com.microsoft.azure.shortcuts.resources.implementation;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
+
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
 
 import com.microsoft.azure.management.compute.models.AvailabilitySetReference;
 import com.microsoft.azure.management.compute.models.BootDiagnostics;
@@ -39,6 +46,9 @@ import com.microsoft.azure.management.compute.models.StorageProfile;
 import com.microsoft.azure.management.compute.models.VirtualHardDisk;
 import com.microsoft.azure.management.compute.models.VirtualMachineCaptureParameters;
 import com.microsoft.azure.management.compute.models.VirtualMachineExtension;
+import com.microsoft.azure.management.network.models.IpAllocationMethod;
+import com.microsoft.azure.shortcuts.common.implementation.Differences;
+import com.microsoft.azure.shortcuts.common.implementation.Journal;
 import com.microsoft.azure.shortcuts.resources.AvailabilitySet;
 import com.microsoft.azure.shortcuts.resources.ResourceGroup;
 import com.microsoft.azure.shortcuts.resources.Network;
@@ -69,6 +79,23 @@ class VirtualMachineImpl
 	private boolean isExistingPrimaryNIC;
 	private String nicId;
 	
+	private boolean isTemplateDeployment;
+	private String deploymentName;
+	
+	private String journalPath;
+	
+	// The provisioning steps recorded in the journal
+	private static final String STEP_GROUP = "group";
+	private static final String STEP_STORAGE_ACCOUNT = "storageAccount";
+	private static final String STEP_NETWORK = "network";
+	private static final String STEP_PUBLIC_IP_ADDRESS = "publicIpAddress";
+	private static final String STEP_NETWORK_INTERFACE = "networkInterface";
+	private static final String STEP_AVAILABILITY_SET = "availabilitySet";
+	private static final String STEP_VIRTUAL_MACHINE = "virtualMachine";
+	private static final List<String> STEPS = Arrays.asList(
+		STEP_GROUP, STEP_STORAGE_ACCOUNT, STEP_NETWORK, STEP_PUBLIC_IP_ADDRESS, 
+		STEP_NETWORK_INTERFACE, STEP_AVAILABILITY_SET, STEP_VIRTUAL_MACHINE);
+	
 	VirtualMachineImpl(
 			com.microsoft.azure.management.compute.models.VirtualMachine azureVM, 
 			VirtualMachinesImpl collection) {
@@ -82,12 +109,12 @@ class VirtualMachineImpl
 	
 	@Override
 	public String size() {
-		return this.inner().getHardwareProfile().getVirtualMachineSize();
+		return this.innerObject().getHardwareProfile().getVirtualMachineSize();
 	}
 	
 	@Override
 	public URI bootDiagnosticsStorage() {
-		DiagnosticsProfile p = this.inner().getDiagnosticsProfile();
+		DiagnosticsProfile p = this.innerObject().getDiagnosticsProfile();
 		if(p == null) {
 			return null;
 		}
@@ -102,7 +129,7 @@ class VirtualMachineImpl
 	
 	@Override
 	public boolean isBootDiagnosticsEnabled() {
-		DiagnosticsProfile p  = this.inner().getDiagnosticsProfile();
+		DiagnosticsProfile p  = this.innerObject().getDiagnosticsProfile();
 		if(p == null) {
 			return false;
 		}
@@ -118,7 +145,7 @@ class VirtualMachineImpl
 	@Override
 	public URI availabilitySet()  {
 		try {
-			AvailabilitySetReference s = this.inner().getAvailabilitySetReference();
+			AvailabilitySetReference s = this.innerObject().getAvailabilitySetReference();
 			if(s == null) {
 				return new URI(this.availabilitySetId);
 			} else {
@@ -136,22 +163,22 @@ class VirtualMachineImpl
 	
 	@Override
 	public Integer platformFaultDomain() {
-		return this.inner().getInstanceView().getPlatformFaultDomain();
+		return this.innerObject().getInstanceView().getPlatformFaultDomain();
 	}
 	
 	@Override
 	public Integer platformUpdateDomain() {
-		return this.inner().getInstanceView().getPlatformUpdateDomain();
+		return this.innerObject().getInstanceView().getPlatformUpdateDomain();
 	}
 	
 	@Override
 	public String remoteDesktopThumbprint() {
-		return this.inner().getInstanceView().getRemoteDesktopThumbprint();
+		return this.innerObject().getInstanceView().getRemoteDesktopThumbprint();
 	}
 	
 	@Override
 	public String vmAgentVersion() {
-		return this.inner().getInstanceView().getVMAgent().getVMAgentVersion();
+		return this.innerObject().getInstanceView().getVMAgent().getVMAgentVersion();
 	}
 	
 	@Override
@@ -161,31 +188,31 @@ class VirtualMachineImpl
 	
 	@Override
 	public String adminUserName() {
-		return this.inner().getOSProfile().getAdminUsername();
+		return this.innerObject().getOSProfile().getAdminUsername();
 	}
 	
 	@Override
 	public String computerName() {
-		OSProfile p = this.inner().getOSProfile();
+		OSProfile p = this.innerObject().getOSProfile();
 		return (p == null) ? null : p.getComputerName();
 	}
 	
 	@Override
 	public String customData() {
-		OSProfile p = this.inner().getOSProfile();
+		OSProfile p = this.innerObject().getOSProfile();
 		return (p == null) ? null : p.getCustomData();
 	}
 	
 	@Override
 	public boolean isLinux() {
-		OSProfile p = this.inner().getOSProfile();
-		return (p == null) ? false : (this.inner().getOSProfile().getLinuxConfiguration() != null);
+		OSProfile p = this.innerObject().getOSProfile();
+		return (p == null) ? false : (this.innerObject().getOSProfile().getLinuxConfiguration() != null);
 	}
 	
 	@Override
 	public boolean isWindows() {
-		OSProfile p = this.inner().getOSProfile();
-		return (p == null) ? false : (this.inner().getOSProfile().getWindowsConfiguration() != null);
+		OSProfile p = this.innerObject().getOSProfile();
+		return (p == null) ? false : (this.innerObject().getOSProfile().getWindowsConfiguration() != null);
 	}
 			
 	@Override
@@ -210,25 +237,32 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withAdminPassword(String password) {
-		this.inner().getOSProfile().setAdminPassword(password);
+		this.ensureNotSnapshot();
+		this.innerObject().getOSProfile().setAdminPassword(password);
 		return this;
 	}
 	
 	
 	@Override
 	public VirtualMachineImpl withAdminUsername(String username) {
-		this.inner().getOSProfile().setAdminUsername(username);
+		this.ensureNotSnapshot();
+		this.innerObject().getOSProfile().setAdminUsername(username);
 		return this;
 	}
 	
 	@Override
 	public VirtualMachineImpl withLatestImage(String publisher, String offer, String sku) {
-		return this.withImage(publisher, offer, sku, "latest");
+		// Pin the latest version known to the image catalog, if any, else let Azure resolve it
+		ImageCatalogImpl catalog = this.subscription().existingImageCatalog();
+		String version = (catalog != null && this.innerObject().getLocation() != null) 
+			? catalog.indexedLatestVersion(this.innerObject().getLocation(), publisher, offer, sku) : null;
+		return this.withImage(publisher, offer, sku, (version != null) ? version : "latest");
 	}
 	
 	@Override
 	public VirtualMachineImpl withImage(String publisher, String offer, String sku, String version) {
-		ImageReference imageReference = this.inner().getStorageProfile().getImageReference();
+		this.ensureNotSnapshot();
+		ImageReference imageReference = this.innerObject().getStorageProfile().getImageReference();
 		imageReference.setPublisher(publisher);
 		imageReference.setOffer(offer);
 		imageReference.setSku(sku);
@@ -239,7 +273,8 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withSize(String sizeName) {
-		this.inner().getHardwareProfile().setVirtualMachineSize(sizeName);
+		this.ensureNotSnapshot();
+		this.innerObject().getHardwareProfile().setVirtualMachineSize(sizeName);
 		return this;
 	}
 	
@@ -255,6 +290,7 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withExistingStorageAccount(String name) {
+		this.ensureNotSnapshot();
 		this.storageAccountId = name;
 		this.isExistingStorageAccount = true;
 		return this;
@@ -272,6 +308,7 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withNewStorageAccount(String name) {
+		this.ensureNotSnapshot();
 		this.storageAccountId = name;
 		this.isExistingStorageAccount = false;
 		return this;
@@ -284,19 +321,21 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withNewStorageAccount(StorageAccount.DefinitionCreatable definition) throws Exception {
+		this.ensureNotSnapshot();
 		return this.withExistingStorageAccount(definition.create());
 	}
 	
 	@Override
 	public VirtualMachineImpl withExistingAvailabilitySet(String id) {
+		this.ensureNotSnapshot();
 		this.availabilitySetId = id;
 		this.isExistingAvailabilitySet = true;
-		AvailabilitySetReference availabilitySetRef = this.inner().getAvailabilitySetReference();
+		AvailabilitySetReference availabilitySetRef = this.innerObject().getAvailabilitySetReference();
 		if(id == null) {
-			this.inner().setAvailabilitySetReference(null);
+			this.innerObject().setAvailabilitySetReference(null);
 			return this;
 		} else  if(availabilitySetRef == null) {
-			this.inner().setAvailabilitySetReference(availabilitySetRef = new AvailabilitySetReference());
+			this.innerObject().setAvailabilitySetReference(availabilitySetRef = new AvailabilitySetReference());
 		}
 		availabilitySetRef.setReferenceUri(id);
 		return this;
@@ -323,6 +362,7 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withNewAvailabilitySet(String name) {
+		this.ensureNotSnapshot();
 		this.isExistingAvailabilitySet = false;
 		this.availabilitySetId = name;
 		return this;
@@ -335,24 +375,56 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachineImpl withNewAvailabilitySet(com.microsoft.azure.shortcuts.resources.AvailabilitySet.DefinitionCreatable definition) throws Exception {
+		this.ensureNotSnapshot();
 		return this.withExistingAvailabilitySet(definition.create());
 	}
 	
 	@Override
 	public VirtualMachineImpl withComputerName(String computerName) {
-		this.inner().getOSProfile().setComputerName(computerName);
+		this.ensureNotSnapshot();
+		this.innerObject().getOSProfile().setComputerName(computerName);
+		return this;
+	}
+	
+	
+	@Override
+	public VirtualMachineImpl withTemplateDeployment(String deploymentName) {
+		this.ensureNotSnapshot();
+		this.isTemplateDeployment = true;
+		this.deploymentName = deploymentName;
+		return this;
+	}
+	
+	@Override
+	public VirtualMachineImpl withTemplateDeployment() {
+		return this.withTemplateDeployment(null);
+	}
+	
+	@Override
+	public VirtualMachineImpl withJournal(String filePath) {
+		this.ensureNotSnapshot();
+		this.journalPath = filePath;
 		return this;
 	}
 	
 	
 	@Override
 	public VirtualMachineImpl withExistingNetworkInterface(String resourceId) {
-		NetworkInterfaceReference nicref = new NetworkInterfaceReference();
-		for(NetworkInterfaceReference n : this.inner().getNetworkProfile().getNetworkInterfaces()) {
+		this.ensureNotSnapshot();
+		// Reuse the reference to the same NIC, if any, so that repeated create() or ensure() calls do not duplicate it
+		NetworkInterfaceReference nicref = null;
+		for(NetworkInterfaceReference n : this.innerObject().getNetworkProfile().getNetworkInterfaces()) {
 			n.setPrimary(false);
+			if(n.getReferenceUri() != null && n.getReferenceUri().equalsIgnoreCase(resourceId)) {
+				nicref = n;
+			}
+		}
+		
+		if(nicref == null) {
+			nicref = new NetworkInterfaceReference();
+			nicref.setReferenceUri(resourceId);
+			this.innerObject().getNetworkProfile().getNetworkInterfaces().add(nicref);
 		}
-		this.inner().getNetworkProfile().getNetworkInterfaces().add(nicref);
-		nicref.setReferenceUri(resourceId);
 		nicref.setPrimary(true);
 		return this;
 	}
@@ -370,8 +442,9 @@ class VirtualMachineImpl
 	
 	@Override
 	public DefinitionCreatable withNewDataDisk(int diskSizeGB) {
+		this.ensureNotSnapshot();
 		DataDisk disk = new DataDisk();
-		this.inner().getStorageProfile().getDataDisks().add(disk);
+		this.innerObject().getStorageProfile().getDataDisks().add(disk);
 		disk.setCreateOption(DiskCreateOptionTypes.EMPTY);
 		disk.setDiskSizeGB(diskSizeGB);
 		return this;
@@ -384,8 +457,9 @@ class VirtualMachineImpl
 	
 	@Override
 	public DefinitionCreatable withExistingDataDisk(String vhdUri) {
+		this.ensureNotSnapshot();
 		DataDisk disk = new DataDisk();
-		this.inner().getStorageProfile().getDataDisks().add(disk);
+		this.innerObject().getStorageProfile().getDataDisks().add(disk);
 		disk.setCreateOption(DiskCreateOptionTypes.ATTACH);
 		VirtualHardDisk vhd = new VirtualHardDisk();
 		disk.setVirtualHardDisk(vhd);
@@ -445,32 +519,66 @@ class VirtualMachineImpl
 	
 	@Override
 	public VirtualMachine create() throws Exception {
+		this.ensureNotSnapshot();
+		if(this.isTemplateDeployment) {
+			return this.createFromTemplate();
+		}
+		
+		if(this.journalPath == null) {
+			return this.create(null, this.planKey());
+		}
+		
+		// Resume from the journal, skipping the steps completed earlier
+		Journal journal = Journal.open(this.journalPath);
+		try {
+			String scope = this.planKey();
+			if(journal.completed(scope, STEP_VIRTUAL_MACHINE) != null) {
+				return this.subscription().virtualMachines().get(this.groupName, this.name());
+			}
+			
+			this.replay(journal, scope);
+			journal.plan(scope, STEPS);
+			return this.create(journal, scope);
+		} finally {
+			journal.close();
+		}
+	}
+	
+	
+	// Provisions the virtual machine and its dependencies one request at a time, recording each step in the journal if any
+	private VirtualMachine create(Journal journal, String scope) throws Exception {
 		// Ensure group
 		ResourceGroup group = this.ensureGroup();
+		journal(journal, scope, STEP_GROUP, group.name());
 		
 		// Ensure storage account
 		StorageAccount storageAccount = this.ensureStorageAccount(group.name()); // TODO Remove group refernce
+		journal(journal, scope, STEP_STORAGE_ACCOUNT, storageAccount.id());
 	
 		// Ensure virtual network
 		Network network = ensureNetwork();
+		journal(journal, scope, STEP_NETWORK, (network != null) ? network.id() : null);
 		
 		// Ensure subnet
 		Subnet subnet = ensureSubnet(network);
 		
 		// Ensure public IP address
 		PublicIpAddress pip = ensurePublicIpAddress();
+		journal(journal, scope, STEP_PUBLIC_IP_ADDRESS, (pip != null) ? pip.id() : null);
 		
 		// Ensure primary NIC
 		NetworkInterface nic = this.ensureNetworkInterface(group.name(), network, subnet, pip); // TODO Remove group reference
 		if(nic != null) {
 			this.withExistingNetworkInterface(nic);
 		}
+		journal(journal, scope, STEP_NETWORK_INTERFACE, (nic != null) ? nic.id() : null);
 		
 		// Ensure availability set (optional)
 		AvailabilitySet set = this.ensureAvailabilitySet(group.name()); //TODO Remove group refereence?
 		if(set != null) {
 			this.withExistingAvailabilitySet(set);
 		}
+		journal(journal, scope, STEP_AVAILABILITY_SET, (set != null) ? set.id() : null);
 		
 		// Ensure default computer name
 		if(this.computerName() == null) {
@@ -482,16 +590,19 @@ class VirtualMachineImpl
 		
 		URL container = new URL(storageAccount.primaryBlobEndpoint(), this.name() + "/");
 		URL diskBlob = new URL(container, "osDisk.vhd");
-		this.inner().getStorageProfile().getOSDisk().getVirtualHardDisk().setUri(diskBlob.toString());
+		this.innerObject().getStorageProfile().getOSDisk().getVirtualHardDisk().setUri(diskBlob.toString());
 	
 		final Subscription subscription = this.subscription();
-		subscription.computeManagementClient().getVirtualMachinesOperations().createOrUpdate(this.resourceGroup(), this.inner());
-		return subscription.virtualMachines().get(this.groupName, this.name());
+		subscription.computeManagementClient().getVirtualMachinesOperations().createOrUpdate(this.resourceGroup(), this.innerObject());
+		VirtualMachine vm = subscription.virtualMachines().get(this.groupName, this.name());
+		journal(journal, scope, STEP_VIRTUAL_MACHINE, vm.id());
+		return vm;
 	}
 	
 	
 	@Override
 	public VirtualMachineImpl refresh() throws Exception {
+		this.ensureNotSnapshot();
 		this.setInner(this.collection.getNativeEntity(
 			ResourcesImpl.groupFromResourceId(this.id()),
 			ResourcesImpl.nameFromResourceId(this.id())));
@@ -527,12 +638,105 @@ class VirtualMachineImpl
 	
 	// Makes sure vhds are configured properly based on the storage account
 	private void ensureDataDisks(StorageAccount storageAccount) throws Exception {
-		int i = 0;
-		for(DataDisk dataDisk : this.inner().getStorageProfile().getDataDisks()) {
+		ensureDataDiskDefaults();
+		for(DataDisk dataDisk : this.innerObject().getStorageProfile().getDataDisks()) {
 			VirtualHardDisk vhd = dataDisk.getVirtualHardDisk();
-			if(vhd== null) {
-				vhd = new VirtualHardDisk();
-				dataDisk.setVirtualHardDisk(vhd);
+			
+			// Autogenerate URI from name
+			if(vhd.getUri() == null) {
+				URL container = new URL(storageAccount.primaryBlobEndpoint(), this.name() + "/");
+				URL diskBlob = new URL(container, dataDisk.getName() + ".vhd");
+				vhd.setUri(diskBlob.toString());
+			}
+		}
+	}
+	
+	
+	@Override
+	void diff(com.microsoft.azure.management.compute.models.VirtualMachine actual, Differences differences) {
+		super.diff(actual, differences);
+		
+		if(this.size() != null) {
+			differences.compareIgnoreCase("size", 
+				(actual.getHardwareProfile() != null) ? actual.getHardwareProfile().getVirtualMachineSize() : null, 
+				this.size());
+		}
+		
+		// Compare data disks by LUN
+		ensureDataDiskDefaults();
+		HashMap<Integer, DataDisk> actualDisks = new HashMap<>();
+		if(actual.getStorageProfile() != null) {
+			for(DataDisk dataDisk : actual.getStorageProfile().getDataDisks()) {
+				actualDisks.put(dataDisk.getLun(), dataDisk);
+			}
+		}
+		
+		for(DataDisk dataDisk : this.innerObject().getStorageProfile().getDataDisks()) {
+			DataDisk actualDisk = actualDisks.get(dataDisk.getLun());
+			String field = "dataDisks." + dataDisk.getLun();
+			if(actualDisk == null) {
+				differences.add(field, null, dataDisk.getName());
+				continue;
+			} 
+			
+			if(dataDisk.getDiskSizeGB() > 0) {
+				differences.compare(field + ".diskSizeGB", actualDisk.getDiskSizeGB(), dataDisk.getDiskSizeGB());
+			}
+			
+			String vhdUri = dataDisk.getVirtualHardDisk().getUri();
+			if(vhdUri != null) {
+				differences.compare(field + ".vhd", 
+					(actualDisk.getVirtualHardDisk() != null) ? actualDisk.getVirtualHardDisk().getUri() : null, 
+					vhdUri);
+			}
+		}
+	}
+	
+	
+	// Marks the resources produced by the steps completed in an earlier run as existing, so they are not created again
+	private void replay(Journal journal, String scope) {
+		String id;
+		if(null != (id = journal.completed(scope, STEP_GROUP))) {
+			this.withExistingResourceGroup(id);
+		}
+		
+		if(null != (id = journal.completed(scope, STEP_STORAGE_ACCOUNT))) {
+			this.withExistingStorageAccount(ResourcesImpl.nameFromResourceId(id));
+		}
+		
+		if(null != (id = journal.completed(scope, STEP_NETWORK)) && !id.isEmpty()) {
+			this.withExistingNetwork(id);
+		}
+		
+		if(null != (id = journal.completed(scope, STEP_PUBLIC_IP_ADDRESS)) && !id.isEmpty()) {
+			this.withExistingPublicIpAddress(id);
+		}
+		
+		if(null != (id = journal.completed(scope, STEP_NETWORK_INTERFACE)) && !id.isEmpty()) {
+			this.isExistingPrimaryNIC = true;
+			this.nicId = id;
+		}
+		
+		if(null != (id = journal.completed(scope, STEP_AVAILABILITY_SET)) && !id.isEmpty()) {
+			this.withExistingAvailabilitySet(id);
+		}
+	}
+	
+	
+	// Records a completed step in the journal, if any
+	private static void journal(Journal journal, String scope, String step, String resourceId) throws IOException {
+		if(journal != null) {
+			journal.complete(scope, step, resourceId);
+		}
+	}
+	
+	
+	// Fills in the data disk settings not explicitly specified
+	private void ensureDataDiskDefaults() {
+		int i = 0;
+		for(DataDisk dataDisk : this.innerObject().getStorageProfile().getDataDisks()) {
+			if(dataDisk.getVirtualHardDisk() == null) {
+				dataDisk.setVirtualHardDisk(new VirtualHardDisk());
 			}
 			
 			// Autogenerate name if needed
@@ -550,13 +754,6 @@ class VirtualMachineImpl
 				dataDisk.setCaching(CachingTypes.NONE);
 			}
 			
-			// Autogenerate URI from name
-			if(vhd.getUri() == null) {
-				URL container = new URL(storageAccount.primaryBlobEndpoint(), this.name() + "/");
-				URL diskBlob = new URL(container, dataDisk.getName() + ".vhd");
-				vhd.setUri(diskBlob.toString());
-			}
-			
 			i++;
 		}
 	}
@@ -593,12 +790,14 @@ class VirtualMachineImpl
 				this.nicId = this.name() + "nic";
 			}
 			
-			NetworkInterface nic = this.subscription().networkInterfaces().define(this.nicId)
+			NetworkInterface.DefinitionWithPrivateIp nicDefinition = this.subscription().networkInterfaces().define(this.nicId)
 				.withRegion(this.region())
 				.withExistingResourceGroup(groupName)
 				.withExistingNetwork(network)
-				.withSubnet(subnet.id())
-				.withPrivateIpAddressStatic(this.privateIpAddress)
+				.withSubnet(subnet.id());
+			NetworkInterface nic = ((this.isPrivateIpAddressFree) 
+					? nicDefinition.withFreePrivateIpAddressStatic() 
+					: nicDefinition.withPrivateIpAddressStatic(this.privateIpAddress))
 				.withExistingPublicIpAddress(pip)
 				.create();
 			this.isExistingPrimaryNIC = true;
@@ -607,4 +806,203 @@ class VirtualMachineImpl
 			return this.subscription().networkInterfaces(this.nicId);
 		}
 	}
+	
+	
+	@Override
+	Set<String> dependencies() {
+		Set<String> dependencies = super.dependencies();
+		if(this.isExistingStorageAccount && this.storageAccountId != null) {
+			dependencies.add(PlanImpl.key(StorageAccountsImpl.TYPE, this.planGroupName(), this.storageAccountId));
+		}
+		
+		if(this.isExistingAvailabilitySet && this.availabilitySetId != null) {
+			dependencies.add(PlanImpl.key(AvailabilitySetsImpl.TYPE, this.planGroupName(), this.availabilitySetId));
+		}
+		
+		if(this.isExistingPrimaryNIC && this.nicId != null) {
+			dependencies.add(PlanImpl.key(NetworkInterfacesImpl.TYPE, this.planGroupName(), this.nicId));
+		}
+		
+		for(NetworkInterfaceReference nicRef : this.innerObject().getNetworkProfile().getNetworkInterfaces()) {
+			dependencies.add(PlanImpl.key(NetworkInterfacesImpl.TYPE, this.planGroupName(), nicRef.getReferenceUri()));
+		}
+		return dependencies;
+	}
+	
+	
+	/**************************************************
+	 * Template deployment helpers
+	 **************************************************/
+	
+	// Compiles the definition into a single ARM template deployment, letting ARM provision the dependencies in parallel
+	private VirtualMachine createFromTemplate() throws Exception {
+		// Resource groups cannot be created from within a group-level deployment
+		ResourceGroup group = this.ensureGroup();
+		DeploymentTemplate template = new DeploymentTemplate(this.subscription().subscriptionId(), group.name());
+		List<String> dependsOn = new ArrayList<>();
+		
+		String storageAccountName = this.ensureStorageAccount(template, dependsOn);
+		String nicId = this.ensureNetworkInterface(template, dependsOn);
+		String availabilitySetId = this.ensureAvailabilitySet(template, dependsOn);
+		this.withExistingNetworkInterface(nicId);
+		if(availabilitySetId != null) {
+			this.withExistingAvailabilitySet(availabilitySetId);
+		}
+		
+		// Ensure default computer name
+		if(this.computerName() == null) {
+			this.withComputerName(this.name());
+		}
+
+		this.addToTemplate(template, storageAccountName, dependsOn);
+		template.deploy(this.subscription(), (this.deploymentName != null) ? this.deploymentName : this.name() + "deployment");
+		
+		// Map the deployed resources back onto the definition state 
+		this.withExistingStorageAccount(storageAccountName);
+		this.isExistingPrimaryNIC = true;
+		this.nicId = nicId;
+		
+		return this.subscription().virtualMachines().get(group.name(), this.name());
+	}
+	
+	
+	// Adds a new storage account to the template if needed, returning the name of the storage account to use
+	private String ensureStorageAccount(DeploymentTemplate template, List<String> dependsOn) throws Exception {
+		if(this.isExistingStorageAccount) {
+			return this.subscription().storageAccounts(this.storageAccountId).name();
+		} else if(this.storageAccountId == null) {
+			// Generate a name if needed
+			this.storageAccountId = this.name() + "store";
+		}
+		
+		ObjectNode properties = template.addResource(StorageAccountsImpl.TYPE, this.storageAccountId, this.region(), null, null);
+		properties.put("accountType", "Standard_LRS");
+		dependsOn.add(template.resourceId(StorageAccountsImpl.TYPE, this.storageAccountId));
+		return this.storageAccountId;
+	}
+	
+	
+	// Adds a new availability set to the template if needed, returning the resource ID of the availability set to use, if any
+	private String ensureAvailabilitySet(DeploymentTemplate template, List<String> dependsOn) throws Exception {
+		if(this.isExistingAvailabilitySet) {
+			return (this.availabilitySetId == null) ? null : this.subscription().availabilitySets(this.availabilitySetId).id();
+		} else if(this.availabilitySetId == null) {
+			// Generate a name if needed
+			this.availabilitySetId = this.name() + "set";
+		}
+		
+		template.addResource(AvailabilitySetsImpl.TYPE, this.availabilitySetId, this.region(), null, null);
+		String id = template.resourceId(AvailabilitySetsImpl.TYPE, this.availabilitySetId);
+		dependsOn.add(id);
+		return id;
+	}
+	
+	
+	// Adds a new network interface (and its new network and public IP address, if any) to the template if needed, 
+	// returning the resource ID of the network interface to use
+	private String ensureNetworkInterface(DeploymentTemplate template, List<String> dependsOn) throws Exception {
+		if(this.isExistingPrimaryNIC) {
+			return this.subscription().networkInterfaces(this.nicId).id();
+		} else if(this.nicId == null) {
+			// Generate a name if needed
+			this.nicId = this.name() + "nic";
+		}
+		
+		List<String> nicDependsOn = new ArrayList<>();
+		String subnetId = this.ensureSubnet(template, nicDependsOn);
+		String pipId = this.ensurePublicIpAddress(template, nicDependsOn);
+		
+		ObjectNode properties = template.addResource(NetworkInterfacesImpl.TYPE, this.nicId, this.region(), null, nicDependsOn);
+		ObjectNode ipConfig = properties.putArray("ipConfigurations").addObject();
+		ipConfig.put("name", subnetId.substring(subnetId.lastIndexOf('/') + 1));
+		ObjectNode ipConfigProperties = ipConfig.putObject("properties");
+		this.ensurePrivateIpAddress();
+		if(this.privateIpAddress != null) {
+			ipConfigProperties.put("privateIPAllocationMethod", IpAllocationMethod.STATIC);
+			ipConfigProperties.put("privateIPAddress", this.privateIpAddress);
+		} else {
+			ipConfigProperties.put("privateIPAllocationMethod", IpAllocationMethod.DYNAMIC);
+		}
+		
+		DeploymentTemplate.reference(ipConfigProperties, "subnet", subnetId);
+		if(pipId != null) {
+			DeploymentTemplate.reference(ipConfigProperties, "publicIPAddress", pipId);
+		}
+		
+		String id = template.resourceId(NetworkInterfacesImpl.TYPE, this.nicId);
+		dependsOn.add(id);
+		return id;
+	}
+	
+	
+	// Adds the virtual machine itself to the template
+	private void addToTemplate(DeploymentTemplate template, String storageAccountName, List<String> dependsOn) throws Exception {
+		ObjectNode properties = template.addResource(
+			VirtualMachinesImpl.TYPE, this.name(), this.region(), this.innerObject().getTags(), dependsOn);
+		properties.putObject("hardwareProfile").put("vmSize", this.size());
+		
+		OSProfile osProfile = this.innerObject().getOSProfile();
+		ObjectNode osProfileNode = properties.putObject("osProfile");
+		osProfileNode.put("computerName", osProfile.getComputerName());
+		osProfileNode.put("adminUsername", osProfile.getAdminUsername());
+		osProfileNode.put("adminPassword", template.addSecureParameter("adminPassword", osProfile.getAdminPassword()));
+		if(osProfile.getCustomData() != null) {
+			osProfileNode.put("customData", osProfile.getCustomData());
+		}
+		
+		// VHDs go into the storage account, which is only known to ARM if it is new
+		StorageAccount existingStorage = this.isExistingStorageAccount ? this.subscription().storageAccounts(this.storageAccountId) : null;
+		StorageProfile storageProfile = this.innerObject().getStorageProfile();
+		ObjectNode storageProfileNode = properties.putObject("storageProfile");
+		ImageReference image = storageProfile.getImageReference();
+		ObjectNode imageNode = storageProfileNode.putObject("imageReference");
+		imageNode.put("publisher", image.getPublisher());
+		imageNode.put("offer", image.getOffer());
+		imageNode.put("sku", image.getSku());
+		imageNode.put("version", image.getVersion());
+		
+		ObjectNode osDiskNode = storageProfileNode.putObject("osDisk");
+		osDiskNode.put("name", storageProfile.getOSDisk().getName());
+		osDiskNode.put("createOption", storageProfile.getOSDisk().getCreateOption());
+		osDiskNode.putObject("vhd").put("uri", vhdUri(template, existingStorage, storageAccountName, "osDisk.vhd"));
+		
+		ensureDataDiskDefaults();
+		ArrayNode dataDisksNode = storageProfileNode.putArray("dataDisks");
+		for(DataDisk dataDisk : storageProfile.getDataDisks()) {
+			ObjectNode dataDiskNode = dataDisksNode.addObject();
+			dataDiskNode.put("name", dataDisk.getName());
+			dataDiskNode.put("lun", dataDisk.getLun());
+			dataDiskNode.put("caching", dataDisk.getCaching());
+			dataDiskNode.put("createOption", dataDisk.getCreateOption());
+			if(dataDisk.getDiskSizeGB() > 0) {
+				dataDiskNode.put("diskSizeGB", dataDisk.getDiskSizeGB());
+			}
+			
+			String uri = dataDisk.getVirtualHardDisk().getUri();
+			dataDiskNode.putObject("vhd").put("uri", (uri != null) ? uri : 
+				vhdUri(template, existingStorage, storageAccountName, dataDisk.getName() + ".vhd"));
+		}
+		
+		ArrayNode nicsNode = properties.putObject("networkProfile").putArray("networkInterfaces");
+		for(NetworkInterfaceReference nicRef : this.innerObject().getNetworkProfile().getNetworkInterfaces()) {
+			ObjectNode nicNode = nicsNode.addObject();
+			nicNode.put("id", nicRef.getReferenceUri());
+			nicNode.putObject("properties").put("primary", Boolean.TRUE.equals(nicRef.isPrimary()));
+		}
+		
+		if(this.innerObject().getAvailabilitySetReference() != null) {
+			DeploymentTemplate.reference(properties, "availabilitySet", this.innerObject().getAvailabilitySetReference().getReferenceUri());
+		}
+	}
+	
+	
+	// Returns the URI, or template expression evaluating to it, of a VHD for this VM in the specified storage account
+	private String vhdUri(DeploymentTemplate template, StorageAccount existingStorage, String storageAccountName, String fileName) throws Exception {
+		if(existingStorage != null) {
+			URL container = new URL(existingStorage.primaryBlobEndpoint(), this.name() + "/");
+			return new URL(container, fileName).toString();
+		} else {
+			return template.blobEndpointExpression(storageAccountName, this.name() + "/" + fileName);
+		}
+	}
 }
@@ -20,7 +20,13 @@
 package com.microsoft.azure.shortcuts.resources.implementation;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import com.microsoft.azure.management.compute.models.CachingTypes;
 import com.microsoft.azure.management.compute.models.DiskCreateOptionTypes;
@@ -32,6 +38,8 @@ import com.microsoft.azure.management.compute.models.OSDisk;
 import com.microsoft.azure.management.compute.models.OSProfile;
 import com.microsoft.azure.management.compute.models.StorageProfile;
 import com.microsoft.azure.management.compute.models.VirtualHardDisk;
+import com.microsoft.azure.shortcuts.common.implementation.Parallel;
+import com.microsoft.azure.shortcuts.resources.FleetAnalytics;
 import com.microsoft.azure.shortcuts.resources.Size;
 import com.microsoft.azure.shortcuts.resources.VirtualMachine;
 import com.microsoft.azure.shortcuts.resources.VirtualMachines;
@@ -43,6 +51,8 @@ public class VirtualMachinesImpl
 		VirtualMachineImpl>
 	implements VirtualMachines {
 	
+	static final String TYPE = "Microsoft.Compute/virtualMachines";
+	
 	VirtualMachinesImpl(Subscription subscription) {
 		super(subscription);
 	}
@@ -55,7 +65,7 @@ public class VirtualMachinesImpl
 	public VirtualMachineImpl define(String name) throws Exception {
 		com.microsoft.azure.management.compute.models.VirtualMachine azureVM = new com.microsoft.azure.management.compute.models.VirtualMachine();
 		azureVM.setName(name);
-		azureVM.setType("Microsoft.Compute/virtualMachines");
+		azureVM.setType(TYPE);
 		azureVM.setId(name);
 		azureVM.setOSProfile(new OSProfile());
 		azureVM.setHardwareProfile(new HardwareProfile());
@@ -80,9 +90,47 @@ public class VirtualMachinesImpl
 		return wrap(azureVM);
 	}
 	
+	@Override
+	public FleetAnalytics analytics() throws Exception {
+		List<com.microsoft.azure.management.compute.models.VirtualMachine> nativeItems = this.listNativeEntities(null);
+		
+		// Get the sizes available in each of the regions in use, in parallel, leaving virtual machines without a location 
+		// without size details
+		Set<String> regions = new TreeSet<>();
+		for(com.microsoft.azure.management.compute.models.VirtualMachine nativeItem : nativeItems) {
+			String region = FleetAnalyticsImpl.normalizeRegion(nativeItem.getLocation());
+			if(region != null) {
+				regions.add(region);
+			}
+		}
+		
+		List<Callable<Map<String, Size>>> tasks = new ArrayList<>();
+		for(final String region : regions) {
+			tasks.add(new Callable<Map<String, Size>>() {
+				@Override
+				public Map<String, Size> call() throws Exception {
+					Map<String, Size> sizes = new HashMap<>();
+					for(Size size : subscription.sizes().asMap(region).values()) {
+						sizes.put(size.id().toLowerCase(), size);
+					}
+					return sizes;
+				}
+			});
+		}
+		
+		Map<String, Map<String, Size>> regionSizes = new HashMap<>();
+		Iterator<String> regionIter = regions.iterator();
+		for(Map<String, Size> sizes : Parallel.invokeAll(this.subscription.executor(), tasks, 0)) {
+			regionSizes.put(regionIter.next(), sizes);
+		}
+		
+		return new FleetAnalyticsImpl(this.subscription.executor(), nativeItems, regionSizes);
+	}
+	
 	@Override
 	public void delete(String groupName, String name) throws Exception {
 		subscription.computeManagementClient().getVirtualMachinesOperations().delete(groupName, name);
+		this.uncache(groupName, name);
 	}
 
 	
@@ -108,4 +156,19 @@ public class VirtualMachinesImpl
 	protected VirtualMachineImpl wrap(com.microsoft.azure.management.compute.models.VirtualMachine nativeItem) {
 		return new VirtualMachineImpl(nativeItem, this);
 	}
+	
+	@Override
+	String inventorySection() {
+		return TYPE;
+	}
+	
+	@Override
+	Class<com.microsoft.azure.management.compute.models.VirtualMachine> inventoryType() {
+		return com.microsoft.azure.management.compute.models.VirtualMachine.class;
+	}
+	
+	@Override
+	String type() {
+		return TYPE;
+	}
 }
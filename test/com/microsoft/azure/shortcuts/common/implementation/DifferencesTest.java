@@ -0,0 +1,78 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DifferencesTest {
+	@Test
+	public void compareIsCaseSensitive() {
+		Differences differences = new Differences()
+			.compare("vhd", "https://a.blob.core.windows.net/vhds/Disk1.vhd", "https://a.blob.core.windows.net/vhds/disk1.vhd")
+			.compare("same", "value", "value")
+			.compare("number", 1, 1);
+		assertEquals(Arrays.asList(
+			"vhd: 'https://a.blob.core.windows.net/vhds/Disk1.vhd' -> 'https://a.blob.core.windows.net/vhds/disk1.vhd'"), 
+			differences.toList());
+	}
+	
+	@Test
+	public void compareIgnoreCaseMatchesCaseVariants() {
+		Differences differences = new Differences()
+			.compareIgnoreCase("size", "Standard_A1", "STANDARD_A1")
+			.compareIgnoreCase("access", "Allow", "Deny")
+			.compareIgnoreCase("absent", null, null);
+		assertEquals(Arrays.asList("access: 'Allow' -> 'Deny'"), differences.toList());
+		
+		assertEquals(Arrays.asList("nsg: absent -> 'id'"), new Differences().compareIgnoreCase("nsg", null, "id").toList());
+	}
+	
+	@Test
+	public void compareTagsMatchesNamesIgnoringCaseAndValuesExactly() {
+		Map<String, String> actual = new HashMap<>();
+		actual.put("Env", "prod");
+		actual.put("owner", "alice");
+		actual.put("stale", "x");
+		
+		Map<String, String> desired = new HashMap<>();
+		desired.put("env", "prod");
+		desired.put("owner", "Alice");
+		desired.put("new", "y");
+		
+		Differences differences = new Differences().compare("tags", actual, desired);
+		assertEquals(3, differences.toList().size());
+		assertTrue(differences.toList().contains("tags.owner: 'alice' -> 'Alice'"));
+		assertTrue(differences.toList().contains("tags.new: absent -> 'y'"));
+		assertTrue(differences.toList().contains("tags.stale: 'x' -> absent"));
+	}
+	
+	@Test
+	public void compareCollectionsAsSets() {
+		assertTrue(new Differences().compare("dns", Arrays.asList("10.0.0.4", "10.0.0.5"), Arrays.asList("10.0.0.5", "10.0.0.4")).isEmpty());
+		assertEquals(1, new Differences().compare("dns", Arrays.asList("10.0.0.4"), Arrays.asList("10.0.0.5")).toList().size());
+	}
+}
@@ -0,0 +1,124 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ParallelTest {
+	private static final int PARALLELISM = 4;
+	
+	@Test
+	public void invokeAllBoundsCallsAndThreads() throws Exception {
+		final int limit = 16;
+		final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final AtomicInteger maxPoolSize = new AtomicInteger();
+		
+		List<Callable<Integer>> calls = new ArrayList<>();
+		for(int i = 0; i < 2000; i++) {
+			final int index = i;
+			calls.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					max(maxInFlight, inFlight.incrementAndGet());
+					max(maxPoolSize, pool.getPoolSize());
+					Thread.sleep(1);
+					inFlight.decrementAndGet();
+					return index;
+				}
+			});
+		}
+		
+		try {
+			List<Integer> results = Parallel.invokeAll(pool, calls, limit);
+			assertEquals(calls.size(), results.size());
+			for(int i = 0; i < results.size(); i++) {
+				assertEquals(i, results.get(i).intValue());
+			}
+			
+			assertTrue("Calls in flight: " + maxInFlight.get(), maxInFlight.get() <= limit);
+			
+			// Each call in flight may be compensated by one extra worker, but calls waiting for a permit may not
+			assertTrue("Pool size: " + maxPoolSize.get(), maxPoolSize.get() <= PARALLELISM + limit + 1);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void invokeAllThrowsFirstFailureAfterAllCalls() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+		final AtomicInteger completed = new AtomicInteger();
+		List<Callable<Void>> calls = new ArrayList<>();
+		for(int i = 0; i < 10; i++) {
+			final int index = i;
+			calls.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					completed.incrementAndGet();
+					if(index % 3 == 1) {
+						throw new IllegalStateException("call " + index);
+					}
+					return null;
+				}
+			});
+		}
+		
+		try {
+			Parallel.invokeAll(pool, calls, 2);
+			fail("Expected a failure");
+		} catch(IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("call 1"));
+			assertEquals(10, completed.get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void callRunsOutsidePool() throws Exception {
+		assertEquals("done", Parallel.call(new Callable<String>() {
+			@Override
+			public String call() {
+				return "done";
+			}
+		}));
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	private static void max(AtomicInteger max, int value) {
+		for(int current = max.get(); value > current && !max.compareAndSet(current, value); current = max.get());
+	}
+}
@@ -0,0 +1,95 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.common.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.microsoft.azure.management.network.models.VirtualNetwork;
+
+public class StringDictionaryTest {
+	@Test
+	public void canonicalReturnsFirstInstance() {
+		StringDictionary dictionary = new StringDictionary();
+		String first = new String("westus");
+		String second = new String("westus");
+		assertNotSame(first, second);
+		
+		assertSame(first, dictionary.canonical(first));
+		assertSame(first, dictionary.canonical(second));
+		assertEquals(1, dictionary.size());
+		assertNull(dictionary.canonical((String)null));
+	}
+	
+	@Test
+	public void canonicalIsCaseSensitive() {
+		StringDictionary dictionary = new StringDictionary();
+		assertEquals("WestUS", dictionary.canonical("WestUS"));
+		assertEquals("westus", dictionary.canonical("westus"));
+		assertEquals(2, dictionary.size());
+	}
+	
+	@Test
+	public void canonicalMapSharesKeysAndValues() {
+		StringDictionary dictionary = new StringDictionary();
+		String name = dictionary.canonical("env");
+		String value = dictionary.canonical("prod");
+		
+		Map<String, String> tags = new HashMap<>();
+		tags.put(new String("env"), new String("prod"));
+		Map<String, String> canonical = dictionary.canonical(tags);
+		assertEquals(tags, canonical);
+		assertNotSame(tags, canonical);
+		
+		Map.Entry<String, String> entry = canonical.entrySet().iterator().next();
+		assertSame(name, entry.getKey());
+		assertSame(value, entry.getValue());
+		assertNull(dictionary.canonical((Map<String, String>)null));
+	}
+	
+	@Test
+	public void canonicalizeReplacesLocationTypeAndTags() {
+		StringDictionary dictionary = new StringDictionary();
+		String location = dictionary.canonical("westus");
+		String type = dictionary.canonical("Microsoft.Network/virtualNetworks");
+		
+		VirtualNetwork network = new VirtualNetwork();
+		network.setName("net1");
+		network.setLocation(new String("westus"));
+		network.setType(new String("Microsoft.Network/virtualNetworks"));
+		HashMap<String, String> tags = new HashMap<>();
+		tags.put("env", "prod");
+		network.setTags(tags);
+		
+		assertSame(network, dictionary.canonicalize(network));
+		assertSame(location, network.getLocation());
+		assertSame(type, network.getType());
+		assertEquals(tags, network.getTags());
+		assertEquals("net1", network.getName());
+		assertNull(dictionary.canonicalize((VirtualNetwork)null));
+	}
+}
@@ -0,0 +1,135 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CidrAllocatorImplTest {
+	@Test
+	public void allocateReturnsConsecutiveBlocks() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16");
+		assertEquals("10.0.0.0/24", allocator.allocate(24));
+		assertEquals("10.0.1.0/24", allocator.allocate(24));
+		assertEquals("10.0.2.0/23", allocator.allocate(23));
+		assertFalse(allocator.isFree("10.0.0.0/24"));
+		assertFalse(allocator.isFree("10.0.3.0/24"));
+		assertTrue(allocator.isFree("10.0.4.0/24"));
+	}
+	
+	@Test
+	public void allocateUsesTightestFreeBlock() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16");
+		assertEquals("10.0.0.0/24", allocator.allocate(24));
+		assertEquals("10.0.128.0/17", allocator.allocate(17));
+		
+		// The free /24 next to the first block, rather than a split of a larger free block
+		allocator.release("10.0.0.0/24");
+		allocator.reserve("10.0.0.0/25");
+		assertEquals("10.0.0.128/25", allocator.allocate(25));
+		assertEquals("10.0.1.0/24", allocator.allocate(24));
+	}
+	
+	@Test
+	public void allocatePrefersTightestPool() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16", "192.168.0.0/24");
+		assertEquals("192.168.0.0/26", allocator.allocate(26));
+		assertEquals("10.0.0.0/20", allocator.allocate(20));
+	}
+	
+	@Test
+	public void allocateReturnsNullWhenFull() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/30");
+		Set<String> addresses = new HashSet<>();
+		for(int i = 0; i < 4; i++) {
+			addresses.add(allocator.allocate(32));
+		}
+		assertEquals(new HashSet<>(Arrays.asList("10.0.0.0/32", "10.0.0.1/32", "10.0.0.2/32", "10.0.0.3/32")), addresses);
+		assertNull(allocator.allocate(32));
+		assertNull(allocator.allocate(16));
+	}
+	
+	@Test
+	public void releaseMergesBuddies() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16");
+		assertEquals("10.0.0.0/17", allocator.allocate(17));
+		assertEquals("10.0.128.0/17", allocator.allocate(17));
+		assertNull(allocator.allocate(16));
+		
+		allocator.release("10.0.0.0/17").release("10.0.128.0/17");
+		assertTrue(allocator.isFree("10.0.0.0/16"));
+		assertEquals("10.0.0.0/16", allocator.allocate(16));
+	}
+	
+	@Test
+	public void reserveCoveringPoolUsesWholePool() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16", "10.1.0.0/16");
+		allocator.reserve("10.0.0.0/15");
+		assertNull(allocator.allocate(24));
+		
+		allocator.release("10.1.0.0/16");
+		assertEquals("10.1.0.0/24", allocator.allocate(24));
+	}
+	
+	@Test
+	public void blocksOutsidePoolsAreNotFree() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16");
+		assertFalse(allocator.isFree("10.1.0.0/24"));
+		assertFalse(allocator.isFree("10.0.0.0/8"));
+	}
+	
+	@Test
+	public void reserveIfValidIgnoresUntrackedForms() {
+		CidrAllocatorImpl allocator = allocator("10.0.0.0/16");
+		allocator.reserveIfValid(null);
+		allocator.reserveIfValid("fd00::/64");
+		allocator.reserveIfValid(" 10.0.0.0/24 ");
+		assertFalse(allocator.isFree("10.0.0.0/24"));
+		assertEquals("10.0.1.0/24", allocator.allocate(24));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void allocateRejectsInvalidLength() {
+		allocator("10.0.0.0/16").allocate(33);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void reserveRejectsInvalidBlock() {
+		allocator("10.0.0.0/16").reserve("fd00::/64");
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	// An allocator not backed by a subscription, so that refresh() keeps the local state
+	private static CidrAllocatorImpl allocator(String... pools) {
+		return new CidrAllocatorImpl(null, Arrays.asList(pools));
+	}
+}
@@ -0,0 +1,57 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+public class DeploymentTemplateTest {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	@Test
+	public void secureParameterKeepsValueOutOfTemplate() throws Exception {
+		DeploymentTemplate template = new DeploymentTemplate("s", "group1");
+		String expression = template.addSecureParameter("adminPassword", "P@ssw0rd!");
+		template.addResource(VirtualMachinesImpl.TYPE, "vm1", "westus", null, null)
+			.putObject("osProfile").put("adminPassword", expression);
+		
+		assertEquals("[parameters('adminPassword')]", expression);
+		assertFalse(template.toJson().contains("P@ssw0rd!"));
+		
+		JsonNode parameters = MAPPER.readTree(template.toJson()).get("parameters");
+		assertEquals("securestring", parameters.get("adminPassword").get("type").getTextValue());
+		
+		JsonNode values = MAPPER.readTree(template.parametersJson());
+		assertEquals("P@ssw0rd!", values.get("adminPassword").get("value").getTextValue());
+	}
+	
+	@Test
+	public void resourceIdCoversChildTypes() {
+		DeploymentTemplate template = new DeploymentTemplate("s", "group1");
+		assertEquals("/subscriptions/s/resourceGroups/group1/providers/Microsoft.Network/virtualNetworks/net1/subnets/subnet1", 
+			template.resourceId(NetworksImpl.TYPE + "/subnets", "net1", "subnet1"));
+		assertTrue(template.isEmpty());
+	}
+}
@@ -0,0 +1,180 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.azure.management.network.models.AddressSpace;
+import com.microsoft.azure.management.network.models.PublicIpAddress;
+import com.microsoft.azure.management.network.models.VirtualNetwork;
+
+public class InventoryImplTest {
+	private static final String PREFIX = "/subscriptions/s/resourcegroups/";
+	
+	private final ObjectMapper mapper = InventoryImpl.fieldMapper();
+	private Path path;
+	
+	@Before
+	public void setUp() throws Exception {
+		this.path = Files.createTempFile("inventory", ".bin");
+		this.path.toFile().deleteOnExit();
+	}
+	
+	@Test
+	public void readReturnsWrittenSections() throws Exception {
+		Map<String, InventoryImpl.Section> sections = new HashMap<>();
+		sections.put("networks", this.section(network("group1", "net1"), network("group2", "net2")));
+		sections.put("empty", new InventoryImpl.Section("", 2));
+		InventoryImpl.write(this.path, sections);
+		
+		Map<String, InventoryImpl.Section> read = InventoryImpl.read(this.path);
+		assertEquals(2, read.size());
+		InventoryImpl.Section section = read.get("networks");
+		assertEquals(1, section.timestamp());
+		
+		List<VirtualNetwork> networks = section.decode(null, VirtualNetwork.class, this.mapper);
+		assertEquals(2, networks.size());
+		for(VirtualNetwork network : networks) {
+			assertEquals("westus", network.getLocation());
+			assertEquals("prod", network.getTags().get("env"));
+			assertEquals(Arrays.asList("10.0.0.0/16"), network.getAddressSpace().getAddressPrefixes());
+		}
+		
+		List<VirtualNetwork> group1 = section.decode(PREFIX + "group1/", VirtualNetwork.class, this.mapper);
+		assertEquals(1, group1.size());
+		assertEquals("net1", group1.get(0).getName());
+		
+		assertTrue(read.get("empty").decode(null, VirtualNetwork.class, this.mapper).isEmpty());
+	}
+	
+	@Test
+	public void readEntriesOutliveReplacedFile() throws Exception {
+		this.written();
+		InventoryImpl.Section section = InventoryImpl.read(this.path).get("networks");
+		
+		// Replace the file the entries were read from
+		Map<String, InventoryImpl.Section> sections = new HashMap<>();
+		sections.put("networks", this.section(network("group3", "net3")));
+		InventoryImpl.write(this.path, sections);
+		
+		List<VirtualNetwork> networks = section.decode(PREFIX + "group1/", VirtualNetwork.class, this.mapper);
+		assertEquals(1, networks.size());
+		assertEquals("net1", networks.get(0).getName());
+		assertEquals(1, InventoryImpl.read(this.path).get("networks").decode(null, VirtualNetwork.class, this.mapper).size());
+	}
+	
+	@Test
+	public void sectionMatchesOnlyItsEntityType() throws Exception {
+		InventoryImpl.Section section = this.section(network("group1", "net1"));
+		assertTrue(section.matches(VirtualNetwork.class));
+		assertFalse(section.matches(PublicIpAddress.class));
+		
+		InventoryImpl.Section empty = new InventoryImpl.Section("", 1);
+		assertTrue(empty.matches(PublicIpAddress.class));
+	}
+	
+	@Test
+	public void readRejectsUnknownFormat() throws Exception {
+		Files.write(this.path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13 });
+		assertNull(InventoryImpl.read(this.path));
+	}
+	
+	@Test
+	public void readRejectsTruncatedFile() throws Exception {
+		byte[] bytes = this.written();
+		for(int length : new int[] { 12, 20, bytes.length / 2, bytes.length - 1 }) {
+			Files.write(this.path, Arrays.copyOf(bytes, length));
+			assertNull("Truncated to " + length, InventoryImpl.read(this.path));
+		}
+	}
+	
+	@Test
+	public void readRejectsInvalidLength() throws Exception {
+		byte[] bytes = this.written();
+		
+		// The length prefix of the section name, right after the header
+		bytes[12] = (byte)0x80;
+		Files.write(this.path, bytes);
+		assertNull(InventoryImpl.read(this.path));
+		
+		bytes[12] = 0x7f;
+		Files.write(this.path, bytes);
+		assertNull(InventoryImpl.read(this.path));
+	}
+	
+	@Test
+	public void decodeRejectsCorruptEntry() throws Exception {
+		InventoryImpl.Section section = this.section(network("group1", "net1"));
+		section.put(PREFIX + "group1/providers/microsoft.network/virtualnetworks/net2", "{\"name\":".getBytes("UTF-8"));
+		assertNull(section.decode(null, VirtualNetwork.class, this.mapper));
+		assertNotNull(section.decode(PREFIX + "group2/", VirtualNetwork.class, this.mapper));
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	private static VirtualNetwork network(String group, String name) {
+		VirtualNetwork network = new VirtualNetwork();
+		network.setId(String.format("/subscriptions/s/resourceGroups/%s/providers/Microsoft.Network/virtualNetworks/%s", group, name));
+		network.setName(name);
+		network.setLocation("westus");
+		HashMap<String, String> tags = new HashMap<>();
+		tags.put("env", "prod");
+		network.setTags(tags);
+		AddressSpace addressSpace = new AddressSpace();
+		addressSpace.setAddressPrefixes(new ArrayList<>(Arrays.asList("10.0.0.0/16")));
+		network.setAddressSpace(addressSpace);
+		return network;
+	}
+	
+	private InventoryImpl.Section section(VirtualNetwork... networks) throws Exception {
+		InventoryImpl.Section section = new InventoryImpl.Section(VirtualNetwork.class.getName(), 1);
+		for(VirtualNetwork network : networks) {
+			section.put(network.getId(), this.mapper.writeValueAsBytes(network));
+		}
+		return section;
+	}
+	
+	// Returns the bytes of a file with a single section of two networks
+	private byte[] written() throws Exception {
+		Map<String, InventoryImpl.Section> sections = new HashMap<>();
+		sections.put("networks", this.section(network("group1", "net1"), network("group2", "net2")));
+		InventoryImpl.write(this.path, sections);
+		return Files.readAllBytes(this.path);
+	}
+}
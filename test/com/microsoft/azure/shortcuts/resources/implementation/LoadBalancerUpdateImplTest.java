@@ -0,0 +1,103 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.microsoft.azure.management.network.models.LoadBalancingRule;
+import com.microsoft.azure.management.network.models.LoadDistribution;
+import com.microsoft.azure.management.network.models.Probe;
+import com.microsoft.azure.management.network.models.ProbeProtocol;
+import com.microsoft.azure.shortcuts.resources.Protocol;
+
+public class LoadBalancerUpdateImplTest {
+	private static final String LB = "/subscriptions/s/resourceGroups/group1/providers/Microsoft.Network/loadBalancers/lb1";
+	private static final String FRONTEND = LB + "/frontendIPConfigurations/lb1";
+	
+	@Test
+	public void isSameComparesProbes() {
+		Probe probe = LoadBalancerImpl.newProbe("web", ProbeProtocol.HTTP, 80, "/health");
+		assertTrue(LoadBalancerUpdateImpl.isSame(probe, 
+			LoadBalancerImpl.newProbe("web", ProbeProtocol.HTTP.toLowerCase(), 80, "/health")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(probe, LoadBalancerImpl.newProbe("web", ProbeProtocol.HTTP, 80, "/Health")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(probe, LoadBalancerImpl.newProbe("web", ProbeProtocol.HTTP, 8080, "/health")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(probe, LoadBalancerImpl.newProbe("web", ProbeProtocol.HTTP, 80, "/")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(probe, LoadBalancerImpl.newProbe("web", ProbeProtocol.TCP, 80, null)));
+	}
+	
+	@Test
+	public void isSameIgnoresDefaultedRuleSettings() {
+		// Azure fills in the load distribution and idle timeout left to their defaults
+		LoadBalancingRule actual = rule(8080, "web", "http");
+		actual.setLoadDistribution(LoadDistribution.DEFAULT);
+		actual.setIdleTimeoutInMinutes(4);
+		assertTrue(LoadBalancerUpdateImpl.isSame(actual, rule(8080, "web", "http")));
+		
+		LoadBalancingRule requested = rule(8080, "web", "http");
+		requested.setIdleTimeoutInMinutes(10);
+		assertFalse(LoadBalancerUpdateImpl.isSame(actual, requested));
+		
+		requested = rule(8080, "web", "http");
+		requested.setLoadDistribution(LoadDistribution.SOURCEIP);
+		assertFalse(LoadBalancerUpdateImpl.isSame(actual, requested));
+	}
+	
+	@Test
+	public void isSameDetectsRuleChanges() {
+		LoadBalancingRule actual = rule(8080, "web", "http");
+		assertTrue(LoadBalancerUpdateImpl.isSame(actual, rule(8080, "WEB", "HTTP")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(actual, rule(8081, "web", "http")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(actual, rule(8080, "api", "http")));
+		assertFalse(LoadBalancerUpdateImpl.isSame(actual, rule(8080, "web", null)));
+		
+		LoadBalancingRule udp = LoadBalancerImpl.newRule("rule1", Protocol.UDP, 80, 8080, "web", "http");
+		LoadBalancerImpl.resolve(udp, LB, FRONTEND);
+		assertFalse(LoadBalancerUpdateImpl.isSame(actual, udp));
+	}
+	
+	@Test
+	public void resolveExpandsReferencesByName() {
+		LoadBalancingRule rule = rule(8080, "web", "http");
+		assertEquals(LB + "/backendAddressPools/web", rule.getBackendAddressPool().getId());
+		assertEquals(LB + "/probes/http", rule.getProbe().getId());
+		assertEquals(FRONTEND, rule.getFrontendIPConfiguration().getId());
+		
+		// References already resolved are kept
+		LoadBalancerImpl.resolve(rule, LB + "2", FRONTEND + "2");
+		assertEquals(LB + "/backendAddressPools/web", rule.getBackendAddressPool().getId());
+		assertEquals(FRONTEND, rule.getFrontendIPConfiguration().getId());
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	// A TCP rule from port 80, with its references resolved
+	private static LoadBalancingRule rule(int backendPort, String poolName, String probeName) {
+		LoadBalancingRule rule = LoadBalancerImpl.newRule("rule1", Protocol.TCP, 80, backendPort, poolName, probeName);
+		LoadBalancerImpl.resolve(rule, LB, FRONTEND);
+		return rule;
+	}
+}
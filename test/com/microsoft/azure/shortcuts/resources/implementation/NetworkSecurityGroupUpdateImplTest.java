@@ -0,0 +1,131 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.microsoft.azure.management.network.models.SecurityRule;
+import com.microsoft.azure.management.network.models.SecurityRuleAccess;
+import com.microsoft.azure.management.network.models.SecurityRuleDirection;
+import com.microsoft.azure.management.network.models.SecurityRuleProtocol;
+
+public class NetworkSecurityGroupUpdateImplTest {
+	@Test
+	public void isSameIgnoresCase() {
+		SecurityRule rule = rule("http", 100, "80");
+		SecurityRule other = rule("HTTP", 100, "80");
+		other.setProtocol(SecurityRuleProtocol.TCP.toLowerCase());
+		other.setAccess(SecurityRuleAccess.ALLOW.toUpperCase());
+		other.setDirection(SecurityRuleDirection.INBOUND.toLowerCase());
+		other.setSourceAddressPrefix("internet");
+		assertTrue(NetworkSecurityGroupUpdateImpl.isSame(rule, other));
+	}
+	
+	@Test
+	public void isSameDetectsChanges() {
+		SecurityRule rule = rule("http", 100, "80");
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(rule, rule("http", 100, "8080")));
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(rule, rule("http", 200, "80")));
+		
+		SecurityRule denied = rule("http", 100, "80");
+		denied.setAccess(SecurityRuleAccess.DENY);
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(rule, denied));
+		
+		SecurityRule outbound = rule("http", 100, "80");
+		outbound.setDirection(SecurityRuleDirection.OUTBOUND);
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(rule, outbound));
+		
+		SecurityRule anyDestination = rule("http", 100, "80");
+		anyDestination.setDestinationAddressPrefix(null);
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(rule, anyDestination));
+		
+		SecurityRule noPriority = rule("http", 100, "80");
+		noPriority.setPriority(null);
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(rule, noPriority));
+		assertFalse(NetworkSecurityGroupUpdateImpl.isSame(noPriority, rule));
+	}
+	
+	@Test
+	public void isReprioritizingDetectsPriorityTakenFromChangedRule() {
+		Map<String, SecurityRule> actualRules = rules(rule("http", 100, "80"), rule("https", 200, "443"));
+		
+		// Swapping the priorities of two rules
+		assertTrue(NetworkSecurityGroupUpdateImpl.isReprioritizing(actualRules, 
+			Arrays.asList(rule("http", 200, "80"), rule("HTTPS", 100, "443")), Collections.<String>emptyList()));
+		
+		// Taking the priority of a removed rule
+		assertTrue(NetworkSecurityGroupUpdateImpl.isReprioritizing(actualRules, 
+			Arrays.asList(rule("ssh", 100, "22")), Arrays.asList("http")));
+	}
+	
+	@Test
+	public void isReprioritizingIgnoresUnrelatedChanges() {
+		Map<String, SecurityRule> actualRules = rules(rule("http", 100, "80"), rule("https", 200, "443"));
+		
+		// Changing a rule in place
+		assertFalse(NetworkSecurityGroupUpdateImpl.isReprioritizing(actualRules, 
+			Arrays.asList(rule("http", 100, "8080")), Collections.<String>emptyList()));
+		
+		// Taking the priority of a rule in the other direction
+		SecurityRule outbound = rule("ssh", 100, "22");
+		outbound.setDirection(SecurityRuleDirection.OUTBOUND);
+		assertFalse(NetworkSecurityGroupUpdateImpl.isReprioritizing(actualRules, 
+			Arrays.asList(outbound), Arrays.asList("http")));
+		
+		// Taking the priority of a rule left unchanged, which Azure rejects either way
+		assertFalse(NetworkSecurityGroupUpdateImpl.isReprioritizing(actualRules, 
+			Arrays.asList(rule("ssh", 200, "22")), Collections.<String>emptyList()));
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	// An inbound rule allowing TCP from the Internet to a port
+	private static SecurityRule rule(String name, int priority, String port) {
+		SecurityRule rule = NetworkSecurityGroupImpl.newRule(name);
+		rule.setPriority(priority);
+		rule.setProtocol(SecurityRuleProtocol.TCP);
+		rule.setAccess(SecurityRuleAccess.ALLOW);
+		rule.setDirection(SecurityRuleDirection.INBOUND);
+		rule.setSourceAddressPrefix("Internet");
+		rule.setSourcePortRange("*");
+		rule.setDestinationAddressPrefix("*");
+		rule.setDestinationPortRange(port);
+		return rule;
+	}
+	
+	private static Map<String, SecurityRule> rules(SecurityRule... rules) {
+		Map<String, SecurityRule> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for(SecurityRule rule : rules) {
+			map.put(rule.getName(), rule);
+		}
+		return map;
+	}
+}
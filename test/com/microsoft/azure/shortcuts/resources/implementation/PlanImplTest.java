@@ -0,0 +1,218 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.azure.shortcuts.common.Creatable;
+import com.microsoft.azure.shortcuts.resources.Plan.Schedule;
+import com.microsoft.azure.shortcuts.resources.Region;
+import com.microsoft.windowsazure.Configuration;
+
+public class PlanImplTest {
+	private static final String PROVIDERS = "/subscriptions/s/resourceGroups/group1/providers/";
+	private static final String GROUP = PlanImpl.key(ResourceGroupsImpl.TYPE, null, "group1");
+	private static final String NETWORK = PlanImpl.key(NetworksImpl.TYPE, "group1", "net1");
+	private static final String NSG = PlanImpl.key(NetworkSecurityGroupsImpl.TYPE, "group1", "nsg1");
+	private static final String NIC1 = PlanImpl.key(NetworkInterfacesImpl.TYPE, "group1", "nic1");
+	private static final String NIC2 = PlanImpl.key(NetworkInterfacesImpl.TYPE, "group1", "nic2");
+	
+	private Subscription subscription;
+	
+	@Before
+	public void setUp() throws Exception {
+		// A subscription without credentials, sufficient for definitions that are not created
+		Constructor<Subscription> constructor = Subscription.class.getDeclaredConstructor(Configuration.class);
+		constructor.setAccessible(true);
+		this.subscription = constructor.newInstance((Configuration)null);
+	}
+	
+	@Test
+	public void keyTakesGroupFromResourceId() {
+		String id = "/subscriptions/s/resourceGroups/Group1/providers/Microsoft.Network/virtualNetworks/Net1";
+		assertEquals(NETWORK, PlanImpl.key(NetworksImpl.TYPE, "other", id));
+		assertEquals(NETWORK, PlanImpl.key(NetworksImpl.TYPE, "GROUP1", "NET1"));
+	}
+	
+	@Test
+	public void dryRunOrdersDefinitionsByDependency() throws Exception {
+		Schedule schedule = this.plan().dryRun();
+		
+		assertEquals(3, schedule.waves().size());
+		assertEquals(0, wave(schedule, GROUP));
+		assertEquals(1, wave(schedule, NETWORK));
+		assertEquals(1, wave(schedule, NSG));
+		assertEquals(2, wave(schedule, NIC1));
+		assertEquals(2, wave(schedule, NIC2));
+		assertEquals(3, schedule.criticalPath().size());
+		assertEquals(GROUP, schedule.criticalPath().get(0));
+	}
+	
+	@Test
+	public void dryRunAppliesTypeConcurrencyLimit() throws Exception {
+		Schedule schedule = this.plan().withConcurrencyLimit(NetworkInterfacesImpl.TYPE, 1).dryRun();
+		
+		assertEquals(4, schedule.waves().size());
+		assertTrue(wave(schedule, NIC1) != wave(schedule, NIC2));
+		assertTrue(wave(schedule, NIC1) > wave(schedule, NETWORK));
+		assertTrue(wave(schedule, NIC2) > wave(schedule, NETWORK));
+	}
+	
+	@Test
+	public void dryRunAppliesConcurrencyLimit() throws Exception {
+		Schedule schedule = this.plan().withConcurrencyLimit(1).dryRun();
+		
+		assertEquals(5, schedule.waves().size());
+		for(List<String> wave : schedule.waves()) {
+			assertEquals(1, wave.size());
+		}
+		assertEquals(0, wave(schedule, GROUP));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void dryRunRejectsDuplicateDefinitions() throws Exception {
+		this.plan()
+			.withDefinition(this.subscription.networks().define("NET1").withRegion(Region.US_WEST).withExistingResourceGroup("group1"))
+			.dryRun();
+	}
+	
+	@Test
+	public void executeCreatesIndependentDefinitions() throws Exception {
+		Map<String, Object> results = new PlanImpl(this.subscription)
+			.withDefinitions(constant("a"), constant("b"))
+			.execute();
+		
+		assertEquals(2, results.size());
+		assertTrue(results.values().containsAll(Arrays.asList("a", "b")));
+	}
+	
+	@Test
+	public void executeAppliesConcurrencyLimit() throws Exception {
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		PlanImpl plan = new PlanImpl(this.subscription).withConcurrencyLimit(2);
+		for(int i = 0; i < 20; i++) {
+			plan.withDefinition(new Creatable<Object>() {
+				@Override
+				public Object create() throws Exception {
+					int count = inFlight.incrementAndGet();
+					synchronized(maxInFlight) {
+						maxInFlight.set(Math.max(maxInFlight.get(), count));
+					}
+					Thread.sleep(5);
+					inFlight.decrementAndGet();
+					return count;
+				}
+			});
+		}
+		
+		assertEquals(20, plan.execute().size());
+		assertTrue("Creates in flight: " + maxInFlight.get(), maxInFlight.get() <= 2);
+	}
+	
+	@Test
+	public void executeTreatsZeroTypeLimitAsUnlimited() throws Exception {
+		// The resource group cannot be created without credentials, but the plan must complete rather than wait for a slot
+		PlanImpl plan = new PlanImpl(this.subscription)
+			.withDefinition(this.subscription.resourceGroups().define("group1").withRegion(Region.US_WEST))
+			.withConcurrencyLimit(ResourceGroupsImpl.TYPE, 0);
+		try {
+			plan.execute();
+			fail("Expected the plan to fail");
+		} catch(Exception e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 1 definitions failed"));
+		}
+	}
+	
+	@Test
+	public void executeReportsFailures() throws Exception {
+		Creatable<Object> failing = new Creatable<Object>() {
+			@Override
+			public Object create() throws Exception {
+				throw new Exception("failed");
+			}
+		};
+		
+		try {
+			new PlanImpl(this.subscription).withDefinitions(constant("a"), failing).execute();
+			fail("Expected the plan to fail");
+		} catch(Exception e) {
+			assertTrue(e.getMessage().startsWith("1 of 2 definitions failed"));
+			assertEquals("failed", e.getCause().getMessage());
+		}
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	// A resource group, a network and an NSG in it, and two network interfaces using both
+	private PlanImpl plan() throws Exception {
+		return new PlanImpl(this.subscription).withDefinitions(
+			this.subscription.resourceGroups().define("group1").withRegion(Region.US_WEST),
+			this.subscription.networkSecurityGroups().define("nsg1").withRegion(Region.US_WEST).withExistingResourceGroup("group1"),
+			this.subscription.networks().define("net1").withRegion(Region.US_WEST).withExistingResourceGroup("group1"),
+			this.nic("nic1"),
+			this.nic("nic2"));
+	}
+	
+	private Creatable<?> nic(String name) throws Exception {
+		return this.subscription.networkInterfaces().define(name)
+			.withRegion(Region.US_WEST)
+			.withExistingResourceGroup("group1")
+			.withExistingNetwork(PROVIDERS + "Microsoft.Network/virtualNetworks/net1")
+			.withSubnet("subnet1")
+			.withPrivateIpAddressDynamic()
+			.withoutPublicIpAddress()
+			.withExistingNetworkSecurityGroup(PROVIDERS + "Microsoft.Network/networkSecurityGroups/nsg1");
+	}
+	
+	private static Creatable<Object> constant(final Object result) {
+		return new Creatable<Object>() {
+			@Override
+			public Object create() {
+				return result;
+			}
+		};
+	}
+	
+	// Returns the index of the wave the definition is scheduled in
+	private static int wave(Schedule schedule, String key) {
+		for(int i = 0; i < schedule.waves().size(); i++) {
+			if(schedule.waves().get(i).contains(key)) {
+				return i;
+			}
+		}
+		fail("Not scheduled: " + key);
+		return -1;
+	}
+}
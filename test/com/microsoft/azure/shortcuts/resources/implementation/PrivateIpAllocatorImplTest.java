@@ -0,0 +1,137 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PrivateIpAllocatorImplTest {
+	@Test
+	public void seedReservesAzureAddresses() {
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/24");
+		assertEquals("10.0.0.0/24", allocator.addressPrefix());
+		assertEquals(256 - PrivateIpAllocatorImpl.RESERVED_FIRST - PrivateIpAllocatorImpl.RESERVED_LAST, allocator.available());
+		assertFalse(allocator.isFree("10.0.0.0"));
+		assertFalse(allocator.isFree("10.0.0.3"));
+		assertTrue(allocator.isFree("10.0.0.4"));
+		assertFalse(allocator.isFree("10.0.0.255"));
+	}
+	
+	@Test
+	public void allocateContinuesFromLastAllocation() {
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/24");
+		assertEquals("10.0.0.4", allocator.allocate());
+		assertEquals("10.0.0.5", allocator.allocate());
+		
+		// A released address is not handed out again right away
+		allocator.release("10.0.0.4");
+		assertTrue(allocator.isFree("10.0.0.4"));
+		assertEquals("10.0.0.6", allocator.allocate());
+		assertEquals(256 - 5 - 2, allocator.available());
+	}
+	
+	@Test
+	public void allocateSkipsReservedAddresses() {
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/24");
+		allocator.reserve("10.0.0.4").reserve("10.0.0.5");
+		assertEquals("10.0.0.6", allocator.allocate());
+	}
+	
+	@Test
+	public void allocateWrapsAroundUntilFull() {
+		// Only 10.0.0.4 to 10.0.0.6 are available in a /29
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/29");
+		assertEquals(3, allocator.available());
+		assertEquals("10.0.0.4", allocator.allocate());
+		assertEquals("10.0.0.5", allocator.allocate());
+		assertEquals("10.0.0.6", allocator.allocate());
+		assertNull(allocator.allocate());
+		
+		allocator.release("10.0.0.5");
+		assertEquals("10.0.0.5", allocator.allocate());
+		assertEquals(0, allocator.available());
+	}
+	
+	@Test
+	public void allocateCrossesBitmapWords() {
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/22");
+		for(int i = 4; i < 130; i++) {
+			allocator.reserve(address(i));
+		}
+		assertEquals(address(130), allocator.allocate());
+		
+		// Wraps around to the start of the bitmap past the end of the subnet
+		for(int i = 131; i < 1023; i++) {
+			allocator.reserve(address(i));
+		}
+		allocator.release(address(64));
+		assertEquals(address(64), allocator.allocate());
+		assertNull(allocator.allocate());
+	}
+	
+	@Test
+	public void releaseKeepsAzureAddressesReserved() {
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/24");
+		int available = allocator.available();
+		allocator.release("10.0.0.1").release("10.0.0.255");
+		assertFalse(allocator.isFree("10.0.0.1"));
+		assertFalse(allocator.isFree("10.0.0.255"));
+		assertEquals(available, allocator.available());
+	}
+	
+	@Test
+	public void seedForgetsLocalAllocations() {
+		PrivateIpAllocatorImpl allocator = allocator("10.0.0.0/24");
+		allocator.allocate();
+		allocator.seed("10.0.1.0/24");
+		assertEquals("10.0.1.4", allocator.allocate());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void addressOutsideSubnetIsRejected() {
+		allocator("10.0.0.0/24").reserve("10.0.1.4");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void seedRejectsSubnetWithoutHostAddresses() {
+		allocator("10.0.0.0/31");
+	}
+	
+	
+	/****************************************************
+	 * Helpers
+	 ****************************************************/
+	
+	// An allocator seeded directly rather than from the network interfaces of the subnet
+	private static PrivateIpAllocatorImpl allocator(String addressPrefix) {
+		PrivateIpAllocatorImpl allocator = new PrivateIpAllocatorImpl(null, null);
+		allocator.seed(addressPrefix);
+		return allocator;
+	}
+	
+	// Returns the address at the specified offset within 10.0.0.0/22
+	private static String address(int offset) {
+		return String.format("10.0.%d.%d", offset >>> 8, offset & 0xff);
+	}
+}
@@ -0,0 +1,138 @@
+/**
+* Copyright (c) Microsoft Corporation
+* 
+* All rights reserved. 
+* 
+* MIT License
+* 
+* Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files 
+* (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, 
+* publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+* subject to the following conditions:
+* 
+* The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+* ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH 
+* THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.microsoft.azure.shortcuts.resources.implementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.azure.management.network.models.AddressSpace;
+import com.microsoft.azure.management.network.models.DhcpOptions;
+import com.microsoft.azure.management.network.models.Subnet;
+import com.microsoft.azure.management.network.models.VirtualNetwork;
+import com.microsoft.windowsazure.Configuration;
+
+public class SnapshotTest {
+	private NetworkImpl network;
+	private NetworkImpl snapshot;
+	
+	@Before
+	public void setUp() throws Exception {
+		// A subscription without credentials, sufficient for wrapping native objects
+		Constructor<Subscription> constructor = Subscription.class.getDeclaredConstructor(Configuration.class);
+		constructor.setAccessible(true);
+		Subscription subscription = constructor.newInstance((Configuration)null);
+		
+		this.network = new NetworkImpl(nativeNetwork(), new NetworksImpl(subscription));
+		this.snapshot = (NetworkImpl) this.network.snapshot();
+	}
+	
+	@Test
+	public void snapshotKeepsState() {
+		assertTrue(this.snapshot.isSnapshot());
+		assertEquals("group1", this.snapshot.resourceGroup());
+		assertEquals(Arrays.asList("10.0.0.0/16"), this.snapshot.addressSpaces());
+		assertEquals("test", this.snapshot.tags().get("env"));
+		assertEquals("10.0.1.0/24", this.snapshot.subnets().get("subnet1").addressPrefix());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void settersOfSnapshotThrow() {
+		this.snapshot.withAddressSpace("10.1.0.0/16");
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void tagSettersOfSnapshotThrow() {
+		this.snapshot.withTag("env", "prod");
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void subnetSettersOfSnapshotThrow() {
+		((SubnetImpl) this.snapshot.subnets().get("subnet1")).withAddressPrefix("10.0.2.0/24");
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void tagsOfSnapshotAreUnmodifiable() {
+		this.snapshot.tags().put("env", "prod");
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void addressSpacesOfSnapshotAreUnmodifiable() {
+		this.snapshot.addressSpaces().add("10.1.0.0/16");
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void subnetsOfSnapshotAreUnmodifiable() {
+		this.snapshot.subnets().clear();
+	}
+	
+	@Test
+	public void innerOfSnapshotIsCopy() {
+		VirtualNetwork inner = this.snapshot.inner();
+		assertNotSame(inner, this.snapshot.inner());
+		
+		inner.getAddressSpace().getAddressPrefixes().add("10.1.0.0/16");
+		inner.getTags().put("env", "prod");
+		inner.getSubnets().get(0).setAddressPrefix("10.0.2.0/24");
+		assertEquals(Arrays.asList("10.0.0.0/16"), this.snapshot.addressSpaces());
+		assertEquals("test", this.snapshot.tags().get("env"));
+		assertEquals("10.0.1.0/24", this.snapshot.subnets().get("subnet1").inner().getAddressPrefix());
+	}
+	
+	@Test
+	public void snapshotIsNotAffectedByOriginal() {
+		this.network.withAddressSpace("10.1.0.0/16").withTag("env", "prod");
+		assertSame(this.network.inner(), this.network.inner());
+		assertEquals(Arrays.asList("10.0.0.0/16", "10.1.0.0/16"), this.network.addressSpaces());
+		assertEquals(Arrays.asList("10.0.0.0/16"), this.snapshot.addressSpaces());
+		assertEquals("test", this.snapshot.tags().get("env"));
+	}
+	
+	private static VirtualNetwork nativeNetwork() {
+		VirtualNetwork network = new VirtualNetwork();
+		network.setId("/subscriptions/s/resourceGroups/group1/providers/Microsoft.Network/virtualNetworks/net1");
+		network.setName("net1");
+		network.setLocation("westus");
+		network.setTags(new HashMap<String, String>());
+		network.getTags().put("env", "test");
+		
+		AddressSpace addressSpace = new AddressSpace();
+		addressSpace.setAddressPrefixes(new ArrayList<>(Arrays.asList("10.0.0.0/16")));
+		network.setAddressSpace(addressSpace);
+		DhcpOptions dhcpOptions = new DhcpOptions();
+		dhcpOptions.setDnsServers(new ArrayList<String>());
+		network.setDhcpOptions(dhcpOptions);
+		
+		Subnet subnet = new Subnet();
+		subnet.setName("subnet1");
+		subnet.setAddressPrefix("10.0.1.0/24");
+		network.setSubnets(new ArrayList<>(Arrays.asList(subnet)));
+		return network;
+	}
+}